@@ -17,19 +17,107 @@
 
 package net.floodlightcontroller.core;
 
+import java.util.Arrays;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This is a context object where floodlight listeners can register 
  * and later retrieve context information associated with an
- * event
+ * event.
+ * 
+ * Keys that are used on every packet-in should be registered once with
+ * {@link #registerSlot(String)}, either as a static constant next to the
+ * key or from a module's init(). A registered key is stored in a plain
+ * object array indexed by its slot, which avoids the hashing and node
+ * allocation of the map and is reset by bulk nulling. Keys that were
+ * never registered fall back to the string-keyed storage map.
+ * 
+ * A context is only ever used by one thread at a time, i.e. the thread
+ * that is dispatching the event it belongs to.
  * @author readams
  */
 public class FloodlightContext {
+    private static final ConcurrentHashMap<String, Integer> slotIndex =
+            new ConcurrentHashMap<String, Integer>();
+    private static volatile int slotCount = 0;
+
     protected ConcurrentHashMap<String, Object> storage =
             new ConcurrentHashMap<String, Object>();
 
+    protected Object[] slots = new Object[slotCount];
+
+    /**
+     * Register a context key and get the slot its values are stored in.
+     * Registering the same key more than once returns the same slot.
+     * @param key the context key
+     * @return the slot index of the key
+     */
+    public static int registerSlot(String key) {
+        if (key == null) {
+            throw new NullPointerException("Context key must not be null");
+        }
+        Integer slot = slotIndex.get(key);
+        if (slot != null) {
+            return slot;
+        }
+        synchronized (slotIndex) {
+            slot = slotIndex.get(key);
+            if (slot == null) {
+                slot = slotCount;
+                slotIndex.put(key, slot);
+                slotCount = slot + 1;
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Get the slot of a registered context key
+     * @param key the context key
+     * @return the slot index, or -1 if the key has not been registered
+     */
+    public static int getSlot(String key) {
+        Integer slot = slotIndex.get(key);
+        return (slot == null) ? -1 : slot;
+    }
+
+    /**
+     * @return the number of slots registered so far
+     */
+    public static int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * Get the string-keyed storage. Values of registered keys are kept
+     * in slots and are not visible through this map; use a
+     * {@link FloodlightContextStore} to access them.
+     * @return the storage map of keys without a slot
+     */
     public ConcurrentHashMap<String, Object> getStorage() {
         return storage;
     }
+
+    protected Object getSlotValue(int slot) {
+        Object[] s = slots;
+        return (slot < s.length) ? s[slot] : null;
+    }
+
+    protected void setSlotValue(int slot, Object value) {
+        if (slot >= slots.length) {
+            // A key was registered after this context was allocated
+            slots = Arrays.copyOf(slots, Math.max(slot + 1, slotCount));
+        }
+        slots[slot] = value;
+    }
+
+    /**
+     * Clear all values so that the context can be reused for a new event
+     */
+    public void reset() {
+        Arrays.fill(slots, null);
+        if (!storage.isEmpty()) {
+            storage.clear();
+        }
+    }
 }
@@ -17,18 +17,52 @@
 
 package net.floodlightcontroller.core;
 
+/**
+ * Typed accessor for values in a {@link FloodlightContext}. Values can be
+ * accessed either by string key or, on hot paths, by the slot returned
+ * from {@link FloodlightContext#registerSlot(String)}. The string-keyed
+ * methods use the slot of the key when one has been registered, so both
+ * forms always see the same value.
+ */
 public class FloodlightContextStore<V> {
     
     @SuppressWarnings("unchecked")
     public V get(FloodlightContext bc, String key) {
+        int slot = FloodlightContext.getSlot(key);
+        if (slot >= 0) {
+            return get(bc, slot);
+        }
         return (V)bc.storage.get(key);
     }
     
     public void put(FloodlightContext bc, String key, V value) {
-        bc.storage.put(key, value);
+        int slot = FloodlightContext.getSlot(key);
+        if (slot >= 0) {
+            put(bc, slot, value);
+        } else {
+            bc.storage.put(key, value);
+        }
     }
     
     public void remove(FloodlightContext bc, String key) {
-        bc.storage.remove(key);
+        int slot = FloodlightContext.getSlot(key);
+        if (slot >= 0) {
+            remove(bc, slot);
+        } else {
+            bc.storage.remove(key);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(FloodlightContext bc, int slot) {
+        return (V)bc.getSlotValue(slot);
+    }
+
+    public void put(FloodlightContext bc, int slot, V value) {
+        bc.setSlotValue(slot, value);
+    }
+
+    public void remove(FloodlightContext bc, int slot) {
+        bc.setSlotValue(slot, null);
     }
 }
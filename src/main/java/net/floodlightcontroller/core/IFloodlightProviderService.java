@@ -22,6 +22,7 @@ import java.util.Map;
 
 import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.PacketView;
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.HARole;
 import net.floodlightcontroller.core.IHAListener;
@@ -53,12 +54,40 @@ public interface IFloodlightProviderService extends
     public static final String CONTEXT_PI_PAYLOAD =
             "net.floodlightcontroller.core.IFloodlightProvider.piPayload";
 
+    /**
+     * The {@link FloodlightContext} slot of {@link #CONTEXT_PI_PAYLOAD}
+     */
+    public static final int CONTEXT_PI_PAYLOAD_SLOT =
+            FloodlightContext.registerSlot(CONTEXT_PI_PAYLOAD);
+
+    /**
+     * A value stored in the floodlight context containing a
+     * {@link PacketView} over the raw data of a packet-in message.
+     */
+    public static final String CONTEXT_PI_VIEW =
+            "net.floodlightcontroller.core.IFloodlightProvider.piView";
+
+    /**
+     * The {@link FloodlightContext} slot of {@link #CONTEXT_PI_VIEW}
+     */
+    public static final int CONTEXT_PI_VIEW_SLOT =
+            FloodlightContext.registerSlot(CONTEXT_PI_VIEW);
+
     /**
      * A FloodlightContextStore object that can be used to retrieve the
-     * packet-in payload
+     * packet-in payload. The payload is decoded from the packet-in view
+     * the first time it is retrieved.
      */
     public static final FloodlightContextStore<Ethernet> bcStore =
-            new FloodlightContextStore<Ethernet>();
+            new PacketInPayloadStore();
+
+    /**
+     * A FloodlightContextStore object that can be used to retrieve the
+     * packet-in view. Prefer it over {@link #bcStore} when only header
+     * fields are needed.
+     */
+    public static final FloodlightContextStore<PacketView> pvStore =
+            new PacketInViewStore();
 
     /**
      * Service name used in the service directory representing
@@ -145,6 +174,16 @@ public interface IFloodlightProviderService extends
      */
     public void handleOutgoingMessage(IOFSwitch sw, OFMessage m);
 
+    /**
+     * Process a list of messages written together through the message
+     * listeners for the controller. Messages of a type no listener is
+     * registered for are skipped.
+     * @param sw The switch being written to
+     * @param msglist the messages, in the order they were written
+     * @throws NullPointerException if switch or any msg is null
+     */
+    public void handleOutgoingMessages(IOFSwitch sw, Iterable<OFMessage> msglist);
+
     /**
      * Run the main I/O loop of the Controller.
      */
@@ -192,6 +231,27 @@ public interface IFloodlightProviderService extends
    public void handleMessage(IOFSwitch sw, OFMessage m,
                           FloodlightContext bContext);
 
+   /**
+    * Handle a message the switch sent on one of its auxiliary connections.
+    * Packet-ins among them need only stay in order per flow, so they may
+    * be dispatched to listeners in parallel.
+    */
+   public void handleAuxMessage(IOFSwitch sw, OFMessage m);
+
+   /**
+    * Mark the start of a burst of messages handled on the calling thread,
+    * e.g. everything decoded from one network read. Until the matching
+    * endMessageBatch(), consecutive packet-ins from the same switch may be
+    * held back and handed to IOFMessageBatchListeners together.
+    */
+   public void beginMessageBatch();
+
+   /**
+    * Mark the end of a burst started by beginMessageBatch() and dispatch
+    * any packet-ins still held back.
+    */
+   public void endMessageBatch();
+
    /**
     * Gets the role manager
     * @return the role manager
@@ -20,6 +20,12 @@ public interface IOFConnectionBackend extends IOFConnection {
      */
     boolean isWritable();
 
+    /** @return the bytes written to this connection that have not yet
+     *  gone out to the switch, including an estimate for the messages still
+     *  queued (for picking the least loaded connection)
+     */
+    long getPendingWriteBytes();
+
     /** set the message/closing listener for this connection */
     void setListener(IOFConnectionListener listener);
     
@@ -0,0 +1,44 @@
+/**
+*    Licensed under the Apache License, Version 2.0 (the "License"); you may
+*    not use this file except in compliance with the License. You may obtain
+*    a copy of the License at
+*
+*         http://www.apache.org/licenses/LICENSE-2.0
+*
+*    Unless required by applicable law or agreed to in writing, software
+*    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+*    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+*    License for the specific language governing permissions and limitations
+*    under the License.
+**/
+
+package net.floodlightcontroller.core;
+
+import java.util.List;
+
+import org.projectfloodlight.openflow.protocol.OFMessage;
+
+/**
+ * An IOFMessageListener that can also take a burst of packet-ins from one
+ * switch in a single call, e.g. everything decoded from one network read.
+ *
+ * Listeners are still called in the order given by the ListenerDispatcher
+ * and a message that a listener STOPs is not passed to later listeners.
+ * Within a burst, each listener sees all remaining messages before the
+ * next listener is called. Listeners that do not implement this interface
+ * get the messages of a burst one at a time through receive().
+ */
+public interface IOFMessageBatchListener extends IOFMessageListener {
+  /**
+   * Process a burst of messages received from one switch
+   * @param sw the OpenFlow switch that sent the messages
+   * @param msgs the messages, in the order they were received. Must not
+   * be modified.
+   * @param cntxs the Floodlight context of each message, by the same index
+   * @param cmds the command for each message, by the same index. Every
+   * entry is CONTINUE on entry; set an entry to STOP to end the execution
+   * for that message.
+   */
+  public void receiveBatch(IOFSwitch sw, List<OFMessage> msgs,
+          List<FloodlightContext> cntxs, Command[] cmds);
+}
@@ -0,0 +1,39 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.core;
+
+import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.PacketView;
+
+/**
+ * Store for {@link IFloodlightProviderService#CONTEXT_PI_PAYLOAD} that
+ * decodes the payload from the packet-in view the first time a listener
+ * asks for it, so the {@link Ethernet} is only built when it is needed.
+ */
+class PacketInPayloadStore extends FloodlightContextStore<Ethernet> {
+
+    @Override
+    public Ethernet get(FloodlightContext bc, int slot) {
+        Ethernet eth = super.get(bc, slot);
+        if (eth == null && slot == IFloodlightProviderService.CONTEXT_PI_PAYLOAD_SLOT) {
+            PacketView pv = (PacketView) bc.getSlotValue(IFloodlightProviderService.CONTEXT_PI_VIEW_SLOT);
+            if (pv != null && pv.isEthernetOnDemand()) {
+                eth = pv.getEthernet();
+                super.put(bc, slot, eth);
+            }
+        }
+        return eth;
+    }
+}
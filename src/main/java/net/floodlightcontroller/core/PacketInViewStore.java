@@ -0,0 +1,40 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.core;
+
+import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.PacketView;
+
+/**
+ * Store for {@link IFloodlightProviderService#CONTEXT_PI_VIEW}. If a
+ * context only carries a decoded payload, e.g. one built by a module or a
+ * unit test rather than by the controller, a view over the serialized
+ * payload is created the first time it is asked for.
+ */
+class PacketInViewStore extends FloodlightContextStore<PacketView> {
+
+    @Override
+    public PacketView get(FloodlightContext bc, int slot) {
+        PacketView pv = super.get(bc, slot);
+        if (pv == null && slot == IFloodlightProviderService.CONTEXT_PI_VIEW_SLOT) {
+            Ethernet eth = (Ethernet) bc.getSlotValue(IFloodlightProviderService.CONTEXT_PI_PAYLOAD_SLOT);
+            if (eth != null) {
+                pv = PacketView.of(eth);
+                super.put(bc, slot, pv);
+            }
+        }
+        return pv;
+    }
+}
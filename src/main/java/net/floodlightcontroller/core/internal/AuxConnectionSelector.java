@@ -0,0 +1,166 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.core.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.floodlightcontroller.core.IOFConnectionBackend;
+import net.floodlightcontroller.util.OFMessageUtils;
+
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFPacketOut;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.protocol.action.OFActionOutput;
+import org.projectfloodlight.openflow.types.OFAuxId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+/**
+ * Picks the connection of a switch that messages which need no ordering
+ * with the rest of the switch's traffic are written on: packet-outs and
+ * stats requests written for the MAIN category.
+ *
+ * Only connected and writable auxiliary connections are picked, so these
+ * messages fail over to the remaining aux connections, and finally to the
+ * main connection, as aux connections drop or back up.
+ *
+ * Stats requests go to the aux connection the policy picks. Packet-outs go
+ * to the healthy aux connection their flow hashes to, under either policy,
+ * so that the packet-outs of one flow reach the switch in order.
+ */
+public class AuxConnectionSelector {
+
+    public enum Policy {
+        /** Everything goes on the main connection */
+        MAIN_ONLY,
+        /** Take turns over the healthy aux connections */
+        ROUND_ROBIN,
+        /** Take the healthy aux connection with the fewest bytes pending */
+        LEAST_LOADED
+    }
+
+    private final Policy policy;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public AuxConnectionSelector(Policy policy) {
+        this.policy = policy;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @param connections the switch's connections by aux id
+     * @return the connection to write a stats request on; the main
+     * connection if there is no healthy aux connection, which is null if the
+     * switch has none
+     */
+    public IOFConnectionBackend select(Map<OFAuxId, IOFConnectionBackend> connections) {
+        IOFConnectionBackend main = connections.get(OFAuxId.MAIN);
+        if (policy == Policy.MAIN_ONLY || connections.size() < 2) {
+            return main;
+        }
+        List<IOFConnectionBackend> healthy = healthyAux(connections, main);
+        if (healthy.isEmpty()) {
+            return main;
+        }
+        /* start at the next in turn, so that ties are taken in turn too */
+        int start = (next.getAndIncrement() & 0x7fffffff) % healthy.size();
+        IOFConnectionBackend selected = healthy.get(start);
+        if (policy == Policy.LEAST_LOADED) {
+            long least = selected.getPendingWriteBytes();
+            for (int i = 1; i < healthy.size() && least > 0; i++) {
+                IOFConnectionBackend c = healthy.get((start + i) % healthy.size());
+                long pending = c.getPendingWriteBytes();
+                if (pending < least) {
+                    least = pending;
+                    selected = c;
+                }
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * @param connections the switch's connections by aux id
+     * @param po the packet-out to write
+     * @return the connection to write the packet-out on, the same for all
+     * the packet-outs of a flow while the healthy aux connections stay the
+     * same; the main connection if there is no healthy aux connection
+     */
+    public IOFConnectionBackend select(Map<OFAuxId, IOFConnectionBackend> connections, OFPacketOut po) {
+        IOFConnectionBackend main = connections.get(OFAuxId.MAIN);
+        if (policy == Policy.MAIN_ONLY || connections.size() < 2) {
+            return main;
+        }
+        List<IOFConnectionBackend> healthy = healthyAux(connections, main);
+        if (healthy.isEmpty()) {
+            return main;
+        }
+        int h = flowHash(po);
+        h ^= (h >>> 16);
+        return healthy.get((h & 0x7fffffff) % healthy.size());
+    }
+
+    /**
+     * Hash the flow of a packet-out: its ingress port and the flow fields of
+     * the packet it carries, as packet-ins are sharded. A packet-out of a
+     * buffered packet carries none, and hashes by its ingress port alone; not
+     * by its buffer id, which differs from one packet of the flow to the next.
+     */
+    static int flowHash(OFPacketOut po) {
+        return ShardedMessageDispatcher.flowHash(OFMessageUtils.getInPort(po), po.getData());
+    }
+
+    private static List<IOFConnectionBackend> healthyAux(Map<OFAuxId, IOFConnectionBackend> connections,
+            IOFConnectionBackend main) {
+        List<IOFConnectionBackend> healthy = new ArrayList<IOFConnectionBackend>(connections.size());
+        for (IOFConnectionBackend c : connections.values()) {
+            if (c != main && isHealthy(c)) {
+                healthy.add(c);
+            }
+        }
+        return healthy;
+    }
+
+    private static boolean isHealthy(IOFConnectionBackend c) {
+        return c.isConnected() && c.isWritable();
+    }
+
+    /**
+     * @return true if the message may go on any connection of the switch.
+     * Packet-outs to OFPP_TABLE stay on main, behind the flow-mods they may
+     * have been written after.
+     */
+    public static boolean isSpreadable(OFMessage m) {
+        switch (m.getType()) {
+        case STATS_REQUEST:
+            return true;
+        case PACKET_OUT:
+            for (OFAction a : ((OFPacketOut) m).getActions()) {
+                if (a instanceof OFActionOutput
+                        && OFPort.TABLE.equals(((OFActionOutput) a).getPort())) {
+                    return false;
+                }
+            }
+            return true;
+        default:
+            return false;
+        }
+    }
+}
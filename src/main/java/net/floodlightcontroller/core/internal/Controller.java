@@ -20,7 +20,9 @@ package net.floodlightcontroller.core.internal;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.lang.management.RuntimeMXBean;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -29,7 +31,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.Stack;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -44,6 +45,7 @@ import net.floodlightcontroller.core.IControllerCompletionListener;
 import net.floodlightcontroller.core.IFloodlightProviderService;
 import net.floodlightcontroller.core.IHAListener;
 import net.floodlightcontroller.core.IInfoProvider;
+import net.floodlightcontroller.core.IOFMessageBatchListener;
 import net.floodlightcontroller.core.IListener.Command;
 import net.floodlightcontroller.core.IOFMessageListener;
 import net.floodlightcontroller.core.IOFSwitch;
@@ -55,7 +57,7 @@ import net.floodlightcontroller.core.module.FloodlightModuleLoader;
 import net.floodlightcontroller.core.util.ListenerDispatcher;
 import net.floodlightcontroller.core.web.CoreWebRoutable;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
-import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.PacketView;
 import net.floodlightcontroller.perfmon.IPktInProcessingTimeService;
 import net.floodlightcontroller.restserver.IRestApiService;
 import net.floodlightcontroller.storage.IResultSet;
@@ -86,6 +88,12 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
 
     /* OpenFlow message listeners and dispatchers */
     protected static ConcurrentMap<OFType, ListenerDispatcher<OFType,IOFMessageListener>> messageListeners;
+    /*
+     * Bit n is set when the OFType of ordinal n has message listeners, so
+     * that written messages nobody listens to skip the dispatch. Recomputed
+     * whenever the listeners change.
+     */
+    protected static volatile long listenedTypes;
     protected static ConcurrentLinkedQueue<IControllerCompletionListener> completionListeners;
     
     /* 
@@ -163,6 +171,47 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
     
     protected static boolean alwaysDecodeEth = true;
 
+    /*
+     * Listener dispatch mode. INLINE runs the listener chain on the I/O
+     * thread that read the message; SHARDED hands it to a per-DPID worker.
+     */
+    public enum DispatchMode {
+        INLINE, SHARDED
+    }
+    protected DispatchMode dispatchMode = DispatchMode.INLINE;
+    protected int dispatchWorkerThreads = Runtime.getRuntime().availableProcessors();
+    protected int dispatchQueueCapacity = 4096;
+    protected int dispatchHighWaterMark = 3072;
+    protected ShardedMessageDispatcher.OverloadPolicy dispatchOverloadPolicy =
+            ShardedMessageDispatcher.OverloadPolicy.DROP;
+    protected int dispatchSampleRate = 10;
+    protected ShardedMessageDispatcher dispatcher;
+
+    /*
+     * Whether consecutive packet-ins from one switch that arrive in the same
+     * burst are dispatched together, so IOFMessageBatchListeners see them
+     * in one call. The most packet-ins held back per burst is bounded.
+     */
+    protected boolean batchPacketIns = false;
+    protected int maxPacketInBatchSize = 64;
+
+    /**
+     * Packet-ins held back on the current I/O thread for batch dispatch
+     */
+    private static class PacketInBatch {
+        int depth;
+        IOFSwitch sw;
+        final List<OFMessage> msgs = new ArrayList<OFMessage>();
+    }
+
+    private final ThreadLocal<PacketInBatch> packetInBatch =
+            new ThreadLocal<PacketInBatch>() {
+        @Override
+        protected PacketInBatch initialValue() {
+            return new PacketInBatch();
+        }
+    };
+
     @Override
     public ModuleLoaderState getModuleLoaderState(){
         return moduleLoaderState;
@@ -293,13 +342,14 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
     // Handler for SwitchPortsChanged was here (notifyPortChanged). Handled in OFSwitchManager
 
     /**
-     * flcontext_cache - Keep a thread local stack of contexts
+     * flcontext_cache - Keep a thread local stack of contexts. Only its
+     * own thread touches a stack, so it need not be synchronized.
      */
-    protected static final ThreadLocal<Stack<FloodlightContext>> flcontext_cache =
-        new ThreadLocal <Stack<FloodlightContext>> () {
+    protected static final ThreadLocal<ArrayDeque<FloodlightContext>> flcontext_cache =
+        new ThreadLocal <ArrayDeque<FloodlightContext>> () {
             @Override
-            protected Stack<FloodlightContext> initialValue() {
-                return new Stack<FloodlightContext>();
+            protected ArrayDeque<FloodlightContext> initialValue() {
+                return new ArrayDeque<FloodlightContext>();
             }
         };
 
@@ -308,14 +358,11 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
      * @return FloodlightContext
      */
     protected static FloodlightContext flcontext_alloc() {
-        FloodlightContext flcontext = null;
+        FloodlightContext flcontext = flcontext_cache.get().pollFirst();
 
-        if (flcontext_cache.get().empty()) {
+        if (flcontext == null) {
             flcontext = new FloodlightContext();
         }
-        else {
-            flcontext = flcontext_cache.get().pop();
-        }
 
         return flcontext;
     }
@@ -325,7 +372,7 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
      * @param flcontext
      */
     protected void flcontext_free(FloodlightContext flcontext) {
-        flcontext.getStorage().clear();
+        flcontext.reset();
         flcontext_cache.get().push(flcontext);
     }
 
@@ -348,7 +395,228 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
     @Override
     public void handleMessage(IOFSwitch sw, OFMessage m,
                                  FloodlightContext bContext) {
-        Ethernet eth = null;
+        /*
+         * A caller passing its own context expects the listeners to have
+         * run by the time we return, so only context-less messages are
+         * handed to the sharded workers.
+         */
+        if (dispatcher != null && bContext == null) {
+            dispatcher.dispatch(sw, m);
+            return;
+        }
+        if (batchPacketIns && bContext == null) {
+            PacketInBatch batch = packetInBatch.get();
+            if (batch.depth > 0) {
+                if (m.getType() == OFType.PACKET_IN) {
+                    if (batch.sw != sw || batch.msgs.size() >= maxPacketInBatchSize) {
+                        flushPacketInBatch(batch);
+                    }
+                    batch.sw = sw;
+                    batch.msgs.add(m);
+                    return;
+                }
+                // keep the order of the switch's messages
+                flushPacketInBatch(batch);
+            }
+        }
+        dispatchToListeners(sw, m, bContext);
+    }
+
+    @Override
+    public void handleAuxMessage(IOFSwitch sw, OFMessage m) {
+        if (dispatcher != null) {
+            dispatcher.dispatchByFlow(sw, m);
+            return;
+        }
+        /* inline, aux packet-ins already run on their own connection's I/O thread */
+        handleMessage(sw, m, null);
+    }
+
+    @Override
+    public void beginMessageBatch() {
+        if (batchPacketIns && dispatcher == null) {
+            packetInBatch.get().depth++;
+        }
+    }
+
+    @Override
+    public void endMessageBatch() {
+        if (batchPacketIns && dispatcher == null) {
+            PacketInBatch batch = packetInBatch.get();
+            if (batch.depth > 0 && --batch.depth == 0) {
+                flushPacketInBatch(batch);
+            }
+        }
+    }
+
+    private void flushPacketInBatch(PacketInBatch batch) {
+        if (batch.msgs.isEmpty()) {
+            return;
+        }
+        /* copy first; a listener may hand the controller more messages */
+        List<OFMessage> msgs = new ArrayList<OFMessage>(batch.msgs);
+        IOFSwitch sw = batch.sw;
+        batch.msgs.clear();
+        batch.sw = null;
+        dispatchBatchToListeners(sw, msgs);
+    }
+
+    /**
+     * Run the IOFMessageListener chain for a burst of packet-ins from one
+     * switch on the calling thread. Listeners are called in order; an
+     * IOFMessageBatchListener gets all packet-ins no earlier listener
+     * stopped in one call, any other listener gets them one at a time.
+     */
+    void dispatchBatchToListeners(IOFSwitch sw, List<OFMessage> msgs) {
+        if (msgs.size() == 1) {
+            dispatchToListeners(sw, msgs.get(0), null);
+            return;
+        }
+        log.trace("Dispatching batch of {} OFMessages to listeners.", msgs.size());
+        if (this.notifiedRole == HARole.STANDBY) {
+            counters.dispatchMessageWhileStandby.add(msgs.size());
+            return;
+        }
+        counters.dispatchMessage.add(msgs.size());
+        counters.packetIn.add(msgs.size());
+
+        List<OFMessage> pis = new ArrayList<OFMessage>(msgs.size());
+        for (OFMessage m : msgs) {
+            OFPacketIn pi = (OFPacketIn) m;
+            if (pi.getData().length <= 0) {
+                log.error("Ignoring PacketIn (Xid = " + pi.getXid() + ") because the data field is empty.");
+            } else {
+                pis.add(pi);
+            }
+        }
+        int n = pis.size();
+        if (n == 0) {
+            return;
+        }
+
+        List<IOFMessageListener> listeners = null;
+        if (messageListeners.containsKey(OFType.PACKET_IN)) {
+            listeners = messageListeners.get(OFType.PACKET_IN).getOrderedListeners();
+        }
+
+        List<FloodlightContext> cntxs = new ArrayList<FloodlightContext>(n);
+        if (listeners != null) {
+            for (OFMessage m : pis) {
+                FloodlightContext bc = flcontext_alloc();
+                PacketView pv = new PacketView(((OFPacketIn) m).getData())
+                        .setEthernetOnDemand(alwaysDecodeEth);
+                IFloodlightProviderService.pvStore.put(bc,
+                        IFloodlightProviderService.CONTEXT_PI_VIEW_SLOT, pv);
+                cntxs.add(bc);
+            }
+
+            pktinProcTimeService.bootstrap();
+            for (IOFMessageListener l : listeners) {
+                pktinProcTimeService.addListener(l);
+            }
+            pktinProcTimeService.recordStartTimePktIn();
+
+            runListenerChain(sw, listeners, pis, cntxs, true);
+            pktinProcTimeService.recordEndTimePktIns(n);
+        }
+
+        for (int i = 0; i < n; i++) {
+            FloodlightContext bc = (i < cntxs.size()) ? cntxs.get(i) : null;
+            for (IControllerCompletionListener listener : completionListeners)
+                listener.onMessageConsumed(sw, pis.get(i), bc);
+            if (bc != null) flcontext_free(bc);
+        }
+    }
+
+    /**
+     * Run an ordered listener chain over messages of one type, each with
+     * its own context. An IOFMessageBatchListener gets all the messages no
+     * earlier listener stopped in one call; any other listener gets them
+     * one at a time.
+     * @param timed whether to record per-component processing times
+     */
+    private void runListenerChain(IOFSwitch sw, List<IOFMessageListener> listeners,
+            List<OFMessage> msgs, List<FloodlightContext> cntxs, boolean timed) {
+        int n = msgs.size();
+        if (n == 1) {
+            for (IOFMessageListener listener : listeners) {
+                if (timed) pktinProcTimeService.recordStartTimeComp(listener);
+                Command cmd = listener.receive(sw, msgs.get(0), cntxs.get(0));
+                if (timed) pktinProcTimeService.recordEndTimeComp(listener);
+                if (Command.STOP.equals(cmd)) {
+                    break;
+                }
+            }
+            return;
+        }
+
+        // Until a listener stops one, the listeners get the messages as they are
+        boolean[] stopped = new boolean[n];
+        int nStopped = 0;
+        int[] index = new int[n];
+        Command[] cmds = null;
+        List<OFMessage> live = msgs;
+        List<FloodlightContext> liveCntxs = cntxs;
+        for (IOFMessageListener listener : listeners) {
+            if (live.size() != n - nStopped) {
+                if (nStopped == n) {
+                    break;
+                }
+                live = new ArrayList<OFMessage>(n - nStopped);
+                liveCntxs = new ArrayList<FloodlightContext>(n - nStopped);
+                for (int i = 0; i < n; i++) {
+                    if (!stopped[i]) {
+                        index[live.size()] = i;
+                        live.add(msgs.get(i));
+                        liveCntxs.add(cntxs.get(i));
+                    }
+                }
+            }
+
+            if (timed) pktinProcTimeService.recordStartTimeComp(listener);
+            if (listener instanceof IOFMessageBatchListener) {
+                if (cmds == null) {
+                    cmds = new Command[n];
+                }
+                Arrays.fill(cmds, 0, live.size(), Command.CONTINUE);
+                ((IOFMessageBatchListener) listener).receiveBatch(sw,
+                        Collections.unmodifiableList(live),
+                        Collections.unmodifiableList(liveCntxs), cmds);
+                for (int j = 0; j < live.size(); j++) {
+                    if (Command.STOP.equals(cmds[j])) {
+                        nStopped += stop(stopped, live == msgs ? j : index[j]);
+                    }
+                }
+            } else {
+                for (int j = 0; j < live.size(); j++) {
+                    if (Command.STOP.equals(listener.receive(sw, live.get(j), liveCntxs.get(j)))) {
+                        nStopped += stop(stopped, live == msgs ? j : index[j]);
+                    }
+                }
+            }
+            if (timed) pktinProcTimeService.recordEndTimeComp(listener);
+        }
+    }
+
+    /**
+     * Mark message i stopped
+     * @return 1 if it was not stopped yet, else 0
+     */
+    private static int stop(boolean[] stopped, int i) {
+        if (stopped[i]) {
+            return 0;
+        }
+        stopped[i] = true;
+        return 1;
+    }
+
+    /**
+     * Run the IOFMessageListener chain for a message on the calling thread.
+     * Used inline by handleMessage() and by the sharded dispatch workers.
+     */
+    void dispatchToListeners(IOFSwitch sw, OFMessage m,
+                                 FloodlightContext bContext) {
+        PacketView pv = null;
         log.trace("Dispatching OFMessage to listeners.");
         if (this.notifiedRole == HARole.STANDBY) {
             counters.dispatchMessageWhileStandby.increment();
@@ -367,10 +635,11 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
                     return;
                 }
 
-                if (alwaysDecodeEth) {
-                    eth = new Ethernet();
-                    eth.deserialize(pi.getData(), 0, pi.getData().length);
-                }
+                /* 
+                 * Header fields are parsed from the view as listeners read
+                 * them; the full Ethernet is only decoded on request.
+                 */
+                pv = new PacketView(pi.getData()).setEthernetOnDemand(alwaysDecodeEth);
                 // fall through to default case...
 
             default:
@@ -390,10 +659,10 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
                     } else {
                         bc = bContext;
                     }
-                    if (eth != null) {
-                        IFloodlightProviderService.bcStore.put(bc,
-                                IFloodlightProviderService.CONTEXT_PI_PAYLOAD,
-                                eth);
+                    if (pv != null) {
+                        IFloodlightProviderService.pvStore.put(bc,
+                                IFloodlightProviderService.CONTEXT_PI_VIEW_SLOT,
+                                pv);
                     }
 
                     // Get the starting time (overall and per-component) of
@@ -470,6 +739,7 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
             messageListeners.put(type, ldd);
         }
         ldd.addListener(type, listener);
+        updateListenedTypes();
     }
 
     @Override
@@ -479,6 +749,27 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
         if (ldd != null) {
             ldd.removeListener(listener);
         }
+        updateListenedTypes();
+    }
+
+    private void updateListenedTypes() {
+        long types = 0;
+        for (Map.Entry<OFType, ListenerDispatcher<OFType, IOFMessageListener>> entry : messageListeners.entrySet()) {
+            int ordinal = entry.getKey().ordinal();
+            if (ordinal < Long.SIZE && !entry.getValue().getOrderedListeners().isEmpty()) {
+                types |= 1L << ordinal;
+            }
+        }
+        listenedTypes = types;
+    }
+
+    /**
+     * Check whether there may be listeners for a message type. Types past
+     * the bitmap are always dispatched.
+     */
+    private static boolean isListened(long types, OFType type) {
+        int ordinal = type.ordinal();
+        return ordinal >= Long.SIZE || (types & (1L << ordinal)) != 0;
     }
 
     private void logListeners() {
@@ -506,8 +797,9 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
         log.debug(sb.toString());
     }
 
-    public void removeOFMessageListeners(OFType type) {
+    public synchronized void removeOFMessageListeners(OFType type) {
         messageListeners.remove(type);
+        updateListenedTypes();
     }
 
     @Override
@@ -527,20 +819,95 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
         if (m == null)
             throw new NullPointerException("OFMessage must not be null");
 
-        FloodlightContext bc = new FloodlightContext();
-
-        List<IOFMessageListener> listeners = null;
-        if (messageListeners.containsKey(m.getType())) {
-            listeners = messageListeners.get(m.getType()).getOrderedListeners();
+        if (isListened(listenedTypes, m.getType())) {
+            dispatchOutgoing(sw, m.getType(), Collections.singletonList(m));
         }
+    }
 
-        if (listeners != null) {
-            for (IOFMessageListener listener : listeners) {
-                if (Command.STOP.equals(listener.receive(sw, m, bc))) {
-                    break;
+    @Override
+    public void handleOutgoingMessages(IOFSwitch sw, Iterable<OFMessage> msglist) {
+        if (sw == null)
+            throw new NullPointerException("Switch must not be null");
+
+        long types = listenedTypes;
+        if (msglist instanceof List) {
+            // The common write, all of one type, goes to the listeners as it is
+            List<OFMessage> msgs = (List<OFMessage>) msglist;
+            OFType type = oneType(msgs);
+            if (type != null) {
+                if (isListened(types, type)) {
+                    dispatchOutgoing(sw, type, msgs);
                 }
+                return;
             }
         }
+
+        // Runs of messages of the same type go to the listeners together
+        OFType batchType = null;
+        List<OFMessage> batch = null;
+        for (OFMessage m : msglist) {
+            if (m == null)
+                throw new NullPointerException("OFMessage must not be null");
+            if (!isListened(types, m.getType())) {
+                continue;
+            }
+            if (batch != null && m.getType() != batchType) {
+                dispatchOutgoing(sw, batchType, batch);
+                batch = null;
+            }
+            if (batch == null) {
+                batchType = m.getType();
+                batch = new ArrayList<OFMessage>();
+            }
+            batch.add(m);
+        }
+        if (batch != null) {
+            dispatchOutgoing(sw, batchType, batch);
+        }
+    }
+
+    /**
+     * @return the type of all the messages, or null if they are not all of
+     * one type or there are none
+     */
+    private static OFType oneType(List<OFMessage> msgs) {
+        int n = msgs.size();
+        if (n == 0 || msgs.get(0) == null) {
+            return null;
+        }
+        OFType type = msgs.get(0).getType();
+        for (int i = 1; i < n; i++) {
+            OFMessage m = msgs.get(i);
+            if (m == null || m.getType() != type) {
+                return null;
+            }
+        }
+        return type;
+    }
+
+    /**
+     * Pass written messages of one type through the message listeners.
+     * An IOFMessageBatchListener gets all the messages that are still live
+     * in one call; other listeners get them one at a time.
+     */
+    private void dispatchOutgoing(IOFSwitch sw, OFType type, List<OFMessage> msgs) {
+        ListenerDispatcher<OFType, IOFMessageListener> ldd = messageListeners.get(type);
+        if (ldd == null) {
+            return;
+        }
+        int n = msgs.size();
+        // One look-up of this thread's pool for the whole batch
+        ArrayDeque<FloodlightContext> pool = flcontext_cache.get();
+        List<FloodlightContext> cntxs = new ArrayList<FloodlightContext>(n);
+        for (int i = 0; i < n; i++) {
+            FloodlightContext bc = pool.pollFirst();
+            cntxs.add(bc != null ? bc : new FloodlightContext());
+        }
+        runListenerChain(sw, ldd.getOrderedListeners(), msgs, cntxs, false);
+        for (FloodlightContext bc : cntxs) {
+            bc.reset();
+            pool.push(bc);
+        }
     }
 
     // **************
@@ -645,13 +1012,72 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
         	}
         }        
         if (alwaysDecodeEth) {
-	        log.warn("Controller will automatically deserialize all Ethernet packet-in messages. "
-	        		+ "Set 'deserializeEthPacketIns' to 'FALSE' if this feature is not "
-	        		+ "required or when benchmarking core performance");
+	        log.info("Controller will deserialize Ethernet packet-in messages on demand. "
+	        		+ "Set 'deserializeEthPacketIns' to 'FALSE' if listeners only "
+	        		+ "use the packet-in view or when benchmarking core performance");
         } else {
-            log.info("Controller will not automatically deserialize all Ethernet packet-in messages. "
+            log.info("Controller will not deserialize Ethernet packet-in messages for listeners. "
             		+ "Set 'deserializeEthPacketIns' to 'TRUE' to enable this feature");
         }
+
+        String mode = configParams.get("dispatchMode");
+        if (!Strings.isNullOrEmpty(mode)) {
+            try {
+                dispatchMode = DispatchMode.valueOf(mode.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                log.error("Could not parse 'dispatchMode' of {}. Using default setting of {}", mode, dispatchMode);
+            }
+        }
+        dispatchWorkerThreads = parsePositiveInt(configParams, "dispatchWorkerThreads", dispatchWorkerThreads);
+        dispatchQueueCapacity = parsePositiveInt(configParams, "dispatchQueueCapacity", dispatchQueueCapacity);
+        dispatchHighWaterMark = parsePositiveInt(configParams, "dispatchHighWaterMark",
+                Math.min(dispatchHighWaterMark, dispatchQueueCapacity));
+        dispatchSampleRate = parsePositiveInt(configParams, "dispatchSampleRate", dispatchSampleRate);
+        String batch = configParams.get("batchPacketIns");
+        if (!Strings.isNullOrEmpty(batch)) {
+            batchPacketIns = Boolean.parseBoolean(batch.trim());
+        }
+        maxPacketInBatchSize = parsePositiveInt(configParams, "maxPacketInBatchSize", maxPacketInBatchSize);
+        if (batchPacketIns) {
+            log.info("Controller will dispatch bursts of up to {} packet-ins from a switch together",
+                    maxPacketInBatchSize);
+        }
+
+        String policy = configParams.get("dispatchOverloadPolicy");
+        if (!Strings.isNullOrEmpty(policy)) {
+            try {
+                dispatchOverloadPolicy = ShardedMessageDispatcher.OverloadPolicy.valueOf(policy.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                log.error("Could not parse 'dispatchOverloadPolicy' of {}. Using default setting of {}",
+                        policy, dispatchOverloadPolicy);
+            }
+        }
+        if (dispatchMode == DispatchMode.SHARDED) {
+            log.info("Controller will dispatch messages to listeners on {} worker threads sharded by switch. "
+                    + "Queue capacity {}, high-water mark {}, overload policy {}",
+                    new Object[] { dispatchWorkerThreads, dispatchQueueCapacity,
+                            dispatchHighWaterMark, dispatchOverloadPolicy });
+        } else {
+            log.info("Controller will dispatch messages to listeners on the I/O threads. "
+                    + "Set 'dispatchMode' to 'SHARDED' to use dedicated worker threads");
+        }
+    }
+
+    private static int parsePositiveInt(Map<String, String> configParams, String key, int defaultValue) {
+        String value = configParams.get(key);
+        if (Strings.isNullOrEmpty(value)) {
+            return defaultValue;
+        }
+        try {
+            int i = Integer.parseInt(value.trim());
+            if (i > 0) {
+                return i;
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        log.error("Could not parse '{}' of {}. Using default setting of {}", new Object[] { key, value, defaultValue });
+        return defaultValue;
     }
 
     /**
@@ -664,6 +1090,7 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
         // These data structures are initialized here because other
         // module's startUp() might be called before ours        
         messageListeners = new ConcurrentHashMap<OFType, ListenerDispatcher<OFType, IOFMessageListener>>();
+        listenedTypes = 0;
         haListeners = new ListenerDispatcher<HAListenerTypeMarker, IHAListener>();
         controllerNodeIPsCache = new HashMap<String, String>();
         updates = new LinkedBlockingQueue<IUpdate>();
@@ -683,6 +1110,13 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
         switchService.registerLogicalOFMessageCategory(LogicalOFMessageCategory.MAIN);
         counters = new ControllerCounters(debugCounterService);
 
+        if (dispatchMode == DispatchMode.SHARDED) {
+            dispatcher = new ShardedMessageDispatcher(this, dispatchWorkerThreads,
+                    dispatchQueueCapacity, dispatchHighWaterMark,
+                    dispatchOverloadPolicy, dispatchSampleRate,
+                    batchPacketIns ? maxPacketInBatchSize : 1,
+                    debugCounterService, counters.prefix);
+        }
      }
 
     /**
@@ -705,6 +1139,10 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
         storageSourceService.addListener(FLOW_PRIORITY_TABLE_NAME, this);
         readFlowPriorityConfigurationFromStorage(); // 
         
+        if (dispatcher != null) {
+            dispatcher.start();
+        }
+
         // Startup load monitoring
         if (overload_drop) {
             this.loadmonitor.startMonitoring(threadPoolService.getScheduledExecutor());
@@ -56,6 +56,24 @@ public interface IOFSwitchManager {
      * @param bContext the Floodlight context of the message, normally null in this case.
      */
     void handleMessage(IOFSwitchBackend sw, OFMessage m, FloodlightContext bContext);
+
+    /**
+     * Relays an upstream message received on an auxiliary connection to the
+     * controller, which may dispatch its packet-ins in parallel per flow.
+     * @param sw The switch the message was received on.
+     * @param m The message received.
+     */
+    void handleAuxMessage(IOFSwitchBackend sw, OFMessage m);
+
+    /**
+     * Relays the start of a burst of upstream messages read in one go.
+     */
+    void beginMessageBatch();
+
+    /**
+     * Relays the end of a burst of upstream messages read in one go.
+     */
+    void endMessageBatch();
     
     /**
      * Process written messages through the message listeners for the controller
@@ -64,6 +82,14 @@ public interface IOFSwitchManager {
      */
     public void handleOutgoingMessage(IOFSwitch sw, OFMessage m);
 
+    /**
+     * Process a list of messages written together through the message
+     * listeners for the controller
+     * @param sw The switch being written to
+     * @param msglist the messages, in the order they were written
+     */
+    public void handleOutgoingMessages(IOFSwitch sw, Iterable<OFMessage> msglist);
+
     /**
      * Gets an unmodifiable collection of OFSwitchHandshakeHandlers
      * @return an unmodifiable collection of OFSwitchHandshakeHandlers
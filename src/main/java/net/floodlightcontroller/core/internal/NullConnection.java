@@ -100,6 +100,11 @@ public class NullConnection implements IOFConnectionBackend, IOFMessageWriter {
         return false;
     }
 
+    @Override
+    public long getPendingWriteBytes() {
+        return 0;
+    }
+
     @Override
     public DatapathId getDatapathId() {
         return DatapathId.NONE;
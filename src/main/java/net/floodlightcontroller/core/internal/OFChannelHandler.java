@@ -62,6 +62,7 @@ class OFChannelHandler extends SimpleChannelInboundHandler<Iterable<OFMessage>>
 
 	private final ChannelPipeline pipeline;
 	private final INewOFConnectionListener newConnectionListener;
+	private final IOFSwitchManager switchManager;
 	private final SwitchManagerCounters counters;
 	private Channel channel;
 	private final Timer timer;
@@ -71,6 +72,8 @@ class OFChannelHandler extends SimpleChannelInboundHandler<Iterable<OFMessage>>
 	private volatile OFConnection connection;
 	private final IDebugCounterService debugCounters;
 	private final List<U32> ofBitmaps;
+	private final OFConnection.BackpressurePolicy backpressurePolicy;
+	private final int maxQueueDepth;
 
 	/** transaction Ids to use during handshake. Since only one thread
 	 * calls into the OFChannelHandler we don't need atomic.
@@ -446,11 +449,11 @@ class OFChannelHandler extends SimpleChannelInboundHandler<Iterable<OFMessage>>
 
 			// Handle non 1.3 connections
 			if (featuresReply.getVersion().compareTo(OFVersion.OF_13) < 0){
-				connection = new OFConnection(featuresReply.getDatapathId(), factory, channel, OFAuxId.MAIN, debugCounters, timer);
+				connection = new OFConnection(featuresReply.getDatapathId(), factory, channel, OFAuxId.MAIN, debugCounters, timer, backpressurePolicy, maxQueueDepth);
 			}
 			// Handle 1.3 connections
 			else {
-				connection = new OFConnection(featuresReply.getDatapathId(), factory, channel, featuresReply.getAuxiliaryId(), debugCounters, timer);
+				connection = new OFConnection(featuresReply.getDatapathId(), factory, channel, featuresReply.getAuxiliaryId(), debugCounters, timer, backpressurePolicy, maxQueueDepth);
 
 				// If this is an aux connection, we set a longer echo idle time
 				if (!featuresReply.getAuxiliaryId().equals(OFAuxId.MAIN)) {
@@ -489,6 +492,25 @@ class OFChannelHandler extends SimpleChannelInboundHandler<Iterable<OFMessage>>
 			@Nonnull Timer timer,
 			@Nonnull List<U32> ofBitmaps,
 			@Nonnull OFFactory defaultFactory) {
+		this(switchManager, newConnectionListener, pipeline, debugCounters,
+				timer, ofBitmaps, defaultFactory,
+				OFConnection.DEFAULT_BACKPRESSURE_POLICY,
+				OFConnection.DEFAULT_MAX_QUEUE_DEPTH);
+	}
+
+	/**
+	 * Creates a handler whose connection handles backpressure from the
+	 * switch with the given policy and output queue depth
+	 */
+	OFChannelHandler(@Nonnull IOFSwitchManager switchManager,
+			@Nonnull INewOFConnectionListener newConnectionListener,
+			@Nonnull ChannelPipeline pipeline,
+			@Nonnull IDebugCounterService debugCounters,
+			@Nonnull Timer timer,
+			@Nonnull List<U32> ofBitmaps,
+			@Nonnull OFFactory defaultFactory,
+			@Nonnull OFConnection.BackpressurePolicy backpressurePolicy,
+			int maxQueueDepth) {
 
 		Preconditions.checkNotNull(switchManager, "switchManager");
 		Preconditions.checkNotNull(newConnectionListener, "connectionOpenedListener");
@@ -499,11 +521,14 @@ class OFChannelHandler extends SimpleChannelInboundHandler<Iterable<OFMessage>>
 		this.pipeline = pipeline;
 		this.debugCounters = debugCounters;
 		this.newConnectionListener = newConnectionListener;
+		this.switchManager = switchManager;
 		this.counters = switchManager.getCounters();
 		this.state = new InitState();
 		this.timer = timer;
 		this.ofBitmaps = ofBitmaps;
 		this.factory = defaultFactory;
+		this.backpressurePolicy = backpressurePolicy;
+		this.maxQueueDepth = maxQueueDepth;
 
 		log.debug("constructor on OFChannelHandler {}", String.format("%08x", System.identityHashCode(this)));
 	}
@@ -600,6 +625,14 @@ class OFChannelHandler extends SimpleChannelInboundHandler<Iterable<OFMessage>>
 		log.info("[{}] Disconnected connection", getConnectionInfoString());
 	}
 
+	@Override
+	public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+		if (this.connection != null) {
+			this.connection.writabilityChanged();
+		}
+		super.channelWritabilityChanged(ctx);
+	}
+
 	@Override
 	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause)
 			throws Exception {
@@ -690,17 +723,23 @@ class OFChannelHandler extends SimpleChannelInboundHandler<Iterable<OFMessage>>
 
 	@Override
 	public void channelRead0(ChannelHandlerContext ctx, Iterable<OFMessage> msgList) throws Exception {
-		for (OFMessage ofm : msgList) {
-			try {
-				// Do the actual packet processing
-				state.processOFMessage(ofm);
-			}
-			catch (Exception ex) {
-				// We are the last handler in the stream, so run the
-				// exception through the channel again by passing in
-				// ctx.getChannel().
-				ctx.fireExceptionCaught(ex);
+		// Everything decoded from one read is one burst for batch listeners
+		switchManager.beginMessageBatch();
+		try {
+			for (OFMessage ofm : msgList) {
+				try {
+					// Do the actual packet processing
+					state.processOFMessage(ofm);
+				}
+				catch (Exception ex) {
+					// We are the last handler in the stream, so run the
+					// exception through the channel again by passing in
+					// ctx.getChannel().
+					ctx.fireExceptionCaught(ex);
+				}
 			}
+		} finally {
+			switchManager.endMessageBatch();
 		}
 	}
 
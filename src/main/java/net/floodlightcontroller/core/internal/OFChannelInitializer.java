@@ -61,6 +61,8 @@ public class OFChannelInitializer extends ChannelInitializer<Channel> {
 	private String keyStorePassword;
 	private OFFactory defaultFactory;
 	private List<U32> ofBitmaps;
+	private OFConnection.BackpressurePolicy backpressurePolicy;
+	private int maxQueueDepth;
 
 	public OFChannelInitializer(IOFSwitchManager switchManager,
 			INewOFConnectionListener connectionListener,
@@ -69,7 +71,9 @@ public class OFChannelInitializer extends ChannelInitializer<Channel> {
 			List<U32> ofBitmaps,
 			OFFactory defaultFactory,
 			String keyStore, 
-			String keyStorePassword) {
+			String keyStorePassword,
+			OFConnection.BackpressurePolicy backpressurePolicy,
+			int maxQueueDepth) {
 		super();
 		this.switchManager = switchManager;
 		this.connectionListener = connectionListener;
@@ -79,6 +83,8 @@ public class OFChannelInitializer extends ChannelInitializer<Channel> {
 		this.ofBitmaps = ofBitmaps;
 		this.keyStore = keyStore;
 		this.keyStorePassword = keyStorePassword;
+		this.backpressurePolicy = backpressurePolicy;
+		this.maxQueueDepth = maxQueueDepth;
 	}
 
 	@Override
@@ -91,7 +97,9 @@ public class OFChannelInitializer extends ChannelInitializer<Channel> {
 				debugCounters,
 				timer,
 				ofBitmaps,
-				defaultFactory);
+				defaultFactory,
+				backpressurePolicy,
+				maxQueueDepth);
 
 		if (keyStore != null && keyStorePassword != null) {
 			try {
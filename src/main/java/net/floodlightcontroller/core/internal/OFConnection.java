@@ -21,16 +21,25 @@ import java.net.SocketAddress;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
 
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.internal.PlatformDependent;
 import io.netty.util.Timeout;
 import io.netty.util.Timer;
 import io.netty.util.TimerTask;
@@ -87,6 +96,56 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 	 */
 	private final Channel channel;
 
+	/**
+	 * What a write does with the messages it could drop while the channel
+	 * is not writable, i.e. while more than the channel's high watermark of
+	 * bytes is waiting to go out to the switch: packet-outs and state
+	 * changes (flow, group, meter, port and table mods). All other
+	 * messages, such as handshake, echo, barrier, role and stats messages,
+	 * are always queued. Only packet-outs are ever dropped silently; a
+	 * state change is either queued or returned as unsent, so the caller
+	 * knows the switch did not get it.
+	 */
+	public enum BackpressurePolicy {
+		/**
+		 * Wait up to BLOCK_TIMEOUT_MS for the channel to become writable, then
+		 * return the messages as unsent. Writes from any event loop thread of
+		 * the channel's group never wait, as they may be holding up the very
+		 * write they wait for, and hold up every other switch on their loop.
+		 */
+		BLOCK,
+		/**
+		 * Drop packet-outs, which are counted but not returned. Queue state
+		 * changes until the queue is full, then return them as unsent.
+		 */
+		DROP,
+		/** Return the messages as unsent */
+		SIGNAL
+	}
+
+	public static final BackpressurePolicy DEFAULT_BACKPRESSURE_POLICY = BackpressurePolicy.SIGNAL;
+	public static final int DEFAULT_MAX_QUEUE_DEPTH = 8192;
+	private static final long BLOCK_TIMEOUT_MS = 1000;
+
+	/** A rough size for the messages not yet encoded */
+	private static final int QUEUED_MESSAGE_BYTES = 64;
+
+	private static final int PRIORITY_PACKET_OUT = 0;
+	private static final int PRIORITY_STATE_CHANGE = 1;
+	private static final int PRIORITY_CONTROL = 2;
+
+	private final BackpressurePolicy backpressurePolicy;
+	private final int maxQueueDepth;
+
+	/**
+	 * Messages waiting for the event loop, as one list per write() so that
+	 * the messages of a write stay together
+	 */
+	private final Queue<List<OFMessage>> outputQueue = PlatformDependent.newMpscQueue();
+	private final AtomicInteger queuedMessages = new AtomicInteger();
+	private final AtomicBoolean drainScheduled = new AtomicBoolean();
+	private final Object writabilityMonitor = new Object();
+
 	private final OFAuxId auxId;
 	private final Timer timer;
 
@@ -103,27 +162,15 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 	private volatile U64 latency;
 
 	/**
-	 * Used to write messages to ensure order w/Netty4.
-	 * It also ensures we do not reuse the array, since
-	 * Netty4 will write the object, not the items.
+	 * Writes all queued messages to the channel in one go, on the EventLoop
+	 * to ensure order w/Netty4
 	 */
-	private class WriteMessageTask implements Runnable {
-		private final Iterable<OFMessage> msglist;
-
-		public WriteMessageTask(Iterable<OFMessage> msglist) {
-			this.msglist = msglist;
-		}
-
+	private final Runnable drainTask = new Runnable() {
 		@Override
 		public void run() {
-			for (OFMessage m : msglist) {
-				if (logger.isTraceEnabled())
-					logger.trace("{}: send {}", this, m);
-				counters.updateWriteStats(m);
-			}
-			channel.writeAndFlush(msglist);
+			drain();
 		}
-	}
+	};
 
 	public OFConnection(@Nonnull DatapathId dpid,
 			@Nonnull OFFactory factory,
@@ -131,6 +178,18 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 			@Nonnull OFAuxId auxId,
 			@Nonnull IDebugCounterService debugCounters,
 			@Nonnull Timer timer) {
+		this(dpid, factory, channel, auxId, debugCounters, timer,
+				DEFAULT_BACKPRESSURE_POLICY, DEFAULT_MAX_QUEUE_DEPTH);
+	}
+
+	public OFConnection(@Nonnull DatapathId dpid,
+			@Nonnull OFFactory factory,
+			@Nonnull Channel channel,
+			@Nonnull OFAuxId auxId,
+			@Nonnull IDebugCounterService debugCounters,
+			@Nonnull Timer timer,
+			@Nonnull BackpressurePolicy backpressurePolicy,
+			int maxQueueDepth) {
 		Preconditions.checkNotNull(dpid, "dpid");
 		Preconditions.checkNotNull(factory, "factory");
 		Preconditions.checkNotNull(channel, "channel");
@@ -147,15 +206,21 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 		this.counters = new OFConnectionCounters(debugCounters, dpid, this.auxId);
 		this.timer = timer;
 		this.latency = U64.ZERO;
+		this.backpressurePolicy = Preconditions.checkNotNull(backpressurePolicy, "backpressurePolicy");
+		this.maxQueueDepth = maxQueueDepth;
 	}
 
 	/**
-	 * All write methods chain into this write() to use WriteMessageTask.
+	 * All write methods chain into this write() to use the output queue.
 	 * 
-	 * Write the list of messages to the switch
+	 * Write the list of messages to the switch. The messages are queued
+	 * for the EventLoop, which writes everything queued with one flush.
+	 * While the channel is not writable, the messages that may be dropped
+	 * are handled according to the {@link BackpressurePolicy}.
 	 * 
 	 * @param msgList list of messages to write
-	 * @return list of failed messages; can only fail if channel disconnected
+	 * @return list of failed messages; fails if channel disconnected, or
+	 * messages not queued due to backpressure
 	 */
 	@Override
 	public Collection<OFMessage> write(final Iterable<OFMessage> msgList) {
@@ -166,14 +231,187 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 						String.valueOf(msgList).substring(0, 80));
 			return IterableUtils.toCollection(msgList);
 		}
-		for (OFMessage m : msgList) {			
-			if (logger.isTraceEnabled()) {
+		/* Our own copy, since Netty4 will write the list, not the items */
+		List<OFMessage> msgs = new ArrayList<OFMessage>();
+		Iterables.addAll(msgs, msgList);
+		List<OFMessage> unsent = null;
+		if (!channel.isWritable()) {
+			unsent = applyBackpressure(msgs);
+		}
+		if (!msgs.isEmpty()) {
+			outputQueue.offer(msgs);
+			queuedMessages.addAndGet(msgs.size());
+			if (drainScheduled.compareAndSet(false, true)) {
+				this.channel.eventLoop().execute(drainTask);
+			}
+		}
+		return (unsent == null) ? Collections.<OFMessage>emptyList() : unsent;
+	}
+
+	private static int priorityOf(OFMessage m) {
+		switch (m.getType()) {
+		case PACKET_OUT:
+			return PRIORITY_PACKET_OUT;
+		case FLOW_MOD:
+		case GROUP_MOD:
+		case METER_MOD:
+		case PORT_MOD:
+		case TABLE_MOD:
+			return PRIORITY_STATE_CHANGE;
+		default:
+			return PRIORITY_CONTROL;
+		}
+	}
+
+	/**
+	 * Remove the messages of priority up to maxPriority from msgs
+	 * @return the removed messages
+	 */
+	private static List<OFMessage> removeUpTo(List<OFMessage> msgs, int maxPriority) {
+		List<OFMessage> removed = new ArrayList<OFMessage>();
+		for (Iterator<OFMessage> it = msgs.iterator(); it.hasNext(); ) {
+			OFMessage m = it.next();
+			if (priorityOf(m) <= maxPriority) {
+				removed.add(m);
+				it.remove();
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Apply the backpressure policy to a write while the channel is not
+	 * writable
+	 * @param msgs the messages to write; those not to be queued are removed
+	 * @return the messages to return as unsent, or null
+	 */
+	private List<OFMessage> applyBackpressure(List<OFMessage> msgs) {
+		switch (backpressurePolicy) {
+		case BLOCK:
+			if (inEventLoopGroup()) {
+				return null;
+			}
+			counters.updateBlockedStats();
+			if (awaitWritable()) {
+				return null;
+			}
+			break;
+		case DROP:
+			List<OFMessage> dropped = removeUpTo(msgs, PRIORITY_PACKET_OUT);
+			if (!dropped.isEmpty()) {
+				counters.updateDroppedStats(dropped.size());
+				if (logger.isTraceEnabled())
+					logger.trace("{}: not writable - dropping {}", this, dropped);
+			}
+			if (queuedMessages.get() + msgs.size() <= maxQueueDepth) {
+				return null;
+			}
+			break;
+		case SIGNAL:
+			break;
+		}
+		List<OFMessage> unsent = removeUpTo(msgs, PRIORITY_STATE_CHANGE);
+		if (!unsent.isEmpty()) {
+			counters.updateRejectedStats(unsent.size());
+		}
+		return unsent;
+	}
+
+	/**
+	 * @return true if the current thread is one of the event loops of the
+	 * group the channel's loop belongs to, such as a worker loop running
+	 * the packet-in listeners of another switch
+	 */
+	private boolean inEventLoopGroup() {
+		EventLoop loop = channel.eventLoop();
+		if (loop.inEventLoop()) {
+			return true;
+		}
+		EventLoopGroup group = loop.parent();
+		if (group != null) {
+			for (EventExecutor e : group) {
+				if (e.inEventLoop()) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Wait for the channel to become writable
+	 * @return true if it did, false on timeout or disconnection
+	 */
+	private boolean awaitWritable() {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BLOCK_TIMEOUT_MS);
+		synchronized (writabilityMonitor) {
+			while (!channel.isWritable()) {
+				long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				if (remainingMs <= 0 || !channel.isActive()) {
+					return false;
+				}
+				try {
+					writabilityMonitor.wait(remainingMs);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Write everything queued to the channel, with a single flush. Runs on
+	 * the EventLoop. Nothing is written while the channel is not writable;
+	 * {@link #writabilityChanged()} drains again once it is.
+	 */
+	private void drain() {
+		drainScheduled.set(false);
+		if (!channel.isWritable()) {
+			counters.updateQueueStats(queuedMessages.get(), bytesInFlight());
+			return;
+		}
+		List<OFMessage> batch = outputQueue.poll();
+		if (batch == null) {
+			return;
+		}
+		List<OFMessage> more;
+		while ((more = outputQueue.poll()) != null) {
+			batch.addAll(more);
+		}
+		queuedMessages.addAndGet(-batch.size());
+		for (OFMessage m : batch) {
+			if (logger.isTraceEnabled())
 				logger.trace("{}: send {}", this, m);
-				counters.updateWriteStats(m);
+			counters.updateWriteStats(m);
+		}
+		channel.writeAndFlush(batch);
+		counters.updateFlushStats(batch.size(), queuedMessages.get(), bytesInFlight());
+	}
+
+	/**
+	 * @return the bytes written to the channel but not yet to the socket
+	 */
+	private long bytesInFlight() {
+		ChannelOutboundBuffer out = channel.unsafe().outboundBuffer();
+		/* null once the channel is closed */
+		return (out == null) ? 0 : out.totalPendingWriteBytes();
+	}
+
+	/**
+	 * Called on the EventLoop when the channel crosses one of its write
+	 * buffer watermarks
+	 */
+	void writabilityChanged() {
+		if (channel.isWritable()) {
+			synchronized (writabilityMonitor) {
+				writabilityMonitor.notifyAll();
 			}
+			drain();
+		} else {
+			counters.updateQueueStats(queuedMessages.get(), bytesInFlight());
 		}
-		this.channel.eventLoop().execute(new WriteMessageTask(msgList));
-		return Collections.emptyList();
 	}
 
 	/**
@@ -249,6 +487,11 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 	}
 
 	public void disconnected() {
+		outputQueue.clear();
+		queuedMessages.set(0);
+		synchronized (writabilityMonitor) {
+			writabilityMonitor.notifyAll();
+		}
 		SwitchDisconnectedException exception = new SwitchDisconnectedException(getDatapathId());
 		for (Long xid : xidDeliverableMap.keySet()) {
 			// protect against other mechanisms running at the same time
@@ -351,6 +594,11 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 		return channel.isWritable();
 	}
 
+	@Override
+	public long getPendingWriteBytes() {
+		return bytesInFlight() + (long) queuedMessages.get() * QUEUED_MESSAGE_BYTES;
+	}
+
 	@Override
 	public DatapathId getDatapathId() {
 		return dpid;
@@ -101,6 +101,17 @@ public class OFConnectionCounters {
     private final IDebugCounter ctrReadRequestForward;
     private final IDebugCounter ctrReadControllerStatus;
 
+    // Output queue counters
+    //
+    private final IDebugCounter ctrOutputQueueDepth;
+    private final IDebugCounter ctrOutputBytesInFlight;
+    private final IDebugCounter ctrOutputFlushes;
+    private final IDebugCounter ctrOutputFlushedMessages;
+    private final IDebugCounter ctrOutputLastFlushBatchSize;
+    private final IDebugCounter ctrOutputDropped;
+    private final IDebugCounter ctrOutputRejected;
+    private final IDebugCounter ctrOutputBlocked;
+
     private static final Logger logger =
             LoggerFactory.getLogger(OFConnectionCounters.class);
 
@@ -529,6 +540,34 @@ public class OFConnectionCounters {
                 hierarchy,
                 stringId,
                 OFType.CONTROLLER_STATUS.toString());
+
+        hierarchy = stringId + "/output";
+        counters.registerCounter(COUNTER_MODULE, hierarchy,
+                                 "Output queue of this connection");
+        ctrOutputQueueDepth =
+                counters.registerCounter(COUNTER_MODULE, hierarchy + "/queue-depth",
+                                         "Messages waiting to be written, as of the last flush");
+        ctrOutputBytesInFlight =
+                counters.registerCounter(COUNTER_MODULE, hierarchy + "/bytes-in-flight",
+                                         "Bytes written but not yet sent to the switch, as of the last flush");
+        ctrOutputFlushes =
+                counters.registerCounter(COUNTER_MODULE, hierarchy + "/flushes",
+                                         "Number of flushes to the switch");
+        ctrOutputFlushedMessages =
+                counters.registerCounter(COUNTER_MODULE, hierarchy + "/flushed-messages",
+                                         "Number of messages flushed to the switch");
+        ctrOutputLastFlushBatchSize =
+                counters.registerCounter(COUNTER_MODULE, hierarchy + "/last-flush-batch-size",
+                                         "Number of messages in the last flush");
+        ctrOutputDropped =
+                counters.registerCounter(COUNTER_MODULE, hierarchy + "/dropped",
+                                         "Number of messages dropped while the connection was not writable");
+        ctrOutputRejected =
+                counters.registerCounter(COUNTER_MODULE, hierarchy + "/rejected",
+                                         "Number of messages returned unsent while the connection was not writable");
+        ctrOutputBlocked =
+                counters.registerCounter(COUNTER_MODULE, hierarchy + "/blocked",
+                                         "Number of writes that waited for the connection to become writable");
     }
     
     /**
@@ -541,6 +580,39 @@ public class OFConnectionCounters {
     	return debugCounterService.removeCounterHierarchy(COUNTER_MODULE, dpidAndConnIdString);
     }
 
+   /**
+    * Update the output queue counters after a flush
+    * @param batchSize number of messages flushed
+    * @param queueDepth number of messages still queued
+    * @param bytesInFlight bytes written but not yet sent
+    */
+   public void updateFlushStats(int batchSize, int queueDepth, long bytesInFlight) {
+       ctrOutputFlushes.increment();
+       ctrOutputFlushedMessages.add(batchSize);
+       ctrOutputLastFlushBatchSize.set(Math.max(0, batchSize));
+       updateQueueStats(queueDepth, bytesInFlight);
+   }
+
+   /**
+    * Update the output queue depth and bytes in flight
+    */
+   public void updateQueueStats(int queueDepth, long bytesInFlight) {
+       ctrOutputQueueDepth.set(Math.max(0, queueDepth));
+       ctrOutputBytesInFlight.set(Math.max(0, bytesInFlight));
+   }
+
+   public void updateDroppedStats(int dropped) {
+       ctrOutputDropped.add(dropped);
+   }
+
+   public void updateRejectedStats(int rejected) {
+       ctrOutputRejected.add(rejected);
+   }
+
+   public void updateBlockedStats() {
+       ctrOutputBlocked.increment();
+   }
+
    /**
     * Update Write Counters for Open flow messages
     * @param ofm openflow message
@@ -29,6 +29,7 @@ import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -62,6 +63,7 @@ import org.projectfloodlight.openflow.protocol.OFFactory;
 import org.projectfloodlight.openflow.protocol.OFFeaturesReply;
 import org.projectfloodlight.openflow.protocol.OFFlowWildcards;
 import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFPacketOut;
 import org.projectfloodlight.openflow.protocol.OFPortConfig;
 import org.projectfloodlight.openflow.protocol.OFPortDesc;
 import org.projectfloodlight.openflow.protocol.OFPortDescStatsReply;
@@ -117,6 +119,7 @@ public class OFSwitch implements IOFSwitchBackend {
 
 	private boolean startDriverHandshakeCalled = false;
 	private final Map<OFAuxId, IOFConnectionBackend> connections;
+	private final AuxConnectionSelector auxSelector;
 	private volatile Map<URI, Map<OFAuxId, OFBsnControllerConnection>> controllerConnections;
 	protected OFFactory factory;
 
@@ -167,6 +170,7 @@ public class OFSwitch implements IOFSwitchBackend {
 		// Connections
 		this.connections = new ConcurrentHashMap<OFAuxId, IOFConnectionBackend>();
 		this.connections.put(connection.getAuxId(), connection);
+		this.auxSelector = new AuxConnectionSelector(OFSwitchManager.auxSelectionPolicy);
 
 		// Switch's controller connection
 		this.controllerConnections = ImmutableMap.of();
@@ -799,7 +803,8 @@ public class OFSwitch implements IOFSwitchBackend {
 
 	@Override
 	public void removeConnection(IOFConnectionBackend connection) {
-		this.connections.remove(connection.getAuxId());
+		/* not a newer connection that took over the aux id */
+		this.connections.remove(connection.getAuxId(), connection);
 	}
 
 	/**
@@ -865,10 +870,21 @@ public class OFSwitch implements IOFSwitchBackend {
 			log.debug("MESSAGES: {}, VALID: {}, INVALID: {}", new Object[] { msgList, validMsgs, invalidMsgs});
 		}
 		/* Try to write all valid messages */
-		Collection<OFMessage> unsent = conn.write(validMsgs);
-		for (OFMessage m : validMsgs) {
-			if (!unsent.contains(m)) {
-				switchManager.handleOutgoingMessage(this, m);
+		Collection<OFMessage> unsent = (category == LogicalOFMessageCategory.MAIN)
+				? writeSpread(conn, validMsgs) : conn.write(validMsgs);
+		if (unsent.isEmpty()) {
+			if (!validMsgs.isEmpty()) {
+				switchManager.handleOutgoingMessages(this, validMsgs);
+			}
+		} else {
+			List<OFMessage> sent = new ArrayList<OFMessage>();
+			for (OFMessage m : validMsgs) {
+				if (!unsent.contains(m)) {
+					sent.add(m);
+				}
+			}
+			if (!sent.isEmpty()) {
+				switchManager.handleOutgoingMessages(this, sent);
 			}
 		}
 		
@@ -893,6 +909,54 @@ public class OFSwitch implements IOFSwitchBackend {
 		}
 	}
 
+	/**
+	 * Write messages for the MAIN category, moving those that need no
+	 * ordering with the rest onto the aux connections the selector picks:
+	 * packet-outs by their flow, stats requests by the selector's policy.
+	 * If an aux connection drops meanwhile, its messages are written on
+	 * main instead.
+	 * @return the unsent messages
+	 */
+	private Collection<OFMessage> writeSpread(IOFConnection main, Collection<OFMessage> msgs) {
+		if (connections.size() < 2 || auxSelector.getPolicy() == AuxConnectionSelector.Policy.MAIN_ONLY) {
+			return main.write(msgs);
+		}
+		List<OFMessage> rest = new ArrayList<OFMessage>();
+		Map<IOFConnectionBackend, List<OFMessage>> spread = new LinkedHashMap<IOFConnectionBackend, List<OFMessage>>();
+		for (OFMessage m : msgs) {
+			IOFConnectionBackend aux = null;
+			if (AuxConnectionSelector.isSpreadable(m)) {
+				aux = (m.getType() == OFType.PACKET_OUT)
+						? auxSelector.select(connections, (OFPacketOut) m) : auxSelector.select(connections);
+			}
+			if (aux == null || aux == main) {
+				rest.add(m);
+			} else {
+				List<OFMessage> l = spread.get(aux);
+				if (l == null) {
+					l = new ArrayList<OFMessage>();
+					spread.put(aux, l);
+				}
+				l.add(m);
+			}
+		}
+		if (spread.isEmpty()) {
+			return main.write(msgs);
+		}
+		List<OFMessage> unsent = new ArrayList<OFMessage>();
+		if (!rest.isEmpty()) {
+			unsent.addAll(main.write(rest));
+		}
+		for (Entry<IOFConnectionBackend, List<OFMessage>> e : spread.entrySet()) {
+			Collection<OFMessage> auxUnsent = e.getKey().write(e.getValue());
+			if (!auxUnsent.isEmpty() && !e.getKey().isConnected()) {
+				auxUnsent = main.write(auxUnsent);
+			}
+			unsent.addAll(auxUnsent);
+		}
+		return unsent;
+	}
+
 	@Override
 	public OFConnection getConnectionByCategory(LogicalOFMessageCategory category){
 		return (OFConnection) this.getConnection(category);
@@ -1063,7 +1127,7 @@ public class OFSwitch implements IOFSwitchBackend {
 
 	@Override
 	public <REPLY extends OFStatsReply> ListenableFuture<List<REPLY>> writeStatsRequest(OFStatsRequest<REPLY> request) {
-		return addInternalStatsReplyListener(connections.get(OFAuxId.MAIN).writeStatsRequest(request), request);
+		return addInternalStatsReplyListener(auxSelector.select(connections).writeStatsRequest(request), request);
 	}
 
 	@Override
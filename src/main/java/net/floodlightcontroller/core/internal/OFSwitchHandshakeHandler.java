@@ -1868,10 +1868,12 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 		if(log.isDebugEnabled())
 			log.debug("[{}] - Switch Handshake - new aux connection {}", this.getDpid(), connection.getAuxId());
 
-		// Handle new Auxiliary connections if the main connection has completed (i.e. in ACTIVE or STANDBY state)
-		if (this.getState().equals("ACTIVE") || this.getState().equals("STANDBY")) {
+		// Handle new Auxiliary connections if the main connection has completed (i.e. in MASTER or SLAVE state)
+		if (this.state instanceof MasterState || this.state instanceof SlaveState) {
 			auxConnections.put(connection.getAuxId(), connection);
 			connection.setListener(OFSwitchHandshakeHandler.this);
+			/* make the connection available to the switch's writes */
+			sw.registerConnection(connection);
 			log.info("Auxiliary connection {} added for {}.", connection.getAuxId().getValue(), connection.getDatapathId().toString());
 		} else {
 			log.info("Auxiliary connection {} initiated for {} before main connection handshake complete. Ignorning aux connection attempt.", connection.getAuxId().getValue(), connection.getDatapathId().toString());
@@ -1942,6 +1944,19 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 	/** IOFConnectionListener */
 	@Override
 	public void connectionClosed(IOFConnectionBackend connection) {
+		// An aux connection going away leaves the switch on its other
+		// connections; writes fail over to them
+		if (connection != this.mainConnection) {
+			if (auxConnections.remove(connection.getAuxId(), connection)) {
+				if (sw != null) {
+					sw.removeConnection(connection);
+				}
+				log.info("Auxiliary connection {} closed for {}.", connection.getAuxId().getValue(),
+						connection.getDatapathId().toString());
+			}
+			return;
+		}
+
 		// Disconnect handler's remaining connections
 		cleanup();
 
@@ -1961,6 +1976,12 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 
 	@Override
 	public void messageReceived(IOFConnectionBackend connection, OFMessage m) {
+		if (connection != this.mainConnection && m.getType() == OFType.PACKET_IN
+				&& state instanceof MasterState) {
+			/* nothing to do in the state machine but dispatch it */
+			switchManager.handleAuxMessage(sw, m);
+			return;
+		}
 		processOFMessage(m);
 	}
 
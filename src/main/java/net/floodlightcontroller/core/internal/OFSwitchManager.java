@@ -74,12 +74,20 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.util.HashedWheelTimer;
 import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import io.netty.util.concurrent.GlobalEventExecutor;
 
 /**
@@ -108,6 +116,22 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
     private static int bossThreads = 1; /* just listens and accepts on server socket; workers handle r/w I/O */
     private static int connectionBacklog = 1000; /* pending connections boss thread will queue to accept */
     private static int connectionTimeoutMsec = 60000; /* how long to allow TCP handshake to complete (default is 60ish secs) */
+    /**
+     * Socket transport for switch connections. AUTO uses the native epoll
+     * transport where it is available (Linux), NIO elsewhere.
+     */
+    public enum Transport {
+        AUTO, EPOLL, NIO
+    }
+    private static Transport transport = Transport.AUTO;
+    private static boolean epollEdgeTriggered = true; /* epoll only; fewer wakeups than level-triggered for many idle switches */
+    private static boolean reusePort = false; /* epoll only; one SO_REUSEPORT listener per boss thread, so accepts use all of them */
+    private static boolean pooledDirectBuffers = true; /* decode/encode OF messages in pooled direct buffers rather than heap ones */
+    private static int workerIoRatio = 50; /* percent of worker loop time for socket I/O vs queued tasks (our writes) */
+    private static int writeBufferHighWaterMark = 1024 * 1024; /* bytes pending on a connection before it stops being writable */
+    private static int writeBufferLowWaterMark = 512 * 1024; /* bytes pending on a connection before it is writable again */
+    private static OFConnection.BackpressurePolicy writeBackpressurePolicy = OFConnection.DEFAULT_BACKPRESSURE_POLICY;
+    private static int maxWriteQueueDepth = OFConnection.DEFAULT_MAX_QUEUE_DEPTH; /* messages queued per connection before DROP returns state changes unsent */
     private static TransportPort openFlowPort = TransportPort.of(6653);
     private static Set<IPv4Address> openFlowAddresses = new HashSet<IPv4Address>();	
 
@@ -121,6 +145,7 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
     protected static TableId forwardToControllerFlowsUpToTable = TableId.of(4); /* this should cover most HW switches that have a couple SW-based flow tables */
 
     protected static List<U32> ofBitmaps;
+    protected static AuxConnectionSelector.Policy auxSelectionPolicy = AuxConnectionSelector.Policy.LEAST_LOADED;
     protected static OFFactory defaultFactory;
 
     private static ConcurrentHashMap<DatapathId, OFSwitchHandshakeHandler> switchHandlers;
@@ -142,8 +167,8 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
     private static IFloodlightProviderService floodlightProvider;
     private static IDebugCounterService debugCounterService;
 
-    private static NioEventLoopGroup bossGroup;
-    private static NioEventLoopGroup workerGroup;
+    private static EventLoopGroup bossGroup;
+    private static EventLoopGroup workerGroup;
     private static DefaultChannelGroup cg;
 
     protected static Timer timer;
@@ -487,11 +512,31 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
         floodlightProvider.handleMessage(sw, m, bContext);
     }
 
+    @Override
+    public void handleAuxMessage(IOFSwitchBackend sw, OFMessage m) {
+        floodlightProvider.handleAuxMessage(sw, m);
+    }
+
+    @Override
+    public void beginMessageBatch() {
+        floodlightProvider.beginMessageBatch();
+    }
+
+    @Override
+    public void endMessageBatch() {
+        floodlightProvider.endMessageBatch();
+    }
+
     @Override
     public void handleOutgoingMessage(IOFSwitch sw, OFMessage m) {
         floodlightProvider.handleOutgoingMessage(sw, m);
     }
 
+    @Override
+    public void handleOutgoingMessages(IOFSwitch sw, Iterable<OFMessage> msglist) {
+        floodlightProvider.handleOutgoingMessages(sw, msglist);
+    }
+
     @Override
     public void addOFSwitchDriver(String manufacturerDescriptionPrefix,
             IOFSwitchDriver driver) {
@@ -848,19 +893,98 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
             tcpSendBufferSize = Integer.parseInt(tcpBuffer);
         }
 
+        /* How packet-outs and stats requests are spread over aux connections */
+        String auxPolicy = configParams.get("auxConnectionSelectionPolicy");
+        if (!Strings.isNullOrEmpty(auxPolicy)) {
+            try {
+                auxSelectionPolicy = AuxConnectionSelector.Policy.valueOf(auxPolicy.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                log.error("Could not parse 'auxConnectionSelectionPolicy' of {}. Using default setting of {}",
+                        auxPolicy, auxSelectionPolicy);
+            }
+        }
+
+        /* Netty transport and event loop tuning */
+        String transportConfig = configParams.get("transport");
+        if (!Strings.isNullOrEmpty(transportConfig)) {
+            try {
+                transport = Transport.valueOf(transportConfig.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                log.error("Could not parse 'transport' of {}. Using default setting of {}",
+                        transportConfig, transport);
+            }
+        }
+        String edgeTriggered = configParams.get("epollEdgeTriggered");
+        if (!Strings.isNullOrEmpty(edgeTriggered)) {
+            epollEdgeTriggered = Boolean.parseBoolean(edgeTriggered.trim());
+        }
+        String reuse = configParams.get("reusePort");
+        if (!Strings.isNullOrEmpty(reuse)) {
+            reusePort = Boolean.parseBoolean(reuse.trim());
+        }
+        String pooledDirect = configParams.get("pooledDirectBuffers");
+        if (!Strings.isNullOrEmpty(pooledDirect)) {
+            pooledDirectBuffers = Boolean.parseBoolean(pooledDirect.trim());
+        }
+        String ioRatio = configParams.get("workerIoRatio");
+        if (!Strings.isNullOrEmpty(ioRatio)) {
+            workerIoRatio = Integer.parseInt(ioRatio);
+            if (workerIoRatio <= 0 || workerIoRatio > 100) {
+                throw new FloodlightModuleException("workerIoRatio of " + workerIoRatio + " must be in 1..100");
+            }
+        }
+
+        /* Netty per-connection write buffer watermarks */
+        String watermark = configParams.get("writeBufferHighWaterMarkBytes");
+        if (!Strings.isNullOrEmpty(watermark)) {
+            writeBufferHighWaterMark = Integer.parseInt(watermark);
+        }
+        watermark = configParams.get("writeBufferLowWaterMarkBytes");
+        if (!Strings.isNullOrEmpty(watermark)) {
+            writeBufferLowWaterMark = Integer.parseInt(watermark);
+        }
+        if (writeBufferLowWaterMark > writeBufferHighWaterMark) {
+            throw new FloodlightModuleException("writeBufferLowWaterMarkBytes of " + writeBufferLowWaterMark
+                    + " must not exceed writeBufferHighWaterMarkBytes of " + writeBufferHighWaterMark);
+        }
+
+        /* What writes do while a connection is not writable */
+        String policy = configParams.get("writeBackpressurePolicy");
+        if (!Strings.isNullOrEmpty(policy)) {
+            try {
+                writeBackpressurePolicy = OFConnection.BackpressurePolicy.valueOf(policy.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                log.error("Could not parse 'writeBackpressurePolicy' of {}. Using default setting of {}",
+                        policy, writeBackpressurePolicy);
+            }
+        }
+        String depth = configParams.get("maxWriteQueueDepth");
+        if (!Strings.isNullOrEmpty(depth)) {
+            maxWriteQueueDepth = Integer.parseInt(depth);
+        }
+
         log.info("Listening for OpenFlow switches on {}:{}", openFlowAddresses, openFlowPort);
         log.info("OpenFlow socket config: "
+                + "{} transport, "
                 + "{} boss thread(s), "
                 + "{} worker thread(s), "
                 + "{} ms TCP connection timeout, "
                 + "max {} connection backlog, "
-                + "{} byte TCP send buffer size", 
+                + "{} byte TCP send buffer size, "
+                + "{}/{} byte write buffer high/low watermarks, "
+                + "{} write backpressure policy, "
+                + "max {} queued writes", 
                 new Object[] {
+                        transport,
                         bossThreads, 
                         workerThreads, 
                         connectionTimeoutMsec, 
                         connectionBacklog, 
-                        tcpSendBufferSize
+                        tcpSendBufferSize,
+                        writeBufferHighWaterMark,
+                        writeBufferLowWaterMark,
+                        writeBackpressurePolicy,
+                        maxWriteQueueDepth
                 });
     }
 
@@ -1025,18 +1149,44 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
      */
     public void bootstrapNetty() {
         try {
-            bossGroup = new NioEventLoopGroup(bossThreads);
-            workerGroup = new NioEventLoopGroup(workerThreads);
+            boolean epoll = useEpoll();
+            /* named threads, so they can be told apart and pinned to cores with taskset */
+            DefaultThreadFactory bossFactory = new DefaultThreadFactory("OF-boss");
+            DefaultThreadFactory workerFactory = new DefaultThreadFactory("OF-worker");
+            ServerBootstrap bootstrap = new ServerBootstrap();
+            if (epoll) {
+                bossGroup = new EpollEventLoopGroup(bossThreads, bossFactory);
+                EpollEventLoopGroup workers = new EpollEventLoopGroup(workerThreads, workerFactory);
+                workers.setIoRatio(workerIoRatio);
+                workerGroup = workers;
+                EpollMode mode = epollEdgeTriggered ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED;
+                bootstrap.channel(EpollServerSocketChannel.class)
+                        .option(EpollChannelOption.EPOLL_MODE, mode)
+                        .option(EpollChannelOption.SO_REUSEPORT, reusePort)
+                        .childOption(EpollChannelOption.EPOLL_MODE, mode);
+            } else {
+                bossGroup = new NioEventLoopGroup(bossThreads, bossFactory);
+                NioEventLoopGroup workers = new NioEventLoopGroup(workerThreads, workerFactory);
+                workers.setIoRatio(workerIoRatio);
+                workerGroup = workers;
+                bootstrap.channel(NioServerSocketChannel.class);
+            }
 
-            ServerBootstrap bootstrap = new ServerBootstrap()
-                    .group(bossGroup, workerGroup)
-                    .channel(NioServerSocketChannel.class)
+            bootstrap.group(bossGroup, workerGroup)
                     .option(ChannelOption.SO_REUSEADDR, true)
-                    .option(ChannelOption.SO_KEEPALIVE, true)
-                    .option(ChannelOption.TCP_NODELAY, true)
-                    .option(ChannelOption.SO_SNDBUF, tcpSendBufferSize)
                     .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectionTimeoutMsec)
-                    .option(ChannelOption.SO_BACKLOG, connectionBacklog);
+                    .option(ChannelOption.SO_BACKLOG, connectionBacklog)
+                    /* socket options of the switch connections themselves */
+                    .childOption(ChannelOption.SO_KEEPALIVE, true)
+                    .childOption(ChannelOption.TCP_NODELAY, true)
+                    .childOption(ChannelOption.SO_SNDBUF, tcpSendBufferSize)
+                    .childOption(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, writeBufferHighWaterMark)
+                    .childOption(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, writeBufferLowWaterMark);
+            if (pooledDirectBuffers) {
+                PooledByteBufAllocator allocator = new PooledByteBufAllocator(true);
+                bootstrap.option(ChannelOption.ALLOCATOR, allocator)
+                        .childOption(ChannelOption.ALLOCATOR, allocator);
+            }
 
             OFChannelInitializer initializer = new OFChannelInitializer(
                     this, 
@@ -1046,7 +1196,9 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
                     ofBitmaps, 
                     defaultFactory, 
                     keyStore, 
-                    keyStorePassword);
+                    keyStorePassword,
+                    writeBackpressurePolicy,
+                    maxWriteQueueDepth);
 
             bootstrap.childHandler(initializer);
 
@@ -1054,16 +1206,24 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
 
             Set<InetSocketAddress> addrs = new HashSet<InetSocketAddress>();
             if (openFlowAddresses.isEmpty()) {
-                cg.add(bootstrap.bind(new InetSocketAddress(InetAddress.getByAddress(IPv4Address.NONE.getBytes()), openFlowPort.getPort())).channel());
+                addrs.add(new InetSocketAddress(InetAddress.getByAddress(IPv4Address.NONE.getBytes()), openFlowPort.getPort()));
             } else {
                 for (IPv4Address ip : openFlowAddresses) {
                     addrs.add(new InetSocketAddress(InetAddress.getByAddress(ip.getBytes()), openFlowPort.getPort()));
                 }
             }
 
+            /* 
+             * Each listening socket is served by one boss thread. With
+             * SO_REUSEPORT, bind every address once per boss thread and let
+             * the kernel spread the incoming connections over them.
+             */
+            int listeners = (epoll && reusePort) ? bossThreads : 1;
             for (InetSocketAddress sa : addrs) {
-                cg.add(bootstrap.bind(sa).channel());
-                log.debug("Listening for switch connections on {}", sa);
+                for (int i = 0; i < listeners; i++) {
+                    cg.add(bootstrap.bind(sa).channel());
+                }
+                log.debug("Listening for switch connections on {} with {} listener(s)", sa, listeners);
             }
 
         } catch (Exception e) {
@@ -1071,6 +1231,27 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
         }
     }
 
+    /**
+     * Decide on the socket transport, falling back to NIO if epoll was
+     * asked for but cannot be loaded
+     * @return true to use the native epoll transport
+     */
+    private static boolean useEpoll() {
+        switch (transport) {
+        case NIO:
+            return false;
+        case EPOLL:
+            if (!Epoll.isAvailable()) {
+                log.warn("Native epoll transport is not available, using NIO instead", Epoll.unavailabilityCause());
+                return false;
+            }
+            return true;
+        case AUTO:
+        default:
+            return Epoll.isAvailable();
+        }
+    }
+
     /**
      * Performs startup related actions for logical OF message categories.
      * Setting the categories list to immutable ensures that unsupported operation
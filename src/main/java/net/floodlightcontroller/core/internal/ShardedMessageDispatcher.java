@@ -0,0 +1,372 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.core.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.debugcounter.IDebugCounterService.MetaData;
+import net.floodlightcontroller.util.OFMessageUtils;
+
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFPacketIn;
+import org.projectfloodlight.openflow.protocol.OFType;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Moves the IOFMessageListener chain off the Netty I/O threads.
+ *
+ * Messages are sharded by switch DPID onto a fixed number of worker
+ * threads, each draining its own bounded queue, so the messages of a
+ * single switch are still processed in the order they were read while
+ * a slow listener only stalls the switches that share its shard.
+ *
+ * Once a shard's queue depth reaches the high-water mark, packet-ins are
+ * either dropped or sampled (one in every sampleRate is admitted)
+ * according to the {@link OverloadPolicy}. All other message types are
+ * never dropped; if a shard's queue is completely full they block the
+ * calling I/O thread, which pushes back on the switch connection.
+ *
+ * With a maximum batch size above one, a worker hands consecutive queued
+ * packet-ins from the same switch to the listeners as one batch.
+ *
+ * Packet-ins a switch sent on an auxiliary connection only need to stay in
+ * order per flow, since the switch itself spreads flows over its aux
+ * connections. {@link #dispatchByFlow(IOFSwitch, OFMessage)} shards those
+ * by switch and flow, so one switch's packet-ins can use several workers.
+ */
+public class ShardedMessageDispatcher {
+    protected static final Logger log = LoggerFactory.getLogger(ShardedMessageDispatcher.class);
+
+    public enum OverloadPolicy {
+        DROP, SAMPLE
+    }
+
+    private final Controller controller;
+    private final Shard[] shards;
+    private final int highWaterMark;
+    private final OverloadPolicy policy;
+    private final int sampleRate;
+    private final int maxBatchSize;
+    private volatile boolean running;
+
+    /**
+     * A queued message and the time it was queued at
+     */
+    private static class Event {
+        final IOFSwitch sw;
+        final OFMessage m;
+        final long enqueuedNs;
+
+        Event(IOFSwitch sw, OFMessage m) {
+            this.sw = sw;
+            this.m = m;
+            this.enqueuedNs = System.nanoTime();
+        }
+    }
+
+    private class Shard implements Runnable {
+        final int id;
+        final BlockingQueue<Event> queue;
+        final IDebugCounter queueDepth;
+        final IDebugCounter maxQueueDepth;
+        final IDebugCounter enqueued;
+        final IDebugCounter dropped;
+        final IDebugCounter latencyUs;
+        final IDebugCounter maxLatencyUs;
+        /* only touched by I/O threads under the shard's lock */
+        int sampleCount;
+        /* only touched by the shard's worker */
+        final List<Event> batch = new ArrayList<Event>();
+        final List<OFMessage> batchMsgs = new ArrayList<OFMessage>();
+        Thread thread;
+
+        Shard(int id, int capacity, IDebugCounterService debugCounters, String module) {
+            this.id = id;
+            this.queue = new ArrayBlockingQueue<Event>(capacity);
+
+            String shard = "dispatch-shard-" + id;
+            debugCounters.registerCounter(module, shard,
+                    "Messages handed to packet-in dispatch shard " + id);
+            queueDepth = debugCounters.registerCounter(module, shard + "/queue-depth",
+                    "Queue depth of the shard, sampled when a message is dequeued");
+            maxQueueDepth = debugCounters.registerCounter(module, shard + "/max-queue-depth",
+                    "Largest queue depth of the shard seen so far");
+            enqueued = debugCounters.registerCounter(module, shard + "/enqueued",
+                    "Number of messages queued to the shard");
+            dropped = debugCounters.registerCounter(module, shard + "/dropped",
+                    "Number of packet-ins dropped because the shard was above its high-water mark",
+                    MetaData.DROP);
+            latencyUs = debugCounters.registerCounter(module, shard + "/latency-us",
+                    "Total time in microseconds messages spent queued and in the listener "
+                            + "chain; divide by 'enqueued' for the mean");
+            maxLatencyUs = debugCounters.registerCounter(module, shard + "/max-latency-us",
+                    "Largest time in microseconds a message spent queued and in the listener chain");
+        }
+
+        boolean offer(IOFSwitch sw, OFMessage m) {
+            if (m.getType() == OFType.PACKET_IN && queue.size() >= highWaterMark) {
+                if (!admitOverload()) {
+                    dropped.increment();
+                    return false;
+                }
+                if (!queue.offer(new Event(sw, m))) {
+                    dropped.increment();
+                    return false;
+                }
+            } else {
+                try {
+                    queue.put(new Event(sw, m));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            enqueued.increment();
+            return true;
+        }
+
+        private synchronized boolean admitOverload() {
+            if (policy == OverloadPolicy.DROP) {
+                return false;
+            }
+            if (++sampleCount >= sampleRate) {
+                sampleCount = 0;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                Event e;
+                try {
+                    e = queue.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+                if (e == null) {
+                    continue;
+                }
+                int depth = queue.size();
+                queueDepth.set(depth);
+                maxQueueDepth.setIfGreater(depth);
+
+                if (maxBatchSize > 1 && e.m.getType() == OFType.PACKET_IN) {
+                    runBatch(e);
+                    continue;
+                }
+                try {
+                    controller.dispatchToListeners(e.sw, e.m, null);
+                } catch (Exception ex) {
+                    log.error("Exception in dispatch shard " + id
+                            + " while processing " + e.m.getType()
+                            + " from switch " + e.sw.getId(), ex);
+                }
+                recordLatency(e);
+            }
+        }
+
+        /**
+         * Dispatch the packet-in together with the packet-ins from the same
+         * switch queued directly behind it. We are the only consumer, so
+         * whatever we peek is what we poll.
+         */
+        private void runBatch(Event first) {
+            batch.clear();
+            batchMsgs.clear();
+            batch.add(first);
+            batchMsgs.add(first.m);
+            Event next;
+            while (batch.size() < maxBatchSize
+                    && (next = queue.peek()) != null
+                    && next.sw == first.sw
+                    && next.m.getType() == OFType.PACKET_IN) {
+                queue.poll();
+                batch.add(next);
+                batchMsgs.add(next.m);
+            }
+            try {
+                controller.dispatchBatchToListeners(first.sw, new ArrayList<OFMessage>(batchMsgs));
+            } catch (Exception ex) {
+                log.error("Exception in dispatch shard " + id
+                        + " while processing " + batch.size()
+                        + " PACKET_INs from switch " + first.sw.getId(), ex);
+            }
+            for (Event e : batch) {
+                recordLatency(e);
+            }
+        }
+
+        private void recordLatency(Event e) {
+            long us = (System.nanoTime() - e.enqueuedNs) / 1000;
+            latencyUs.add(us);
+            maxLatencyUs.setIfGreater(us);
+        }
+    }
+
+    /**
+     * @param controller the controller whose listeners the workers run
+     * @param workers number of shards, each with its own worker thread
+     * @param capacity capacity of each shard's queue
+     * @param highWaterMark queue depth at which packet-ins are dropped or sampled
+     * @param policy what to do with packet-ins above the high-water mark
+     * @param sampleRate admit one in this many packet-ins when sampling
+     * @param maxBatchSize most consecutive packet-ins of a switch to dispatch
+     * together; 1 disables batching
+     * @param debugCounters the counter service to register shard counters with
+     * @param module the counter module to register shard counters under
+     */
+    public ShardedMessageDispatcher(Controller controller, int workers,
+            int capacity, int highWaterMark, OverloadPolicy policy,
+            int sampleRate, int maxBatchSize, IDebugCounterService debugCounters,
+            String module) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Need at least one dispatch worker");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be positive");
+        }
+        this.controller = controller;
+        this.highWaterMark = Math.max(1, Math.min(highWaterMark, capacity));
+        this.policy = policy;
+        this.sampleRate = Math.max(1, sampleRate);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.shards = new Shard[workers];
+        for (int i = 0; i < workers; i++) {
+            shards[i] = new Shard(i, capacity, debugCounters, module);
+        }
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        ThreadGroup tg = new ThreadGroup("Packet-In Dispatch Threads");
+        for (Shard s : shards) {
+            s.thread = new Thread(tg, s, "PktInDispatch-" + s.id);
+            s.thread.setDaemon(true);
+            s.thread.start();
+        }
+        log.info("Dispatching OpenFlow messages on {} sharded worker thread(s), "
+                + "high-water mark {}, overload policy {}",
+                new Object[] { shards.length, highWaterMark, policy });
+    }
+
+    public synchronized void stop() {
+        running = false;
+        for (Shard s : shards) {
+            if (s.thread != null) {
+                s.thread.interrupt();
+                s.thread = null;
+            }
+        }
+    }
+
+    /**
+     * Queue a message for the listener chain on the shard owning the switch.
+     * @return false if the message was dropped
+     */
+    public boolean dispatch(IOFSwitch sw, OFMessage m) {
+        return shardFor(sw).offer(sw, m);
+    }
+
+    /**
+     * Queue a packet-in for the listener chain on the shard owning its flow
+     * on the switch; other messages go to the switch's shard as usual.
+     * @return false if the message was dropped
+     */
+    public boolean dispatchByFlow(IOFSwitch sw, OFMessage m) {
+        if (m.getType() != OFType.PACKET_IN) {
+            return dispatch(sw, m);
+        }
+        int h = dpidHash(sw) * 31 + flowHash((OFPacketIn) m);
+        h ^= (h >>> 16);
+        return shards[(h & 0x7fffffff) % shards.length].offer(sw, m);
+    }
+
+    public int getWorkerCount() {
+        return shards.length;
+    }
+
+    /**
+     * @return the number of messages currently queued for the switch's shard
+     */
+    public int getQueueDepth(IOFSwitch sw) {
+        return shardFor(sw).queue.size();
+    }
+
+    private Shard shardFor(IOFSwitch sw) {
+        int h = dpidHash(sw);
+        h ^= (h >>> 16);
+        return shards[(h & 0x7fffffff) % shards.length];
+    }
+
+    private static int dpidHash(IOFSwitch sw) {
+        long dpid = sw.getId().getLong();
+        return (int) (dpid ^ (dpid >>> 32));
+    }
+
+    /**
+     * Hash the fields of a packet-in that identify its flow: the ingress
+     * port and Ethernet addresses, plus for IPv4 the addresses, protocol
+     * and TCP/UDP ports. Read straight from the packet bytes, as parsing
+     * the whole packet here would cost more than the dispatch itself.
+     */
+    static int flowHash(OFPacketIn pi) {
+        return flowHash(OFMessageUtils.getInPort(pi), pi.getData());
+    }
+
+    /**
+     * Hash the ingress port and the flow fields of the packet bytes d, as
+     * for {@link #flowHash(OFPacketIn)}
+     */
+    static int flowHash(OFPort inPort, byte[] d) {
+        int h = inPort == null ? 0 : inPort.getPortNumber();
+        int n = Math.min(d.length, 12);
+        for (int i = 0; i < n; i++) {
+            h = 31 * h + d[i];
+        }
+        int off = 12;
+        if (d.length >= off + 4 && (d[off] & 0xff) == 0x81 && d[off + 1] == 0x00) {
+            off += 4; /* 802.1Q tag */
+        }
+        int ip = off + 2;
+        if (d.length >= ip + 20 && (d[off] & 0xff) == 0x08 && d[off + 1] == 0x00) {
+            int proto = d[ip + 9] & 0xff;
+            h = 31 * h + proto;
+            for (int i = ip + 12; i < ip + 20; i++) {
+                h = 31 * h + d[i];
+            }
+            int l4 = ip + (d[ip] & 0x0f) * 4;
+            if ((proto == 6 || proto == 17) && d.length >= l4 + 4) {
+                for (int i = l4; i < l4 + 4; i++) {
+                    h = 31 * h + d[i];
+                }
+            }
+        }
+        return h;
+    }
+}
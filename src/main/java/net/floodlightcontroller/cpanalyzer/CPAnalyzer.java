@@ -17,7 +17,6 @@ import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
 import net.floodlightcontroller.core.IOFMessageListener;
 import net.floodlightcontroller.core.IOFSwitch;
-import net.floodlightcontroller.core.internal.Controller;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
@@ -67,7 +66,7 @@ public class CPAnalyzer implements ICPAnalyzerService, IFloodlightModule, IOFMes
         if (log.isTraceEnabled()) {
             switch (msg.getType()) {
             case PACKET_IN:
-                Ethernet eth = (Ethernet) cntx.getStorage().get(Controller.CONTEXT_PI_PAYLOAD);
+                Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD_SLOT);
                 if (eth == null) {
                     break;
                 }
@@ -116,9 +115,9 @@ public class CPAnalyzer implements ICPAnalyzerService, IFloodlightModule, IOFMes
     public void startUp(FloodlightModuleContext context) throws FloodlightModuleException {
         final IFloodlightProviderService flps = context.getServiceImpl(IFloodlightProviderService.class);
         if (flps != null) {
-            for (OFType t : OFType.values()) {
-                flps.addOFMessageListener(t, this);
-            }
+            /* only these are traced; listening to every type would put all writes through the dispatch */
+            flps.addOFMessageListener(OFType.PACKET_IN, this);
+            flps.addOFMessageListener(OFType.PACKET_OUT, this);
         }
     }
 
@@ -1,8 +1,7 @@
 package net.floodlightcontroller.debugcounter;
 
 import java.util.Collection;
-import java.util.Date;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.annotation.Nonnull;
 
@@ -12,15 +11,28 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 
 
+/**
+ * The counter is a {@link LongAdder}, so that threads incrementing it at
+ * the same time update separate cells rather than contend for one cache
+ * line, and an increment does not read the clock. The last-modified time
+ * is instead worked out when it is read: it is the time at which a reader
+ * first saw the current value.
+ */
 class DebugCounterImpl implements IDebugCounter {
     private final String moduleName;
     private final String counterHierarchy;
     private final String description;
     private final ImmutableSet<IDebugCounterService.MetaData> metaData;
 
-    private final AtomicLong value = new AtomicLong();
+    private final LongAdder value = new LongAdder();
 
-    private final Date lastModified = new Date(); // should return long ms to ensure immutability
+    /**
+     * The value when the last-modified time was last worked out, and that
+     * time. Only touched by readers and resets.
+     */
+    private long lastSeen;
+    private long lastModified;
+    private int resets;
 
     DebugCounterImpl(@Nonnull String moduleName,
                      @Nonnull String counterHierarchy,
@@ -30,7 +42,7 @@ class DebugCounterImpl implements IDebugCounter {
         this.counterHierarchy = counterHierarchy;
         this.description = description;
         this.metaData = Sets.immutableEnumSet(metaData);
-        this.lastModified.setTime(System.currentTimeMillis());
+        this.lastModified = System.currentTimeMillis();
     }
 
     @Nonnull
@@ -55,16 +67,25 @@ class DebugCounterImpl implements IDebugCounter {
         return metaData;
     }
 
+    /**
+     * @return the number of times the counter has been reset, so that a
+     * reader comparing two values can tell a reset from a wrap
+     */
+    synchronized int getResets() {
+        return resets;
+    }
+
     @Override
-    public void reset() {
-        value.set(0);
-        lastModified.setTime(System.currentTimeMillis());
+    public synchronized void reset() {
+        value.reset();
+        lastSeen = 0;
+        lastModified = System.currentTimeMillis();
+        resets++;
     }
 
     @Override
     public void increment() {
-        value.incrementAndGet();
-        lastModified.setTime(System.currentTimeMillis());
+        value.increment();
     }
 
     @Override
@@ -73,19 +94,49 @@ class DebugCounterImpl implements IDebugCounter {
             throw new IllegalArgumentException("increment must be > 0. Was "
                     + increment);
         }
-        value.addAndGet(increment);
-        lastModified.setTime(System.currentTimeMillis());
+        value.add(increment);
+    }
+
+    /**
+     * Concurrent sets are serialized by the lock, and each one is a single
+     * add to the adder, so readers see either the old or the new value.
+     */
+    @Override
+    public synchronized void set(long newValue) {
+        if (newValue < 0) {
+            throw new IllegalArgumentException("value must be >= 0. Was "
+                    + newValue);
+        }
+        value.add(newValue - value.sum());
+    }
+
+    @Override
+    public void setIfGreater(long newValue) {
+        if (newValue <= value.sum()) {
+            return;
+        }
+        synchronized (this) {
+            long current = value.sum();
+            if (newValue > current) {
+                value.add(newValue - current);
+            }
+        }
     }
 
     @Override
     public long getCounterValue() {
-        return value.get();
+        return value.sum();
+    }
+
+    @Override
+    public synchronized long getLastModified() {
+        long v = value.sum();
+        if (v != lastSeen) {
+            lastSeen = v;
+            lastModified = System.currentTimeMillis();
+        }
+        return lastModified;
     }
-    
-	@Override
-	public long getLastModified() {
-		return lastModified.getTime();
-	}
 
     @Override
     public int hashCode() {
@@ -126,7 +177,7 @@ class DebugCounterImpl implements IDebugCounter {
         } else if (!moduleName.equals(other.moduleName)) return false;
         if (value == null) {
             if (other.value != null) return false;
-        } else if (value.get() != other.value.get()) return false;
+        } else if (value.sum() != other.value.sum()) return false;
         return true;
     }
 
@@ -142,7 +193,7 @@ class DebugCounterImpl implements IDebugCounter {
         builder.append(", metaData=");
         builder.append(metaData);
         builder.append(", value=");
-        builder.append(value);
+        builder.append(value.sum());
         builder.append("]");
         return builder.toString();
     }
@@ -12,6 +12,11 @@ import com.google.common.collect.ImmutableSet;
 /**
  * Resource class for DebugCounter
  * Serves the REST api with dynamic data
+ *
+ * Each resource is a snapshot of its counter, so a reader that keeps the
+ * snapshots it took earlier can get the increase and rate of a counter
+ * with {@link #getCounterDelta(DebugCounterResource)} and
+ * {@link #getCounterRate(DebugCounterResource)}, without resetting it.
  */
 @Immutable
 public class DebugCounterResource {
@@ -23,6 +28,8 @@ public class DebugCounterResource {
 
     private final Long counterValue;
     private final Long lastModified;
+    private final long snapshotTime;
+    private final int resets;
     private final String counterDesc;
     private final String counterHierarchy;
     private final String moduleName;
@@ -34,9 +41,11 @@ public class DebugCounterResource {
         this.counterHierarchy = counter.getCounterHierarchy();
         this.counterDesc = counter.getDescription();
         this.metadata = counter.getMetaData();
+        this.resets = counter.getResets();
         this.counterValue = counter.getCounterValue();
         this.metadataString = joiner.join(metadata);
         this.lastModified = counter.getLastModified();
+        this.snapshotTime = System.currentTimeMillis();
     }
 
     public Long getCounterValue() {
@@ -67,6 +76,42 @@ public class DebugCounterResource {
         return metadataString;
     }
 
+    /**
+     * @return the time in ms at which this snapshot was taken
+     */
+    public long getSnapshotTime() {
+        return snapshotTime;
+    }
+
+    /**
+     * Get how much the counter has increased since an earlier snapshot of
+     * it. If the counter was reset in between, this is the increase since
+     * the reset.
+     * @param previous the earlier snapshot of the same counter
+     * @return the increase
+     */
+    public long getCounterDelta(DebugCounterResource previous) {
+        if (previous.resets != resets
+                || previous.counterValue > counterValue) {
+            return counterValue;
+        }
+        return counterValue - previous.counterValue;
+    }
+
+    /**
+     * Get the rate per second at which the counter has increased since an
+     * earlier snapshot of it.
+     * @param previous the earlier snapshot of the same counter
+     * @return the rate, 0 if the snapshots were taken in the same ms
+     */
+    public double getCounterRate(DebugCounterResource previous) {
+        long elapsed = snapshotTime - previous.snapshotTime;
+        if (elapsed <= 0) {
+            return 0;
+        }
+        return getCounterDelta(previous) * 1000.0 / elapsed;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -90,7 +135,8 @@ public class DebugCounterResource {
     }
 
     /**
-     * Compare all fields, not only the "key" fields
+     * Compare all fields, not only the "key" fields, except for the times
+     * and reset count, which only serve to compare snapshots of a counter
      */
     @Override
     public boolean equals(Object obj) {
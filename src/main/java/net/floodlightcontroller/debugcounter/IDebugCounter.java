@@ -21,13 +21,31 @@ public interface IDebugCounter {
      */
     void add(long incr);
 
+    /**
+     * Set the counter to the given value, for a counter that tracks a
+     * level (a gauge) rather than counting events. Readers see either the
+     * old or the new value, never 0 in between, and this does not count
+     * as a reset. A gauge should not also be incremented.
+     * @param value the new value, must be >= 0
+     */
+    void set(long value);
+
+    /**
+     * Set the counter to the given value if it is greater than the current
+     * one, for a gauge that tracks a maximum.
+     * @param value the candidate value, must be >= 0
+     */
+    void setIfGreater(long value);
+
     /**
      * Retrieve the value of the counter.
      */
     long getCounterValue();
     
     /**
-     * Retrieve the last-modified date of the counter.
+     * Retrieve the last-modified date of the counter. Counters may work
+     * this out lazily, as the time at which a reader first saw the current
+     * value, so that incrementing them does not read the clock.
      */
     long getLastModified();
 
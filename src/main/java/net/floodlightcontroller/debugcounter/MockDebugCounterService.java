@@ -106,6 +106,14 @@ public class MockDebugCounterService implements IFloodlightModule, IDebugCounter
         public void add(long incr) {
         }
 
+        @Override
+        public void set(long value) {
+        }
+
+        @Override
+        public void setIfGreater(long value) {
+        }
+
         @Override
         public long getCounterValue() {
             return -1;
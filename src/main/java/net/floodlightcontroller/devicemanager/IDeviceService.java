@@ -31,6 +31,7 @@ import org.projectfloodlight.openflow.types.MacAddress;
 import org.projectfloodlight.openflow.types.VlanVid;
 import org.projectfloodlight.openflow.types.OFPort;
 
+import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.FloodlightContextStore;
 import net.floodlightcontroller.core.module.IFloodlightService;
 
@@ -67,6 +68,16 @@ public interface IDeviceService extends IFloodlightService {
     public static final String CONTEXT_ORIG_DST_DEVICE =
             "net.floodlightcontroller.devicemanager.origDstDevice";
 
+    /**
+     * The {@link FloodlightContext} slots of the device context keys
+     */
+    public static final int CONTEXT_SRC_DEVICE_SLOT =
+            FloodlightContext.registerSlot(CONTEXT_SRC_DEVICE);
+    public static final int CONTEXT_DST_DEVICE_SLOT =
+            FloodlightContext.registerSlot(CONTEXT_DST_DEVICE);
+    public static final int CONTEXT_ORIG_DST_DEVICE_SLOT =
+            FloodlightContext.registerSlot(CONTEXT_ORIG_DST_DEVICE);
+
     /**
      * A FloodlightContextStore object that can be used to interact with the 
      * FloodlightContext information created by BVS manager.
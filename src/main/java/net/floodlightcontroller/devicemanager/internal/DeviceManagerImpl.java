@@ -71,7 +71,7 @@ import net.floodlightcontroller.packet.DHCP;
 import net.floodlightcontroller.packet.DHCPOption;
 import net.floodlightcontroller.packet.Ethernet;
 import net.floodlightcontroller.packet.IPv4;
-import net.floodlightcontroller.packet.IPv6;
+import net.floodlightcontroller.packet.PacketView;
 import net.floodlightcontroller.packet.UDP;
 import net.floodlightcontroller.packet.DHCP.DHCPOptionCode;
 import net.floodlightcontroller.restserver.IRestApiService;
@@ -89,8 +89,10 @@ import org.projectfloodlight.openflow.protocol.OFVersion;
 import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.IPv4Address;
 import org.projectfloodlight.openflow.types.IPv6Address;
+import org.projectfloodlight.openflow.types.IpProtocol;
 import org.projectfloodlight.openflow.types.MacAddress;
 import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TransportPort;
 import org.projectfloodlight.openflow.types.VlanVid;
 import org.projectfloodlight.openflow.protocol.OFType;
 import org.projectfloodlight.openflow.protocol.match.MatchField;
@@ -1072,10 +1074,10 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 	// ****************
 
 	protected Command processPacketInMessage(IOFSwitch sw, OFPacketIn pi, FloodlightContext cntx) {
-		Ethernet eth = IFloodlightProviderService.bcStore.get(cntx,IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+		PacketView pv = IFloodlightProviderService.pvStore.get(cntx,IFloodlightProviderService.CONTEXT_PI_VIEW_SLOT);
 		OFPort inPort = (pi.getVersion().compareTo(OFVersion.OF_12) < 0 ? pi.getInPort() : pi.getMatch().get(MatchField.IN_PORT));
 		// Extract source entity information
-		Entity srcEntity = getSourceEntityFromPacket(eth, sw.getId(), inPort);
+		Entity srcEntity = getSourceEntityFromPacket(pv, sw.getId(), inPort);
 		if (srcEntity == null) {
 			cntInvalidSource.increment();
 			return Command.STOP;
@@ -1087,7 +1089,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		// the IP to MAC mapping of the VRRP IP address.  The source
 		// entity will not have that information.  Hence, a separate call
 		// to learn devices in such cases.
-		learnDeviceFromArpResponseData(eth, sw.getId(), inPort);
+		learnDeviceFromArpResponseData(pv, sw.getId(), inPort);
 
 		// Learn/lookup device information
 		Device srcDevice = learnDeviceByEntity(srcEntity);
@@ -1097,20 +1099,20 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		}
 
 		// Store the source device in the context
-		fcStore.put(cntx, CONTEXT_SRC_DEVICE, srcDevice);
+		fcStore.put(cntx, CONTEXT_SRC_DEVICE_SLOT, srcDevice);
 
 		// Find the device matching the destination from the entity
 		// classes of the source.
-		if (eth.getDestinationMACAddress().getLong() == 0) {
+		if (pv.getDestinationMACLong() == 0) {
 			cntInvalidDest.increment();
 			return Command.STOP;
 		}
-		Entity dstEntity = getDestEntityFromPacket(eth);
+		Entity dstEntity = getDestEntityFromPacket(pv);
 		Device dstDevice = null;
 		if (dstEntity != null) {
 			dstDevice = findDestByEntity(srcDevice.getEntityClass(), dstEntity);
 			if (dstDevice != null)
-				fcStore.put(cntx, CONTEXT_DST_DEVICE, dstDevice);
+				fcStore.put(cntx, CONTEXT_DST_DEVICE_SLOT, dstDevice);
 			else
 				cntNoDest.increment();
 		} else {
@@ -1120,21 +1122,30 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		if (logger.isTraceEnabled()) {
 			logger.trace("Received PI: {} on switch {}, port {} *** eth={}" +
 					" *** srcDev={} *** dstDev={} *** ",
-					new Object[] { pi, sw.getId().toString(), inPort, eth,
+					new Object[] { pi, sw.getId().toString(), inPort, pv.getEthernet(),
 					srcDevice, dstDevice });
 		}
 
-		snoopDHCPClientName(eth, srcDevice);
+		snoopDHCPClientName(pv, srcDevice);
 
 		return Command.CONTINUE;
 	}
 
 	/**
-	 * Snoop and record client-provided host name from DHCP requests
-	 * @param eth
+	 * Snoop and record client-provided host name from DHCP requests.
+	 * The packet is only fully decoded if it is addressed to a DHCP port.
+	 * @param pv
 	 * @param srcDevice
 	 */
-	private void snoopDHCPClientName(Ethernet eth, Device srcDevice) {
+	private void snoopDHCPClientName(PacketView pv, Device srcDevice) {
+		if (!pv.isIPv4() || !pv.hasTransportPorts() 
+				|| !IpProtocol.UDP.equals(pv.getIpProtocol()))
+			return;
+		TransportPort dstPort = pv.getTransportDestinationPort();
+		TransportPort srcPort = pv.getTransportSourcePort();
+		if (!isDhcpPort(dstPort) && !isDhcpPort(srcPort))
+			return;
+		Ethernet eth = pv.getEthernet();
 		if (! (eth.getPayload() instanceof IPv4) )
 			return;
 		IPv4 ipv4 = (IPv4) eth.getPayload();
@@ -1155,6 +1166,10 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		}
 	}
 
+	private static boolean isDhcpPort(TransportPort port) {
+		return UDP.DHCP_CLIENT_PORT.equals(port) || UDP.DHCP_SERVER_PORT.equals(port);
+	}
+
 	/**
 	 * Check whether the given attachment point is valid given the current
 	 * topology
@@ -1177,15 +1192,14 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 	 * Get sender IPv4 address from packet if the packet is an ARP
 	 * packet and if the source MAC address matches the ARP packets
 	 * sender MAC address.
-	 * @param eth
+	 * @param pv
 	 * @param dlAddr
 	 * @return
 	 */
-	private IPv4Address getSrcIPv4AddrFromARP(Ethernet eth, MacAddress dlAddr) {
-		if (eth.getPayload() instanceof ARP) {
-			ARP arp = (ARP) eth.getPayload();
-			if ((arp.getProtocolType() == ARP.PROTO_TYPE_IP) && (arp.getSenderHardwareAddress().equals(dlAddr))) {
-				return arp.getSenderProtocolAddress();
+	private IPv4Address getSrcIPv4AddrFromARP(PacketView pv, MacAddress dlAddr) {
+		if (pv.isArp()) {
+			if ((pv.getArpProtocolType() == ARP.PROTO_TYPE_IP) && (pv.getArpSenderHardwareAddress().equals(dlAddr))) {
+				return pv.getArpSenderProtocolAddress();
 			}
 		}
 		return IPv4Address.NONE;
@@ -1194,27 +1208,25 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 	/**
 	 * Get sender IPv6 address from packet if the packet is ND
 	 * 
-	 * @param eth
-	 * @param dlAddr
+	 * @param pv
 	 * @return
 	 */
-	private IPv6Address getSrcIPv6Addr(Ethernet eth) {
-		if (eth.getPayload() instanceof IPv6) {
-			IPv6 ipv6 = (IPv6) eth.getPayload();
-			return ipv6.getSourceAddress();
+	private IPv6Address getSrcIPv6Addr(PacketView pv) {
+		if (pv.isIPv6()) {
+			return pv.getIPv6SourceAddress();
 		}
 		return IPv6Address.NONE;
 	}
 
 	/**
-	 * Parse an entity from an {@link Ethernet} packet.
-	 * @param eth the packet to parse
+	 * Parse an entity from a packet.
+	 * @param pv the packet to parse
 	 * @param sw the switch on which the packet arrived
 	 * @param pi the original packetin
 	 * @return the entity from the packet
 	 */
-	protected Entity getSourceEntityFromPacket(Ethernet eth, DatapathId swdpid, OFPort port) {
-		MacAddress dlAddr = eth.getSourceMACAddress();
+	protected Entity getSourceEntityFromPacket(PacketView pv, DatapathId swdpid, OFPort port) {
+		MacAddress dlAddr = pv.getSourceMACAddress();
 
 		// Ignore broadcast/multicast source
 		if (dlAddr.isBroadcast() || dlAddr.isMulticast())
@@ -1223,9 +1235,9 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		if (dlAddr.getLong() == 0)
 			return null;
 
-		VlanVid vlan = VlanVid.ofVlan(eth.getVlanID());
-		IPv4Address ipv4Src = getSrcIPv4AddrFromARP(eth, dlAddr);
-		IPv6Address ipv6Src = ipv4Src.equals(IPv4Address.NONE) ? getSrcIPv6Addr(eth) : IPv6Address.NONE;
+		VlanVid vlan = VlanVid.ofVlan(pv.getVlanID());
+		IPv4Address ipv4Src = getSrcIPv4AddrFromARP(pv, dlAddr);
+		IPv6Address ipv6Src = ipv4Src.equals(IPv4Address.NONE) ? getSrcIPv6Addr(pv) : IPv6Address.NONE;
 		return new Entity(dlAddr,
 				vlan,
 				ipv4Src,
@@ -1240,16 +1252,15 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 	 * Ethernet source MAC is different from the sender hardware
 	 * address in ARP data.
 	 */
-	protected void learnDeviceFromArpResponseData(Ethernet eth,
+	protected void learnDeviceFromArpResponseData(PacketView pv,
 			DatapathId swdpid,
 			OFPort port) {
 
-		if (!(eth.getPayload() instanceof ARP)) return;
-		ARP arp = (ARP) eth.getPayload();
+		if (!pv.isArp()) return;
 
-		MacAddress dlAddr = eth.getSourceMACAddress();
+		MacAddress dlAddr = pv.getSourceMACAddress();
 
-		MacAddress senderAddr = arp.getSenderHardwareAddress();
+		MacAddress senderAddr = pv.getArpSenderHardwareAddress();
 
 		if (dlAddr.equals(senderAddr)) return; // arp request
 
@@ -1260,8 +1271,8 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		if (senderAddr.equals(MacAddress.of(0)))
 			return;
 
-		VlanVid vlan = VlanVid.ofVlan(eth.getVlanID());
-		IPv4Address nwSrc = arp.getSenderProtocolAddress();
+		VlanVid vlan = VlanVid.ofVlan(pv.getVlanID());
+		IPv4Address nwSrc = pv.getArpSenderProtocolAddress();
 
 		Entity e =  new Entity(senderAddr,
 				vlan, /* will either be a valid tag or VlanVid.ZERO if untagged */
@@ -1276,12 +1287,12 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 
 	/**
 	 * Get a (partial) entity for the destination from the packet.
-	 * @param eth
+	 * @param pv
 	 * @return
 	 */
-	protected Entity getDestEntityFromPacket(Ethernet eth) {
-		MacAddress dlAddr = eth.getDestinationMACAddress();
-		VlanVid vlan = VlanVid.ofVlan(eth.getVlanID());
+	protected Entity getDestEntityFromPacket(PacketView pv) {
+		MacAddress dlAddr = pv.getDestinationMACAddress();
+		VlanVid vlan = VlanVid.ofVlan(pv.getVlanID());
 		IPv4Address ipv4Dst = IPv4Address.NONE;
 		IPv6Address ipv6Dst = IPv6Address.NONE;
 
@@ -1292,12 +1303,10 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		if (dlAddr.equals(MacAddress.of(0)))
 			return null;
 
-		if (eth.getPayload() instanceof IPv4) {
-			IPv4 ipv4 = (IPv4) eth.getPayload();
-			ipv4Dst = ipv4.getDestinationAddress();
-		} else if (eth.getPayload() instanceof IPv6) {
-			IPv6 ipv6 = (IPv6) eth.getPayload();
-			ipv6Dst = ipv6.getDestinationAddress();
+		if (pv.isIPv4()) {
+			ipv4Dst = pv.getIPv4DestinationAddress();
+		} else if (pv.isIPv6()) {
+			ipv6Dst = pv.getIPv6DestinationAddress();
 		}
 		
 		return new Entity(dlAddr,
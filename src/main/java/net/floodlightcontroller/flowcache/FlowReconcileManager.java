@@ -70,7 +70,8 @@ public class FlowReconcileManager implements IFloodlightModule, IFlowReconcileSe
 	protected SingletonTask flowReconcileTask;
 
 	protected DebugCounterResource ctrControllerPktIn;
-	protected IDebugCounter lastPacketInCounter;
+	/** The snapshot of the packet-in counter at the last capacity check */
+	protected DebugCounterResource lastPacketInCounter;
 
 	protected final static int MAX_SYSTEM_LOAD_PER_SECOND = 10000;
 	/** a minimum flow reconcile rate so that it won't stave */
@@ -368,15 +369,16 @@ public class FlowReconcileManager implements IFloodlightModule, IFlowReconcileSe
 		}
 
 		// We're the first packet_in
-		if (lastPacketInCounter.getCounterValue() == 0) {
-			logger.debug("First time get the count for {}", lastPacketInCounter);
+		if (lastPacketInCounter == null) {
+			logger.debug("First time get the count for {}", ctrPacketInRsrc);
+			lastPacketInCounter = ctrPacketInRsrc;
 			return minFlows;
 		}
 
-		int pktInRate = getPktInRate(ctrPacketInRsrc, new Date());
+		int pktInRate = getPktInRate(ctrPacketInRsrc);
 
 		// Update the last packetInCounter
-		lastPacketInCounter.reset();
+		lastPacketInCounter = ctrPacketInRsrc;
 		int capacity = minFlows;
 		if ((pktInRate + MIN_FLOW_RECONCILE_PER_SECOND) <=
 				MAX_SYSTEM_LOAD_PER_SECOND) {
@@ -390,39 +392,26 @@ public class FlowReconcileManager implements IFloodlightModule, IFlowReconcileSe
 		return capacity;
 	}
 
-	protected int getPktInRate(DebugCounterResource newCnt, Date currentTime) {
-		if (newCnt == null ||
-				newCnt.getCounterLastModified() == null ||
+	/**
+	 * The packet-in rate between the last snapshot of the counter and the
+	 * given one
+	 */
+	protected int getPktInRate(DebugCounterResource newCnt) {
+		if (newCnt == null || lastPacketInCounter == null ||
 				newCnt.getCounterValue() == null) {
 			return 0;
 		}
 
 		// Somehow the system time is messed up. return max packetIn rate
 		// to reduce the system load.
-		if (newCnt.getCounterLastModified() < lastPacketInCounter.getLastModified()) {
+		if (newCnt.getSnapshotTime() < lastPacketInCounter.getSnapshotTime()) {
 			logger.debug("Time is going backward. new {}, old {}",
-					newCnt.getCounterLastModified(),
-					lastPacketInCounter.getLastModified());
+					newCnt.getSnapshotTime(),
+					lastPacketInCounter.getSnapshotTime());
 			return MAX_SYSTEM_LOAD_PER_SECOND;
 		}
 
-		long elapsedTimeInSecond = (currentTime.getTime() - lastPacketInCounter.getLastModified()) / 1000;
-		if (elapsedTimeInSecond == 0) {
-			// This should never happen. Check to avoid division by zero.
-			return 0;
-		}
-
-		long diff = 0;
-		long newValue = newCnt.getCounterValue().longValue();
-		long oldValue = lastPacketInCounter.getCounterValue();
-		if (newValue < oldValue) {
-			// Roll over event
-			diff = Long.MAX_VALUE - oldValue + newValue;
-		} else {
-			diff = newValue - oldValue;
-		}
-
-		return (int)(diff/elapsedTimeInSecond);
+		return (int) newCnt.getCounterRate(lastPacketInCounter);
 	}
 }
 
@@ -30,6 +30,7 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
+import net.floodlightcontroller.core.IOFMessageBatchListener;
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.IOFSwitchListener;
 import net.floodlightcontroller.core.PortChangeType;
@@ -46,11 +47,7 @@ import net.floodlightcontroller.devicemanager.IDeviceService;
 import net.floodlightcontroller.devicemanager.SwitchPort;
 import net.floodlightcontroller.linkdiscovery.ILinkDiscoveryListener;
 import net.floodlightcontroller.linkdiscovery.ILinkDiscoveryService;
-import net.floodlightcontroller.packet.Ethernet;
-import net.floodlightcontroller.packet.IPv4;
-import net.floodlightcontroller.packet.IPv6;
-import net.floodlightcontroller.packet.TCP;
-import net.floodlightcontroller.packet.UDP;
+import net.floodlightcontroller.packet.PacketView;
 import net.floodlightcontroller.routing.ForwardingBase;
 import net.floodlightcontroller.routing.IRoutingDecision;
 import net.floodlightcontroller.routing.IRoutingDecisionChangedListener;
@@ -60,6 +57,7 @@ import net.floodlightcontroller.topology.ITopologyService;
 import net.floodlightcontroller.util.FlowModUtils;
 import net.floodlightcontroller.util.OFDPAUtils;
 import net.floodlightcontroller.util.OFMessageUtils;
+import net.floodlightcontroller.util.OFMessageWriteBatch;
 import net.floodlightcontroller.util.OFPortMode;
 import net.floodlightcontroller.util.OFPortModeTuple;
 import net.floodlightcontroller.util.ParseUtils;
@@ -95,7 +93,7 @@ import org.python.google.common.collect.Maps;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class Forwarding extends ForwardingBase implements IFloodlightModule, IOFSwitchListener, ILinkDiscoveryListener, IRoutingDecisionChangedListener {
+public class Forwarding extends ForwardingBase implements IFloodlightModule, IOFSwitchListener, ILinkDiscoveryListener, IRoutingDecisionChangedListener, IOFMessageBatchListener {
     protected static final Logger log = LoggerFactory.getLogger(Forwarding.class);
 
     /*
@@ -227,7 +225,7 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
 
     @Override
     public Command processPacketInMessage(IOFSwitch sw, OFPacketIn pi, IRoutingDecision decision, FloodlightContext cntx) {
-        Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+        PacketView pv = IFloodlightProviderService.pvStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_VIEW_SLOT);
         // We found a routing decision (i.e. Firewall is enabled... it's the only thing that makes RoutingDecisions)
         if (decision != null) {
             if (log.isTraceEnabled()) {
@@ -258,7 +256,7 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
                 log.trace("No decision was made for PacketIn={}, forwarding", pi);
             }
 
-            if (eth.isBroadcast() || eth.isMulticast()) {
+            if (pv.isBroadcast() || pv.isMulticast()) {
                 doFlood(sw, pi, decision, cntx);
             } else {
                 doForwardFlow(sw, pi, decision, cntx, false);
@@ -294,6 +292,23 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
         return AppCookie.makeCookie(FORWARDING_APP_ID, user_fields);
     }
 
+    /**
+     * Handles a burst of packet-ins one by one, but writes the resulting
+     * flow-mods and packet-outs to each switch in a single call.
+     */
+    @Override
+    public void receiveBatch(IOFSwitch sw, List<OFMessage> msgs,
+            List<FloodlightContext> cntxs, Command[] cmds) {
+        OFMessageWriteBatch.begin();
+        try {
+            for (int i = 0; i < msgs.size(); i++) {
+                cmds[i] = receive(sw, msgs.get(i), cntxs.get(i));
+            }
+        } finally {
+            OFMessageWriteBatch.end();
+        }
+    }
+
     /** Called when the handleDecisionChange is triggered by an event (routing decision was changed in firewall).
      *  
      *  @param changedDecisions Masked routing descriptors for flows that should be deleted from the switch.
@@ -426,8 +441,8 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
     protected void doForwardFlow(IOFSwitch sw, OFPacketIn pi, IRoutingDecision decision, FloodlightContext cntx, boolean requestFlowRemovedNotifn) {
         OFPort srcPort = OFMessageUtils.getInPort(pi);
         DatapathId srcSw = sw.getId();
-        IDevice dstDevice = IDeviceService.fcStore.get(cntx, IDeviceService.CONTEXT_DST_DEVICE);
-        IDevice srcDevice = IDeviceService.fcStore.get(cntx, IDeviceService.CONTEXT_SRC_DEVICE);
+        IDevice dstDevice = IDeviceService.fcStore.get(cntx, IDeviceService.CONTEXT_DST_DEVICE_SLOT);
+        IDevice srcDevice = IDeviceService.fcStore.get(cntx, IDeviceService.CONTEXT_SRC_DEVICE_SLOT);
 
         if (dstDevice == null) {
             log.debug("Destination device unknown. Flooding packet");
@@ -442,7 +457,7 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
 
         /* Some physical switches partially support or do not support ARP flows */
         if (FLOOD_ALL_ARP_PACKETS && 
-                IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD).getEtherType() 
+                IFloodlightProviderService.pvStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_VIEW_SLOT).getEtherType() 
                 == EthType.ARP) {
             log.debug("ARP flows disabled in Forwarding. Flooding ARP packet");
             doFlood(sw, pi, decision, cntx);
@@ -540,7 +555,7 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
     protected Match createMatchFromPacket(IOFSwitch sw, OFPort inPort, OFPacketIn pi, FloodlightContext cntx) {
         // The packet in match will only contain the port number.
         // We need to add in specifics for the hosts we're routing between.
-        Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+        PacketView pv = IFloodlightProviderService.pvStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_VIEW_SLOT);
 
         VlanVid vlan = null;      
         if (pi.getVersion().compareTo(OFVersion.OF_11) > 0 && /* 1.0 and 1.1 do not have a match */
@@ -548,11 +563,11 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
             vlan = pi.getMatch().get(MatchField.VLAN_VID).getVlanVid(); /* VLAN may have been popped by switch */
         }
         if (vlan == null) {
-            vlan = VlanVid.ofVlan(eth.getVlanID()); /* VLAN might still be in packet */
+            vlan = VlanVid.ofVlan(pv.getVlanID()); /* VLAN might still be in packet */
         }
         
-        MacAddress srcMac = eth.getSourceMACAddress();
-        MacAddress dstMac = eth.getDestinationMACAddress();
+        MacAddress srcMac = pv.getSourceMACAddress();
+        MacAddress dstMac = pv.getDestinationMACAddress();
 
         Match.Builder mb = sw.getOFFactory().buildMatch();
         if (FLOWMOD_DEFAULT_MATCH_IN_PORT) {
@@ -575,10 +590,9 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
         }
 
         // TODO Detect switch type and match to create hardware-implemented flow
-        if (eth.getEtherType() == EthType.IPv4) { /* shallow check for equality is okay for EthType */
-            IPv4 ip = (IPv4) eth.getPayload();
-            IPv4Address srcIp = ip.getSourceAddress();
-            IPv4Address dstIp = ip.getDestinationAddress();
+        if (pv.isIPv4()) {
+            IPv4Address srcIp = pv.getIPv4SourceAddress();
+            IPv4Address dstIp = pv.getIPv4DestinationAddress();
 
             if (FLOWMOD_DEFAULT_MATCH_IP) {
                 mb.setExact(MatchField.ETH_TYPE, EthType.IPv4);
@@ -599,18 +613,17 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
                     mb.setExact(MatchField.ETH_TYPE, EthType.IPv4);
                 }
 
-                if (ip.getProtocol().equals(IpProtocol.TCP)) {
-                    TCP tcp = (TCP) ip.getPayload();
+                if (pv.hasTransportPorts() && pv.getIpProtocol().equals(IpProtocol.TCP)) {
                     mb.setExact(MatchField.IP_PROTO, IpProtocol.TCP);
                     if (FLOWMOD_DEFAULT_MATCH_TRANSPORT_SRC) {
-                        mb.setExact(MatchField.TCP_SRC, tcp.getSourcePort());
+                        mb.setExact(MatchField.TCP_SRC, pv.getTransportSourcePort());
                     }
                     if (FLOWMOD_DEFAULT_MATCH_TRANSPORT_DST) {
-                        mb.setExact(MatchField.TCP_DST, tcp.getDestinationPort());
+                        mb.setExact(MatchField.TCP_DST, pv.getTransportDestinationPort());
                     }
 		    if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_15) >= 0){
 			 if(FLOWMOD_DEFAULT_MATCH_TCP_FLAG){
-	                        mb.setExact(MatchField.TCP_FLAGS, U16.of(tcp.getFlags()));
+	                        mb.setExact(MatchField.TCP_FLAGS, U16.of(pv.getTcpFlags()));
 	                 }
 		    }
                     else if(sw.getSwitchDescription().getHardwareDescription().toLowerCase().contains("open vswitch") && (
@@ -619,26 +632,24 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
                        Integer.parseInt(sw.getSwitchDescription().getSoftwareDescription().toLowerCase().split("\\.")[1]) >= 1 ))
 		      ){
 	                    if(FLOWMOD_DEFAULT_MATCH_TCP_FLAG){
-	                        mb.setExact(MatchField.OVS_TCP_FLAGS, U16.of(tcp.getFlags()));
+	                        mb.setExact(MatchField.OVS_TCP_FLAGS, U16.of(pv.getTcpFlags()));
 	                    }
                     }
-                } else if (ip.getProtocol().equals(IpProtocol.UDP)) {
-                    UDP udp = (UDP) ip.getPayload();
+                } else if (pv.hasTransportPorts() && pv.getIpProtocol().equals(IpProtocol.UDP)) {
                     mb.setExact(MatchField.IP_PROTO, IpProtocol.UDP);
                     if (FLOWMOD_DEFAULT_MATCH_TRANSPORT_SRC) {
-                        mb.setExact(MatchField.UDP_SRC, udp.getSourcePort());
+                        mb.setExact(MatchField.UDP_SRC, pv.getTransportSourcePort());
                     }
                     if (FLOWMOD_DEFAULT_MATCH_TRANSPORT_DST) {
-                        mb.setExact(MatchField.UDP_DST, udp.getDestinationPort());
+                        mb.setExact(MatchField.UDP_DST, pv.getTransportDestinationPort());
                     }
                 }
             }
-        } else if (eth.getEtherType() == EthType.ARP) { /* shallow check for equality is okay for EthType */
+        } else if (pv.getEtherType() == EthType.ARP) { /* shallow check for equality is okay for EthType */
             mb.setExact(MatchField.ETH_TYPE, EthType.ARP);
-        } else if (eth.getEtherType() == EthType.IPv6) {
-            IPv6 ip = (IPv6) eth.getPayload();
-            IPv6Address srcIp = ip.getSourceAddress();
-            IPv6Address dstIp = ip.getDestinationAddress();
+        } else if (pv.isIPv6()) {
+            IPv6Address srcIp = pv.getIPv6SourceAddress();
+            IPv6Address dstIp = pv.getIPv6DestinationAddress();
 
             if (FLOWMOD_DEFAULT_MATCH_IP) {
                 mb.setExact(MatchField.ETH_TYPE, EthType.IPv6);
@@ -659,18 +670,17 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
                     mb.setExact(MatchField.ETH_TYPE, EthType.IPv6);
                 }
 
-                if (ip.getNextHeader().equals(IpProtocol.TCP)) {
-                    TCP tcp = (TCP) ip.getPayload();
+                if (pv.hasTransportPorts() && pv.getIpProtocol().equals(IpProtocol.TCP)) {
                     mb.setExact(MatchField.IP_PROTO, IpProtocol.TCP);
                     if (FLOWMOD_DEFAULT_MATCH_TRANSPORT_SRC) {
-                        mb.setExact(MatchField.TCP_SRC, tcp.getSourcePort());
+                        mb.setExact(MatchField.TCP_SRC, pv.getTransportSourcePort());
                     }
                     if (FLOWMOD_DEFAULT_MATCH_TRANSPORT_DST) {
-                        mb.setExact(MatchField.TCP_DST, tcp.getDestinationPort());
+                        mb.setExact(MatchField.TCP_DST, pv.getTransportDestinationPort());
                     }
 		    if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_15) >= 0){
 		        if(FLOWMOD_DEFAULT_MATCH_TCP_FLAG){
-			   mb.setExact(MatchField.TCP_FLAGS, U16.of(tcp.getFlags()));
+			   mb.setExact(MatchField.TCP_FLAGS, U16.of(pv.getTcpFlags()));
 		        }
 		    }
                     else if(
@@ -680,17 +690,16 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
                     Integer.parseInt(sw.getSwitchDescription().getSoftwareDescription().toLowerCase().split("\\.")[1]) >= 1 ))
                     ){
 	                    if(FLOWMOD_DEFAULT_MATCH_TCP_FLAG){
-	                        mb.setExact(MatchField.OVS_TCP_FLAGS, U16.of(tcp.getFlags()));
+	                        mb.setExact(MatchField.OVS_TCP_FLAGS, U16.of(pv.getTcpFlags()));
 	                    }
                     }
-                } else if (ip.getNextHeader().equals(IpProtocol.UDP)) {
-                    UDP udp = (UDP) ip.getPayload();
+                } else if (pv.hasTransportPorts() && pv.getIpProtocol().equals(IpProtocol.UDP)) {
                     mb.setExact(MatchField.IP_PROTO, IpProtocol.UDP);
                     if (FLOWMOD_DEFAULT_MATCH_TRANSPORT_SRC) {
-                        mb.setExact(MatchField.UDP_SRC, udp.getSourcePort());
+                        mb.setExact(MatchField.UDP_SRC, pv.getTransportSourcePort());
                     }
                     if (FLOWMOD_DEFAULT_MATCH_TRANSPORT_DST) {
-                        mb.setExact(MatchField.UDP_DST, udp.getDestinationPort());
+                        mb.setExact(MatchField.UDP_DST, pv.getTransportDestinationPort());
                     }
                 }
             }
@@ -15,7 +15,7 @@
 package net.floodlightcontroller.hasupport;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -51,11 +51,13 @@ import net.floodlightcontroller.hasupport.NetworkInterface.netState;
  *
  * FD: expireOldConnections() uses PULSE to detect failures.
  *
- * Possible improvements: a. Messages between nodes are being sent sequentially
- * in a for loop, this can be modified to happen in parallel.
+ * Each round of messages goes to all the connected nodes at once through
+ * NetworkInterface.broadcast(), and waits on each node only up to the
+ * network's message deadline, so a failed leader is replaced within a few
+ * rounds of chill ms.
  *
- * b. Find out about the Raft leader election algorithm and implement it, and
- * see if it can offer better performance.
+ * Possible improvements: a. Find out about the Raft leader election algorithm
+ * and implement it, and see if it can offer better performance.
  *
  * @author Bhargav Srinivasan, Om Kale
  */
@@ -63,18 +65,20 @@ import net.floodlightcontroller.hasupport.NetworkInterface.netState;
 public class AsyncElection implements Runnable {
 
 	private static final Logger logger = LoggerFactory.getLogger(AsyncElection.class);
-	private static NetworkNode network;
+	private static NetworkNode sharedNetwork;
 
 	protected static IHAWorkerService haworker;
 
 	public static NetworkNode getNetwork() {
-		return network;
+		return sharedNetwork;
 	}
 
 	public static void setNetwork(NetworkNode network) {
-		AsyncElection.network = network;
+		AsyncElection.sharedNetwork = network;
 	}
 
+	private final NetworkNode network;
+
 	private final String serverPort;
 	private final List<Integer> electionPriorities = new ArrayList<>();
 	private final Queue<String> publishQueue = new LinkedBlockingQueue<>();
@@ -106,14 +110,21 @@ public class AsyncElection implements Runnable {
 	private Map<String, netState> connectionDict;
 
 	/**
-	 * Standardized sleep time for spinning in the rest state.
+	 * Standardized sleep time for spinning in the rest state, in ms. A
+	 * follower checks for the leader, and the leader sends its heartbeat,
+	 * once every chill ms. Each round waits at most the network's message
+	 * deadline on the nodes, so rounds this short bound failover to about
+	 * a second; raise it to trade failover time for less traffic.
 	 */
 
-	private final Integer chill = new Integer(5);
+	public static final int DEFAULT_CHILL_MS = 250;
+
+	private volatile int chill = DEFAULT_CHILL_MS;
 
 	private String timestamp = new String();
 
 	public AsyncElection(String sp, String cid) {
+		network = sharedNetwork;
 		serverPort = sp;
 		controllerID = cid;
 		setlead = "SETLEAD " + controllerID;
@@ -123,7 +134,8 @@ public class AsyncElection implements Runnable {
 	}
 
 	public AsyncElection(String serverPort, String controllerID, IHAWorkerService haw) {
-		AsyncElection.setNetwork(new NetworkNode(serverPort, controllerID));
+		network = new NetworkNode(serverPort, controllerID);
+		AsyncElection.setNetwork(network);
 		this.serverPort = serverPort;
 		this.controllerID = controllerID;
 		setlead = "SETLEAD " + this.controllerID;
@@ -133,6 +145,21 @@ public class AsyncElection implements Runnable {
 		AsyncElection.haworker = haw;
 	}
 
+	/**
+	 * Constructor for a node on a network of its own, for running several
+	 * nodes in one process.
+	 */
+
+	AsyncElection(NetworkNode network, String serverPort, String controllerID) {
+		this.network = network;
+		this.serverPort = serverPort;
+		this.controllerID = controllerID;
+		setlead = "SETLEAD " + this.controllerID;
+		leadermsg = "LEADER " + this.controllerID;
+		iwon = "IWON " + this.controllerID;
+		heartbeat = "HEARTBEAT " + this.controllerID;
+	}
+
 	/**
 	 * These are the different possible states the controller can be in during
 	 * the election process.
@@ -234,7 +261,7 @@ public class AsyncElection implements Runnable {
 						subscribeQueue.clear();
 					}
 
-					TimeUnit.SECONDS.sleep(chill.intValue());
+					TimeUnit.MILLISECONDS.sleep(chill);
 
 					break;
 
@@ -296,7 +323,7 @@ public class AsyncElection implements Runnable {
 						subscribeQueue.clear();
 					}
 
-					TimeUnit.SECONDS.sleep(chill.intValue());
+					TimeUnit.MILLISECONDS.sleep(chill);
 
 					break;
 
@@ -322,32 +349,23 @@ public class AsyncElection implements Runnable {
 	private void checkForLeader() {
 
 		HashSet<String> leaderSet = new HashSet<>();
-		String reply = new String();
 		String r1 = new String();
 		String r2 = new String();
-		StringTokenizer st = new StringTokenizer(reply);
+		StringTokenizer st;
 
 		try {
 
-			for (HashMap.Entry<String, netState> entry : connectionDict.entrySet()) {
-				if (connectionDict.get(entry.getKey()).equals(netState.ON)) {
-
-					network.send(entry.getKey(), you + " " + timestamp);
-					reply = network.recv(entry.getKey());
-					st = new StringTokenizer(reply);
-					r1 = st.nextToken();
-					if (st.hasMoreTokens()) {
-						r2 = st.nextToken();
-					}
-
-					if ((!r1.equals(no)) && (r2.equals(timestamp))) {
-						leaderSet.add(r1);
-					} else {
-						// logger.info("[AsyncElection] Check Leader: " + reply
-						// +" from "+entry.getKey().toString());
-						continue;
-					}
+			Map<String, String> replies = network.broadcast(getConnectedNodes(), you + " " + timestamp);
+			for (String reply : replies.values()) {
+				st = new StringTokenizer(reply);
+				if (!st.hasMoreTokens()) {
+					continue;
+				}
+				r1 = st.nextToken();
+				r2 = st.hasMoreTokens() ? st.nextToken() : "";
 
+				if ((!r1.equals(no)) && (r2.equals(timestamp))) {
+					leaderSet.add(r1);
 				}
 			}
 
@@ -551,10 +569,9 @@ public class AsyncElection implements Runnable {
 
 			for (int i = 0; i < network.getNumberOfPulses(); i++) {
 
-				network.send(maxNodePort, pulse);
-				String reply = network.recv(maxNodePort);
+				String reply = network.broadcast(Collections.singleton(maxNodePort), pulse).get(maxNodePort);
 
-				if (reply.equals(ack)) {
+				if (ack.equals(reply)) {
 					setLeader(maxNode.toString());
 				}
 			}
@@ -568,6 +585,20 @@ public class AsyncElection implements Runnable {
 
 	}
 
+	/**
+	 * @return the nodes which are ON in the connectionDict
+	 */
+
+	private Set<String> getConnectedNodes() {
+		Set<String> nodes = new HashSet<>();
+		for (Map.Entry<String, netState> entry : connectionDict.entrySet()) {
+			if (entry.getValue().equals(netState.ON)) {
+				nodes.add(entry.getKey());
+			}
+		}
+		return nodes;
+	}
+
 	/**
 	 * Gets the current network-wide leader.
 	 * 
@@ -622,18 +653,10 @@ public class AsyncElection implements Runnable {
 			 * network.checkForNewConnections();
 			 */
 
-			for (HashMap.Entry<String, netState> entry : connectionDict.entrySet()) {
-				if (connectionDict.get(entry.getKey()).equals(netState.ON)) {
-
-					network.send(entry.getKey(), publish);
-					network.recv(entry.getKey());
-
-					/**
-					 * If we get an ACK, that's good. logger.debug("[Publish]
-					 * Received ACK from "+entry.getKey().toString());
-					 */
-				}
-			}
+			/**
+			 * If we get an ACK, that's good.
+			 */
+			network.broadcast(getConnectedNodes(), publish);
 
 			return;
 
@@ -688,6 +711,11 @@ public class AsyncElection implements Runnable {
 		} catch (Exception e) {
 			// logger.debug("[AsyncElection] Was interrrupted! "+e.toString());
 			e.printStackTrace();
+		} finally {
+			/**
+			 * Stop the HAServer with the election, so that the other nodes
+			 * see this one go.
+			 */
 			sesElection.shutdownNow();
 		}
 	}
@@ -702,21 +730,16 @@ public class AsyncElection implements Runnable {
 		HashSet<String> noSet = new HashSet<>();
 		try {
 
-			for (HashMap.Entry<String, netState> entry : connectionDict.entrySet()) {
-				if (connectionDict.get(entry.getKey()).equals(netState.ON)) {
-
-					/**
-					 * If the HeartBeat is rejected, populate the noSet.
-					 */
-					network.send(entry.getKey(), heartbeat + " " + timestamp);
-					String reply = network.recv(entry.getKey());
-
-					if (reply.equals(no) || (!reply.equals(ack + timestamp))) {
-						noSet.add(entry.getKey());
-					}
-					// If we get an ACK, that's good.
-					// logger.info("[Election] Received HEARTBEAT reply from
-					// "+entry.getKey().toString()+" saying: "+reply);
+			Set<String> nodes = getConnectedNodes();
+			Map<String, String> replies = network.broadcast(nodes, heartbeat + " " + timestamp);
+			for (String node : nodes) {
+				/**
+				 * If the HeartBeat is rejected, or not answered, populate the
+				 * noSet.
+				 */
+				String reply = replies.get(node);
+				if (reply == null || reply.equals(no) || (!reply.equals(ack + timestamp))) {
+					noSet.add(node);
 				}
 			}
 
@@ -744,17 +767,7 @@ public class AsyncElection implements Runnable {
 	private void sendIWon() {
 
 		try {
-			Set<String> reply = new HashSet<>();
-			for (HashMap.Entry<String, netState> entry : connectionDict.entrySet()) {
-				if (connectionDict.get(entry.getKey()).equals(netState.ON)) {
-
-					network.send(entry.getKey(), iwon + " " + timestamp);
-					reply.add(network.recv(entry.getKey()));
-					// logger.info("Received reply for IWON from:
-					// "+entry.getKey().toString() + reply.toString());
-
-				}
-			}
+			Set<String> reply = new HashSet<>(network.broadcast(getConnectedNodes(), iwon + " " + timestamp).values());
 
 			if (reply.contains(ack)) {
 				setTempLeader(controllerID);
@@ -780,16 +793,11 @@ public class AsyncElection implements Runnable {
 		HashSet<String> acceptors = new HashSet<>();
 		try {
 
-			for (HashMap.Entry<String, netState> entry : connectionDict.entrySet()) {
-				if (connectionDict.get(entry.getKey()).equals(netState.ON)) {
-
-					network.send(entry.getKey(), leadermsg + " " + timestamp);
-					String reply = network.recv(entry.getKey());
-					if (reply.equals(leadok)) {
-						acceptors.add(entry.getKey());
-					}
+			Map<String, String> replies = network.broadcast(getConnectedNodes(), leadermsg + " " + timestamp);
+			for (Map.Entry<String, String> reply : replies.entrySet()) {
+				if (reply.getValue().equals(leadok)) {
+					acceptors.add(reply.getKey());
 				}
-
 			}
 
 			if (acceptors.size() >= network.getMajority()) {
@@ -826,22 +834,13 @@ public class AsyncElection implements Runnable {
 		HashSet<String> noSet = new HashSet<>();
 		try {
 
-			for (HashMap.Entry<String, netState> entry : connectionDict.entrySet()) {
-				if (connectionDict.get(entry.getKey()).equals(netState.ON)) {
-
-					/**
-					 * If the leader is rejected, populate the noSet.
-					 */
-					network.send(entry.getKey(), setlead + " " + timestamp);
-					String reply = network.recv(entry.getKey());
-
-					if (reply.equals(no)) {
-						noSet.add(entry.getKey());
-					}
-
-					// If we get an ACK, that's good.
-					// logger.info("[Election] Received SETLEAD ACK from
-					// "+entry.getKey().toString());
+			/**
+			 * If the leader is rejected, populate the noSet.
+			 */
+			Map<String, String> replies = network.broadcast(getConnectedNodes(), setlead + " " + timestamp);
+			for (Map.Entry<String, String> reply : replies.entrySet()) {
+				if (reply.getValue().equals(no)) {
+					noSet.add(reply.getKey());
 				}
 			}
 
@@ -858,6 +857,18 @@ public class AsyncElection implements Runnable {
 
 	}
 
+	/**
+	 * Set the time spent resting between the rounds of the SPIN and
+	 * COORDINATE states.
+	 *
+	 * @param chillMs
+	 *            the rest, in ms
+	 */
+
+	public void setChill(int chillMs) {
+		chill = Math.max(0, chillMs);
+	}
+
 	/**
 	 * Set the order in which nodes are supposed to get elected.
 	 * 
@@ -934,21 +945,10 @@ public class AsyncElection implements Runnable {
 			 * network.checkForNewConnections();
 			 */
 
-			for (HashMap.Entry<String, netState> entry : connectionDict.entrySet()) {
-				if (connectionDict.get(entry.getKey()).equals(netState.ON)) {
-
-					String submsg = new String(subscribe + " " + cid);
-					// logger.info("[Leader Subscribe] Subscribing to: {}", new
-					// Object[]{cid});
-
-					network.send(entry.getKey(), submsg);
-					network.recv(entry.getKey());
-
-					// If we get an ACK, that's good.
-					// logger.info("[Subscribe] Received ACK from
-					// "+entry.getKey().toString());
-				}
-			}
+			/**
+			 * If we get an ACK, that's good.
+			 */
+			network.broadcast(getConnectedNodes(), subscribe + " " + cid);
 
 			return;
 
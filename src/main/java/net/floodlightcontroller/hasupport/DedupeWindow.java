@@ -0,0 +1,228 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+
+/**
+ * The Dedupe Window
+ * Remembers the 64-bit fingerprints of the updates a FilterQueue has let
+ * through, so that it can drop the ones it has already seen. An update is
+ * remembered until capacity newer updates have been let through or
+ * windowMs has passed, whichever comes first, so the memory used is fixed
+ * by the capacity however long the controller runs, and an update seen
+ * again after the window is let through again.
+ *
+ * Within the window the filtering is exact, up to two different updates
+ * sharing a 64-bit fingerprint.
+ *
+ * The fingerprints are kept in a ring, oldest first, and in an open
+ * addressing hash table for the lookups.
+ */
+
+public class DedupeWindow {
+
+	private static final HashFunction hash = Hashing.murmur3_128();
+
+	private final int capacity;
+	private final long windowNs;
+
+	/**
+	 * The window's fingerprints and when they were let through, oldest at
+	 * head.
+	 */
+	private final long[] ring;
+	private final long[] ringTime;
+	private int head;
+	private int size;
+
+	/**
+	 * Linear probing on the fingerprints; 0 marks an empty slot.
+	 */
+	private final long[] table;
+	private final int mask;
+
+	private long offered;
+	private long duplicates;
+	private volatile IDebugCounter ctrOffered;
+	private volatile IDebugCounter ctrDuplicates;
+
+	public DedupeWindow(int capacity, long windowMs) {
+		this.capacity = capacity;
+		this.windowNs = TimeUnit.MILLISECONDS.toNanos(windowMs);
+		ring = new long[capacity];
+		ringTime = new long[capacity];
+		table = new long[Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1];
+		mask = table.length - 1;
+	}
+
+	/**
+	 * @return the 64-bit fingerprint of an update, never 0
+	 */
+
+	public static long fingerprint(String value) {
+		long fp = hash.hashString(value, StandardCharsets.UTF_8).asLong();
+		return fp == 0 ? 1 : fp;
+	}
+
+	/**
+	 * Register the window's counters under a module already registered with
+	 * the counter service.
+	 *
+	 * @param prefix
+	 *            names the queue the window filters
+	 */
+
+	public void setDebugCounters(IDebugCounterService debugCounters, String module, String prefix) {
+		ctrOffered = debugCounters.registerCounter(module, prefix + "-dedupe-offered",
+				"Updates offered to the " + prefix + " filter queue");
+		ctrDuplicates = debugCounters.registerCounter(module, prefix + "-dedupe-duplicates",
+				"Updates dropped by the " + prefix + " filter queue as already seen; divide by "
+						+ prefix + "-dedupe-offered for the hit rate");
+	}
+
+	/**
+	 * Let an update through if it is not in the window, and remember it.
+	 *
+	 * @return true if the update is new, false if it is a duplicate
+	 */
+
+	public boolean add(String value) {
+		return add(fingerprint(value));
+	}
+
+	public synchronized boolean add(long fp) {
+		long now = System.nanoTime();
+		expire(now);
+		offered++;
+		count(ctrOffered);
+		if (indexOf(fp) >= 0) {
+			duplicates++;
+			count(ctrDuplicates);
+			return false;
+		}
+
+		if (size == capacity) {
+			removeOldest();
+		}
+		int tail = (head + size) % capacity;
+		ring[tail] = fp;
+		ringTime[tail] = now;
+		size++;
+		int i = slot(fp);
+		while (table[i] != 0) {
+			i = (i + 1) & mask;
+		}
+		table[i] = fp;
+		return true;
+	}
+
+	/**
+	 * @return whether the update is in the window
+	 */
+
+	public synchronized boolean contains(String value) {
+		expire(System.nanoTime());
+		return indexOf(fingerprint(value)) >= 0;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	public synchronized void clear() {
+		Arrays.fill(table, 0);
+		head = 0;
+		size = 0;
+	}
+
+	public synchronized long getOffered() {
+		return offered;
+	}
+
+	public synchronized long getDuplicates() {
+		return duplicates;
+	}
+
+	private void expire(long now) {
+		while (size > 0 && now - ringTime[head] >= windowNs) {
+			removeOldest();
+		}
+	}
+
+	private void removeOldest() {
+		remove(ring[head]);
+		head = (head + 1) % capacity;
+		size--;
+	}
+
+	private int slot(long fp) {
+		return (int) (fp ^ (fp >>> 32)) & mask;
+	}
+
+	private int indexOf(long fp) {
+		int i = slot(fp);
+		while (table[i] != 0) {
+			if (table[i] == fp) {
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Removes a fingerprint, shifting back the ones after it in its probe
+	 * sequence so that no tombstones are needed.
+	 */
+
+	private void remove(long fp) {
+		int i = indexOf(fp);
+		if (i < 0) {
+			return;
+		}
+		table[i] = 0;
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			if (table[j] == 0) {
+				return;
+			}
+			int k = slot(table[j]);
+			/* move table[j] back unless its home slot lies in (i, j] */
+			boolean inRange = (i <= j) ? (i < k && k <= j) : (i < k || k <= j);
+			if (!inRange) {
+				table[i] = table[j];
+				table[j] = 0;
+				i = j;
+			}
+		}
+	}
+
+	private static void count(IDebugCounter c) {
+		if (c != null) {
+			c.increment();
+		}
+	}
+
+}
@@ -38,7 +38,10 @@ import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.hasupport.linkdiscovery.LDFilterQueue;
 import net.floodlightcontroller.hasupport.linkdiscovery.LDHAWorker;
+import net.floodlightcontroller.hasupport.topology.TopoFilterQueue;
 import net.floodlightcontroller.hasupport.topology.TopoHAWorker;
 import net.floodlightcontroller.linkdiscovery.ILinkDiscoveryService;
 import net.floodlightcontroller.storage.IStorageSourceService;
@@ -74,6 +77,7 @@ public class HAController implements IFloodlightModule, IHAControllerService, IS
 	protected static ITopologyService toposerv;
 	protected static IFloodlightProviderService floodlightProvider;
 	protected static ISyncService syncService;
+	protected static IDebugCounterService debugCounterService;
 	protected static IStoreClient<String, String> storeLD;
 	protected static IStoreClient<String, String> storeTopo;
 	private static String controllerID;
@@ -98,6 +102,7 @@ public class HAController implements IFloodlightModule, IHAControllerService, IS
 		l.add(IStorageSourceService.class);
 		l.add(IFloodlightProviderService.class);
 		l.add(ISyncService.class);
+		l.add(IDebugCounterService.class);
 		return l;
 	}
 
@@ -152,6 +157,7 @@ public class HAController implements IFloodlightModule, IHAControllerService, IS
 		toposerv = context.getServiceImpl(ITopologyService.class);
 		floodlightProvider = context.getServiceImpl(IFloodlightProviderService.class);
 		syncService = context.getServiceImpl(ISyncService.class);
+		debugCounterService = context.getServiceImpl(IDebugCounterService.class);
 		controllerID = new String("C" + floodlightProvider.getControllerId());
 		logger.info("Configuration parameters: {} {} ", new Object[] { config.toString(), config.get("nodeid") });
 	}
@@ -218,6 +224,11 @@ public class HAController implements IFloodlightModule, IHAControllerService, IS
 	@Override
 	public void startUp(FloodlightModuleContext context) throws FloodlightModuleException {
 
+		String module = "hasupport";
+		debugCounterService.registerModule(module);
+		LDFilterQueue.dedupe.setDebugCounters(debugCounterService, module, "ld");
+		TopoFilterQueue.dedupe.setDebugCounters(debugCounterService, module, "topo");
+
 		logger.info("LDHAWorker is starting...");
 		try {
 			HAController.syncService.registerStore("LDUpdates", Scope.GLOBAL);
@@ -250,6 +261,13 @@ public class HAController implements IFloodlightModule, IHAControllerService, IS
 		ScheduledExecutorService sesController = Executors.newScheduledThreadPool(10);
 		ael = new AsyncElection(config.get("serverPort"), config.get("nodeid"), haworker);
 		ael.setElectionPriorities((ArrayList<Integer>) priorities);
+		if (config.get("electionChillMs") != null) {
+			try {
+				ael.setChill(Integer.parseInt(config.get("electionChillMs").trim()));
+			} catch (NumberFormatException e) {
+				logger.error("Invalid electionChillMs. Using default {}", AsyncElection.DEFAULT_CHILL_MS);
+			}
+		}
 		cLogic = new ControllerLogic(ael, config.get("nodeid"));
 		try {
 			/**
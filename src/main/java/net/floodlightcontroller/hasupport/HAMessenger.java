@@ -0,0 +1,314 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.ScheduledFuture;
+
+/**
+ * The HA Messenger
+ * Sends the election's messages to the HAServers of the other nodes over
+ * one event loop, so a message goes out to every peer at once and each
+ * reply is waited for only until the message's deadline. A slow or dead
+ * peer then costs a round one deadline, rather than one socket timeout
+ * per message it is sent.
+ *
+ * The HAServer answers each message it reads with one newline terminated
+ * reply, which is decoded line by line however it is split across reads.
+ * Replies carry nothing to match them to their messages, so a peer has at
+ * most one message in flight on its connection; others to the same peer
+ * wait their turn. A message not answered by its deadline fails, and the
+ * connection is closed so a late reply cannot be taken for the answer to
+ * the next message.
+ */
+
+public class HAMessenger {
+
+	private static final Logger logger = LoggerFactory.getLogger(HAMessenger.class);
+	private static final int MAX_REPLY_LENGTH = 1024;
+
+	private final EventLoopGroup group;
+	private final ConcurrentHashMap<String, Peer> peers = new ConcurrentHashMap<>();
+
+	private static class Request {
+		final String message;
+		final long deadlineNs;
+		final SettableFuture<String> future = SettableFuture.create();
+
+		Request(String message, long deadlineNs) {
+			this.message = message;
+			this.deadlineNs = deadlineNs;
+		}
+	}
+
+	/**
+	 * A peer's connection and message queue, only touched from its event
+	 * loop.
+	 */
+	private class Peer {
+		final String address;
+		final InetSocketAddress sockAddr;
+		final EventLoop loop;
+		final ArrayDeque<Request> queue = new ArrayDeque<>();
+		Channel channel;
+		boolean connecting;
+		Request inFlight;
+		ScheduledFuture<?> inFlightTimeout;
+
+		Peer(String address) {
+			this.address = address;
+			int colon = address.lastIndexOf(':');
+			this.sockAddr = new InetSocketAddress(address.substring(0, colon),
+					Integer.parseInt(address.substring(colon + 1)));
+			this.loop = group.next();
+		}
+
+		void submit(final Request r) {
+			loop.execute(new Runnable() {
+				@Override
+				public void run() {
+					queue.add(r);
+					pump();
+				}
+			});
+		}
+
+		void pump() {
+			if (inFlight != null || connecting) {
+				return;
+			}
+			long now = System.nanoTime();
+			Request r;
+			while ((r = queue.peek()) != null && r.deadlineNs <= now) {
+				queue.poll();
+				r.future.setException(new TimeoutException("No reply from " + address));
+			}
+			if (r == null) {
+				return;
+			}
+			if (channel == null || !channel.isActive()) {
+				connect(r.deadlineNs - now);
+				return;
+			}
+
+			queue.poll();
+			final Request sent = r;
+			inFlight = sent;
+			channel.writeAndFlush(Unpooled.copiedBuffer(sent.message, CharsetUtil.UTF_8));
+			inFlightTimeout = loop.schedule(new Runnable() {
+				@Override
+				public void run() {
+					if (inFlight == sent) {
+						inFlight = null;
+						sent.future.setException(new TimeoutException("No reply from " + address));
+						if (channel != null) {
+							channel.close();
+							channel = null;
+						}
+						pump();
+					}
+				}
+			}, sent.deadlineNs - now, TimeUnit.NANOSECONDS);
+		}
+
+		void connect(long timeoutNs) {
+			connecting = true;
+			ChannelFuture f = new Bootstrap()
+					.group(loop)
+					.channel(NioSocketChannel.class)
+					.option(ChannelOption.TCP_NODELAY, true)
+					.option(ChannelOption.SO_KEEPALIVE, true)
+					.option(ChannelOption.CONNECT_TIMEOUT_MILLIS,
+							(int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeoutNs)))
+					.handler(new ChannelInitializer<Channel>() {
+						@Override
+						protected void initChannel(Channel ch) throws Exception {
+							ch.pipeline().addLast(new LineBasedFrameDecoder(MAX_REPLY_LENGTH),
+									new ReplyHandler(Peer.this));
+						}
+					})
+					.connect(sockAddr);
+			f.addListener(new ChannelFutureListener() {
+				@Override
+				public void operationComplete(ChannelFuture f) throws Exception {
+					connecting = false;
+					if (f.isSuccess()) {
+						channel = f.channel();
+						pump();
+					} else {
+						/* everything queued was meant for a peer that is down */
+						Request r;
+						while ((r = queue.poll()) != null) {
+							r.future.setException(f.cause());
+						}
+					}
+				}
+			});
+		}
+
+		void replyReceived(Channel ch, String reply) {
+			if (ch != channel || inFlight == null) {
+				return;
+			}
+			inFlightTimeout.cancel(false);
+			Request r = inFlight;
+			inFlight = null;
+			r.future.set(reply);
+			pump();
+		}
+
+		void channelClosed(Channel ch) {
+			if (ch != channel) {
+				return;
+			}
+			channel = null;
+			if (inFlight != null) {
+				inFlightTimeout.cancel(false);
+				inFlight.future.setException(new ClosedChannelException());
+				inFlight = null;
+			}
+			pump();
+		}
+	}
+
+	private static class ReplyHandler extends SimpleChannelInboundHandler<ByteBuf> {
+		private final Peer peer;
+
+		ReplyHandler(Peer peer) {
+			this.peer = peer;
+		}
+
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) throws Exception {
+			peer.replyReceived(ctx.channel(), msg.toString(CharsetUtil.UTF_8).trim());
+		}
+
+		@Override
+		public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+			peer.channelClosed(ctx.channel());
+			super.channelInactive(ctx);
+		}
+
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+			logger.debug("[HAMessenger] Error on connection to {}: {}", peer.address, cause.toString());
+			ctx.close();
+		}
+	}
+
+	public HAMessenger() {
+		group = new NioEventLoopGroup(1, new DefaultThreadFactory("HAMessenger", true));
+	}
+
+	/**
+	 * Send a message to a peer.
+	 *
+	 * @param peer
+	 *            IP:port of the peer's HAServer
+	 * @param message
+	 *            the message
+	 * @param timeoutMs
+	 *            how long to wait for the reply, including connecting and
+	 *            waiting behind other messages to the peer
+	 * @return the future reply, failed if there was none by the deadline
+	 */
+
+	public ListenableFuture<String> request(String peer, String message, long timeoutMs) {
+		Request r = new Request(message, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs));
+		Peer p = peers.get(peer);
+		if (p == null) {
+			try {
+				p = new Peer(peer);
+			} catch (RuntimeException e) {
+				r.future.setException(e);
+				return r.future;
+			}
+			Peer prev = peers.putIfAbsent(peer, p);
+			if (prev != null) {
+				p = prev;
+			}
+		}
+		p.submit(r);
+		return r.future;
+	}
+
+	/**
+	 * Send a message to all the peers at once and wait for their replies.
+	 *
+	 * @param peers
+	 *            IP:ports of the peers' HAServers
+	 * @param message
+	 *            the message
+	 * @param timeoutMs
+	 *            how long to wait for the replies
+	 * @return the replies of the peers which replied in time
+	 */
+
+	public Map<String, String> broadcast(Collection<String> peers, String message, long timeoutMs)
+			throws InterruptedException {
+		Map<String, ListenableFuture<String>> futures = new HashMap<>();
+		for (String peer : peers) {
+			futures.put(peer, request(peer, message, timeoutMs));
+		}
+		Map<String, String> replies = new HashMap<>();
+		for (Map.Entry<String, ListenableFuture<String>> e : futures.entrySet()) {
+			try {
+				/* each request fails by itself at its deadline */
+				replies.put(e.getKey(), e.getValue().get());
+			} catch (ExecutionException ee) {
+				logger.trace("[HAMessenger] No reply from {}: {}", e.getKey(), ee.getCause());
+			}
+		}
+		return replies;
+	}
+
+	public void shutdown() {
+		group.shutdownGracefully(0, 100, TimeUnit.MILLISECONDS);
+	}
+
+}
@@ -15,6 +15,7 @@
 package net.floodlightcontroller.hasupport;
 
 import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -93,8 +94,12 @@ public class HAServer implements Runnable {
 			ls.closeFuture().sync();
 		} catch (InterruptedException e) {
 		} finally {
-			serverbossPool.shutdownGracefully();
-			serverworkerPool.shutdownGracefully();
+			/**
+			 * No quiet period: once the election has stopped, the other nodes
+			 * should see this node go rather than get answers from it.
+			 */
+			serverbossPool.shutdownGracefully(0, socketTimeout, TimeUnit.MILLISECONDS);
+			serverworkerPool.shutdownGracefully(0, socketTimeout, TimeUnit.MILLISECONDS);
 		}
 
 		return;
@@ -14,6 +14,7 @@
 
 package net.floodlightcontroller.hasupport;
 
+import java.util.Collection;
 import java.util.Map;
 
 /**
@@ -67,6 +68,21 @@ public interface NetworkInterface {
 
 	public Map<String, netState> checkForNewConnections();
 
+	/**
+	 * Sends a message to several nodes at once and collects their replies,
+	 * waiting on each node only up to a deadline, so that a round of the
+	 * election takes as long as its slowest live node rather than the sum
+	 * of all of them.
+	 *
+	 * @param clientPorts
+	 *            : Destination client netaddrs.
+	 * @param message
+	 *            : Message that needs to be sent.
+	 * @return : The replies of the nodes that replied in time, by netaddr.
+	 */
+
+	public Map<String, String> broadcast(Collection<String> clientPorts, String message);
+
 	/**
 	 * This is the connectClients() function which is used to TRY connecting to
 	 * all the client nodes currently present in the connectSet and store the
@@ -17,6 +17,8 @@ package net.floodlightcontroller.hasupport;
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.nio.channels.SocketChannel;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -51,6 +53,11 @@ import org.slf4j.LoggerFactory;
  * using the extended request-reply pattern, mentioned in the ZGuide. We could
  * identify a good alternative and implement it.
  *
+ * The PULSEs of the failure detector and the election's messages go through
+ * the HAMessenger, to all the nodes at once with a deadline of messageTimeout,
+ * so a node that is down or slow delays a round by at most that much. The
+ * NioClient sockets of the socketDict carry send() and recv().
+ *
  * @author Bhargav Srinivasan, Om Kale
  */
 
@@ -103,6 +110,15 @@ public class NetworkNode implements NetworkInterface, Runnable {
 	private final Integer linger = new Integer(0);
 	private final Integer numberOfPulses = new Integer(1);
 	private final Integer pollTime = new Integer(1);
+
+	/**
+	 * How long a node has to answer a message sent through the messenger, in
+	 * ms. This bounds how long an election or heartbeat round waits on a node
+	 * that is down.
+	 */
+
+	private final long messageTimeout = 250;
+	private final HAMessenger messenger = new HAMessenger();
 	private Integer ticks = new Integer(0);
 
 	/**
@@ -126,13 +142,30 @@ public class NetworkNode implements NetworkInterface, Runnable {
 	 */
 
 	public NetworkNode(String serverPort, String controllerID) {
+		this(serverPort, controllerID, null);
+	}
+
+	/**
+	 * Constructor for a node given the IP:ports of all the nodes, in
+	 * controller ID order, instead of reading them from server.config.
+	 *
+	 * @param serverPort
+	 * @param controllerID
+	 * @param servers
+	 */
+
+	public NetworkNode(String serverPort, String controllerID, List<String> servers) {
 		/**
 		 * The port variables needed in order to start the back-end and
 		 * front-end of the queue device.
 		 */
 		this.serverPort = serverPort.toString();
 		this.controllerID = controllerID;
-		preStart();
+		if (servers == null) {
+			preStart();
+		} else {
+			addServers(servers);
+		}
 		totalRounds = new Integer(connectSet.size());
 		logger.debug("Total Rounds: " + totalRounds.toString());
 
@@ -311,51 +344,28 @@ public class NetworkNode implements NetworkInterface, Runnable {
 		// Connected): "+diffSet.toString());
 
 		/**
-		 * Try connecting to all nodes that are in the diffSet and store the
-		 * successful ones in the socketDict.
+		 * PULSE all nodes that are in the diffSet at once, connect to the
+		 * ones that ACK and store the successful ones in the socketDict.
 		 */
-		String reply;
+		Map<String, String> replies = broadcast(diffSet, pulse);
 		for (String client : diffSet) {
-			reply = "";
+			if (!ack.equals(replies.get(client))) {
+				continue;
+			}
 			clientSock = allsocketDict.get(client);
 			try {
-				// logger.info("[Node] Trying to connect to Client:
-				// "+client.toString()+"Client Sock: "+clientSock.toString());
-				clientSock.connectClient(client);
-				clientSock.send(pulse);
-				reply = clientSock.recv();
-
-				if (reply.equals(ack)) {
-					// logger.info("[Node] Client: "+client.toString()+"Client
-					// Sock: "+clientSock.toString());
-					if (!socketDict.containsKey(client)) {
-						socketDict.put(client, clientSock);
-					} else {
-						// logger.info("[Node] This socket already exists,
-						// refreshing: "+client.toString());
-						clientSock.deleteConnection();
-						socketDict.remove(client);
-						socketDict.put(client, new NioClient(socketTimeout, linger));
-					}
+				if (clientSock.connectClient(client) != null) {
+					socketDict.put(client, clientSock);
 				} else {
-					// logger.info("[Node] Received bad reply:
-					// "+client.toString()+" "+reply);
-					clientSock.deleteConnection();
-					// logger.info("[Node] Closed Socket"+client.toString());
+					allsocketDict.put(client, new NioClient(socketTimeout, linger));
 				}
-
-			} catch (NullPointerException ne) {
-				logger.debug("[NetworkNode] ConnectClients: Reply had a null value from: " + client.toString());
-				// ne.printStackTrace();
 			} catch (Exception e) {
 				if (clientSock != null) {
 					clientSock.deleteConnection();
 					allsocketDict.put(client, new NioClient(socketTimeout, linger));
 				}
 				logger.debug("[NetworkNode] ConnectClients errored out: " + client.toString());
-				// e.printStackTrace();
 			}
-
 		}
 
 		return;
@@ -376,31 +386,15 @@ public class NetworkNode implements NetworkInterface, Runnable {
 	public Map<String, netState> expireOldConnections() {
 		// logger.info("Expiring old connections...");
 		delmark = new HashMap<>();
-		String reply;
-		for (Map.Entry<String, NioClient> entry : socketDict.entrySet()) {
-			clientSock = entry.getValue();
-			reply = "";
-			try {
-				for (int i = 0; i < numberOfPulses; i++) {
-					clientSock.send(pulse);
-					reply = clientSock.recv();
-				}
-
-				if (!reply.equals(ack)) {
-					// logger.info("[Node] Closing stale connection:
-					// "+entry.getKey().toString());
-					entry.getValue().deleteConnection();
-					delmark.put(entry.getKey(), entry.getValue());
-				}
+		Map<String, String> replies = new HashMap<>();
+		for (int i = 0; i < numberOfPulses; i++) {
+			replies = broadcast(socketDict.keySet(), pulse);
+		}
 
-			} catch (NullPointerException ne) {
-				logger.debug("[NetworkNode] Expire: Reply had a null value: " + entry.getKey().toString());
-				delmark.put(entry.getKey(), entry.getValue());
-				// ne.printStackTrace();
-			} catch (Exception e) {
-				logger.debug("[NetworkNode] Expire: Exception! : " + entry.getKey().toString());
+		for (Map.Entry<String, NioClient> entry : socketDict.entrySet()) {
+			SocketChannel sc = entry.getValue().getSocketChannel();
+			if (!ack.equals(replies.get(entry.getKey())) || sc == null || !sc.isOpen()) {
 				delmark.put(entry.getKey(), entry.getValue());
-				// e.printStackTrace();
 			}
 		}
 
@@ -425,6 +419,23 @@ public class NetworkNode implements NetworkInterface, Runnable {
 		return Collections.unmodifiableMap(connectDict);
 	}
 
+	/**
+	 * Sends a message to the given IP:ports at once and waits for their
+	 * replies, for up to messageTimeout.
+	 *
+	 * @return the replies of the nodes that replied in time
+	 */
+
+	@Override
+	public Map<String, String> broadcast(Collection<String> clientPorts, String message) {
+		try {
+			return messenger.broadcast(new HashSet<>(clientPorts), message, messageTimeout);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return Collections.emptyMap();
+		}
+	}
+
 	public List<String> getAllServerList() {
 		return allServerList;
 	}
@@ -488,25 +499,15 @@ public class NetworkNode implements NetworkInterface, Runnable {
 			FileReader configFile = new FileReader(filename);
 			String line = null;
 			BufferedReader br = new BufferedReader(configFile);
+			List<String> servers = new LinkedList<>();
 
-			Integer cidIter = new Integer(1);
 			while ((line = br.readLine()) != null) {
-				serverList.add(new String(line.trim()));
-				allServerList.add(new String(line.trim()));
-				netcontrollerIDStatic.put(new String(line.trim()), cidIter);
-				controllerIDNetStatic.put(cidIter.toString(), new String(line.trim()));
-				cidIter += 1;
-			}
-
-			serverList.remove(serverPort);
-			this.setConnectSet(new HashSet<>(serverList));
-
-			for (String client : connectSet) {
-				allsocketDict.put(client, new NioClient(socketTimeout, linger));
+				servers.add(new String(line.trim()));
 			}
 
 			br.close();
 			configFile.close();
+			addServers(servers);
 
 		} catch (FileNotFoundException e) {
 			logger.debug(
@@ -516,6 +517,24 @@ public class NetworkNode implements NetworkInterface, Runnable {
 		}
 	}
 
+	private void addServers(List<String> servers) {
+		Integer cidIter = new Integer(1);
+		for (String server : servers) {
+			serverList.add(server);
+			allServerList.add(server);
+			netcontrollerIDStatic.put(server, cidIter);
+			controllerIDNetStatic.put(cidIter.toString(), server);
+			cidIter += 1;
+		}
+
+		serverList.remove(serverPort);
+		this.setConnectSet(new HashSet<>(serverList));
+
+		for (String client : connectSet) {
+			allsocketDict.put(client, new NioClient(socketTimeout, linger));
+		}
+	}
+
 	/**
 	 * Receives a message from the specified IP:port, if possible.
 	 *
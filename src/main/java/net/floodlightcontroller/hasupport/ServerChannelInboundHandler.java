@@ -55,7 +55,9 @@ public class ServerChannelInboundHandler extends SimpleChannelInboundHandler<Byt
 	@Override
 	protected void channelRead0(ChannelHandlerContext ctx, ByteBuf message) throws Exception {
 		ByteBuf rep = Unpooled.copiedBuffer(message);
-		ByteBuf resp = Unpooled.copiedBuffer(processServerMessage(rep.toString(CharsetUtil.UTF_8)).getBytes());
+		/* replies are newline terminated, so clients can frame them */
+		ByteBuf resp = Unpooled.copiedBuffer(processServerMessage(rep.toString(CharsetUtil.UTF_8)) + "\n",
+				CharsetUtil.UTF_8);
 		ctx.writeAndFlush(resp);
 		message.clear();
 	}
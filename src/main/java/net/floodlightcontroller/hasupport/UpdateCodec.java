@@ -0,0 +1,265 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * The Update Codec
+ * Encodes a batch of HA updates, each a map of field names to values such
+ * as the LDUpdates and Topology updates are in their JSON form, into a
+ * compact binary block, and decodes them back one update at a time.
+ *
+ * Batch: version byte, varint number of updates, the updates.
+ * Update: varint number of fields, then per field a byte naming one of the
+ * usual fields (or 0 followed by the name) and the value: a tag byte, then
+ * a varint for a plain number, 8 bytes for a DPID or 0x-prefixed long, or
+ * a UTF string. A value is only packed as a number if it decodes back to
+ * the very same string.
+ */
+
+public class UpdateCodec {
+
+	private static final byte VERSION = 1;
+
+	private static final String[] FIELDS = new String[] { "operation", "src", "srcPort", "dst", "dstPort", "latency",
+			"type", "timestamp" };
+	private static final Map<String, Integer> FIELD_IDS = new HashMap<>();
+
+	static {
+		for (int i = 0; i < FIELDS.length; i++) {
+			FIELD_IDS.put(FIELDS[i], i + 1);
+		}
+	}
+
+	private static final byte STRING = 0;
+	private static final byte NUMBER = 1;
+	private static final byte DPID = 2;
+	private static final byte HEX_LONG = 3;
+
+	private UpdateCodec() {
+	}
+
+	/**
+	 * Encode a batch of updates.
+	 */
+
+	public static byte[] encode(Collection<Map<String, String>> updates) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * updates.size() + 8);
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeByte(VERSION);
+			writeVarLong(out, updates.size());
+			for (Map<String, String> update : updates) {
+				writeVarLong(out, update.size());
+				for (Map.Entry<String, String> field : update.entrySet()) {
+					Integer id = FIELD_IDS.get(field.getKey());
+					if (id != null) {
+						out.writeByte(id);
+					} else {
+						out.writeByte(0);
+						out.writeUTF(field.getKey());
+					}
+					writeValue(out, field.getValue());
+				}
+			}
+		} catch (IOException e) {
+			/* not thrown by a ByteArrayOutputStream */
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Decode a batch of updates lazily, one update per call to next().
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the batch is not in a known version of the format, or,
+	 *             from next(), if it is cut short
+	 */
+
+	public static Iterator<Map<String, String>> decode(byte[] batch) {
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(batch));
+		final long count;
+		try {
+			if (in.readByte() != VERSION) {
+				throw new IllegalArgumentException("Unknown update batch version");
+			}
+			count = readVarLong(in);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Truncated update batch", e);
+		}
+
+		return new Iterator<Map<String, String>>() {
+			private long read = 0;
+
+			@Override
+			public boolean hasNext() {
+				return read < count;
+			}
+
+			@Override
+			public Map<String, String> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				read++;
+				try {
+					long fields = readVarLong(in);
+					Map<String, String> update = new LinkedHashMap<>();
+					for (long i = 0; i < fields; i++) {
+						int id = in.readUnsignedByte();
+						String name = (id == 0) ? in.readUTF() : FIELDS[id - 1];
+						update.put(name, readValue(in));
+					}
+					return update;
+				} catch (IOException | ArrayIndexOutOfBoundsException e) {
+					throw new IllegalArgumentException("Truncated update batch", e);
+				}
+			}
+		};
+	}
+
+	private static void writeValue(DataOutputStream out, String value) throws IOException {
+		long n;
+		if ((n = parseNumber(value)) >= 0) {
+			out.writeByte(NUMBER);
+			writeVarLong(out, n);
+		} else if (isDpid(value)) {
+			out.writeByte(DPID);
+			out.writeLong(Long.parseUnsignedLong(value.replace(":", ""), 16));
+		} else if (isHexLong(value)) {
+			out.writeByte(HEX_LONG);
+			out.writeLong(Long.parseUnsignedLong(value.substring(2), 16));
+		} else {
+			out.writeByte(STRING);
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readValue(DataInputStream in) throws IOException {
+		byte tag = in.readByte();
+		switch (tag) {
+		case NUMBER:
+			return Long.toString(readVarLong(in));
+		case DPID:
+			return formatDpid(in.readLong());
+		case HEX_LONG:
+			return String.format("0x%016x", in.readLong());
+		case STRING:
+			return in.readUTF();
+		default:
+			throw new IOException("Unknown value tag " + tag);
+		}
+	}
+
+	/**
+	 * @return the value as a number, or -1 if it is not one written the way
+	 *         Long.toString() would
+	 */
+
+	private static long parseNumber(String value) {
+		int len = value.length();
+		if (len == 0 || len > 18 || (len > 1 && value.charAt(0) == '0')) {
+			return -1;
+		}
+		long n = 0;
+		for (int i = 0; i < len; i++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			n = n * 10 + (c - '0');
+		}
+		return n;
+	}
+
+	/**
+	 * @return whether the value is a DPID as DatapathId.toString() writes
+	 *         them, xx:xx:xx:xx:xx:xx:xx:xx in lower case hex
+	 */
+
+	private static boolean isDpid(String value) {
+		if (value.length() != 23) {
+			return false;
+		}
+		for (int i = 0; i < 23; i++) {
+			char c = value.charAt(i);
+			if (i % 3 == 2 ? c != ':' : !isLowerHex(c)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isHexLong(String value) {
+		if (value.length() != 18 || !value.startsWith("0x")) {
+			return false;
+		}
+		for (int i = 2; i < 18; i++) {
+			if (!isLowerHex(value.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isLowerHex(char c) {
+		return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f');
+	}
+
+	private static String formatDpid(long dpid) {
+		StringBuilder sb = new StringBuilder(23);
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			int b = (int) (dpid >>> shift) & 0xff;
+			sb.append(Character.forDigit(b >>> 4, 16)).append(Character.forDigit(b & 0xf, 16));
+			if (shift > 0) {
+				sb.append(':');
+			}
+		}
+		return sb.toString();
+	}
+
+	private static void writeVarLong(DataOutputStream out, long n) throws IOException {
+		while ((n & ~0x7fL) != 0) {
+			out.writeByte((int) ((n & 0x7f) | 0x80));
+			n >>>= 7;
+		}
+		out.writeByte((int) n);
+	}
+
+	private static long readVarLong(DataInputStream in) throws IOException {
+		long n = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			n |= (long) (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return n;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+}
@@ -0,0 +1,226 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.sdnplatform.sync.IStoreClient;
+import org.sdnplatform.sync.error.SyncException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Update Log
+ * An append-only log, per controller, of the HA updates a SyncAdapter
+ * publishes into the syncDB.
+ *
+ * Each call to append() writes its updates as one batch, encoded by the
+ * UpdateCodec, under the key "controllerID:seq", and then moves the head
+ * of the log, kept under the key "controllerID" as "firstSeq nextSeq".
+ * So publishing a batch of updates costs two puts, whatever the number of
+ * updates and however long the log.
+ *
+ * Once there are maxBatches batches, the next append first compacts them
+ * into one: the updates are grouped by their key fields (all the fields other
+ * than the high frequency ones) and only the last maxUpdatesPerKey of each
+ * group are kept. The compacted batch replaces the last batch, under its
+ * seq, and the older batches are then deleted.
+ *
+ * read() remembers how far it has read each controller's log, and decodes
+ * only the batches appended since, one update at a time. The syncDB
+ * replicates the head and the batches separately, so a head can arrive
+ * before the batches it counts: read() then stops at the first missing
+ * batch and starts from it the next time. Compaction leaves
+ * nextSeq as it was, so a reader that had read the whole log reads only the
+ * batch appended after the compaction; a reader that falls behind a
+ * compaction starts again from the compacted batch.
+ */
+
+public class UpdateLog {
+
+	private static final Logger logger = LoggerFactory.getLogger(UpdateLog.class);
+
+	private final int maxBatches = 32;
+	private final int maxUpdatesPerKey = 8;
+	private final String none = new String("none");
+
+	private final IStoreClient<String, String> store;
+	private final Set<String> highfields;
+	private final Map<String, Long> cursors = new HashMap<>();
+
+	/**
+	 * Receives the updates read from a log.
+	 */
+
+	public interface Listener {
+		public void update(Map<String, String> update);
+	}
+
+	/**
+	 * @param store
+	 *            The syncDB store to keep the logs in.
+	 * @param highfields
+	 *            The fields which vary from one update of the same key to
+	 *            the next, such as "operation" and "timestamp".
+	 */
+
+	public UpdateLog(IStoreClient<String, String> store, String... highfields) {
+		this.store = store;
+		this.highfields = new HashSet<>(Arrays.asList(highfields));
+	}
+
+	/**
+	 * Append a batch of updates to a controller's log.
+	 */
+
+	public synchronized void append(String controllerID, List<Map<String, String>> updates) throws SyncException {
+		if (updates.isEmpty()) {
+			return;
+		}
+		long[] head = readHead(controllerID);
+		if (head[1] - head[0] >= maxBatches) {
+			compact(controllerID, head);
+		}
+
+		store.put(batchKey(controllerID, head[1]), Base64.getEncoder().encodeToString(UpdateCodec.encode(updates)));
+		head[1]++;
+		store.put(controllerID, head[0] + " " + head[1]);
+	}
+
+	/**
+	 * Read the updates appended to a controller's log since the last read.
+	 */
+
+	public synchronized void read(String controllerID, Listener listener) throws SyncException {
+		long[] head = readHead(controllerID);
+		Long cursor = cursors.get(controllerID);
+		long from = (cursor == null || cursor < head[0] || cursor > head[1]) ? head[0] : cursor;
+
+		long seq = from;
+		for (; seq < head[1]; seq++) {
+			Iterator<Map<String, String>> batch = readBatch(controllerID, seq);
+			if (batch == null) {
+				logger.debug("[UpdateLog] Batch {} not replicated yet", batchKey(controllerID, seq));
+				break;
+			}
+			while (batch.hasNext()) {
+				listener.update(batch.next());
+			}
+		}
+		cursors.put(controllerID, seq);
+	}
+
+	private void compact(String controllerID, long[] head) throws SyncException {
+		Map<String, ArrayDeque<Map<String, String>>> byKey = new LinkedHashMap<>();
+		for (long seq = head[0]; seq < head[1]; seq++) {
+			Iterator<Map<String, String>> batch = readBatch(controllerID, seq);
+			while (batch != null && batch.hasNext()) {
+				Map<String, String> update = batch.next();
+				String key = updateKey(update);
+				ArrayDeque<Map<String, String>> updates = byKey.get(key);
+				if (updates == null) {
+					updates = new ArrayDeque<>();
+					byKey.put(key, updates);
+				}
+				updates.addLast(update);
+				if (updates.size() > maxUpdatesPerKey) {
+					updates.removeFirst();
+				}
+			}
+		}
+
+		List<Map<String, String>> kept = new ArrayList<>();
+		for (ArrayDeque<Map<String, String>> updates : byKey.values()) {
+			kept.addAll(updates);
+		}
+		/*
+		 * The compacted batch sums up the batches through the last one,
+		 * so it takes the last one's seq: readers which have read that
+		 * are past it, and the others read the summary
+		 */
+		long compacted = head[1] - 1;
+		store.put(batchKey(controllerID, compacted),
+				Base64.getEncoder().encodeToString(UpdateCodec.encode(kept)));
+		store.put(controllerID, compacted + " " + head[1]);
+		for (long seq = head[0]; seq < compacted; seq++) {
+			store.delete(batchKey(controllerID, seq));
+		}
+		head[0] = compacted;
+	}
+
+	/**
+	 * @return the decoded updates of a batch, none if it was not written by
+	 *         the UpdateCodec, or null if it is missing
+	 */
+
+	private Iterator<Map<String, String>> readBatch(String controllerID, long seq) throws SyncException {
+		String value = store.getValue(batchKey(controllerID, seq), none);
+		if (value.equals(none)) {
+			return null;
+		}
+		try {
+			return UpdateCodec.decode(Base64.getDecoder().decode(value));
+		} catch (IllegalArgumentException e) {
+			logger.debug("[UpdateLog] Skipping unreadable batch {}", batchKey(controllerID, seq));
+			return new ArrayList<Map<String, String>>().iterator();
+		}
+	}
+
+	/**
+	 * @return {firstSeq, nextSeq} of the controller's log, {0, 0} if it has
+	 *         none yet
+	 */
+
+	private long[] readHead(String controllerID) throws SyncException {
+		String value = store.getValue(controllerID, none);
+		if (!value.equals(none)) {
+			String[] seqs = value.split(" ");
+			try {
+				if (seqs.length == 2) {
+					return new long[] { Long.parseLong(seqs[0]), Long.parseLong(seqs[1]) };
+				}
+			} catch (NumberFormatException e) {
+			}
+			logger.debug("[UpdateLog] Starting a new log for {}, over an unreadable head", controllerID);
+		}
+		return new long[] { 0, 0 };
+	}
+
+	private String updateKey(Map<String, String> update) {
+		StringBuilder key = new StringBuilder();
+		for (Map.Entry<String, String> field : new TreeMap<>(update).entrySet()) {
+			if (!highfields.contains(field.getKey())) {
+				key.append(field.getKey()).append('=').append(field.getValue()).append(',');
+			}
+		}
+		return key.toString();
+	}
+
+	private static String batchKey(String controllerID, long seq) {
+		return controllerID + ":" + seq;
+	}
+
+}
@@ -15,25 +15,21 @@
 package net.floodlightcontroller.hasupport.linkdiscovery;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import org.sdnplatform.sync.IStoreClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import net.floodlightcontroller.hasupport.DedupeWindow;
 import net.floodlightcontroller.hasupport.IFilterQueue;
 
 /**
  * Two Queues to store LDupdates
  *
- * Filters out duplicates up to a specified capacity.
- *
- * Possible improvements: a. Implement a data structure which can eliminate
- * duplicates completely, without a threshold on the amount of filtering it can
- * do which is currently limited by the mapCapacity.
+ * Filters out updates already seen within a window of the last
+ * dedupeCapacity updates or dedupeWindowMs, see DedupeWindow.
  *
  * @author Bhargav Srinivasan, Om Kale
  */
@@ -45,9 +41,10 @@ public class LDFilterQueue implements IFilterQueue {
 	private static LDSyncAdapter syncAdapter;
 
 	public static LinkedBlockingQueue<String> filterQueue = new LinkedBlockingQueue<>();
-	public static Map<String, String> myMap = new HashMap<>();
 	public static LinkedBlockingQueue<String> reverseFilterQueue = new LinkedBlockingQueue<>();
-	private final Integer mapCapacity = new Integer(1073741000);
+	private static final int dedupeCapacity = 1 << 16;
+	private static final long dedupeWindowMs = 60000;
+	public static DedupeWindow dedupe = new DedupeWindow(dedupeCapacity, dedupeWindowMs);
 
 	protected String controllerID;
 
@@ -123,9 +120,9 @@ public class LDFilterQueue implements IFilterQueue {
 	}
 
 	/**
-	 * This method hashes the LDupdates received in form of JSON string using
-	 * md5 hashing and store them in the filter queue and in a map if not
-	 * already present.
+	 * This method fingerprints the LDupdates received in form of JSON string
+	 * and stores them in the filter queue if not already seen within the
+	 * dedupe window.
 	 *
 	 * @return boolean value indicating success or failure
 	 */
@@ -133,20 +130,8 @@ public class LDFilterQueue implements IFilterQueue {
 	@Override
 	public boolean enqueueForward(String value) {
 		try {
-			String newMD5 = new String();
-			LDHAUtils myMD5 = new LDHAUtils();
-			newMD5 = myMD5.calculateMD5Hash(value);
-
-			if (LDFilterQueue.myMap.size() >= mapCapacity) {
-				// logger.debug("[LDFilterQ Clear] Clearing LDFilterQ's Map");
-				LDFilterQueue.myMap.clear();
-			}
-
-			// logger.debug("[FilterQ] The MD5: {} The Value {}", new Object []
-			// {newMD5,value});
-			if ((!myMap.containsKey(newMD5)) && (!value.equals(null))) {
+			if ((value != null) && LDFilterQueue.dedupe.add(value)) {
 				filterQueue.offer(value);
-				myMap.put(newMD5, value);
 			}
 			return true;
 
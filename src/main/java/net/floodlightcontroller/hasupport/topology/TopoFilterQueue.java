@@ -15,25 +15,21 @@
 package net.floodlightcontroller.hasupport.topology;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import org.sdnplatform.sync.IStoreClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import net.floodlightcontroller.hasupport.DedupeWindow;
 import net.floodlightcontroller.hasupport.IFilterQueue;
 
 /**
  * Two Queues to store Topology Updates
  *
- * Filters out duplicates up to a specified capacity.
- *
- * Possible improvements: a. Implement a data structure which can eliminate
- * duplicates completely, without a threshold on the amount of filtering it can
- * do which is currently limited by the mapCapacity.
+ * Filters out updates already seen within a window of the last
+ * dedupeCapacity updates or dedupeWindowMs, see DedupeWindow.
  *
  * @author Bhargav Srinivasan, Om Kale
  */
@@ -45,10 +41,11 @@ public class TopoFilterQueue implements IFilterQueue {
 	private static TopoSyncAdapter syncAdapter;
 	public static LinkedBlockingQueue<String> filterQueue = new LinkedBlockingQueue<>();
 
-	public static Map<String, String> myMap = new HashMap<>();
 	public static LinkedBlockingQueue<String> reverseFilterQueue = new LinkedBlockingQueue<>();
 	protected String controllerID;
-	private final Integer mapCapacity = new Integer(1073741000);
+	private static final int dedupeCapacity = 1 << 16;
+	private static final long dedupeWindowMs = 60000;
+	public static DedupeWindow dedupe = new DedupeWindow(dedupeCapacity, dedupeWindowMs);
 
 	public TopoFilterQueue(IStoreClient<String, String> storeTopo, String controllerID) {
 		TopoFilterQueue.storeTopo = storeTopo;
@@ -121,31 +118,18 @@ public class TopoFilterQueue implements IFilterQueue {
 	}
 
 	/**
-	 * This method hashes the Topology updates received in form of JSON string
-	 * using md5 hashing and store them in the filter queue and in a map if not
-	 * already present.
-	 * 
+	 * This method fingerprints the Topology updates received in form of JSON string
+	 * and stores them in the filter queue if not already seen within the
+	 * dedupe window.
+	 *
 	 * @return boolean value indicating success or failure
 	 */
 
 	@Override
 	public boolean enqueueForward(String value) {
 		try {
-			String newMD5 = new String();
-			TopoUtils myMD5 = new TopoUtils();
-			newMD5 = myMD5.calculateMD5Hash(value);
-
-			if (TopoFilterQueue.myMap.size() >= mapCapacity) {
-				// logger.debug("[TopoFilterQ Clear] Clearing TopoFilterQ's
-				// Map");
-				TopoFilterQueue.myMap.clear();
-			}
-
-			// logger.debug("[FilterQ] The MD5: {} The Value {}", new Object []
-			// {newMD5,value});
-			if ((!myMap.containsKey(newMD5)) && (!value.equals(null))) {
+			if ((value != null) && TopoFilterQueue.dedupe.add(value)) {
 				filterQueue.offer(value);
-				myMap.put(newMD5, value);
 			}
 			return true;
 
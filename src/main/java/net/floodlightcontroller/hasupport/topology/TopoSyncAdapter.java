@@ -15,6 +15,7 @@
 package net.floodlightcontroller.hasupport.topology;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -25,46 +26,35 @@ import org.sdnplatform.sync.error.SyncException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import net.floodlightcontroller.core.IFloodlightProviderService;
 import net.floodlightcontroller.hasupport.ISyncAdapter;
+import net.floodlightcontroller.hasupport.UpdateLog;
 
 /**
  * This class gets the updates from the Filter Queue and puts them into the
  * SyncDB.
  *
- * The primary key fields are MD5 hashed and the md5hashes are stored under the
- * controller ID which published them. Now each controller can exchange only the
- * md5hashes and stay up to date, and sync the actual update only if needed.
+ * Each batch of updates drained from the Filter Queue is stamped with the
+ * time and appended to this controller's UpdateLog as one binary record,
+ * so that a batch costs two puts into the syncDB rather than a read and a
+ * rewrite of a growing JSON value per update. The UpdateLog compacts the
+ * log as it grows, keeping the last few updates per primary key.
  *
- * Low frequency fields (mentioned in LDUtils): These are the primary key
- * fields, i.e. when the data is viewed as relational data, these fields would
- * be the primary key fields. This mapping is done so that we can avoid
- * duplication of stored data and also improve our write speed to the syncDB as
- * compared to completely denormalized data where we would have to populate a
- * seperate table for each key field.
+ * Low frequency fields: These are the primary key fields, i.e. when the data
+ * is viewed as relational data, these fields would be the primary key fields,
+ * such as the src and dst of a link.
  *
- * High Frequency Fields (mentioned here): These are fields which vary a lot and
- * are stored in an array in the JSON that is pushed into the DB. The primary
- * key fields or low frequency fields are attached to these fields to help
- * identify which particular NodePortTuple this update belongs to.
+ * High Frequency Fields (mentioned here): These are fields which vary a lot
+ * from one update of the same primary key to the next, such as the operation
+ * or the latency. Compaction keeps the last few of them per primary key.
  *
- * The data model used to design this system can be found here (similar, not
- * same):
- * https://docs.mongodb.com/v3.2/tutorial/model-referenced-one-to-many-relationships-between-documents
- *
- * Possible improvements: a. Store the collatedcmd5 hashes as a HashMap with
- * keys as the md5hashes and the values as '1' so that retrieval can be
- * optimized. Meaning, lets say you wanted updates for C1, for a particular
- * NodePortTuple, say, 'B' then you first retrieve all the collatedcmd5 hashes
- * associated with C1, which is a string (right now), search for 'B' and if
- * present, you go ahead and look for B in the database, which will then give
- * you the corresponding JSON update for 'B'. Instead if the collatedcmd5 hashes
- * were stored as a hashmap then we wouldn't need to parse the collatedcmd5
- * string. However, the problem with this would be that the size of the HashMap
- * might be a limitation.
+ * Reading a controller's updates back, unpackJSON() decodes only the records
+ * appended since the last time it read them, one at a time, and passes each
+ * on to the Filter Queue as JSON.
  *
  * @author Bhargav Srinivasan, Om Kale
  *
@@ -78,8 +68,11 @@ public class TopoSyncAdapter implements ISyncAdapter {
 	protected static IFloodlightProviderService floodlightProvider;
 
 	private static TopoFilterQueue myTopoFilterQueue;
-	private final String none = new String("none");
 	private final String[] highfields = new String[] { "operation", "latency", "timestamp" };
+	private static final ObjectMapper myMapper = new ObjectMapper();
+	private static final TypeReference<HashMap<String, String>> typeRef = new TypeReference<HashMap<String, String>>() {
+	};
+	private final UpdateLog updateLog;
 
 	protected String controllerID;
 
@@ -88,139 +81,47 @@ public class TopoSyncAdapter implements ISyncAdapter {
 		TopoSyncAdapter.storeTopo = storeTopo;
 		this.controllerID = controllerID;
 		TopoSyncAdapter.myTopoFilterQueue = topoFilterQueue;
+		updateLog = new UpdateLog(storeTopo, highfields);
 	}
 
 	/**
-	 * Receives the updates from the FilterQueue's enqueueForward method, and
-	 * assembles the JSON object that is to be pushed into the syncDB using
-	 * Jackson.
-	 *
-	 * This method first checks if the incoming update's primary key is already
-	 * in the syncDB, if so, it retrieves that particular update and appends the
-	 * new values to it along with a timestamp.
-	 *
-	 * If the incoming update does not exist in the syncDB, it hashes the
-	 * primary key or low frequency fields of the update and this forms the
-	 * "KEY" for this update in the syncDB. It is appended with a timestamp and
-	 * then pushed into the syncDB.
-	 *
-	 * The MD5Hashes of the primary key fields or "KEY"s are collected in a
-	 * String called the collatedmd5hashes. Now this string is pushed into the
-	 * syncDB as well, with the corresponding controller ID from which it came
-	 * from as key: <C1, collatedmd5hashes>. Now every controller will have
-	 * access to the collatedmd5hashes of every other controller, and can hence
-	 * retrieve any update from any controller.
-	 *
+	 * Receives the updates from the FilterQueue's dequeueForward method, stamps
+	 * each with the time it is published at, and appends them all to this
+	 * controller's UpdateLog as one batch.
 	 */
 
 	@Override
 	public void packJSON(List<String> newUpdates) {
 
-		ObjectMapper myMapper = new ObjectMapper();
-		TypeReference<HashMap<String, String>> typeRef = new TypeReference<HashMap<String, String>>() {
-		};
-		Map<String, String> newUpdateMap = new HashMap<>();
-		Map<String, String> updateMap = new HashMap<>();
-		String cmd5Hash = new String();
-		TopoUtils topohautils = new TopoUtils();
-
 		if (newUpdates.isEmpty()) {
 			return;
 		}
 
+		List<Map<String, String>> batch = new ArrayList<>(newUpdates.size());
 		for (String up : newUpdates) {
 			try {
+				Map<String, String> newUpdateMap = myMapper.readValue(up.toString(), typeRef);
 
-				newUpdateMap = myMapper.readValue(up.toString(), typeRef);
-				cmd5Hash = topohautils.getCMD5Hash(up, newUpdateMap);
-
-				/**
-				 * Make the high freq fields as lists.
-				 */
-				String operation = newUpdateMap.get(highfields[0]);
-				String latency = newUpdateMap.get(highfields[1]);
 				/**
-				 * Add timestamp field.
+				 * Add timestamp field, in ns since the epoch.
 				 */
+				Instant now = Instant.now();
+				newUpdateMap.put(highfields[2], Long.toString(now.getEpochSecond() * 1000000000L + now.getNano()));
+				batch.add(newUpdateMap);
 
-				Long ts = new Long(Instant.now().getEpochSecond());
-				Long nano = new Long(Instant.now().getNano());
-
-				newUpdateMap.put(highfields[0], operation);
-				newUpdateMap.put(highfields[1], latency);
-				newUpdateMap.put(highfields[2], ts.toString() + nano.toString());
-
-				/**
-				 * Try to get previous update:
-				 */
-				String oldUpdates = storeTopo.getValue(cmd5Hash.toString(), none);
-
-				if (!oldUpdates.equals(none)) {
-
-					if (oldUpdates.isEmpty()) {
-						continue;
-					}
-
-					/**
-					 * parse the Json String into a Map, then query the entries.
-					 */
-
-					updateMap = myMapper.readValue(oldUpdates.toString(), typeRef);
-
-					String oldOp = updateMap.get(highfields[0]);
-					String opList = topohautils.appendUpdate(oldOp, newUpdateMap.get(highfields[0]));
-					updateMap.put(highfields[0], opList);
-
-					String oldLatency = updateMap.get(highfields[1]);
-					String latList = topohautils.appendUpdate(oldLatency, newUpdateMap.get(highfields[1]));
-					updateMap.put(highfields[1], latList);
-
-					String oldTimestamp = updateMap.get(highfields[2]);
-					Long ts2 = new Long(Instant.now().getEpochSecond());
-					Long nano2 = new Long(Instant.now().getNano());
-					String tmList = topohautils.appendUpdate(oldTimestamp, ts2.toString() + nano2.toString());
-					updateMap.put(highfields[2], tmList);
-
-					TopoSyncAdapter.storeTopo.put(cmd5Hash.toString(), myMapper.writeValueAsString(updateMap));
-
-				} else {
-
-					try {
-
-						TopoSyncAdapter.storeTopo.put(cmd5Hash.toString(), myMapper.writeValueAsString(newUpdateMap));
-
-						String collatedcmd5 = TopoSyncAdapter.storeTopo.getValue(controllerID.toString(), none);
-
-						if (collatedcmd5.equals(none)) {
-							collatedcmd5 = cmd5Hash;
-							// logger.debug("Collated CMD5: {} ", new Object []
-							// {collatedcmd5.toString()});
-						} else {
-							// logger.debug("================ Append update to
-							// HashMap ================");
-							collatedcmd5 = topohautils.appendUpdate(collatedcmd5, cmd5Hash);
-						}
-
-						TopoSyncAdapter.storeTopo.put(controllerID, collatedcmd5);
-
-					} catch (SyncException se) {
-						logger.debug("[TopoSync] Exception: sync packJSON!");
-						se.printStackTrace();
-					} catch (Exception e) {
-						logger.debug("[TopoSync] Exception: packJSON!");
-						e.printStackTrace();
-					}
-				}
-
-			} catch (SyncException se) {
-				logger.debug("[TopoSync] Exception: sync packJSON!");
-				se.printStackTrace();
 			} catch (Exception e) {
 				logger.debug("[TopoSync] Exception: packJSON!");
 				e.printStackTrace();
 			}
 		}
 
+		try {
+			updateLog.append(controllerID, batch);
+		} catch (SyncException se) {
+			logger.debug("[TopoSync] Exception: sync packJSON!");
+			se.printStackTrace();
+		}
+
 	}
 
 	/**
@@ -229,40 +130,24 @@ public class TopoSyncAdapter implements ISyncAdapter {
 	 * populated with the updates, using the enqueueReverse() method, which is
 	 * later read by the subscribe hook.
 	 *
-	 * It first retrieves the collatedmd5hashes, as explained above, for a
-	 * particular controller, and then retrieves the actual updates.
+	 * Only the updates the controller has published since the last call for
+	 * it are retrieved, decoded one at a time from its UpdateLog.
 	 *
 	 */
 
 	@Override
 	public void unpackJSON(String controllerID) {
-		/**
-		 * 1. Get all cmd5 hashes for the particular controller ID.
-		 */
 		try {
-			String collatedcmd5 = TopoSyncAdapter.storeTopo.getValue(controllerID, none);
-
-			if (!collatedcmd5.equals(none)) {
-
-				if (collatedcmd5.endsWith(", ")) {
-					collatedcmd5 = collatedcmd5.substring(0, collatedcmd5.length() - 2);
-				}
-
-				// logger.debug("[Unpack] Collated CMD5: {}", new Object[]
-				// {collatedcmd5.toString()});
-
-				String[] cmd5hashes = collatedcmd5.split(", ");
-				for (String cmd5 : cmd5hashes) {
-					String update = TopoSyncAdapter.storeTopo.getValue(cmd5, none);
-					if (!update.equals(none)) {
-						// logger.info("[Unpack]: {}", new Object[] { update.toString() });
-						myTopoFilterQueue.enqueueReverse(update);
+			updateLog.read(controllerID, new UpdateLog.Listener() {
+				@Override
+				public void update(Map<String, String> update) {
+					try {
+						TopoSyncAdapter.myTopoFilterQueue.enqueueReverse(myMapper.writeValueAsString(update));
+					} catch (JsonProcessingException e) {
+						logger.debug("[TopoSync] Exception: unpackJSON!");
 					}
 				}
-			}
-
-			return;
-
+			});
 		} catch (SyncException e) {
 			e.printStackTrace();
 		}
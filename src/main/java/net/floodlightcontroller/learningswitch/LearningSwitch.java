@@ -42,6 +42,7 @@ import net.floodlightcontroller.packet.Ethernet;
 import net.floodlightcontroller.restserver.IRestApiService;
 import net.floodlightcontroller.util.FlowModUtils;
 import net.floodlightcontroller.util.OFMessageUtils;
+import net.floodlightcontroller.util.OFMessageWriteBatch;
 import org.projectfloodlight.openflow.protocol.*;
 import org.projectfloodlight.openflow.protocol.action.OFAction;
 import org.projectfloodlight.openflow.protocol.instruction.OFInstruction;
@@ -58,7 +59,7 @@ import java.util.concurrent.ConcurrentHashMap;
 
 // paag: with IControllerCompletionListener that logswhen an input event has been consumed
 public class LearningSwitch
-implements IFloodlightModule, ILearningSwitchService, IOFMessageListener, IControllerCompletionListener {
+implements IFloodlightModule, ILearningSwitchService, IOFMessageBatchListener, IControllerCompletionListener {
 	protected static Logger log = LoggerFactory.getLogger(LearningSwitch.class);
 
 	// Module dependencies
@@ -264,7 +265,7 @@ implements IFloodlightModule, ILearningSwitchService, IOFMessageListener, IContr
 		counterFlowMod.increment();
 
 		// and write it out
-		sw.write(fmb.build());
+		OFMessageWriteBatch.write(sw, fmb.build());
 	}
 
 	/**
@@ -330,7 +331,7 @@ implements IFloodlightModule, ILearningSwitchService, IOFMessageListener, IContr
 		}
 
 		counterPacketOut.increment();
-		sw.write(pob.build());
+		OFMessageWriteBatch.write(sw, pob.build());
 	}
 
 	/**
@@ -502,6 +503,20 @@ implements IFloodlightModule, ILearningSwitchService, IOFMessageListener, IContr
 		}
 	}
 
+	@Override
+	public void receiveBatch(IOFSwitch sw, List<OFMessage> msgs,
+			List<FloodlightContext> cntxs, Command[] cmds) {
+		// coalesce the flow-mods and packet-outs of the burst
+		OFMessageWriteBatch.begin();
+		try {
+			for (int i = 0; i < msgs.size(); i++) {
+				cmds[i] = receive(sw, msgs.get(i), cntxs.get(i));
+			}
+		} finally {
+			OFMessageWriteBatch.end();
+		}
+	}
+
 	@Override
 	public boolean isCallbackOrderingPrereq(OFType type, String name) {
 		return false;
@@ -75,6 +75,7 @@ import net.floodlightcontroller.packet.BSN;
 import net.floodlightcontroller.packet.Ethernet;
 import net.floodlightcontroller.packet.LLDP;
 import net.floodlightcontroller.packet.LLDPTLV;
+import net.floodlightcontroller.packet.PacketView;
 import net.floodlightcontroller.restserver.IRestApiService;
 import net.floodlightcontroller.storage.IResultSet;
 import net.floodlightcontroller.storage.IStorageSourceListener;
@@ -243,17 +244,18 @@ IFloodlightModule, IInfoProvider {
 	 * Data traffic from these ports are not allowed until the ports are
 	 * released from quarantine.
 	 */
-	protected LinkedBlockingQueue<NodePortTuple> quarantineQueue;
-	protected LinkedBlockingQueue<NodePortTuple> maintenanceQueue;
-	protected LinkedBlockingQueue<NodePortTuple> toRemoveFromQuarantineQueue;
-	protected LinkedBlockingQueue<NodePortTuple> toRemoveFromMaintenanceQueue;
+	protected PortQueue quarantineQueue;
+	protected PortQueue maintenanceQueue;
 
 	/**
 	 * Quarantine task
 	 */
 	protected SingletonTask bddpTask;
 	protected final int BDDP_TASK_INTERVAL = 100; // 100 ms.
-	protected final int BDDP_TASK_SIZE = 10; // # of ports per iteration
+	protected final int BDDP_TASK_MIN_SIZE = 10; // min # of ports per iteration
+	protected final int BDDP_TASK_MAX_SIZE = 500; // max # of ports per iteration
+	protected final int BDDP_DRAIN_ITERATIONS = 10; // # of iterations to aim to drain a queue in
+	private volatile int bddpBatchLimit = BDDP_TASK_MIN_SIZE;
 
 	private class MACRange {
 		MacAddress baseMAC;
@@ -267,6 +269,11 @@ IFloodlightModule, IInfoProvider {
 	 * Debug Counters
 	 */
 	private IDebugCounter ctrQuarantineDrops;
+	private IDebugCounter ctrQuarantineDepth;
+	private IDebugCounter ctrMaintenanceDepth;
+	private IDebugCounter ctrPortUpToLink;
+	private IDebugCounter ctrPortUpToLinkMs;
+	private IDebugCounter ctrMaxPortUpToLinkMs;
 	private IDebugCounter ctrIgnoreSrcMacDrops;
 	private IDebugCounter ctrIncoming;
 	private IDebugCounter ctrLinkLocalDrops;
@@ -486,7 +493,7 @@ IFloodlightModule, IInfoProvider {
 	public Set<OFPort> getQuarantinedPorts(DatapathId sw) {
 		Set<OFPort> qPorts = new HashSet<OFPort>();
 
-		Iterator<NodePortTuple> iter = quarantineQueue.iterator();
+		Iterator<NodePortTuple> iter = quarantineQueue.ports().iterator();
 		while (iter.hasNext()) {
 			NodePortTuple npt = iter.next();
 			if (npt.getNodeId().equals(sw)) {
@@ -587,22 +594,31 @@ IFloodlightModule, IInfoProvider {
 
 	protected Command handlePacketIn(DatapathId sw, OFPacketIn pi,
 			FloodlightContext cntx) {
-		Ethernet eth = IFloodlightProviderService.bcStore.get(cntx,
-				IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+		PacketView pv = IFloodlightProviderService.pvStore.get(cntx,
+				IFloodlightProviderService.CONTEXT_PI_VIEW_SLOT);
+		if (!pv.isValid()) {
+			/* too short to be a discovery frame */
+			return Command.CONTINUE;
+		}
 		OFPort inPort = (pi.getVersion().compareTo(OFVersion.OF_12) < 0 ? pi.getInPort() : pi.getMatch().get(MatchField.IN_PORT));
-		if (eth.getPayload() instanceof BSN) {
-			BSN bsn = (BSN) eth.getPayload();
-			if (bsn == null) return Command.STOP;
-			if (bsn.getPayload() == null) return Command.STOP;
-			// It could be a packet other than BSN LLDP, therefore
-			// continue with the regular processing.
-			if (bsn.getPayload() instanceof LLDP == false)
-				return Command.CONTINUE;
-			return handleLldp((LLDP) bsn.getPayload(), sw, inPort, false, cntx);
-		} else if (eth.getPayload() instanceof LLDP) {
-			return handleLldp((LLDP) eth.getPayload(), sw, inPort, true, cntx);
-		} else if (eth.getEtherType().getValue() < 1536 && eth.getEtherType().getValue() >= 17) {
-			long destMac = eth.getDestinationMACAddress().getLong();
+		int etherType = pv.getEtherTypeValue();
+		/* Only discovery frames are decoded in full */
+		if (etherType == (Ethernet.TYPE_BSN & 0xffff) 
+				|| etherType == (Ethernet.TYPE_LLDP & 0xffff)) {
+			Ethernet eth = pv.getEthernet();
+			if (eth.getPayload() instanceof BSN) {
+				BSN bsn = (BSN) eth.getPayload();
+				if (bsn.getPayload() == null) return Command.STOP;
+				// It could be a packet other than BSN LLDP, therefore
+				// continue with the regular processing.
+				if (bsn.getPayload() instanceof LLDP == false)
+					return Command.CONTINUE;
+				return handleLldp((LLDP) bsn.getPayload(), sw, inPort, false, cntx);
+			} else if (eth.getPayload() instanceof LLDP) {
+				return handleLldp((LLDP) eth.getPayload(), sw, inPort, true, cntx);
+			}
+		} else if (etherType < 1536 && etherType >= 17) {
+			long destMac = pv.getDestinationMACLong();
 			if ((destMac & LINK_LOCAL_MASK) == LINK_LOCAL_VALUE) {
 				ctrLinkLocalDrops.increment();
 				if (log.isTraceEnabled()) {
@@ -611,12 +627,12 @@ IFloodlightModule, IInfoProvider {
 				}
 				return Command.STOP;
 			}
-		} else if (eth.getEtherType().getValue() < 17) {
-			log.error("Received invalid ethertype of {}.", eth.getEtherType());
+		} else if (etherType < 17) {
+			log.error("Received invalid ethertype of {}.", pv.getEtherType());
 			return Command.STOP;
 		}
 
-		if (ignorePacketInFromSource(eth.getSourceMACAddress())) {
+		if (ignorePacketInFromSource(pv.getSourceMACLong())) {
 			ctrIgnoreSrcMacDrops.increment();
 			return Command.STOP;
 		}
@@ -631,14 +647,14 @@ IFloodlightModule, IInfoProvider {
 		return Command.CONTINUE;
 	}
 
-	private boolean ignorePacketInFromSource(MacAddress srcMAC) {
+	private boolean ignorePacketInFromSource(long srcMAC) {
 		Iterator<MACRange> it = ignoreMACSet.iterator();
 		while (it.hasNext()) {
 			MACRange range = it.next();
 			long mask = ~0;
 			if (range.ignoreBits >= 0 && range.ignoreBits <= 48) {
 				mask = mask << range.ignoreBits;
-				if ((range.baseMAC.getLong() & mask) == (srcMAC.getLong() & mask)) {
+				if ((range.baseMAC.getLong() & mask) == (srcMAC & mask)) {
 					return true;
 				}
 			}
@@ -871,8 +887,9 @@ IFloodlightModule, IInfoProvider {
 		}
 
 		NodePortTuple npt = new NodePortTuple(sw, p);
-		discover(sw, p);
+		/* quarantine first, so an LLDP coming straight back finds the port queued */
 		addToQuarantineQueue(npt);
+		discover(sw, p);
 	}
 
 	//***********************************
@@ -952,15 +969,12 @@ IFloodlightModule, IInfoProvider {
 	}
 
 	/**
-	 * Add a switch port to the quarantine queue. Schedule the quarantine task
-	 * if the quarantine queue was empty before adding this switch port.
+	 * Add a switch port to the quarantine queue, unless it is already there.
 	 *
 	 * @param npt
 	 */
 	protected void addToQuarantineQueue(NodePortTuple npt) {
-		if (quarantineQueue.contains(npt) == false) {
-			quarantineQueue.add(npt);
-		}
+		quarantineQueue.add(npt);
 	}
 
 	/**
@@ -970,9 +984,19 @@ IFloodlightModule, IInfoProvider {
 		// Remove all occurrences of the node port tuple from the list.
 		while (quarantineQueue.remove(npt));
 	}*/
+	/**
+	 * Flag a quarantined switch port as having a link, so no BDDP is sent
+	 * when it is released, and count the time since it came up.
+	 *
+	 * @param npt
+	 */
 	protected void flagToRemoveFromQuarantineQueue(NodePortTuple npt) {
-		if (toRemoveFromQuarantineQueue.contains(npt) == false) {
-			toRemoveFromQuarantineQueue.add(npt);
+		long queuedNs = quarantineQueue.flagDiscovered(npt);
+		if (queuedNs >= 0) {
+			long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - queuedNs);
+			ctrPortUpToLink.increment();
+			ctrPortUpToLinkMs.add(ms);
+			ctrMaxPortUpToLinkMs.setIfGreater(ms);
 		}
 	}
 
@@ -982,9 +1006,7 @@ IFloodlightModule, IInfoProvider {
 	 * @param npt
 	 */
 	protected void addToMaintenanceQueue(NodePortTuple npt) {
-		if (maintenanceQueue.contains(npt) == false) {
-			maintenanceQueue.add(npt);
-		}
+		maintenanceQueue.add(npt);
 	}
 
 	/**
@@ -997,24 +1019,29 @@ IFloodlightModule, IInfoProvider {
 		while (maintenanceQueue.remove(npt));
 	} */
 	protected void flagToRemoveFromMaintenanceQueue(NodePortTuple npt) {
-		if (toRemoveFromMaintenanceQueue.contains(npt) == false) {
-			toRemoveFromMaintenanceQueue.add(npt);
-		}
+		maintenanceQueue.flagDiscovered(npt);
 	}
 
 	/**
 	 * This method processes the quarantine list in bursts. The task is at most
-	 * once per BDDP_TASK_INTERVAL. One each call, BDDP_TASK_SIZE number of
-	 * switch ports are processed. Once the BDDP packets are sent out through
-	 * the switch ports, the ports are removed from the quarantine list.
+	 * once per BDDP_TASK_INTERVAL. On each call, enough switch ports are
+	 * processed to drain each queue in BDDP_DRAIN_ITERATIONS calls, but no
+	 * fewer than BDDP_TASK_MIN_SIZE and no more than the current batch limit.
+	 * Once the BDDP packets are sent out through the switch ports, the ports
+	 * are removed from the quarantine list.
 	 */
 	protected void processBDDPLists() {
+		long startNs = System.nanoTime();
+		ctrQuarantineDepth.set(quarantineQueue.size());
+		ctrMaintenanceDepth.set(maintenanceQueue.size());
+
 		int count = 0;
+		int batchSize = getBDDPBatchSize(quarantineQueue.size());
 		Set<NodePortTuple> nptList = new HashSet<NodePortTuple>();
 
-		while (count < BDDP_TASK_SIZE && quarantineQueue.peek() != null) {
-			NodePortTuple npt;
-			npt = quarantineQueue.remove();
+		PortQueue.Entry e;
+		while (count < batchSize && (e = quarantineQueue.poll()) != null) {
+			NodePortTuple npt = e.getNodePortTuple();
 			/*
 			 * Do not send a discovery message if we already have received one
 			 * from another switch on this same port. In other words, if
@@ -1026,7 +1053,7 @@ IFloodlightModule, IInfoProvider {
 			 * PORT_STATUS update is generated and dispatched below by
 			 * generateSwitchPortStatusUpdate().
 			 */
-			if (!toRemoveFromQuarantineQueue.remove(npt)) {
+			if (!e.isDiscovered()) {
 				sendDiscoveryMessage(npt.getNodeId(), npt.getPortId(), false, false);
 			}
 			/*
@@ -1038,14 +1065,14 @@ IFloodlightModule, IInfoProvider {
 		}
 
 		count = 0;
-		while (count < BDDP_TASK_SIZE && maintenanceQueue.peek() != null) {
-			NodePortTuple npt;
-			npt = maintenanceQueue.remove();
+		batchSize = getBDDPBatchSize(maintenanceQueue.size());
+		while (count < batchSize && (e = maintenanceQueue.poll()) != null) {
+			NodePortTuple npt = e.getNodePortTuple();
 			/*
 			 * Same as above, except we don't care about the PORT_STATUS message; 
 			 * we only want to avoid sending the discovery message again.
 			 */
-			if (!toRemoveFromMaintenanceQueue.remove(npt)) {
+			if (!e.isDiscovered()) {
 				sendDiscoveryMessage(npt.getNodeId(), npt.getPortId(), false, false);
 			}
 			count++;
@@ -1054,6 +1081,22 @@ IFloodlightModule, IInfoProvider {
 		for (NodePortTuple npt : nptList) {
 			generateSwitchPortStatusUpdate(npt.getNodeId(), npt.getPortId());
 		}
+
+		/*
+		 * Halve the batch limit if this call took over half of the interval,
+		 * so a mass port-up doesn't hog the shared executor, otherwise let
+		 * it grow back.
+		 */
+		if (System.nanoTime() - startNs > TimeUnit.MILLISECONDS.toNanos(BDDP_TASK_INTERVAL) / 2) {
+			bddpBatchLimit = Math.max(BDDP_TASK_MIN_SIZE, bddpBatchLimit / 2);
+		} else {
+			bddpBatchLimit = Math.min(BDDP_TASK_MAX_SIZE, bddpBatchLimit + BDDP_TASK_MIN_SIZE);
+		}
+	}
+
+	private int getBDDPBatchSize(int queueDepth) {
+		int size = (queueDepth + BDDP_DRAIN_ITERATIONS - 1) / BDDP_DRAIN_ITERATIONS;
+		return Math.max(BDDP_TASK_MIN_SIZE, Math.min(size, bddpBatchLimit));
 	}
 
 	private void generateSwitchPortStatusUpdate(DatapathId sw, OFPort port) {
@@ -2009,10 +2052,8 @@ IFloodlightModule, IInfoProvider {
 		this.portLinks = new HashMap<NodePortTuple, Set<Link>>();
 		this.suppressLinkDiscovery = Collections.synchronizedSet(new HashSet<NodePortTuple>());
 		this.switchLinks = new HashMap<DatapathId, Set<Link>>();
-		this.quarantineQueue = new LinkedBlockingQueue<NodePortTuple>();
-		this.maintenanceQueue = new LinkedBlockingQueue<NodePortTuple>();
-		this.toRemoveFromQuarantineQueue = new LinkedBlockingQueue<NodePortTuple>();
-		this.toRemoveFromMaintenanceQueue = new LinkedBlockingQueue<NodePortTuple>();
+		this.quarantineQueue = new PortQueue();
+		this.maintenanceQueue = new PortQueue();
 
 		this.ignoreMACSet = Collections.newSetFromMap(
 				new ConcurrentHashMap<MACRange,Boolean>());
@@ -2140,6 +2181,17 @@ IFloodlightModule, IInfoProvider {
 				"All packets whose srcmac is configured to be dropped by this module");
 		ctrQuarantineDrops = debugCounterService.registerCounter(PACKAGE, "quarantine-drops",
 				"All packets arriving on quarantined ports dropped by this module", IDebugCounterService.MetaData.WARN);
+		ctrQuarantineDepth = debugCounterService.registerCounter(PACKAGE, "quarantine-queue-depth",
+				"Ports in the quarantine queue, sampled every BDDP task run");
+		ctrMaintenanceDepth = debugCounterService.registerCounter(PACKAGE, "maintenance-queue-depth",
+				"Ports in the maintenance queue, sampled every BDDP task run");
+		ctrPortUpToLink = debugCounterService.registerCounter(PACKAGE, "port-up-to-link",
+				"Quarantined ports on which a link was discovered");
+		ctrPortUpToLinkMs = debugCounterService.registerCounter(PACKAGE, "port-up-to-link-ms",
+				"Total time in milliseconds from ports being quarantined to a link being "
+						+ "discovered on them; divide by 'port-up-to-link' for the mean");
+		ctrMaxPortUpToLinkMs = debugCounterService.registerCounter(PACKAGE, "max-port-up-to-link-ms",
+				"Longest time in milliseconds from a port being quarantined to a link being discovered on it");
 	}
 
 	//*********************
@@ -0,0 +1,137 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.linkdiscovery.internal;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import net.floodlightcontroller.core.types.NodePortTuple;
+
+/**
+ * A FIFO of switch ports awaiting a discovery message, such as the
+ * quarantine and maintenance queues of {@link LinkDiscoveryManager}.
+ *
+ * A port is queued at most once. Membership tests, adding, polling and
+ * flagging a port as discovered are all O(1) and lock-free, so the
+ * packet-in path can test membership however many ports are queued.
+ * The FIFO order is kept by a linked queue next to a map of the queued
+ * entries; an entry polled from the queue that is no longer the port's
+ * entry in the map is stale and skipped.
+ */
+class PortQueue {
+
+    /**
+     * A queued port, the time it was queued and whether a link was
+     * discovered on it while it was queued
+     */
+    static class Entry {
+        private final NodePortTuple npt;
+        private final long queuedNs;
+        private volatile boolean discovered;
+
+        private Entry(NodePortTuple npt) {
+            this.npt = npt;
+            this.queuedNs = System.nanoTime();
+        }
+
+        NodePortTuple getNodePortTuple() {
+            return npt;
+        }
+
+        long getQueuedNs() {
+            return queuedNs;
+        }
+
+        boolean isDiscovered() {
+            return discovered;
+        }
+    }
+
+    private final ConcurrentHashMap<NodePortTuple, Entry> entries = new ConcurrentHashMap<NodePortTuple, Entry>();
+    private final ConcurrentLinkedQueue<Entry> order = new ConcurrentLinkedQueue<Entry>();
+
+    /**
+     * @return false if the port was already queued
+     */
+    boolean add(NodePortTuple npt) {
+        Entry e = new Entry(npt);
+        if (entries.putIfAbsent(npt, e) != null) {
+            return false;
+        }
+        order.add(e);
+        return true;
+    }
+
+    /**
+     * @return false if the port was not queued
+     */
+    boolean remove(NodePortTuple npt) {
+        return entries.remove(npt) != null;
+    }
+
+    boolean contains(NodePortTuple npt) {
+        return entries.containsKey(npt);
+    }
+
+    /**
+     * Flag a queued port as having had a link discovered on it, so no
+     * discovery message needs to be sent when it is polled.
+     * @return the time the port was queued, or -1 if it is not queued or
+     * was already flagged
+     */
+    long flagDiscovered(NodePortTuple npt) {
+        Entry e = entries.get(npt);
+        if (e == null || e.discovered) {
+            return -1;
+        }
+        synchronized (e) {
+            if (e.discovered) {
+                return -1;
+            }
+            e.discovered = true;
+        }
+        return e.queuedNs;
+    }
+
+    /**
+     * @return the oldest queued port, or null if there is none
+     */
+    Entry poll() {
+        Entry e;
+        while ((e = order.poll()) != null) {
+            if (entries.remove(e.npt, e)) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * @return a view of the queued ports
+     */
+    Set<NodePortTuple> ports() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+}
@@ -0,0 +1,457 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.packet;
+
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IPv6Address;
+import org.projectfloodlight.openflow.types.IpProtocol;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.TransportPort;
+
+/**
+ * A read-only, flyweight view over the raw bytes of an Ethernet frame,
+ * typically the data of a packet-in. Header fields are parsed straight
+ * from the backing array the first time they are read and only the
+ * offsets are cached, so a listener that only needs the MAC addresses,
+ * the ethertype, the VLAN or the 5-tuple does not pay for building the
+ * {@link Ethernet} object tree. The full {@link Ethernet} is decoded on
+ * request by {@link #getEthernet()}.
+ *
+ * The view does not copy the data; the backing array must not be
+ * modified while the view is in use. The accessors follow the semantics
+ * of the corresponding {@link Ethernet}, {@link IPv4}, {@link IPv6},
+ * {@link ARP}, {@link TCP} and {@link UDP} getters. A view is not thread
+ * safe and is meant to be used by the thread dispatching its packet-in.
+ */
+public class PacketView {
+    private static final int ETH_HEADER_LEN = 14;
+    private static final int VLAN_TAG_LEN = 4;
+    private static final int IPV4_MIN_HEADER_LEN = 20;
+    private static final int IPV6_HEADER_LEN = 40;
+    private static final int ARP_IPV4_LEN = 28;
+    private static final int TCP_MIN_HEADER_LEN = 20;
+    private static final int UDP_HEADER_LEN = 8;
+
+    private static final long BROADCAST_MAC = 0xffffffffffffL;
+    private static final long MULTICAST_BIT = 0x010000000000L;
+
+    private byte[] data;
+    private int offset;
+    private int length;
+    private boolean ethernetOnDemand = true;
+
+    /* L2, parsed on first access */
+    private boolean l2Parsed;
+    private int etherType;
+    private short vlanID;
+    private byte priorityCode;
+    private int l3Offset;
+
+    /* L3/L4, parsed on first access; -1 when not present */
+    private boolean l3Parsed;
+    private int ipProtocol;
+    private int l4Offset;
+    private int l4Length;
+
+    private Ethernet ethernet;
+
+    public PacketView(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    public PacketView(byte[] data, int offset, int length) {
+        wrap(data, offset, length);
+    }
+
+    /**
+     * Create a view of an already decoded frame. The frame is serialized
+     * and kept so that {@link #getEthernet()} does not decode it again.
+     * @param eth the decoded frame
+     * @return a view over the serialized frame
+     */
+    public static PacketView of(Ethernet eth) {
+        PacketView pv = new PacketView(eth.serialize());
+        pv.ethernet = eth;
+        return pv;
+    }
+
+    /**
+     * Point this view at a new frame, dropping everything cached for the
+     * previous one
+     * @param data the backing array
+     * @param offset the offset of the frame in the array
+     * @param length the length of the frame
+     * @return this view
+     */
+    public PacketView wrap(byte[] data, int offset, int length) {
+        if (data == null) {
+            throw new NullPointerException("Packet data must not be null");
+        }
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IndexOutOfBoundsException("Invalid frame bounds offset=" +
+                    offset + ", length=" + length + " for " + data.length + " bytes");
+        }
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+        this.l2Parsed = false;
+        this.l3Parsed = false;
+        this.ethernet = null;
+        return this;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return whether the context store should decode the full
+     * {@link Ethernet} of this frame when a listener asks for it
+     */
+    public boolean isEthernetOnDemand() {
+        return ethernetOnDemand;
+    }
+
+    public PacketView setEthernetOnDemand(boolean ethernetOnDemand) {
+        this.ethernetOnDemand = ethernetOnDemand;
+        return this;
+    }
+
+    /**
+     * @return true if the frame is long enough to hold an Ethernet header;
+     * the other accessors must only be used on a valid view
+     */
+    public boolean isValid() {
+        return length > 16; /* same minimum as Ethernet.deserialize() */
+    }
+
+    /**
+     * @return whether the full {@link Ethernet} has been decoded
+     */
+    public boolean isEthernetDecoded() {
+        return ethernet != null;
+    }
+
+    /**
+     * Decode the whole frame. The result is cached, so later calls and the
+     * field accessors of this view do not decode it again.
+     * @return the decoded frame
+     */
+    public Ethernet getEthernet() {
+        if (ethernet == null) {
+            Ethernet eth = new Ethernet();
+            eth.deserialize(data, offset, length);
+            ethernet = eth;
+        }
+        return ethernet;
+    }
+
+    // ***************
+    // L2
+    // ***************
+
+    public long getDestinationMACLong() {
+        return getLong48(offset);
+    }
+
+    public long getSourceMACLong() {
+        return getLong48(offset + 6);
+    }
+
+    public MacAddress getDestinationMACAddress() {
+        return MacAddress.of(getDestinationMACLong());
+    }
+
+    public MacAddress getSourceMACAddress() {
+        return MacAddress.of(getSourceMACLong());
+    }
+
+    public boolean isBroadcast() {
+        return getDestinationMACLong() == BROADCAST_MAC;
+    }
+
+    public boolean isMulticast() {
+        long mac = getDestinationMACLong();
+        return mac != BROADCAST_MAC && (mac & MULTICAST_BIT) != 0;
+    }
+
+    /**
+     * @return the ethertype following any VLAN tag, as an unsigned value;
+     * 0 if the frame is too short to have one
+     */
+    public int getEtherTypeValue() {
+        parseL2();
+        return etherType;
+    }
+
+    public EthType getEtherType() {
+        return EthType.of(getEtherTypeValue());
+    }
+
+    /**
+     * @return the VLAN ID, or {@link Ethernet#VLAN_UNTAGGED}
+     */
+    public short getVlanID() {
+        parseL2();
+        return vlanID;
+    }
+
+    public byte getPriorityCode() {
+        parseL2();
+        return priorityCode;
+    }
+
+    private void parseL2() {
+        if (l2Parsed) {
+            return;
+        }
+        if (length < ETH_HEADER_LEN) {
+            /* a runt frame has no ethertype and nothing above L2 */
+            priorityCode = 0;
+            vlanID = Ethernet.VLAN_UNTAGGED;
+            etherType = 0;
+            l3Offset = offset + length;
+            l2Parsed = true;
+            return;
+        }
+        int type = getUnsignedShort(offset + 12);
+        int next = offset + ETH_HEADER_LEN;
+        if (type == EthType.VLAN_FRAME.getValue() && next + VLAN_TAG_LEN <= offset + length) {
+            int tci = getUnsignedShort(next);
+            priorityCode = (byte) ((tci >> 13) & 0x07);
+            vlanID = (short) (tci & 0x0fff);
+            type = getUnsignedShort(next + 2);
+            next += VLAN_TAG_LEN;
+        } else {
+            priorityCode = 0;
+            vlanID = Ethernet.VLAN_UNTAGGED;
+        }
+        etherType = type;
+        l3Offset = next;
+        l2Parsed = true;
+    }
+
+    // ***************
+    // L3
+    // ***************
+
+    /**
+     * @return true if the frame carries a parsable IPv4 header
+     */
+    public boolean isIPv4() {
+        return getEtherTypeValue() == (Ethernet.TYPE_IPv4 & 0xffff)
+                && remaining(l3Offset) >= IPV4_MIN_HEADER_LEN
+                && ((data[l3Offset] >> 4) & 0xf) == 4;
+    }
+
+    /**
+     * @return true if the frame carries a parsable IPv6 header
+     */
+    public boolean isIPv6() {
+        return getEtherTypeValue() == (Ethernet.TYPE_IPv6 & 0xffff)
+                && remaining(l3Offset) >= IPV6_HEADER_LEN
+                && ((data[l3Offset] >> 4) & 0xf) == 6;
+    }
+
+    /**
+     * @return true if the frame carries an ARP packet for IPv4 over Ethernet
+     */
+    public boolean isArp() {
+        int type = getEtherTypeValue();
+        return (type == Ethernet.TYPE_ARP || type == (Ethernet.TYPE_RARP & 0xffff))
+                && remaining(l3Offset) >= ARP_IPV4_LEN
+                && data[l3Offset + 4] == 6 && data[l3Offset + 5] == 4;
+    }
+
+    /**
+     * Only valid if {@link #isIPv4()}
+     */
+    public IPv4Address getIPv4SourceAddress() {
+        return IPv4Address.of(getInt(l3Offset + 12));
+    }
+
+    /**
+     * Only valid if {@link #isIPv4()}
+     */
+    public IPv4Address getIPv4DestinationAddress() {
+        return IPv4Address.of(getInt(l3Offset + 16));
+    }
+
+    /**
+     * Only valid if {@link #isIPv6()}
+     */
+    public IPv6Address getIPv6SourceAddress() {
+        return IPv6Address.of(getLong(l3Offset + 8), getLong(l3Offset + 16));
+    }
+
+    /**
+     * Only valid if {@link #isIPv6()}
+     */
+    public IPv6Address getIPv6DestinationAddress() {
+        return IPv6Address.of(getLong(l3Offset + 24), getLong(l3Offset + 32));
+    }
+
+    /**
+     * @return the IPv4 protocol or IPv6 next header, or null if the frame
+     * is not IP
+     */
+    public IpProtocol getIpProtocol() {
+        parseL3();
+        return (ipProtocol < 0) ? null : IpProtocol.of((short) ipProtocol);
+    }
+
+    /**
+     * Only valid if {@link #isArp()}
+     */
+    public short getArpProtocolType() {
+        return (short) getUnsignedShort(l3Offset + 2);
+    }
+
+    /**
+     * Only valid if {@link #isArp()}
+     */
+    public MacAddress getArpSenderHardwareAddress() {
+        return MacAddress.of(getLong48(l3Offset + 8));
+    }
+
+    /**
+     * Only valid if {@link #isArp()}
+     */
+    public IPv4Address getArpSenderProtocolAddress() {
+        return IPv4Address.of(getInt(l3Offset + 14));
+    }
+
+    // ***************
+    // L4
+    // ***************
+
+    /**
+     * @return true if the frame carries a complete TCP or UDP header that
+     * is not part of an IPv4 fragment
+     */
+    public boolean hasTransportPorts() {
+        parseL3();
+        return l4Offset >= 0;
+    }
+
+    /**
+     * Only valid if {@link #hasTransportPorts()}
+     */
+    public TransportPort getTransportSourcePort() {
+        return TransportPort.of(getUnsignedShort(l4Offset));
+    }
+
+    /**
+     * Only valid if {@link #hasTransportPorts()}
+     */
+    public TransportPort getTransportDestinationPort() {
+        return TransportPort.of(getUnsignedShort(l4Offset + 2));
+    }
+
+    /**
+     * Only valid if {@link #hasTransportPorts()} and the protocol is TCP
+     * @return the TCP flags as returned by {@link TCP#getFlags()}
+     */
+    public short getTcpFlags() {
+        return (short) (getUnsignedShort(l4Offset + 12) & 0x1ff);
+    }
+
+    private void parseL3() {
+        if (l3Parsed) {
+            return;
+        }
+        ipProtocol = -1;
+        l4Offset = -1;
+        l4Length = 0;
+        if (isIPv4()) {
+            int headerLength = (data[l3Offset] & 0xf) * 4;
+            int totalLength = getUnsignedShort(l3Offset + 2);
+            int flagsAndOffset = getUnsignedShort(l3Offset + 6);
+            int flags = (flagsAndOffset >> IPv4.IPV4_FLAGS_SHIFT) & IPv4.IPV4_FLAGS_MASK;
+            int fragmentOffset = flagsAndOffset & IPv4.IPV4_OFFSET_MASK;
+            boolean isFragment = ((flags & IPv4.IPV4_FLAGS_DONTFRAG) == 0) &&
+                    ((flags & IPv4.IPV4_FLAGS_MOREFRAG) != 0 || fragmentOffset != 0);
+            ipProtocol = data[l3Offset + 9] & 0xff;
+            if (!isFragment && headerLength >= IPV4_MIN_HEADER_LEN) {
+                setTransport(l3Offset + headerLength,
+                        Math.min(totalLength - headerLength,
+                                remaining(l3Offset + headerLength)));
+            }
+        } else if (isIPv6()) {
+            int payloadLength = getUnsignedShort(l3Offset + 4);
+            ipProtocol = data[l3Offset + 6] & 0xff;
+            setTransport(l3Offset + IPV6_HEADER_LEN,
+                    Math.min(payloadLength, remaining(l3Offset + IPV6_HEADER_LEN)));
+        }
+        l3Parsed = true;
+    }
+
+    private void setTransport(int start, int len) {
+        if (ipProtocol == IpProtocol.TCP.getIpProtocolNumber()) {
+            if (len >= TCP_MIN_HEADER_LEN && ((data[start + 12] >> 4) & 0xf) >= 5) {
+                l4Offset = start;
+                l4Length = len;
+            }
+        } else if (ipProtocol == IpProtocol.UDP.getIpProtocolNumber()) {
+            if (len >= UDP_HEADER_LEN) {
+                l4Offset = start;
+                l4Length = len;
+            }
+        }
+    }
+
+    /**
+     * @return the length of the transport segment, header included, or 0
+     * if the frame has no transport ports
+     */
+    public int getTransportLength() {
+        parseL3();
+        return l4Length;
+    }
+
+    // ***************
+    // Byte access
+    // ***************
+
+    private int remaining(int from) {
+        return offset + length - from;
+    }
+
+    private int getUnsignedShort(int i) {
+        return ((data[i] & 0xff) << 8) | (data[i + 1] & 0xff);
+    }
+
+    private int getInt(int i) {
+        return ((data[i] & 0xff) << 24) | ((data[i + 1] & 0xff) << 16)
+                | ((data[i + 2] & 0xff) << 8) | (data[i + 3] & 0xff);
+    }
+
+    private long getLong48(int i) {
+        return ((long) getUnsignedShort(i) << 32) | (getInt(i + 2) & 0xffffffffL);
+    }
+
+    private long getLong(int i) {
+        return ((long) getInt(i) << 32) | (getInt(i + 4) & 0xffffffffL);
+    }
+}
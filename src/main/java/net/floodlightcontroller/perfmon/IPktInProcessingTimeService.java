@@ -28,7 +28,7 @@ import net.floodlightcontroller.core.module.IFloodlightService;
 public interface IPktInProcessingTimeService extends IFloodlightService {
 
     /**
-     * Creates time buckets for a set of modules to measure their performance
+     * Prepares to measure the performance of a set of modules
      */
     public void bootstrap();
 
@@ -49,10 +49,27 @@ public interface IPktInProcessingTimeService extends IFloodlightService {
     public void recordStartTimePktIn();
     
     public void recordEndTimePktIn(IOFSwitch sw, OFMessage m, FloodlightContext cntx);
+
+    /**
+     * Ends the measurement of a batch of packet-ins that went through the
+     * listener chain together, recording each the batch's time shared out
+     * evenly among them
+     * @param count the number of packet-ins in the batch
+     */
+    public void recordEndTimePktIns(int count);
     
     public boolean isEnabled();
     
     public void setEnabled(boolean enabled);
     
-    public CumulativeTimeBucket getCtb();
+    /**
+     * Get the processing latencies, per message type, of the listener chain
+     * and of each listener, since the last reset and over the last window
+     */
+    public PerfMonData getPerfMonData();
+
+    /**
+     * Start counting the latencies since the last reset afresh
+     */
+    public void reset();
 }
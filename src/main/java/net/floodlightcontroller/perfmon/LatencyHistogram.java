@@ -0,0 +1,170 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.perfmon;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in nanoseconds with log-linear buckets: every
+ * power of two is split into {@link #SUB_BUCKETS} equal buckets, so a
+ * percentile read from it is within 1/{@link #SUB_BUCKETS} of the true
+ * value whatever its magnitude.  Values below {@link #SUB_BUCKETS} ns get
+ * a bucket each, and values above {@link #MAX_VALUE} are counted as
+ * {@link #MAX_VALUE}.
+ *
+ * A LatencyHistogram is not thread-safe; it is what recorders are merged
+ * into for reading.  Recording from the packet processing threads goes
+ * through a {@link Recorder} per thread.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    public static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /**
+     * Largest value that is told apart, about 68 seconds
+     */
+    public static final long MAX_VALUE = (1L << 36) - 1;
+
+    static final int BUCKETS = bucketOf(MAX_VALUE) + 1;
+
+    private final long[] counts = new long[BUCKETS];
+
+    /**
+     * Get the bucket a value is counted in
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return value < 0 ? 0 : (int) value;
+        }
+        if (value > MAX_VALUE) {
+            value = MAX_VALUE;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return ((shift + 1) << SUB_BITS) + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * Get the largest value counted in a bucket
+     */
+    static long highestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BITS) - 1;
+        long lowest = (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    public void record(long value) {
+        counts[bucketOf(value)]++;
+    }
+
+    /**
+     * Add the counts of another histogram to this one
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+    }
+
+    /**
+     * Get the values recorded in this histogram since an earlier copy of it
+     * @param earlier an earlier copy, or null for all the values
+     * @return a new histogram
+     */
+    public LatencyHistogram since(LatencyHistogram earlier) {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 0; i < BUCKETS; i++) {
+            h.counts[i] = counts[i] - (earlier == null ? 0 : earlier.counts[i]);
+        }
+        return h;
+    }
+
+    public long getCount() {
+        long n = 0;
+        for (long c : counts) {
+            n += c;
+        }
+        return n;
+    }
+
+    /**
+     * Get the value below which the given percentage of the values fall,
+     * rounded up to the top of its bucket
+     * @param percentile between 0 and 100
+     * @return the value in ns, or 0 if the histogram is empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return highestValueIn(i);
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * @return the top of the highest bucket with a value, 0 if none
+     */
+    public long getMax() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (counts[i] != 0) {
+                return highestValueIn(i);
+            }
+        }
+        return 0;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+    }
+
+    /**
+     * Counts the values recorded by one thread.  Only the owning thread may
+     * call {@link #record(long)}, which then needs neither a lock nor an
+     * atomic update; any thread may {@link #addTo(LatencyHistogram)} the
+     * counts so far.
+     */
+    public static class Recorder {
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+        public void record(long value) {
+            record(value, 1);
+        }
+
+        /**
+         * Record the same value a number of times
+         */
+        public void record(long value, long times) {
+            int i = bucketOf(value);
+            counts.lazySet(i, counts.get(i) + times);
+        }
+
+        public void addTo(LatencyHistogram h) {
+            for (int i = 0; i < BUCKETS; i++) {
+                h.counts[i] += counts.get(i);
+            }
+        }
+    }
+}
@@ -42,9 +42,6 @@ import net.floodlightcontroller.core.module.IFloodlightService;
 public class NullPktInProcessingTime 
     implements IFloodlightModule, IPktInProcessingTimeService {
     
-    private CumulativeTimeBucket ctb;
-    private boolean inited = false;
-    
     public Collection<Class<? extends IFloodlightService>> getModuleServices() {
         Collection<Class<? extends IFloodlightService>> l = 
                 new ArrayList<Class<? extends IFloodlightService>>();
@@ -88,13 +85,12 @@ public class NullPktInProcessingTime
 
     @Override
     public void bootstrap() {
-        if (!inited)
-            ctb = new CumulativeTimeBucket();
+
     }
 
     @Override
     public void addListener(IOFMessageListener listener) {
-        ctb.addListener(listener);
+
     }
 
     @Override
@@ -118,13 +114,23 @@ public class NullPktInProcessingTime
         
     }
 
+    @Override
+    public void recordEndTimePktIns(int count) {
+
+    }
+
     @Override
     public void setEnabled(boolean enabled) {
     
     }
 
     @Override
-    public CumulativeTimeBucket getCtb() {
-        return ctb;
+    public PerfMonData getPerfMonData() {
+        return new PerfMonData(System.currentTimeMillis(), 0);
+    }
+
+    @Override
+    public void reset() {
+
     }
 }
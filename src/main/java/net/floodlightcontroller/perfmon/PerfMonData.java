@@ -0,0 +1,123 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.perfmon;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.projectfloodlight.openflow.protocol.OFType;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * A snapshot of the OF message processing latencies, per message type: of
+ * the whole listener chain, and of each listener in it.  Each latency has
+ * its histogram since the last reset, and over the last complete window.
+ */
+@JsonSerialize(using=PerfMonDataJSONSerializer.class)
+public class PerfMonData {
+
+    /**
+     * The latencies of one listener, or of the whole chain
+     */
+    public static class Latencies {
+        private final String name;
+        private final LatencyHistogram sinceReset;
+        private final LatencyHistogram lastWindow;
+
+        public Latencies(String name, LatencyHistogram sinceReset,
+                         LatencyHistogram lastWindow) {
+            this.name = name;
+            this.sinceReset = sinceReset;
+            this.lastWindow = lastWindow;
+        }
+
+        /**
+         * @return the listener class name, null for the whole chain
+         */
+        public String getName() {
+            return name;
+        }
+
+        public LatencyHistogram getSinceReset() {
+            return sinceReset;
+        }
+
+        public LatencyHistogram getLastWindow() {
+            return lastWindow;
+        }
+    }
+
+    /**
+     * The latencies of the messages of one type
+     */
+    public static class TypeLatencies {
+        private final OFType type;
+        private final Latencies total;
+        private final List<Latencies> modules = new ArrayList<Latencies>();
+
+        public TypeLatencies(OFType type, Latencies total) {
+            this.type = type;
+            this.total = total;
+        }
+
+        public OFType getType() {
+            return type;
+        }
+
+        public Latencies getTotal() {
+            return total;
+        }
+
+        public List<Latencies> getModules() {
+            return modules;
+        }
+    }
+
+    private final long startTimeMs;
+    private final int windowSeconds;
+    private final List<TypeLatencies> types = new ArrayList<TypeLatencies>();
+
+    public PerfMonData(long startTimeMs, int windowSeconds) {
+        this.startTimeMs = startTimeMs;
+        this.windowSeconds = windowSeconds;
+    }
+
+    /**
+     * @return the time of the last reset
+     */
+    public long getStartTimeMs() {
+        return startTimeMs;
+    }
+
+    public int getWindowSeconds() {
+        return windowSeconds;
+    }
+
+    public List<TypeLatencies> getTypes() {
+        return types;
+    }
+
+    /**
+     * @return the number of messages processed since the last reset
+     */
+    public long getTotalPktCnt() {
+        long n = 0;
+        for (TypeLatencies t : types) {
+            n += t.getTotal().getSinceReset().getCount();
+        }
+        return n;
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.perfmon;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+public class PerfMonDataJSONSerializer extends JsonSerializer<PerfMonData> {
+    /**
+     * Performs the serialization of a PerfMonData object.  All latencies
+     * are in nanoseconds.
+     */
+    @Override
+    public void serialize(PerfMonData data,
+                          JsonGenerator jGen,
+                          SerializerProvider serializer)
+                          throws IOException, JsonProcessingException {
+        jGen.writeStartObject();
+        jGen.writeStringField("start-time",
+                new Timestamp(data.getStartTimeMs()).toString());
+        jGen.writeStringField("current-time",
+                new Timestamp(System.currentTimeMillis()).toString());
+        jGen.writeNumberField("window-seconds", data.getWindowSeconds());
+        jGen.writeNumberField("total-packets", data.getTotalPktCnt());
+        jGen.writeArrayFieldStart("types");
+        for (PerfMonData.TypeLatencies t : data.getTypes()) {
+            jGen.writeStartObject();
+            jGen.writeStringField("type", t.getType().toString());
+            writeLatencies(jGen, t.getTotal());
+            jGen.writeArrayFieldStart("modules");
+            for (PerfMonData.Latencies l : t.getModules()) {
+                jGen.writeStartObject();
+                jGen.writeStringField("module-name", l.getName());
+                writeLatencies(jGen, l);
+                jGen.writeEndObject();
+            }
+            jGen.writeEndArray();
+            jGen.writeEndObject();
+        }
+        jGen.writeEndArray();
+        jGen.writeEndObject();
+    }
+
+    private static void writeLatencies(JsonGenerator jGen,
+                                       PerfMonData.Latencies l)
+                                       throws IOException {
+        jGen.writeFieldName("total");
+        writeHistogram(jGen, l.getSinceReset());
+        jGen.writeFieldName("window");
+        writeHistogram(jGen, l.getLastWindow());
+    }
+
+    private static void writeHistogram(JsonGenerator jGen,
+                                       LatencyHistogram h)
+                                       throws IOException {
+        jGen.writeStartObject();
+        jGen.writeNumberField("num-packets", h.getCount());
+        jGen.writeNumberField("p50", h.getValueAtPercentile(50));
+        jGen.writeNumberField("p99", h.getValueAtPercentile(99));
+        jGen.writeNumberField("p99.9", h.getValueAtPercentile(99.9));
+        jGen.writeNumberField("max", h.getMax());
+        jGen.writeEndObject();
+    }
+
+    /**
+     * Tells SimpleModule that we are the serializer for PerfMonData
+     */
+    @Override
+    public Class<PerfMonData> handledType() {
+        return PerfMonData.class;
+    }
+}
@@ -31,7 +31,7 @@ public class PerfMonDataResource extends ServerResource {
     protected static Logger logger = LoggerFactory.getLogger(PerfMonDataResource.class);  
     
     @Get("json")
-    public CumulativeTimeBucket handleApiQuery() {        
+    public PerfMonData handleApiQuery() {        
         IPktInProcessingTimeService pktinProcTime = 
             (IPktInProcessingTimeService)getContext().getAttributes().
                 get(IPktInProcessingTimeService.class.getCanonicalName());
@@ -45,9 +45,7 @@ public class PerfMonDataResource extends ServerResource {
         }
         // Allocate output object
         if (pktinProcTime.isEnabled()) {
-            CumulativeTimeBucket ctb = pktinProcTime.getCtb();
-            ctb.computeAverages();
-            return ctb;
+            return pktinProcTime.getPerfMonData();
         }
         
         return null;
@@ -54,7 +54,7 @@ public class PerfMonToggleResource extends ServerResource {
             if (!pktInProcessingTimeService.isEnabled()) {
                 pktInProcessingTimeService.setEnabled(true);
             }
-            pktInProcessingTimeService.getCtb().reset();
+            pktInProcessingTimeService.reset();
         }
         else if (param.equals("enable")) {
             pktInProcessingTimeService.setEnabled(true);
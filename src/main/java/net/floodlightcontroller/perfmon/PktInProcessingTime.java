@@ -24,6 +24,10 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
@@ -34,6 +38,7 @@ import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.restserver.IRestApiService;
+import net.floodlightcontroller.threadpool.IThreadPoolService;
 
 import org.projectfloodlight.openflow.protocol.OFMessage;
 import org.projectfloodlight.openflow.protocol.OFType;
@@ -41,28 +46,32 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * This class contains a set of buckets (called time buckets as the
- * primarily contain 'times' that are used in a circular way to 
- * store information on packet in processing time.
- * Each bucket is meant to store the various processing time 
- * related data for a fixed duration.
- * Buckets are reused to reduce garbage generation! Once the
- * last bucket is used up the LRU bucket is reused.
- * 
+ * Measures the time the OF message listeners take to process each message,
+ * as latency histograms per message type: one for the whole listener
+ * chain, and one for each listener in it.
+ *
+ * Each thread that dispatches messages records into histograms of its
+ * own, so recording takes no lock and shares no cache line with other
+ * threads. The times of the listeners are held until the end of the
+ * chain, where the message type is known. Reading merges the histograms
+ * of all the threads; a reset only moves the baseline that reads subtract.
+ * Every WINDOW_SECONDS the histograms are also snapshotted, so that the
+ * latencies over the last complete window can be told apart from those
+ * since the last reset.
+ *
  * Naming convention for variable or constants
  * variable_s : value in seconds
  * variable_ms: value in milliseconds
  * variable_us: value in microseconds
  * variable_ns: value in nanoseconds
- * 
+ *
  * Key Constants:
- * ONE_BUCKET_DURATION_SECONDS_INT:  time duration of each bucket
- * BUCKET_SET_SIZE: Number of buckets
- * TOT_PROC_TIME_WARN_THRESHOLD_US: if processing time for a packet
- *    exceeds this threshold then a warning LOG message is generated
- * TOT_PROC_TIME_ALERT_THRESHOLD_US: same as above but an alert level
- *    syslog is generated instead
- * 
+ * WINDOW_SECONDS: time duration of each window
+ * The system property
+ * net.floodlightcontroller.core.PTWarningThresholdInMilli: if processing
+ *    time for a packet exceeds this threshold then a warning LOG message
+ *    is generated
+ *
  */
 public class PktInProcessingTime
     implements IFloodlightModule, IPktInProcessingTimeService {
@@ -71,6 +80,7 @@ public class PktInProcessingTime
 	protected IFloodlightProviderService floodlightProvider;
     // Our dependencies
     private IRestApiService restApi;
+    private IThreadPoolService threadPool;
     
     protected long ptWarningThresholdInNano;
 
@@ -82,31 +92,131 @@ public class PktInProcessingTime
     protected static  Logger  logger = 
         LoggerFactory.getLogger(PktInProcessingTime.class);
     
-    protected boolean isEnabled = false;
-    protected boolean isInited = false;
-    // Maintains the time when the last packet was processed
-    protected long lastPktTime_ns;
-    private CumulativeTimeBucket ctb = null;
+    protected volatile boolean isEnabled = false;
 
-    
     /***
-     * BUCKET_SET_SIZE buckets each holding 10s of processing time data, a total
-     * of 30*10s = 5mins of processing time data is maintained
+     * Length of the window whose latencies are reported next to those
+     * since the last reset
      */
-    protected static final int ONE_BUCKET_DURATION_SECONDS = 10;// seconds
-    protected static final long ONE_BUCKET_DURATION_NANOSECONDS  =
-                                ONE_BUCKET_DURATION_SECONDS * 1000000000;
+    protected static final int WINDOW_SECONDS = 10;// seconds
+
+    private static final OFType[] TYPES = OFType.values();
+
+    /**
+     * Slot of the histograms of the whole listener chain; listener i has
+     * slot i + 1
+     */
+    private static final int CHAIN = 0;
+
+    private final ConcurrentHashMap<IOFMessageListener, Integer> listenerSlots =
+            new ConcurrentHashMap<IOFMessageListener, Integer>();
+    private final List<String> listenerNames = new CopyOnWriteArrayList<String>();
+
+    /**
+     * The recorders of all threads, for merging.  A thread keeps its
+     * recorders for as long as the module lives; the threads that dispatch
+     * messages come from fixed pools.
+     */
+    private final ConcurrentLinkedQueue<Slot> slots =
+            new ConcurrentLinkedQueue<Slot>();
+
+    private static class Slot extends LatencyHistogram.Recorder {
+        final int type;
+        final int slot;
+
+        Slot(int type, int slot) {
+            this.type = type;
+            this.slot = slot;
+        }
+    }
+
+    /**
+     * The recording state of one dispatching thread
+     */
+    private class ThreadState {
+        long startTimePktNs;
+        long startTimeCompNs;
+        // slots and times of the listeners the current message went through
+        int[] compSlots = new int[16];
+        long[] compTimesNs = new long[16];
+        int comps;
+        final Slot[][] recorders = new Slot[TYPES.length][];
+
+        void addComp(int slot, long procTimeNs) {
+            if (comps == compSlots.length) {
+                int[] s = new int[comps * 2];
+                long[] t = new long[comps * 2];
+                System.arraycopy(compSlots, 0, s, 0, comps);
+                System.arraycopy(compTimesNs, 0, t, 0, comps);
+                compSlots = s;
+                compTimesNs = t;
+            }
+            compSlots[comps] = slot;
+            compTimesNs[comps++] = procTimeNs;
+        }
+
+        Slot recorder(int type, int slot) {
+            Slot[] r = recorders[type];
+            if (r == null || slot >= r.length) {
+                Slot[] grown = new Slot[Math.max(slot + 1,
+                                                 listenerNames.size() + 1)];
+                if (r != null) {
+                    System.arraycopy(r, 0, grown, 0, r.length);
+                }
+                recorders[type] = r = grown;
+            }
+            if (r[slot] == null) {
+                r[slot] = new Slot(type, slot);
+                slots.add(r[slot]);
+            }
+            return r[slot];
+        }
+    }
+
+    private final ThreadLocal<ThreadState> threadState =
+            new ThreadLocal<ThreadState>() {
+        @Override
+        protected ThreadState initialValue() {
+            return new ThreadState();
+        }
+    };
+
+    // Merged counts at the last reset, at the start of the current window,
+    // and those recorded during the last complete window, keyed by
+    // key(type, slot).  Guarded by this.
+    private Map<Long, LatencyHistogram> resetCounts =
+            new HashMap<Long, LatencyHistogram>();
+    private Map<Long, LatencyHistogram> windowCounts =
+            new HashMap<Long, LatencyHistogram>();
+    private Map<Long, LatencyHistogram> lastWindow =
+            new HashMap<Long, LatencyHistogram>();
+    private long resetTimeMs = System.currentTimeMillis();
 
     @Override
     public void bootstrap() {
-        if (ctb == null) {
-            ctb = new CumulativeTimeBucket();
-        }
+        // the histograms are created as they are first recorded into
     }
 
     @Override
     public void addListener(IOFMessageListener listener) {
-        ctb.addListener(listener);
+        if (isEnabled()) {
+            slotOf(listener);
+        }
+    }
+
+    private int slotOf(IOFMessageListener listener) {
+        Integer slot = listenerSlots.get(listener);
+        if (slot == null) {
+            synchronized (listenerSlots) {
+                slot = listenerSlots.get(listener);
+                if (slot == null) {
+                    listenerNames.add(listener.getClass().getCanonicalName());
+                    slot = listenerNames.size();
+                    listenerSlots.put(listener, slot);
+                }
+            }
+        }
+        return slot;
     }
 
     @Override
@@ -116,54 +226,150 @@ public class PktInProcessingTime
     
     @Override
     public void setEnabled(boolean enabled) {
-    	if(enabled){
-            bootstrap();
-    	}
         this.isEnabled = enabled;
         logger.debug("Setting module to " + isEnabled);
     }
-    
-    @Override
-    public CumulativeTimeBucket getCtb() {
-        return ctb;
-    }
-    
-    private long startTimePktNs;
-    private long startTimeCompNs;
+
     @Override
     public void recordStartTimeComp(IOFMessageListener listener) {
         if (isEnabled()) {
-            startTimeCompNs = System.nanoTime();
+            threadState.get().startTimeCompNs = System.nanoTime();
         }
     }
     
     @Override
     public void recordEndTimeComp(IOFMessageListener listener) {
         if (isEnabled()) {
-            long procTime = System.nanoTime() - startTimeCompNs;
-            ctb.updateOneComponent(listener, procTime);
+            ThreadState ts = threadState.get();
+            if (ts.startTimeCompNs != 0) {
+                ts.addComp(slotOf(listener), System.nanoTime() - ts.startTimeCompNs);
+                ts.startTimeCompNs = 0;
+            }
         }
     }
     
     @Override
     public void recordStartTimePktIn() {
         if (isEnabled()) {
-            startTimePktNs = System.nanoTime();
+            ThreadState ts = threadState.get();
+            ts.comps = 0;
+            ts.startTimePktNs = System.nanoTime();
         }
     }
     
     @Override
     public void recordEndTimePktIn(IOFSwitch sw, OFMessage m, FloodlightContext cntx) {
         if (isEnabled()) {
-            long procTimeNs = System.nanoTime() - startTimePktNs;
-            ctb.updatePerPacketCounters(procTimeNs);
-            
-            if (ptWarningThresholdInNano > 0 && 
-                    procTimeNs > ptWarningThresholdInNano) {
-                logger.warn("Time to process packet-in exceeded threshold: {}", 
-                            procTimeNs/1000);
+            recordEnd(m.getType().ordinal(), 1);
+        }
+    }
+
+    @Override
+    public void recordEndTimePktIns(int count) {
+        if (isEnabled() && count > 0) {
+            recordEnd(OFType.PACKET_IN.ordinal(), count);
+        }
+    }
+
+    /**
+     * Record the times of the chain and of each listener since the start,
+     * as count messages each taking an even share of them
+     */
+    private void recordEnd(int type, int count) {
+        ThreadState ts = threadState.get();
+        if (ts.startTimePktNs == 0) {
+            // enabled in the middle of this message
+            return;
+        }
+        long procTimeNs = (System.nanoTime() - ts.startTimePktNs) / count;
+        ts.recorder(type, CHAIN).record(procTimeNs, count);
+        for (int i = 0; i < ts.comps; i++) {
+            ts.recorder(type, ts.compSlots[i]).record(ts.compTimesNs[i] / count, count);
+        }
+        ts.comps = 0;
+        ts.startTimePktNs = 0;
+        
+        if (ptWarningThresholdInNano > 0 && 
+                procTimeNs > ptWarningThresholdInNano) {
+            logger.warn("Time to process packet-in exceeded threshold: {}", 
+                        procTimeNs/1000);
+        }
+    }
+
+    private static long key(int type, int slot) {
+        return ((long) type << 32) | slot;
+    }
+
+    /**
+     * Merge the recorders of all threads
+     */
+    private Map<Long, LatencyHistogram> merge() {
+        Map<Long, LatencyHistogram> merged = new HashMap<Long, LatencyHistogram>();
+        for (Slot s : slots) {
+            long k = key(s.type, s.slot);
+            LatencyHistogram h = merged.get(k);
+            if (h == null) {
+                h = new LatencyHistogram();
+                merged.put(k, h);
+            }
+            s.addTo(h);
+        }
+        return merged;
+    }
+
+    private static LatencyHistogram since(Map<Long, LatencyHistogram> now,
+                                          Map<Long, LatencyHistogram> earlier,
+                                          long k) {
+        LatencyHistogram h = now.get(k);
+        return (h == null) ? new LatencyHistogram() : h.since(earlier.get(k));
+    }
+
+    /**
+     * Close the current window and start the next
+     */
+    protected synchronized void rollWindow() {
+        Map<Long, LatencyHistogram> now = merge();
+        Map<Long, LatencyHistogram> window = new HashMap<Long, LatencyHistogram>();
+        for (Long k : now.keySet()) {
+            window.put(k, since(now, windowCounts, k));
+        }
+        lastWindow = window;
+        windowCounts = now;
+    }
+
+    @Override
+    public synchronized void reset() {
+        resetCounts = merge();
+        windowCounts = resetCounts;
+        lastWindow = new HashMap<Long, LatencyHistogram>();
+        resetTimeMs = System.currentTimeMillis();
+    }
+
+    @Override
+    public synchronized PerfMonData getPerfMonData() {
+        Map<Long, LatencyHistogram> now = merge();
+        PerfMonData data = new PerfMonData(resetTimeMs, WINDOW_SECONDS);
+        for (int type = 0; type < TYPES.length; type++) {
+            PerfMonData.TypeLatencies t = null;
+            for (int slot = 0; slot <= listenerNames.size(); slot++) {
+                long k = key(type, slot);
+                if (!now.containsKey(k)) {
+                    continue;
+                }
+                LatencyHistogram window = lastWindow.get(k);
+                PerfMonData.Latencies l = new PerfMonData.Latencies(
+                        slot == CHAIN ? null : listenerNames.get(slot - 1),
+                        since(now, resetCounts, k),
+                        window == null ? new LatencyHistogram() : window);
+                if (slot == CHAIN) {
+                    t = new PerfMonData.TypeLatencies(TYPES[type], l);
+                    data.getTypes().add(t);
+                } else if (t != null) {
+                    t.getModules().add(l);
+                }
             }
         }
+        return data;
     }
     
     // IFloodlightModule methods
@@ -194,6 +400,7 @@ public class PktInProcessingTime
                 new ArrayList<Class<? extends IFloodlightService>>();
         l.add(IRestApiService.class);
         l.add(IFloodlightProviderService.class);
+        l.add(IThreadPoolService.class);
         return l;
     }
     
@@ -203,12 +410,20 @@ public class PktInProcessingTime
     	floodlightProvider = context
                 .getServiceImpl(IFloodlightProviderService.class);
         restApi = context.getServiceImpl(IRestApiService.class);
+        threadPool = context.getServiceImpl(IThreadPoolService.class);
     }
     
     @Override
     public void startUp(FloodlightModuleContext context) {
         // Add our REST API
         restApi.addRestletRoutable(new PerfWebRoutable());
+
+        threadPool.getScheduledExecutor().scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                rollWindow();
+            }
+        }, WINDOW_SECONDS, WINDOW_SECONDS, TimeUnit.SECONDS);
         
         // TODO - Alex - change this to a config option
         ptWarningThresholdInNano = Long.parseLong(System.getProperty(
@@ -151,7 +151,7 @@ public abstract class ForwardingBase implements IOFMessageListener {
         case PACKET_IN:
             IRoutingDecision decision = null;
             if (cntx != null) {
-                decision = RoutingDecision.rtStore.get(cntx, IRoutingDecision.CONTEXT_DECISION);
+                decision = RoutingDecision.rtStore.get(cntx, IRoutingDecision.CONTEXT_DECISION_SLOT);
             }
 
             return this.processPacketInMessage(sw, (OFPacketIn) msg, decision, cntx);
@@ -0,0 +1,86 @@
+package net.floodlightcontroller.statistics;
+
+import org.projectfloodlight.openflow.protocol.OFFlowStatsEntry;
+import org.projectfloodlight.openflow.protocol.match.Match;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.TableId;
+import org.projectfloodlight.openflow.types.U64;
+
+/**
+ * Identifies a flow across flow stats replies: the switch, table,
+ * priority, match and cookie of the flow.
+ */
+public class FlowStatsKey {
+	private final DatapathId id;
+	private final TableId table;
+	private final int priority;
+	private final Match match;
+	private final U64 cookie;
+
+	private FlowStatsKey(DatapathId id, TableId table, int priority, Match match, U64 cookie) {
+		this.id = id;
+		this.table = table;
+		this.priority = priority;
+		this.match = match;
+		this.cookie = cookie;
+	}
+
+	public static FlowStatsKey of(DatapathId id, OFFlowStatsEntry e) {
+		if (id == null) {
+			throw new IllegalArgumentException("Datapath ID cannot be null");
+		}
+		return new FlowStatsKey(id, e.getTableId(), e.getPriority(), e.getMatch(), e.getCookie());
+	}
+
+	public DatapathId getSwitchId() {
+		return id;
+	}
+
+	public TableId getTableId() {
+		return table;
+	}
+
+	public int getPriority() {
+		return priority;
+	}
+
+	public Match getMatch() {
+		return match;
+	}
+
+	public U64 getCookie() {
+		return cookie;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + id.hashCode();
+		result = prime * result + table.hashCode();
+		result = prime * result + priority;
+		result = prime * result + match.hashCode();
+		result = prime * result + cookie.hashCode();
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof FlowStatsKey))
+			return false;
+		FlowStatsKey other = (FlowStatsKey) obj;
+		return priority == other.priority
+				&& id.equals(other.id)
+				&& table.equals(other.table)
+				&& match.equals(other.match)
+				&& cookie.equals(other.cookie);
+	}
+
+	@Override
+	public String toString() {
+		return "FlowStatsKey [id=" + id + ", table=" + table + ", priority=" + priority
+				+ ", match=" + match + ", cookie=" + cookie + "]";
+	}
+}
@@ -2,16 +2,53 @@ package net.floodlightcontroller.statistics;
 
 import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.core.types.NodePortTuple;
+import org.projectfloodlight.openflow.protocol.OFStatsReply;
+import org.projectfloodlight.openflow.protocol.OFStatsType;
 import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.OFPort;
 
+import java.util.List;
 import java.util.Map;
 
 public interface IStatisticsService extends IFloodlightService {
 
+	/* columns of the port and flow histories */
+	public static final int PORT_RX_BYTES = 0;
+	public static final int PORT_TX_BYTES = 1;
+	public static final int FLOW_PACKETS = 0;
+	public static final int FLOW_BYTES = 1;
+
 	public SwitchPortBandwidth getBandwidthConsumption(DatapathId dpid, OFPort p);
 		
 	public Map<NodePortTuple, SwitchPortBandwidth> getBandwidthConsumption();
+
+	/**
+	 * @param windowMs how far back to average over, in milliseconds
+	 * @return the bandwidth averaged over the window, or null if fewer
+	 * than two samples of the port fall within it
+	 */
+	public SwitchPortBandwidth getAverageBandwidthConsumption(DatapathId dpid, OFPort p, long windowMs);
+
+	/**
+	 * @return the RX and TX byte count history of the port, or null
+	 * @see #PORT_RX_BYTES
+	 * @see #PORT_TX_BYTES
+	 */
+	public TimeSeries getPortHistory(DatapathId dpid, OFPort p);
+
+	/**
+	 * @return the packet and byte count history of each flow of the switch
+	 * @see #FLOW_PACKETS
+	 * @see #FLOW_BYTES
+	 */
+	public Map<FlowStatsKey, TimeSeries> getFlowHistory(DatapathId dpid);
+
+	/**
+	 * @param statsType one of the collected types: PORT, FLOW, TABLE, GROUP or METER
+	 * @return the latest reply of each switch to the collector's requests
+	 * of the type; empty for types that are not collected
+	 */
+	public Map<DatapathId, List<OFStatsReply>> getStatistics(OFStatsType statsType);
 	
 	public void collectStatistics(boolean collect);
 }
@@ -1,14 +1,21 @@
 package net.floodlightcontroller.statistics;
 
 import com.google.common.primitives.UnsignedLong;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.IOFSwitchListener;
+import net.floodlightcontroller.core.PortChangeType;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.core.types.NodePortTuple;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.debugcounter.IDebugCounterService.MetaData;
 import net.floodlightcontroller.restserver.IRestApiService;
 import net.floodlightcontroller.statistics.web.SwitchStatisticsWebRoutable;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
@@ -22,103 +29,174 @@ import org.projectfloodlight.openflow.types.U64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.Thread.State;
 import java.util.*;
-import java.util.Map.Entry;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
-public class StatisticsCollector implements IFloodlightModule, IStatisticsService {
+/**
+ * Periodically collects statistics from all switches.
+ *
+ * Each collected stats type (PORT, FLOW, TABLE, GROUP and METER) runs in
+ * rounds on its own interval. A round does not poll the switches all at
+ * once; the requests of a round are spread evenly across its interval,
+ * and at most a fixed number of requests are outstanding at any time.
+ * Requests are sent with {@link IOFSwitch#writeStatsRequest(OFStatsRequest)}
+ * and their replies are handled by future callbacks on the shared
+ * scheduled executor, so no thread waits on a switch. A request that is
+ * not answered within half of its interval is cancelled and counted as a
+ * timeout, and a switch is not asked again for a stats type while its
+ * previous request for it is outstanding.
+ *
+ * The byte counts of each port and the packet and byte counts of each
+ * flow are kept in fixed-size {@link TimeSeriesStore}s with retention
+ * tiers, from which the REST API serves ranges and rates and routing
+ * reads the average port utilization.
+ */
+public class StatisticsCollector implements IFloodlightModule, IStatisticsService, IOFSwitchListener {
 	private static final Logger log = LoggerFactory.getLogger(StatisticsCollector.class);
 
 	private static IOFSwitchService switchService;
 	private static IThreadPoolService threadPoolService;
 	private static IRestApiService restApiService;
+	private static IDebugCounterService debugCounterService;
 
 	private static boolean isEnabled = false;
-	
+
 	private static int portStatsInterval = 10; /* could be set by REST API, so not final */
-	private static ScheduledFuture<?> portStatsCollector;
+
+	/* stats types collected and their intervals in seconds; 0 disables a type */
+	private static final Map<OFStatsType, Integer> statsIntervals = new EnumMap<OFStatsType, Integer>(OFStatsType.class);
+	private static final Map<OFStatsType, ScheduledFuture<?>> statsCollectors = new EnumMap<OFStatsType, ScheduledFuture<?>>(OFStatsType.class);
+	private static final Map<OFStatsType, ConcurrentMap<DatapathId, List<OFStatsReply>>> latestReplies = new EnumMap<OFStatsType, ConcurrentMap<DatapathId, List<OFStatsReply>>>(OFStatsType.class);
+
+	private static int maxInFlight = 64;
+	private static Semaphore inFlight = new Semaphore(maxInFlight);
+	private static final Queue<StatsRequest> pendingRequests = new ConcurrentLinkedQueue<StatsRequest>();
+	private static final Set<StatsRequest> outstandingRequests = Collections.newSetFromMap(new ConcurrentHashMap<StatsRequest, Boolean>());
 
 	private static final long BITS_PER_BYTE = 8;
 	private static final long MILLIS_PER_SEC = 1000;
-	
+
 	private static final String INTERVAL_PORT_STATS_STR = "collectionIntervalPortStatsSeconds";
+	private static final String INTERVAL_FLOW_STATS_STR = "collectionIntervalFlowStatsSeconds";
+	private static final String INTERVAL_TABLE_STATS_STR = "collectionIntervalTableStatsSeconds";
+	private static final String INTERVAL_GROUP_STATS_STR = "collectionIntervalGroupStatsSeconds";
+	private static final String INTERVAL_METER_STATS_STR = "collectionIntervalMeterStatsSeconds";
+	private static final String MAX_IN_FLIGHT_STR = "maxInFlightRequests";
+	private static final String HISTORY_TIERS_STR = "historyTiers";
+	private static final String MAX_PORT_HISTORIES_STR = "maxPortHistories";
+	private static final String MAX_FLOW_HISTORIES_STR = "maxFlowHistories";
 	private static final String ENABLED_STR = "enable";
 
-	private static final HashMap<NodePortTuple, SwitchPortBandwidth> portStats = new HashMap<NodePortTuple, SwitchPortBandwidth>();
-	private static final HashMap<NodePortTuple, SwitchPortBandwidth> tentativePortStats = new HashMap<NodePortTuple, SwitchPortBandwidth>();
+	private static final ConcurrentMap<NodePortTuple, SwitchPortBandwidth> portStats = new ConcurrentHashMap<NodePortTuple, SwitchPortBandwidth>();
+	private static final ConcurrentMap<NodePortTuple, SwitchPortBandwidth> tentativePortStats = new ConcurrentHashMap<NodePortTuple, SwitchPortBandwidth>();
+
+	private static List<TimeSeries.Tier> historyTiers = TimeSeries.Tier.parse("1:60,60:60,3600:24");
+	private static int maxPortHistories = 65536;
+	private static int maxFlowHistories = 10000;
+	private static TimeSeriesStore<NodePortTuple> portHistory = new TimeSeriesStore<NodePortTuple>(2, historyTiers, maxPortHistories);
+	private static TimeSeriesStore<FlowStatsKey> flowHistory = new TimeSeriesStore<FlowStatsKey>(2, historyTiers, maxFlowHistories);
+
+	/* collector counters; null until startUp() */
+	private static IDebugCounter ctrRequests;
+	private static IDebugCounter ctrTimeouts;
+	private static IDebugCounter ctrFailures;
+	private static IDebugCounter ctrSkipped;
+	private static IDebugCounter ctrLatencyUs;
+	private static IDebugCounter ctrMaxLatencyUs;
+	private static IDebugCounter ctrHistoryFull;
+	private static final ConcurrentMap<DatapathId, SwitchCounters> switchCounters = new ConcurrentHashMap<DatapathId, SwitchCounters>();
+
+	static {
+		statsIntervals.put(OFStatsType.PORT, portStatsInterval);
+		statsIntervals.put(OFStatsType.FLOW, 30);
+		statsIntervals.put(OFStatsType.TABLE, 30);
+		statsIntervals.put(OFStatsType.GROUP, 30);
+		statsIntervals.put(OFStatsType.METER, 30);
+		for (OFStatsType t : statsIntervals.keySet()) {
+			latestReplies.put(t, new ConcurrentHashMap<DatapathId, List<OFStatsReply>>());
+		}
+	}
 
 	/**
-	 * Run periodically to collect all port statistics. This only collects
-	 * bandwidth stats right now, but it could be expanded to record other
-	 * information as well. The difference between the most recent and the
-	 * current RX/TX bytes is used to determine the "elapsed" bytes. A 
-	 * timestamp is saved each time stats results are saved to compute the
-	 * bits per second over the elapsed time. There isn't a better way to
-	 * compute the precise bandwidth unless the switch were to include a
-	 * timestamp in the stats reply message, which would be nice but isn't
-	 * likely to happen. It would be even better if the switch recorded 
-	 * bandwidth and reported bandwidth directly.
-	 * 
+	 * Run on each port stats reply to compute port bandwidth. The difference
+	 * between the most recent and the current RX/TX bytes is used to
+	 * determine the "elapsed" bytes. A timestamp is saved each time stats
+	 * results are saved to compute the bits per second over the elapsed
+	 * time. There isn't a better way to compute the precise bandwidth
+	 * unless the switch were to include a timestamp in the stats reply
+	 * message, which would be nice but isn't likely to happen. It would be
+	 * even better if the switch recorded bandwidth and reported bandwidth
+	 * directly.
+	 *
 	 * Stats are not reported unless at least two iterations have occurred
-	 * for a single switch's reply. This must happen to compare the byte 
+	 * for a single switch's reply. This must happen to compare the byte
 	 * counts and to get an elapsed time.
-	 * 
+	 *
 	 * @author Ryan Izard, ryan.izard@bigswitch.com, rizard@g.clemson.edu
 	 *
 	 */
-	protected class PortStatsCollector implements Runnable {
-
-		@Override
-		public void run() {
-			Map<DatapathId, List<OFStatsReply>> replies = getSwitchStatistics(switchService.getAllSwitchDpids(), OFStatsType.PORT);
-			for (Entry<DatapathId, List<OFStatsReply>> e : replies.entrySet()) {
-				for (OFStatsReply r : e.getValue()) {
-					OFPortStatsReply psr = (OFPortStatsReply) r;
-					for (OFPortStatsEntry pse : psr.getEntries()) {
-						NodePortTuple npt = new NodePortTuple(e.getKey(), pse.getPortNo());
-						SwitchPortBandwidth spb;
-						if (portStats.containsKey(npt) || tentativePortStats.containsKey(npt)) {
-							if (portStats.containsKey(npt)) { /* update */
-								spb = portStats.get(npt);
-							} else if (tentativePortStats.containsKey(npt)) { /* finish */
-								spb = tentativePortStats.get(npt);
-								tentativePortStats.remove(npt);
-							} else {
-								log.error("Inconsistent state between tentative and official port stats lists.");
-								return;
-							}
+	protected class PortStatsCollector {
+
+		public void process(DatapathId dpid, List<OFStatsReply> replies) {
+			long now = System.currentTimeMillis();
+			for (OFStatsReply r : replies) {
+				OFPortStatsReply psr = (OFPortStatsReply) r;
+				for (OFPortStatsEntry pse : psr.getEntries()) {
+					NodePortTuple npt = new NodePortTuple(dpid, pse.getPortNo());
+					if (!portHistory.record(npt, now, pse.getRxBytes().getValue(), pse.getTxBytes().getValue())
+							&& ctrHistoryFull != null) {
+						ctrHistoryFull.increment();
+					}
+					SwitchPortBandwidth spb;
+					if (portStats.containsKey(npt) || tentativePortStats.containsKey(npt)) {
+						if (portStats.containsKey(npt)) { /* update */
+							spb = portStats.get(npt);
+						} else if (tentativePortStats.containsKey(npt)) { /* finish */
+							spb = tentativePortStats.get(npt);
+						} else {
+							log.error("Inconsistent state between tentative and official port stats lists.");
+							return;
+						}
 
-							/* Get counted bytes over the elapsed period. Check for counter overflow. */
-							U64 rxBytesCounted;
-							U64 txBytesCounted;
-							if (spb.getPriorByteValueRx().compareTo(pse.getRxBytes()) > 0) { /* overflow */
-								U64 upper = U64.NO_MASK.subtract(spb.getPriorByteValueRx());
-								U64 lower = pse.getRxBytes();
-								rxBytesCounted = upper.add(lower);
-							} else {
-								rxBytesCounted = pse.getRxBytes().subtract(spb.getPriorByteValueRx());
-							}
-							if (spb.getPriorByteValueTx().compareTo(pse.getTxBytes()) > 0) { /* overflow */
-								U64 upper = U64.NO_MASK.subtract(spb.getPriorByteValueTx());
-								U64 lower = pse.getTxBytes();
-								txBytesCounted = upper.add(lower);
-							} else {
-								txBytesCounted = pse.getTxBytes().subtract(spb.getPriorByteValueTx());
-							}
-							long speed = getSpeed(npt);
-							long timeDifSec = (System.currentTimeMillis() - spb.getUpdateTime()) / MILLIS_PER_SEC;
-							portStats.put(npt, SwitchPortBandwidth.of(npt.getNodeId(), npt.getPortId(), 
-									U64.ofRaw(speed),
-									U64.ofRaw((rxBytesCounted.getValue() * BITS_PER_BYTE) / timeDifSec), 
-									U64.ofRaw((txBytesCounted.getValue() * BITS_PER_BYTE) / timeDifSec), 
-									pse.getRxBytes(), pse.getTxBytes())
-									);
-							
-						} else { /* initialize */
-							tentativePortStats.put(npt, SwitchPortBandwidth.of(npt.getNodeId(), npt.getPortId(), U64.ZERO, U64.ZERO, U64.ZERO, pse.getRxBytes(), pse.getTxBytes()));
+						/* Get counted bytes over the elapsed period. Check for counter overflow. */
+						U64 rxBytesCounted;
+						U64 txBytesCounted;
+						if (spb.getPriorByteValueRx().compareTo(pse.getRxBytes()) > 0) { /* overflow */
+							U64 upper = U64.NO_MASK.subtract(spb.getPriorByteValueRx());
+							U64 lower = pse.getRxBytes();
+							rxBytesCounted = upper.add(lower);
+						} else {
+							rxBytesCounted = pse.getRxBytes().subtract(spb.getPriorByteValueRx());
+						}
+						if (spb.getPriorByteValueTx().compareTo(pse.getTxBytes()) > 0) { /* overflow */
+							U64 upper = U64.NO_MASK.subtract(spb.getPriorByteValueTx());
+							U64 lower = pse.getTxBytes();
+							txBytesCounted = upper.add(lower);
+						} else {
+							txBytesCounted = pse.getTxBytes().subtract(spb.getPriorByteValueTx());
 						}
+						long speed = getSpeed(npt);
+						long timeDifMillis = System.currentTimeMillis() - spb.getUpdateTime();
+						if (timeDifMillis <= 0) {
+							continue; /* replies too close together to compute a rate; a tentative entry stays */
+						}
+						tentativePortStats.remove(npt);
+						portStats.put(npt, SwitchPortBandwidth.of(npt.getNodeId(), npt.getPortId(),
+								U64.ofRaw(speed),
+								U64.ofRaw((rxBytesCounted.getValue() * BITS_PER_BYTE * MILLIS_PER_SEC) / timeDifMillis),
+								U64.ofRaw((txBytesCounted.getValue() * BITS_PER_BYTE * MILLIS_PER_SEC) / timeDifMillis),
+								pse.getRxBytes(), pse.getTxBytes())
+								);
+
+					} else { /* initialize */
+						tentativePortStats.put(npt, SwitchPortBandwidth.of(npt.getNodeId(), npt.getPortId(), U64.ZERO, U64.ZERO, U64.ZERO, pse.getRxBytes(), pse.getTxBytes()));
 					}
 				}
 			}
@@ -163,42 +241,131 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 
 	}
 
+	private final PortStatsCollector portStatsCollector = new PortStatsCollector();
+
 	/**
-	 * Single thread for collecting switch statistics and
-	 * containing the reply.
-	 * 
-	 * @author Ryan Izard, ryan.izard@bigswitch.com, rizard@g.clemson.edu
-	 *
+	 * Record the packet and byte counts of each flow in flow stats replies.
 	 */
-	private class GetStatisticsThread extends Thread {
-		private List<OFStatsReply> statsReply;
-		private DatapathId switchId;
-		private OFStatsType statType;
+	private static void recordFlowStats(DatapathId dpid, List<OFStatsReply> replies) {
+		long now = System.currentTimeMillis();
+		for (OFStatsReply r : replies) {
+			for (OFFlowStatsEntry e : ((OFFlowStatsReply) r).getEntries()) {
+				if (!flowHistory.record(FlowStatsKey.of(dpid, e), now,
+						e.getPacketCount().getValue(), e.getByteCount().getValue())
+						&& ctrHistoryFull != null) {
+					ctrHistoryFull.increment();
+				}
+			}
+		}
+	}
 
-		public GetStatisticsThread(DatapathId switchId, OFStatsType statType) {
+	/**
+	 * A request for one type of statistics from one switch
+	 */
+	private static class StatsRequest {
+		private final DatapathId switchId;
+		private final OFStatsType statsType;
+
+		StatsRequest(DatapathId switchId, OFStatsType statsType) {
 			this.switchId = switchId;
-			this.statType = statType;
-			this.statsReply = null;
+			this.statsType = statsType;
 		}
 
-		public List<OFStatsReply> getStatisticsReply() {
-			return statsReply;
+		@Override
+		public int hashCode() {
+			return 31 * switchId.hashCode() + statsType.hashCode();
 		}
 
-		public DatapathId getSwitchId() {
-			return switchId;
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof StatsRequest))
+				return false;
+			StatsRequest other = (StatsRequest) obj;
+			return switchId.equals(other.switchId) && statsType == other.statsType;
+		}
+	}
+
+	/**
+	 * The collector's counters for a single switch
+	 */
+	private static class SwitchCounters {
+		private final IDebugCounter requests;
+		private final IDebugCounter timeouts;
+		private final IDebugCounter latencyUs;
+		private final IDebugCounter maxLatencyUs;
+
+		SwitchCounters(DatapathId dpid) {
+			String sw = "switch-" + dpid.toString();
+			String module = "statistics";
+			debugCounterService.registerCounter(module, sw,
+					"Statistics requests to switch " + dpid.toString());
+			requests = debugCounterService.registerCounter(module, sw + "/requests",
+					"Statistics requests sent to the switch");
+			timeouts = debugCounterService.registerCounter(module, sw + "/timeouts",
+					"Statistics requests to the switch that timed out", MetaData.WARN);
+			latencyUs = debugCounterService.registerCounter(module, sw + "/latency-us",
+					"Total time in microseconds the switch took to answer statistics requests; "
+							+ "divide by 'requests' less 'timeouts' for the mean");
+			maxLatencyUs = debugCounterService.registerCounter(module, sw + "/max-latency-us",
+					"Largest time in microseconds the switch took to answer a statistics request");
+		}
+	}
+
+	/**
+	 * Runs once per interval of a stats type, scheduling a request to each
+	 * connected switch at evenly spaced offsets within the interval.
+	 */
+	private class StatsRound implements Runnable {
+		private final OFStatsType statsType;
+		private final int interval;
+
+		StatsRound(OFStatsType statsType, int interval) {
+			this.statsType = statsType;
+			this.interval = interval;
 		}
 
 		@Override
 		public void run() {
-			statsReply = getSwitchStatistics(switchId, statType);
+			try {
+				List<DatapathId> dpids = new ArrayList<DatapathId>(switchService.getAllSwitchDpids());
+				latestReplies.get(statsType).keySet().retainAll(dpids);
+				if (statsType == OFStatsType.PORT) {
+					portHistory.prune(System.currentTimeMillis() - portHistory.getRetentionMs());
+				} else if (statsType == OFStatsType.FLOW) {
+					flowHistory.prune(System.currentTimeMillis() - flowHistory.getRetentionMs());
+				}
+				if (dpids.isEmpty()) {
+					return;
+				}
+				Collections.shuffle(dpids); /* don't always poll the same switches first */
+
+				ScheduledExecutorService ses = threadPoolService.getScheduledExecutor();
+				long spacingUs = TimeUnit.SECONDS.toMicros(interval) / dpids.size();
+				for (int i = 0; i < dpids.size(); i++) {
+					final StatsRequest r = new StatsRequest(dpids.get(i), statsType);
+					if (i == 0) {
+						submit(r);
+					} else {
+						ses.schedule(new Runnable() {
+							@Override
+							public void run() {
+								submit(r);
+							}
+						}, i * spacingUs, TimeUnit.MICROSECONDS);
+					}
+				}
+			} catch (Exception e) {
+				log.error("Failed to start {} statistics collection round", statsType, e);
+			}
 		}
 	}
-	
+
 	/*
 	 * IFloodlightModule implementation
 	 */
-	
+
 	@Override
 	public Collection<Class<? extends IFloodlightService>> getModuleServices() {
 		Collection<Class<? extends IFloodlightService>> l =
@@ -222,6 +389,7 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 		l.add(IOFSwitchService.class);
 		l.add(IThreadPoolService.class);
 		l.add(IRestApiService.class);
+		l.add(IDebugCounterService.class);
 		return l;
 	}
 
@@ -231,6 +399,7 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 		switchService = context.getServiceImpl(IOFSwitchService.class);
 		threadPoolService = context.getServiceImpl(IThreadPoolService.class);
 		restApiService = context.getServiceImpl(IRestApiService.class);
+		debugCounterService = context.getServiceImpl(IDebugCounterService.class);
 
 		Map<String, String> config = context.getConfigParams(this);
 		if (config.containsKey(ENABLED_STR)) {
@@ -249,33 +418,210 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 				log.error("Could not parse '{}'. Using default of {}", INTERVAL_PORT_STATS_STR, portStatsInterval);
 			}
 		}
+		statsIntervals.put(OFStatsType.PORT, portStatsInterval);
 		log.info("Port statistics collection interval set to {}s", portStatsInterval);
+
+		parseInterval(config, INTERVAL_FLOW_STATS_STR, OFStatsType.FLOW);
+		parseInterval(config, INTERVAL_TABLE_STATS_STR, OFStatsType.TABLE);
+		parseInterval(config, INTERVAL_GROUP_STATS_STR, OFStatsType.GROUP);
+		parseInterval(config, INTERVAL_METER_STATS_STR, OFStatsType.METER);
+
+		if (config.containsKey(MAX_IN_FLIGHT_STR)) {
+			try {
+				maxInFlight = Integer.parseInt(config.get(MAX_IN_FLIGHT_STR).trim());
+				if (maxInFlight < 1) {
+					throw new IllegalArgumentException();
+				}
+			} catch (Exception e) {
+				maxInFlight = 64;
+				log.error("Could not parse '{}'. Using default of {}", MAX_IN_FLIGHT_STR, maxInFlight);
+			}
+		}
+		inFlight = new Semaphore(maxInFlight);
+		log.info("At most {} statistics requests will be outstanding at a time", maxInFlight);
+
+		if (config.containsKey(HISTORY_TIERS_STR)) {
+			try {
+				historyTiers = TimeSeries.Tier.parse(config.get(HISTORY_TIERS_STR).trim());
+				if (historyTiers.isEmpty()) {
+					throw new IllegalArgumentException();
+				}
+			} catch (Exception e) {
+				historyTiers = TimeSeries.Tier.parse("1:60,60:60,3600:24");
+				log.error("Could not parse '{}'. Using default of {}", HISTORY_TIERS_STR, historyTiers);
+			}
+		}
+		maxPortHistories = parsePositive(config, MAX_PORT_HISTORIES_STR, maxPortHistories);
+		maxFlowHistories = parsePositive(config, MAX_FLOW_HISTORIES_STR, maxFlowHistories);
+		portHistory = new TimeSeriesStore<NodePortTuple>(2, historyTiers, maxPortHistories);
+		flowHistory = new TimeSeriesStore<FlowStatsKey>(2, historyTiers, maxFlowHistories);
+		log.info("Keeping statistics history of up to {} ports and {} flows in tiers {}",
+				new Object[] { maxPortHistories, maxFlowHistories, historyTiers });
+	}
+
+	private static void parseInterval(Map<String, String> config, String key, OFStatsType type) {
+		if (config.containsKey(key)) {
+			try {
+				statsIntervals.put(type, Integer.parseInt(config.get(key).trim()));
+			} catch (Exception e) {
+				log.error("Could not parse '{}'. Using default of {}", key, statsIntervals.get(type));
+			}
+		}
+		if (statsIntervals.get(type) > 0) {
+			log.info("{} statistics collection interval set to {}s", type, statsIntervals.get(type));
+		} else {
+			log.info("{} statistics collection disabled", type);
+		}
+	}
+
+	private static int parsePositive(Map<String, String> config, String key, int dflt) {
+		if (config.containsKey(key)) {
+			try {
+				int v = Integer.parseInt(config.get(key).trim());
+				if (v > 0) {
+					return v;
+				}
+			} catch (NumberFormatException e) {
+				/* fall through */
+			}
+			log.error("Could not parse '{}'. Using default of {}", key, dflt);
+		}
+		return dflt;
 	}
 
 	@Override
 	public void startUp(FloodlightModuleContext context)
 			throws FloodlightModuleException {
+		String module = "statistics";
+		debugCounterService.registerModule(module);
+		switchCounters.clear();
+		ctrRequests = debugCounterService.registerCounter(module, "requests",
+				"Statistics requests sent to switches");
+		ctrTimeouts = debugCounterService.registerCounter(module, "timeouts",
+				"Statistics requests not answered within half of their interval", MetaData.WARN);
+		ctrFailures = debugCounterService.registerCounter(module, "failures",
+				"Statistics requests that failed or could not be sent", MetaData.WARN);
+		ctrSkipped = debugCounterService.registerCounter(module, "skipped",
+				"Statistics requests skipped because the previous request of the same type "
+						+ "to the switch was still outstanding", MetaData.WARN);
+		ctrLatencyUs = debugCounterService.registerCounter(module, "latency-us",
+				"Total time in microseconds switches took to answer statistics requests");
+		ctrMaxLatencyUs = debugCounterService.registerCounter(module, "max-latency-us",
+				"Largest time in microseconds a switch took to answer a statistics request");
+		ctrHistoryFull = debugCounterService.registerCounter(module, "history-full",
+				"Port and flow samples not kept because the history already holds its "
+						+ "maximum number of ports or flows", MetaData.WARN);
+
+		switchService.addOFSwitchListener(this);
 		restApiService.addRestletRoutable(new SwitchStatisticsWebRoutable());
 		if (isEnabled) {
 			startStatisticsCollection();
 		}
 	}
 
+	/*
+	 * IOFSwitchListener implementation
+	 */
+
+	@Override
+	public void switchAdded(DatapathId switchId) {
+	}
+
+	/**
+	 * Drop the switch's counters so that switch churn does not grow the
+	 * counter hierarchy. A request still outstanding keeps updating the
+	 * counters it already holds, which are no longer reachable.
+	 */
+	@Override
+	public void switchRemoved(DatapathId switchId) {
+		synchronized (switchCounters) {
+			if (switchCounters.remove(switchId) != null) {
+				debugCounterService.removeCounterHierarchy("statistics", "switch-" + switchId.toString());
+			}
+		}
+	}
+
+	@Override
+	public void switchActivated(DatapathId switchId) {
+	}
+
+	@Override
+	public void switchPortChanged(DatapathId switchId, OFPortDesc port, PortChangeType type) {
+	}
+
+	@Override
+	public void switchChanged(DatapathId switchId) {
+	}
+
+	@Override
+	public void switchDeactivated(DatapathId switchId) {
+	}
+
 	/*
 	 * IStatisticsService implementation
 	 */
-	
+
 	@Override
 	public SwitchPortBandwidth getBandwidthConsumption(DatapathId dpid, OFPort p) {
 		return portStats.get(new NodePortTuple(dpid, p));
 	}
-	
+
 
 	@Override
 	public Map<NodePortTuple, SwitchPortBandwidth> getBandwidthConsumption() {
 		return Collections.unmodifiableMap(portStats);
 	}
 
+	@Override
+	public Map<DatapathId, List<OFStatsReply>> getStatistics(OFStatsType statsType) {
+		Map<DatapathId, List<OFStatsReply>> replies = latestReplies.get(statsType);
+		return replies == null ? Collections.<DatapathId, List<OFStatsReply>>emptyMap()
+				: Collections.unmodifiableMap(replies);
+	}
+
+	@Override
+	public SwitchPortBandwidth getAverageBandwidthConsumption(DatapathId dpid, OFPort p, long windowMs) {
+		NodePortTuple npt = new NodePortTuple(dpid, p);
+		TimeSeries ts = portHistory.get(npt);
+		if (ts == null) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		List<TimeSeries.Sample> samples = ts.getSamples(now - windowMs, now);
+		double rx = TimeSeries.getRate(samples, PORT_RX_BYTES);
+		double tx = TimeSeries.getRate(samples, PORT_TX_BYTES);
+		if (rx < 0 || tx < 0) {
+			return null;
+		}
+		TimeSeries.Sample last = samples.get(samples.size() - 1);
+		SwitchPortBandwidth spb = portStats.get(npt);
+		return SwitchPortBandwidth.of(dpid, p,
+				spb == null ? U64.ZERO : spb.getLinkSpeedBitsPerSec(),
+				U64.ofRaw((long) (rx * BITS_PER_BYTE)),
+				U64.ofRaw((long) (tx * BITS_PER_BYTE)),
+				U64.ofRaw(last.getValue(PORT_RX_BYTES)),
+				U64.ofRaw(last.getValue(PORT_TX_BYTES)));
+	}
+
+	@Override
+	public TimeSeries getPortHistory(DatapathId dpid, OFPort p) {
+		return portHistory.get(new NodePortTuple(dpid, p));
+	}
+
+	@Override
+	public Map<FlowStatsKey, TimeSeries> getFlowHistory(DatapathId dpid) {
+		Map<FlowStatsKey, TimeSeries> flows = new HashMap<FlowStatsKey, TimeSeries>();
+		for (FlowStatsKey k : flowHistory.keySet()) {
+			if (k.getSwitchId().equals(dpid)) {
+				TimeSeries ts = flowHistory.get(k);
+				if (ts != null) {
+					flows.put(k, ts);
+				}
+			}
+		}
+		return flows;
+	}
+
 	@Override
 	public synchronized void collectStatistics(boolean collect) {
 		if (collect && !isEnabled) {
@@ -284,211 +630,285 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 		} else if (!collect && isEnabled) {
 			stopStatisticsCollection();
 			isEnabled = false;
-		} 
+		}
 		/* otherwise, state is not changing; no-op */
 	}
-	
+
 	/*
 	 * Helper functions
 	 */
-	
+
 	/**
-	 * Start all stats threads.
+	 * Start a collection round for each enabled stats type.
 	 */
 	private void startStatisticsCollection() {
-		portStatsCollector = threadPoolService.getScheduledExecutor().scheduleAtFixedRate(new PortStatsCollector(), portStatsInterval, portStatsInterval, TimeUnit.SECONDS);
 		tentativePortStats.clear(); /* must clear out, otherwise might have huge BW result if present and wait a long time before re-enabling stats */
+		for (Map.Entry<OFStatsType, Integer> e : statsIntervals.entrySet()) {
+			int interval = e.getValue();
+			if (interval > 0) {
+				statsCollectors.put(e.getKey(), threadPoolService.getScheduledExecutor().scheduleAtFixedRate(
+						new StatsRound(e.getKey(), interval), interval, interval, TimeUnit.SECONDS));
+			}
+		}
 		log.warn("Statistics collection thread(s) started");
 	}
-	
+
 	/**
-	 * Stop all stats threads.
+	 * Stop all collection rounds. Outstanding requests are left to
+	 * complete or time out; queued ones are dropped.
 	 */
 	private void stopStatisticsCollection() {
-		if (!portStatsCollector.cancel(false)) {
-			log.error("Could not cancel port stats thread");
+		boolean cancelled = true;
+		for (ScheduledFuture<?> f : statsCollectors.values()) {
+			cancelled &= f.cancel(false);
+		}
+		statsCollectors.clear();
+		StatsRequest r;
+		while ((r = pendingRequests.poll()) != null) {
+			outstandingRequests.remove(r);
+		}
+		if (!cancelled) {
+			log.error("Could not cancel statistics collection thread(s)");
 		} else {
 			log.warn("Statistics collection thread(s) stopped");
 		}
 	}
 
 	/**
-	 * Retrieve the statistics from all switches in parallel.
-	 * @param dpids
-	 * @param statsType
-	 * @return
+	 * Queue a request, unless the previous request of the same type to the
+	 * switch is still outstanding, and send as many queued requests as
+	 * the in-flight limit allows.
 	 */
-	private Map<DatapathId, List<OFStatsReply>> getSwitchStatistics(Set<DatapathId> dpids, OFStatsType statsType) {
-		HashMap<DatapathId, List<OFStatsReply>> model = new HashMap<DatapathId, List<OFStatsReply>>();
-
-		List<GetStatisticsThread> activeThreads = new ArrayList<GetStatisticsThread>(dpids.size());
-		List<GetStatisticsThread> pendingRemovalThreads = new ArrayList<GetStatisticsThread>();
-		GetStatisticsThread t;
-		for (DatapathId d : dpids) {
-			t = new GetStatisticsThread(d, statsType);
-			activeThreads.add(t);
-			t.start();
-		}
-
-		/* Join all the threads after the timeout. Set a hard timeout
-		 * of 12 seconds for the threads to finish. If the thread has not
-		 * finished the switch has not replied yet and therefore we won't
-		 * add the switch's stats to the reply.
-		 */
-		for (int iSleepCycles = 0; iSleepCycles < portStatsInterval; iSleepCycles++) {
-			for (GetStatisticsThread curThread : activeThreads) {
-				if (curThread.getState() == State.TERMINATED) {
-					model.put(curThread.getSwitchId(), curThread.getStatisticsReply());
-					pendingRemovalThreads.add(curThread);
-				}
+	private void submit(StatsRequest r) {
+		if (!isEnabled) {
+			return;
+		}
+		if (!outstandingRequests.add(r)) {
+			ctrSkipped.increment();
+			return;
+		}
+		pendingRequests.add(r);
+		drain();
+	}
+
+	private void drain() {
+		while (!pendingRequests.isEmpty() && inFlight.tryAcquire()) {
+			StatsRequest r = pendingRequests.poll();
+			if (r == null) {
+				inFlight.release();
+				break;
 			}
+			send(r);
+		}
+	}
 
-			/* remove the threads that have completed the queries to the switches */
-			for (GetStatisticsThread curThread : pendingRemovalThreads) {
-				activeThreads.remove(curThread);
+	/**
+	 * Release a request's in-flight slot and send the next queued request.
+	 */
+	private void finish(StatsRequest r) {
+		outstandingRequests.remove(r);
+		inFlight.release();
+		drain();
+	}
+
+	/**
+	 * Send a request holding an in-flight slot. The slot is released when
+	 * the reply arrives, the request fails or it times out.
+	 */
+	private void send(final StatsRequest r) {
+		final IOFSwitch sw = switchService.getSwitch(r.switchId);
+		OFStatsRequest<?> req = sw == null ? null : buildStatsRequest(sw, r.statsType);
+		if (req == null) { /* disconnected, or the type isn't supported by the switch's version */
+			finish(r);
+			return;
+		}
+
+		final SwitchCounters counters = getSwitchCounters(r.switchId);
+		final ListenableFuture<?> future;
+		try {
+			future = sw.writeStatsRequest(req);
+		} catch (Exception e) {
+			log.error("Failure sending statistics request to switch {}. {}", sw, e);
+			ctrFailures.increment();
+			finish(r);
+			return;
+		}
+		ctrRequests.increment();
+		counters.requests.increment();
+
+		final long startNs = System.nanoTime();
+		ScheduledExecutorService ses = threadPoolService.getScheduledExecutor();
+		final ScheduledFuture<?> timeout = ses.schedule(new Runnable() {
+			@Override
+			public void run() {
+				future.cancel(false);
+			}
+		}, statsIntervals.get(r.statsType) * MILLIS_PER_SEC / 2, TimeUnit.MILLISECONDS);
+
+		Futures.addCallback(future, new FutureCallback<Object>() {
+			@SuppressWarnings("unchecked")
+			@Override
+			public void onSuccess(Object result) {
+				timeout.cancel(false);
+				long us = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNs);
+				ctrLatencyUs.add(us);
+				counters.latencyUs.add(us);
+				ctrMaxLatencyUs.setIfGreater(us);
+				counters.maxLatencyUs.setIfGreater(us);
+				try {
+					List<OFStatsReply> replies = (List<OFStatsReply>) result;
+					latestReplies.get(r.statsType).put(r.switchId, replies);
+					if (r.statsType == OFStatsType.PORT) {
+						portStatsCollector.process(r.switchId, replies);
+					} else if (r.statsType == OFStatsType.FLOW) {
+						recordFlowStats(r.switchId, replies);
+					}
+				} catch (Exception e) {
+					log.error("Failure processing {} statistics from switch {}. {}", new Object[] { r.statsType, sw, e });
+				} finally {
+					finish(r);
+				}
 			}
-			
-			/* clear the list so we don't try to double remove them */
-			pendingRemovalThreads.clear();
 
-			/* if we are done finish early */
-			if (activeThreads.isEmpty()) {
-				break;
+			@Override
+			public void onFailure(Throwable t) {
+				timeout.cancel(false);
+				if (t instanceof CancellationException) {
+					log.debug("Timed out waiting for {} statistics from switch {}", r.statsType, sw);
+					ctrTimeouts.increment();
+					counters.timeouts.increment();
+				} else {
+					log.error("Failure retrieving statistics from switch {}. {}", sw, t);
+					ctrFailures.increment();
+				}
+				finish(r);
 			}
+		}, ses);
+	}
 
-			try {
-				Thread.sleep(1000);
-			} catch (InterruptedException e) {
-				log.error("Interrupted while waiting for statistics", e);
+	private SwitchCounters getSwitchCounters(DatapathId dpid) {
+		SwitchCounters c = switchCounters.get(dpid);
+		if (c == null) {
+			/* registering a counter twice resets it, so only the winner registers */
+			synchronized (switchCounters) {
+				c = switchCounters.get(dpid);
+				if (c == null) {
+					c = new SwitchCounters(dpid);
+					switchCounters.put(dpid, c);
+				}
 			}
 		}
-
-		return model;
+		return c;
 	}
 
 	/**
-	 * Get statistics from a switch.
-	 * @param switchId
+	 * Build a statistics request for a switch.
+	 * @param sw
 	 * @param statsType
-	 * @return
+	 * @return the request, or null if the type is not supported by the switch
 	 */
-	@SuppressWarnings("unchecked")
-	protected List<OFStatsReply> getSwitchStatistics(DatapathId switchId, OFStatsType statsType) {
-		IOFSwitch sw = switchService.getSwitch(switchId);
-		ListenableFuture<?> future;
-		List<OFStatsReply> values = null;
+	protected OFStatsRequest<?> buildStatsRequest(IOFSwitch sw, OFStatsType statsType) {
 		Match match;
-		if (sw != null) {
-			OFStatsRequest<?> req = null;
-			switch (statsType) {
-			case FLOW:
-				match = sw.getOFFactory().buildMatch().build();
-				req = sw.getOFFactory().buildFlowStatsRequest()
-						.setMatch(match)
-						.setOutPort(OFPort.ANY)
-						.setTableId(TableId.ALL)
+		OFStatsRequest<?> req = null;
+		switch (statsType) {
+		case FLOW:
+			match = sw.getOFFactory().buildMatch().build();
+			req = sw.getOFFactory().buildFlowStatsRequest()
+					.setMatch(match)
+					.setOutPort(OFPort.ANY)
+					.setTableId(TableId.ALL)
+					.build();
+			break;
+		case AGGREGATE:
+			match = sw.getOFFactory().buildMatch().build();
+			req = sw.getOFFactory().buildAggregateStatsRequest()
+					.setMatch(match)
+					.setOutPort(OFPort.ANY)
+					.setTableId(TableId.ALL)
+					.build();
+			break;
+		case PORT:
+			req = sw.getOFFactory().buildPortStatsRequest()
+			.setPortNo(OFPort.ANY)
+			.build();
+			break;
+		case QUEUE:
+			req = sw.getOFFactory().buildQueueStatsRequest()
+			.setPortNo(OFPort.ANY)
+			.setQueueId(UnsignedLong.MAX_VALUE.longValue())
+			.build();
+			break;
+		case DESC:
+			req = sw.getOFFactory().buildDescStatsRequest()
+			.build();
+			break;
+		case GROUP:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+				req = sw.getOFFactory().buildGroupStatsRequest()
 						.build();
-				break;
-			case AGGREGATE:
-				match = sw.getOFFactory().buildMatch().build();
-				req = sw.getOFFactory().buildAggregateStatsRequest()
-						.setMatch(match)
-						.setOutPort(OFPort.ANY)
-						.setTableId(TableId.ALL)
-						.build();
-				break;
-			case PORT:
-				req = sw.getOFFactory().buildPortStatsRequest()
-				.setPortNo(OFPort.ANY)
-				.build();
-				break;
-			case QUEUE:
-				req = sw.getOFFactory().buildQueueStatsRequest()
-				.setPortNo(OFPort.ANY)
-				.setQueueId(UnsignedLong.MAX_VALUE.longValue())
-				.build();
-				break;
-			case DESC:
-				req = sw.getOFFactory().buildDescStatsRequest()
-				.build();
-				break;
-			case GROUP:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					req = sw.getOFFactory().buildGroupStatsRequest()				
-							.build();
-				}
-				break;
-
-			case METER:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
-					req = sw.getOFFactory().buildMeterStatsRequest()
-							.setMeterId(OFMeterSerializerVer13.ALL_VAL)
-							.build();
-				}
-				break;
+			}
+			break;
 
-			case GROUP_DESC:			
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					req = sw.getOFFactory().buildGroupDescStatsRequest()			
-							.build();
-				}
-				break;
+		case METER:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
+				req = sw.getOFFactory().buildMeterStatsRequest()
+						.setMeterId(OFMeterSerializerVer13.ALL_VAL)
+						.build();
+			}
+			break;
 
-			case GROUP_FEATURES:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					req = sw.getOFFactory().buildGroupFeaturesStatsRequest()
-							.build();
-				}
-				break;
+		case GROUP_DESC:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+				req = sw.getOFFactory().buildGroupDescStatsRequest()
+						.build();
+			}
+			break;
 
-			case METER_CONFIG:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
-					req = sw.getOFFactory().buildMeterConfigStatsRequest()
-							.build();
-				}
-				break;
+		case GROUP_FEATURES:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+				req = sw.getOFFactory().buildGroupFeaturesStatsRequest()
+						.build();
+			}
+			break;
 
-			case METER_FEATURES:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
-					req = sw.getOFFactory().buildMeterFeaturesStatsRequest()
-							.build();
-				}
-				break;
+		case METER_CONFIG:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
+				req = sw.getOFFactory().buildMeterConfigStatsRequest()
+						.build();
+			}
+			break;
 
-			case TABLE:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					req = sw.getOFFactory().buildTableStatsRequest()
-							.build();
-				}
-				break;
+		case METER_FEATURES:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
+				req = sw.getOFFactory().buildMeterFeaturesStatsRequest()
+						.build();
+			}
+			break;
 
-			case TABLE_FEATURES:	
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					req = sw.getOFFactory().buildTableFeaturesStatsRequest()
-							.build();		
-				}
-				break;
-			case PORT_DESC:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
-					req = sw.getOFFactory().buildPortDescStatsRequest()
-							.build();
-				}
-				break;
-			case EXPERIMENTER:		
-			default:
-				log.error("Stats Request Type {} not implemented yet", statsType.name());
-				break;
+		case TABLE:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+				req = sw.getOFFactory().buildTableStatsRequest()
+						.build();
 			}
+			break;
 
-			try {
-				if (req != null) {
-					future = sw.writeStatsRequest(req); 
-					values = (List<OFStatsReply>) future.get(portStatsInterval*1000 / 2, TimeUnit.MILLISECONDS);
-				}
-			} catch (Exception e) {
-				log.error("Failure retrieving statistics from switch {}. {}", sw, e);
+		case TABLE_FEATURES:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+				req = sw.getOFFactory().buildTableFeaturesStatsRequest()
+						.build();
+			}
+			break;
+		case PORT_DESC:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
+				req = sw.getOFFactory().buildPortDescStatsRequest()
+						.build();
 			}
+			break;
+		case EXPERIMENTER:
+		default:
+			log.error("Stats Request Type {} not implemented yet", statsType.name());
+			break;
 		}
-		return values;
+		return req;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,233 @@
+package net.floodlightcontroller.statistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Fixed-memory history of one or more counters, such as the RX and TX
+ * byte counts of a port.
+ *
+ * Samples are kept in retention tiers of decreasing resolution, e.g. one
+ * sample per second, minute and hour. Each tier is a ring buffer of
+ * primitive longs holding the last sample recorded in each of its most
+ * recent buckets, so a tier of capacity n covers the last n buckets in
+ * which anything was recorded. As the values are cumulative counters,
+ * keeping the last sample of a bucket loses no traffic; rates over any
+ * range are the differences between the samples bounding it.
+ *
+ * All methods are thread-safe.
+ *
+ * @see Tier
+ */
+public class TimeSeries {
+	private final int columns;
+	private final Ring[] rings;
+
+	/**
+	 * The resolution and capacity of a retention tier
+	 */
+	public static class Tier {
+		private final long resolutionMs;
+		private final int capacity;
+
+		public Tier(long resolutionMs, int capacity) {
+			if (resolutionMs < 1) {
+				throw new IllegalArgumentException("Tier resolution must be positive");
+			}
+			if (capacity < 2) {
+				throw new IllegalArgumentException("Tier capacity must be at least 2");
+			}
+			this.resolutionMs = resolutionMs;
+			this.capacity = capacity;
+		}
+
+		public long getResolutionMs() {
+			return resolutionMs;
+		}
+
+		public int getCapacity() {
+			return capacity;
+		}
+
+		/**
+		 * Parse a comma-separated list of resolution:capacity pairs, with
+		 * the resolution in seconds, e.g. "1:60,60:60,3600:24"
+		 */
+		public static List<Tier> parse(String s) {
+			List<Tier> tiers = new ArrayList<Tier>();
+			for (String t : s.split(",")) {
+				String[] parts = t.trim().split(":");
+				if (parts.length != 2) {
+					throw new IllegalArgumentException("Expected resolution:capacity, got " + t);
+				}
+				tiers.add(new Tier(Long.parseLong(parts[0].trim()) * 1000, Integer.parseInt(parts[1].trim())));
+			}
+			return tiers;
+		}
+
+		@Override
+		public String toString() {
+			return (resolutionMs / 1000) + "s x " + capacity;
+		}
+	}
+
+	/**
+	 * The values of the counters at a point in time
+	 */
+	public static class Sample {
+		private final long time;
+		private final long[] values;
+
+		Sample(long time, long[] values) {
+			this.time = time;
+			this.values = values;
+		}
+
+		/**
+		 * @return the time of the sample in milliseconds since the epoch
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		public long getValue(int column) {
+			return values[column];
+		}
+
+		public long[] getValues() {
+			return values.clone();
+		}
+	}
+
+	private class Ring {
+		private final long resolutionMs;
+		private final long[] times;
+		private final long[] values; /* columns values per slot */
+		private int head = -1; /* slot of the newest sample */
+		private int size;
+
+		Ring(Tier tier) {
+			resolutionMs = tier.getResolutionMs();
+			times = new long[tier.getCapacity()];
+			values = new long[tier.getCapacity() * columns];
+		}
+
+		void record(long time, long[] v) {
+			if (size == 0 || time / resolutionMs != times[head] / resolutionMs) {
+				head = (head + 1) % times.length;
+				size = Math.min(size + 1, times.length);
+			}
+			times[head] = time;
+			System.arraycopy(v, 0, values, head * columns, columns);
+		}
+
+		/* slot of the i-th oldest sample */
+		int slot(int i) {
+			return (head - size + 1 + i + times.length) % times.length;
+		}
+
+		long oldest() {
+			return times[slot(0)];
+		}
+
+		List<Sample> samples(long from, long to) {
+			List<Sample> l = new ArrayList<Sample>();
+			for (int i = 0; i < size; i++) {
+				int s = slot(i);
+				if (times[s] >= from && times[s] <= to) {
+					l.add(new Sample(times[s], Arrays.copyOfRange(values, s * columns, (s + 1) * columns)));
+				}
+			}
+			return l;
+		}
+	}
+
+	/**
+	 * @param columns the number of counters
+	 * @param tiers the retention tiers, finest first
+	 */
+	public TimeSeries(int columns, List<Tier> tiers) {
+		if (columns < 1) {
+			throw new IllegalArgumentException("Need at least one column");
+		}
+		if (tiers.isEmpty()) {
+			throw new IllegalArgumentException("Need at least one retention tier");
+		}
+		this.columns = columns;
+		this.rings = new Ring[tiers.size()];
+		for (int i = 0; i < rings.length; i++) {
+			rings[i] = new Ring(tiers.get(i));
+		}
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Record the counters at a time no earlier than the last recorded one
+	 */
+	public synchronized void record(long time, long... values) {
+		if (values.length != columns) {
+			throw new IllegalArgumentException("Expected " + columns + " values, got " + values.length);
+		}
+		for (Ring r : rings) {
+			r.record(time, values);
+		}
+	}
+
+	/**
+	 * @return the time of the newest sample, or -1 if there is none
+	 */
+	public synchronized long getLastUpdate() {
+		Ring r = rings[0];
+		return r.size == 0 ? -1 : r.times[r.head];
+	}
+
+	/**
+	 * Get the samples in a time range from the finest tier reaching back
+	 * to its start, or the coarsest tier if none does.
+	 * @param from start of the range in milliseconds since the epoch
+	 * @param to end of the range in milliseconds since the epoch
+	 * @return the samples, oldest first
+	 */
+	public synchronized List<Sample> getSamples(long from, long to) {
+		for (Ring r : rings) {
+			if (r.size > 0 && r.oldest() <= from) {
+				return r.samples(from, to);
+			}
+		}
+		Ring coarsest = rings[rings.length - 1];
+		return coarsest.size == 0 ? Collections.<Sample>emptyList() : coarsest.samples(from, to);
+	}
+
+	/**
+	 * Get the average per-second rate of a counter over a time range. A
+	 * counter going backwards is taken to have been reset, or to have
+	 * wrapped, to zero, so its new value is what it counted in that
+	 * interval.
+	 * @return the rate, or -1 if there are fewer than two samples in range
+	 */
+	public double getRate(int column, long from, long to) {
+		return getRate(getSamples(from, to), column);
+	}
+
+	/**
+	 * @see #getRate(int, long, long)
+	 */
+	public static double getRate(List<Sample> samples, int column) {
+		if (samples.size() < 2) {
+			return -1;
+		}
+		long total = 0;
+		for (int i = 1; i < samples.size(); i++) {
+			long v = samples.get(i).getValue(column);
+			long d = v - samples.get(i - 1).getValue(column);
+			total += (d >= 0) ? d : v;
+		}
+		long elapsed = samples.get(samples.size() - 1).getTime() - samples.get(0).getTime();
+		return elapsed <= 0 ? -1 : total * 1000.0 / elapsed;
+	}
+}
@@ -0,0 +1,100 @@
+package net.floodlightcontroller.statistics;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded set of {@link TimeSeries} sharing the same columns and
+ * retention tiers, e.g. one per port or per flow. Once the store holds
+ * its maximum number of series, samples for new keys are dropped until
+ * old series are pruned, so its memory use is fixed.
+ *
+ * @param <K> the key of a series
+ */
+public class TimeSeriesStore<K> {
+	private final int columns;
+	private final List<TimeSeries.Tier> tiers;
+	private final int maxSeries;
+	private final ConcurrentMap<K, TimeSeries> series = new ConcurrentHashMap<K, TimeSeries>();
+	private final AtomicInteger count = new AtomicInteger();
+
+	/**
+	 * @param columns the number of counters of each series
+	 * @param tiers the retention tiers of each series, finest first
+	 * @param maxSeries the most series to keep
+	 */
+	public TimeSeriesStore(int columns, List<TimeSeries.Tier> tiers, int maxSeries) {
+		this.columns = columns;
+		this.tiers = tiers;
+		this.maxSeries = maxSeries;
+	}
+
+	/**
+	 * Record a sample, creating the key's series if there is room
+	 * @return false if the store is full and has no series for the key
+	 */
+	public boolean record(K key, long time, long... values) {
+		TimeSeries ts = series.get(key);
+		if (ts == null) {
+			if (count.incrementAndGet() > maxSeries) {
+				count.decrementAndGet();
+				return false;
+			}
+			TimeSeries created = new TimeSeries(columns, tiers);
+			ts = series.putIfAbsent(key, created);
+			if (ts == null) {
+				ts = created;
+			} else {
+				count.decrementAndGet();
+			}
+		}
+		ts.record(time, values);
+		return true;
+	}
+
+	/**
+	 * @return the key's series, or null if there is none
+	 */
+	public TimeSeries get(K key) {
+		return series.get(key);
+	}
+
+	public Set<K> keySet() {
+		return Collections.unmodifiableSet(series.keySet());
+	}
+
+	public int size() {
+		return count.get();
+	}
+
+	/**
+	 * Remove the series not updated since a time
+	 * @param before time in milliseconds since the epoch
+	 */
+	public void prune(long before) {
+		Iterator<Map.Entry<K, TimeSeries>> it = series.entrySet().iterator();
+		while (it.hasNext()) {
+			if (it.next().getValue().getLastUpdate() < before) {
+				it.remove();
+				count.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * @return how far back in milliseconds the coarsest tier reaches when full
+	 */
+	public long getRetentionMs() {
+		long retention = 0;
+		for (TimeSeries.Tier t : tiers) {
+			retention = Math.max(retention, t.getResolutionMs() * t.getCapacity());
+		}
+		return retention;
+	}
+}
@@ -0,0 +1,115 @@
+package net.floodlightcontroller.statistics.web;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import net.floodlightcontroller.statistics.FlowStatsKey;
+import net.floodlightcontroller.statistics.IStatisticsService;
+import net.floodlightcontroller.statistics.TimeSeries;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.restlet.data.Form;
+import org.restlet.resource.Get;
+import org.restlet.resource.ServerResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves the port and flow statistics history over a time range given by
+ * the optional 'from' and 'to' query parameters, in milliseconds since the
+ * epoch. The range defaults to the last minute.
+ */
+public class HistoryResource extends ServerResource {
+    private static final Logger log = LoggerFactory.getLogger(HistoryResource.class);
+    private static final long DEFAULT_RANGE_MS = 60 * 1000;
+
+    @Get("json")
+    public Object retrieve() {
+        IStatisticsService statisticsService = (IStatisticsService) getContext().getAttributes().get(IStatisticsService.class.getCanonicalName());
+
+        String d = (String) getRequestAttributes().get(SwitchStatisticsWebRoutable.DPID_STR);
+        String p = (String) getRequestAttributes().get(SwitchStatisticsWebRoutable.PORT_STR);
+
+        DatapathId dpid;
+        try {
+            dpid = DatapathId.of(d);
+        } catch (Exception e) {
+            log.error("Could not parse DPID {}", d);
+            return Collections.singletonMap("ERROR", "Could not parse DPID " + d);
+        }
+
+        Form form = getQuery();
+        String fromStr = form.getFirstValue("from", true);
+        String toStr = form.getFirstValue("to", true);
+        long to;
+        long from;
+        try {
+            to = toStr == null ? System.currentTimeMillis() : Long.parseLong(toStr);
+            from = fromStr == null ? to - DEFAULT_RANGE_MS : Long.parseLong(fromStr);
+        } catch (NumberFormatException e) {
+            return Collections.singletonMap("ERROR", "Could not parse time range " + fromStr + " to " + toStr);
+        }
+
+        if (p == null) { /* flows of the switch */
+            List<Map<String, Object>> flows = new ArrayList<Map<String, Object>>();
+            for (Entry<FlowStatsKey, TimeSeries> e : statisticsService.getFlowHistory(dpid).entrySet()) {
+                List<TimeSeries.Sample> samples = e.getValue().getSamples(from, to);
+                if (samples.isEmpty()) {
+                    continue;
+                }
+                Map<String, Object> flow = new LinkedHashMap<String, Object>();
+                flow.put("table-id", e.getKey().getTableId().toString());
+                flow.put("priority", e.getKey().getPriority());
+                flow.put("cookie", e.getKey().getCookie().toString());
+                flow.put("match", e.getKey().getMatch().toString());
+                flow.put("packets-per-second", TimeSeries.getRate(samples, IStatisticsService.FLOW_PACKETS));
+                flow.put("bits-per-second", bits(TimeSeries.getRate(samples, IStatisticsService.FLOW_BYTES)));
+                flow.put("samples", toMaps(samples, "packet-count", "byte-count"));
+                flows.add(flow);
+            }
+            return flows;
+        }
+
+        OFPort port;
+        try {
+            port = OFPort.of(Integer.parseInt(p));
+        } catch (Exception e) {
+            log.error("Could not parse port {}", p);
+            return Collections.singletonMap("ERROR", "Could not parse port " + p);
+        }
+        TimeSeries ts = statisticsService.getPortHistory(dpid, port);
+        if (ts == null) {
+            return Collections.singletonMap("ERROR", "No history for port " + port + " of switch " + dpid);
+        }
+        List<TimeSeries.Sample> samples = ts.getSamples(from, to);
+        Map<String, Object> m = new LinkedHashMap<String, Object>();
+        m.put("dpid", dpid.toString());
+        m.put("port", port.toString());
+        m.put("bits-per-second-rx", bits(TimeSeries.getRate(samples, IStatisticsService.PORT_RX_BYTES)));
+        m.put("bits-per-second-tx", bits(TimeSeries.getRate(samples, IStatisticsService.PORT_TX_BYTES)));
+        m.put("samples", toMaps(samples, "bytes-rx", "bytes-tx"));
+        return m;
+    }
+
+    private static double bits(double bytesPerSecond) {
+        return bytesPerSecond < 0 ? bytesPerSecond : bytesPerSecond * 8;
+    }
+
+    private static List<Map<String, Object>> toMaps(List<TimeSeries.Sample> samples, String... columns) {
+        List<Map<String, Object>> l = new ArrayList<Map<String, Object>>(samples.size());
+        for (TimeSeries.Sample s : samples) {
+            Map<String, Object> m = new LinkedHashMap<String, Object>();
+            m.put("time", s.getTime());
+            for (int i = 0; i < columns.length; i++) {
+                m.put(columns[i], s.getValue(i));
+            }
+            l.add(m);
+        }
+        return l;
+    }
+}
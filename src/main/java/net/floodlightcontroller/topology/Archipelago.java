@@ -12,7 +12,7 @@ import java.util.Set;
 public class Archipelago {
     private DatapathId id; // the lowest id of the nodes
     private final Set<Cluster> clusters;
-    private BroadcastTree destinationRootedFullTree;
+    private TopologyGraph.SearchTree destinationRootedFullTree;
 
     public Archipelago() {
         id = DatapathId.NONE;
@@ -66,10 +66,14 @@ public class Archipelago {
     }
 
     BroadcastTree getBroadcastTree() {
+        return destinationRootedFullTree == null ? null : destinationRootedFullTree.toBroadcastTree();
+    }
+
+    TopologyGraph.SearchTree getBroadcastSearchTree() {
         return destinationRootedFullTree;
     }
 
-    void setBroadcastTree(BroadcastTree bt) {
+    void setBroadcastTree(TopologyGraph.SearchTree bt) {
         destinationRootedFullTree = bt;
     }
 
@@ -51,6 +51,12 @@ public interface ITopologyService extends IFloodlightService  {
 	 */
 	public Date getLastUpdateTime();
 
+	/**
+	 * Retrieve how long each phase of computing the current topology took.
+	 * @return phase name to time taken in microseconds, in the order the phases ran
+	 */
+	public Map<String, Long> getComputeTimes();
+
 	/*******************************************************
 	 * PORT FUNCTIONS
 	 *******************************************************/
@@ -0,0 +1,381 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.topology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.floodlightcontroller.core.types.NodePortTuple;
+import net.floodlightcontroller.linkdiscovery.Link;
+import net.floodlightcontroller.routing.BroadcastTree;
+import net.floodlightcontroller.routing.Path;
+import net.floodlightcontroller.routing.PathId;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+
+/**
+ * Compressed sparse row (CSR) form of the links of a {@link TopologyInstance},
+ * which the shortest path, k-shortest path and broadcast tree computations
+ * run on.
+ *
+ * Switches are numbered densely in DPID order and links in their natural
+ * order. The links entering each switch are laid out contiguously in a
+ * single array, so a search walks int arrays rather than maps of boxed
+ * DPIDs and sets of links, and excluding switches or links only marks
+ * them instead of copying the maps. The Link, Path and BroadcastTree
+ * objects callers see are only built from the arrays when asked for.
+ *
+ * A graph is immutable once built and can be shared by threads, each of
+ * which needs its own {@link Search}.
+ */
+class TopologyGraph {
+    private final DatapathId[] nodes; /* sorted; the index of a switch is its position */
+    private final Link[] links; /* sorted; the index of a link is its position */
+    private final int[] linkSrc;
+    private final int[] linkDst;
+    private final int[] linkCost;
+    private final int[] inStart; /* links entering node i are inLinks[inStart[i]] to inLinks[inStart[i + 1] - 1] */
+    private final int[] inLinks;
+
+    /**
+     * @param switches the switches of the topology
+     * @param links the links of the topology by port; links with an
+     * endpoint outside of the switches are left out
+     * @param cost the cost of each link; missing links cost 1
+     */
+    TopologyGraph(Set<DatapathId> switches, Map<NodePortTuple, Set<Link>> links,
+            Map<Link, Integer> cost) {
+        nodes = switches.toArray(new DatapathId[switches.size()]);
+        Arrays.sort(nodes);
+
+        Set<Link> unique = new HashSet<Link>();
+        for (Set<Link> s : links.values()) {
+            for (Link l : s) {
+                if (l != null && switches.contains(l.getSrc()) && switches.contains(l.getDst())) {
+                    unique.add(l);
+                }
+            }
+        }
+        this.links = unique.toArray(new Link[unique.size()]);
+        Arrays.sort(this.links);
+
+        int m = this.links.length;
+        linkSrc = new int[m];
+        linkDst = new int[m];
+        linkCost = new int[m];
+        inStart = new int[nodes.length + 1];
+        for (int e = 0; e < m; e++) {
+            Link l = this.links[e];
+            linkSrc[e] = indexOf(l.getSrc());
+            linkDst[e] = indexOf(l.getDst());
+            Integer c = cost == null ? null : cost.get(l);
+            linkCost[e] = c == null ? 1 : c;
+            inStart[linkDst[e] + 1]++;
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            inStart[i + 1] += inStart[i];
+        }
+        inLinks = new int[m];
+        int[] next = Arrays.copyOf(inStart, nodes.length);
+        for (int e = 0; e < m; e++) {
+            inLinks[next[linkDst[e]]++] = e;
+        }
+    }
+
+    int getNodeCount() {
+        return nodes.length;
+    }
+
+    int getLinkCount() {
+        return links.length;
+    }
+
+    /**
+     * @return the index of the switch, or -1 if it is not in the graph
+     */
+    int indexOf(DatapathId sw) {
+        int i = Arrays.binarySearch(nodes, sw);
+        return i < 0 ? -1 : i;
+    }
+
+    DatapathId getNode(int node) {
+        return nodes[node];
+    }
+
+    Link getLink(int link) {
+        return links[link];
+    }
+
+    int getSrc(int link) {
+        return linkSrc[link];
+    }
+
+    int getDst(int link) {
+        return linkDst[link];
+    }
+
+    int getCost(int link) {
+        return linkCost[link];
+    }
+
+    List<Link> getLinks() {
+        return Arrays.asList(links);
+    }
+
+    /**
+     * @return the sum of the costs of the links
+     */
+    int getCost(int[] path) {
+        int cost = 0;
+        for (int e : path) {
+            cost += linkCost[e];
+        }
+        return cost;
+    }
+
+    /**
+     * Builds the Path crossing the links, with its hop count and latency set
+     */
+    Path toPath(PathId id, int[] path) {
+        List<NodePortTuple> npts = new ArrayList<NodePortTuple>(path.length * 2);
+        U64 latency = U64.ZERO;
+        for (int e : path) {
+            Link l = links[e];
+            npts.add(new NodePortTuple(l.getSrc(), l.getSrcPort()));
+            npts.add(new NodePortTuple(l.getDst(), l.getDstPort()));
+            latency = latency.add(l.getLatency());
+        }
+        Path p = new Path(id, npts);
+        p.setHopCount(path.length);
+        p.setLatency(latency);
+        return p;
+    }
+
+    Search newSearch() {
+        return new Search();
+    }
+
+    /**
+     * The result of a search: the next hop link and the cost from each
+     * switch to the root, -1 and TopologyInstance.MAX_PATH_WEIGHT for the
+     * switches that cannot reach it.
+     */
+    class SearchTree {
+        private final int root;
+        private final int[] nextHop;
+        private final int[] cost;
+        private volatile BroadcastTree view;
+
+        private SearchTree(int root) {
+            this.root = root;
+            this.nextHop = new int[nodes.length];
+            this.cost = new int[nodes.length];
+            Arrays.fill(nextHop, -1);
+            Arrays.fill(cost, TopologyInstance.MAX_PATH_WEIGHT);
+        }
+
+        int getRoot() {
+            return root;
+        }
+
+        /**
+         * @return the link leading from the switch toward the root, or -1
+         */
+        int getNextHop(int node) {
+            return nextHop[node];
+        }
+
+        /**
+         * @return the links from the switch to the root, empty if there
+         * is no path or the switch is the root
+         */
+        int[] pathFrom(int node) {
+            int hops = 0;
+            for (int n = node; nextHop[n] != -1; n = linkDst[nextHop[n]]) {
+                hops++;
+            }
+            int[] path = new int[hops];
+            int n = node;
+            for (int i = 0; i < hops; i++) {
+                path[i] = nextHop[n];
+                n = linkDst[path[i]];
+            }
+            return path;
+        }
+
+        /**
+         * @return the tree as a BroadcastTree, built on first use
+         */
+        BroadcastTree toBroadcastTree() {
+            BroadcastTree bt = view;
+            if (bt == null) {
+                HashMap<DatapathId, Link> treeLinks = new HashMap<DatapathId, Link>();
+                HashMap<DatapathId, Integer> treeCosts = new HashMap<DatapathId, Integer>();
+                for (int i = 0; i < nodes.length; i++) {
+                    treeLinks.put(nodes[i], nextHop[i] == -1 ? null : links[nextHop[i]]);
+                    treeCosts.put(nodes[i], cost[i]);
+                }
+                bt = new BroadcastTree(treeLinks, treeCosts);
+                view = bt;
+            }
+            return bt;
+        }
+    }
+
+    /**
+     * Scratch space for destination rooted Dijkstra searches, reused across
+     * searches. Switches and links can be excluded from the searches until
+     * the exclusions are cleared. Not thread-safe.
+     */
+    class Search {
+        private final boolean[] settled = new boolean[nodes.length];
+        private long[] heap = new long[16]; /* cost in the high word, node in the low word */
+        private int heapSize;
+
+        /* A switch or link is excluded if its stamp equals the current one */
+        private final int[] nodeStamp = new int[nodes.length];
+        private final int[] linkStamp = new int[links.length];
+        private int stamp = 1;
+
+        private Search() {
+        }
+
+        void clearExclusions() {
+            stamp++;
+        }
+
+        void excludeNode(int node) {
+            nodeStamp[node] = stamp;
+        }
+
+        /**
+         * Excludes the links entering the switch on the port
+         */
+        void excludeLinksInto(int node, OFPort port) {
+            for (int i = inStart[node]; i < inStart[node + 1]; i++) {
+                int e = inLinks[i];
+                if (links[e].getDstPort().equals(port)) {
+                    linkStamp[e] = stamp;
+                }
+            }
+        }
+
+        /**
+         * Computes the shortest paths from every switch to the root over
+         * the links and switches not excluded. Ties between switches at
+         * the same cost are settled in DPID order.
+         */
+        SearchTree run(int root) {
+            SearchTree t = new SearchTree(root);
+            Arrays.fill(settled, false);
+            heapSize = 0;
+            t.cost[root] = 0;
+            push(root, 0);
+
+            while (heapSize > 0) {
+                long top = pop();
+                int node = (int) top;
+                int dist = (int) (top >>> 32);
+                if (dist >= TopologyInstance.MAX_PATH_WEIGHT) break;
+                if (settled[node]) continue;
+                settled[node] = true;
+
+                for (int i = inStart[node]; i < inStart[node + 1]; i++) {
+                    int e = inLinks[i];
+                    int neighbor = linkSrc[e];
+                    if (neighbor == node || settled[neighbor]) continue;
+                    if (linkStamp[e] == stamp || nodeStamp[neighbor] == stamp) continue;
+
+                    int ndist = dist + linkCost[e];
+                    if (ndist < t.cost[neighbor]) {
+                        t.cost[neighbor] = ndist;
+                        t.nextHop[neighbor] = e;
+                        push(neighbor, ndist);
+                    }
+                }
+            }
+            return t;
+        }
+
+        /*
+         * Binary min-heap of (cost, node) packed into longs. Stale entries
+         * left behind by a cheaper push are skipped when popped.
+         */
+        private void push(int node, int dist) {
+            if (heapSize == heap.length) {
+                heap = Arrays.copyOf(heap, heapSize * 2);
+            }
+            long v = ((long) dist << 32) | node;
+            int i = heapSize++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] <= v) break;
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = v;
+        }
+
+        private long pop() {
+            long top = heap[0];
+            long v = heap[--heapSize];
+            int i = 0;
+            int half = heapSize >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < heapSize && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (v <= heap[child]) break;
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = v;
+            return top;
+        }
+    }
+
+    /**
+     * @return true if the first len links of the paths are the same
+     */
+    static boolean samePrefix(int[] a, int[] b, int len) {
+        for (int i = 0; i < len; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the paths contain one crossing the same links
+     */
+    static boolean containsPath(Collection<int[]> paths, int[] path) {
+        for (int[] p : paths) {
+            if (Arrays.equals(p, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
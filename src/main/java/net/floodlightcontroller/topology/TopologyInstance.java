@@ -20,11 +20,12 @@ import com.google.common.collect.ImmutableSet;
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.types.NodePortTuple;
 import net.floodlightcontroller.linkdiscovery.Link;
-import net.floodlightcontroller.routing.BroadcastTree;
+import net.floodlightcontroller.routing.IRoutingService.PATH_METRIC;
 import net.floodlightcontroller.routing.Path;
 import net.floodlightcontroller.routing.PathId;
 import net.floodlightcontroller.statistics.SwitchPortBandwidth;
 import net.floodlightcontroller.util.ClusterDFS;
+import net.floodlightcontroller.util.LRUHashMap;
 import org.projectfloodlight.openflow.protocol.OFPortDesc;
 import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.OFPort;
@@ -34,7 +35,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -49,7 +55,7 @@ public class TopologyInstance {
 
     public static final int MAX_LINK_WEIGHT = 10000;
     public static final int MAX_PATH_WEIGHT = Integer.MAX_VALUE - MAX_LINK_WEIGHT - 1;
-    public static final int PATH_CACHE_SIZE = 1000;
+    public static final int PATH_CACHE_SIZE = 50000;
 
     private static final Logger log = LoggerFactory.getLogger(TopologyInstance.class);
 
@@ -61,8 +67,8 @@ public class TopologyInstance {
     private Set<NodePortTuple>              portsBroadcastAll; /* all broadcast ports in topology */
     private Map<DatapathId, Set<OFPort>>    portsBroadcastPerSwitch; /* broadcast ports mapped per DPID */
     private Set<NodePortTuple>              portsWithMoreThanTwoLinks; /* a.k.a. "broadcast domain" non-P2P ports */
-    private Map<NodePortTuple, Set<Link>>   links; /* every link in entire topology */
-    private Map<NodePortTuple, Set<Link>>   linksNonBcastNonTunnel; /* only non-broadcast and non-tunnel links */
+    private Map<NodePortTuple, Set<Link>>   links; /* every link in entire topology, unmodifiable */
+    private Map<NodePortTuple, Set<Link>>   linksNonBcastNonTunnel; /* only non-broadcast and non-tunnel links, unmodifiable */
     private Map<NodePortTuple, Set<Link>>   linksExternal; /* BDDP links b/t clusters */
     private Set<Link>                       linksNonExternalInterCluster;
 
@@ -78,8 +84,18 @@ public class TopologyInstance {
     /* Per-archipelago */
     private List<Archipelago>                   archipelagos; /* connected clusters */
     private Map<Cluster, Archipelago>           archipelagoFromCluster;
+    private Map<DatapathId, Archipelago>        archipelagoFromSwitch;
     private Map<DatapathId, Set<NodePortTuple>> portsBroadcastPerArchipelago; /* broadcast ports in each archipelago ID */
-    private Map<PathId, List<Path>>             pathcache; /* contains computed paths ordered best to worst */
+
+    /* Paths */
+    private Map<PathId, List<Path>>             pathcache; /* lazily computed paths ordered best to worst, LRU bounded */
+    private Map<Link, Integer>                  linkCost; /* link costs under pathMetric, unmodifiable */
+    private TopologyGraph                       graph; /* CSR form of the links, searched by Yen's and the broadcast trees */
+    private PATH_METRIC                         pathMetric; /* metric the paths are computed with */
+    private int                                 maxPaths; /* number of paths computed per switch pair */
+
+    /* Time taken by each phase of the computation, in microseconds */
+    private final Map<String, Long> computeTimes = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
 
     protected TopologyInstance(Map<DatapathId, Set<OFPort>> portsWithLinks,
             Set<NodePortTuple> portsBlocked,
@@ -102,15 +118,8 @@ public class TopologyInstance {
         }
 
         this.portsBlocked = new HashSet<NodePortTuple>(portsBlocked);
-        this.linksNonBcastNonTunnel = new HashMap<NodePortTuple, Set<Link>>();
-        for (NodePortTuple npt : linksNonBcastNonTunnel.keySet()) {
-            this.linksNonBcastNonTunnel.put(npt, new HashSet<Link>(linksNonBcastNonTunnel.get(npt)));
-        }
-
-        this.links = new HashMap<NodePortTuple, Set<Link>>();
-        for (NodePortTuple npt : links.keySet()) {
-            this.links.put(npt, new HashSet<Link>(links.get(npt)));
-        }
+        this.linksNonBcastNonTunnel = copyUnmodifiable(linksNonBcastNonTunnel);
+        this.links = copyUnmodifiable(links);
 
         this.linksExternal = new HashMap<NodePortTuple, Set<Link>>();
         for (NodePortTuple npt : linksExternal.keySet()) {
@@ -130,25 +139,43 @@ public class TopologyInstance {
         this.portsBroadcastAll= new HashSet<NodePortTuple>();
         this.portsBroadcastPerSwitch = new HashMap<DatapathId,Set<OFPort>>();
 
-        this.pathcache = new HashMap<PathId, List<Path>>();
+        this.pathcache = Collections.synchronizedMap(
+                new LRUHashMap<PathId, List<Path>>(TopologyManager.getPathCacheSizeInternal()));
 
         this.portsBroadcastPerArchipelago = new HashMap<DatapathId, Set<NodePortTuple>>();
 
         this.archipelagoFromCluster = new HashMap<Cluster, Archipelago>();
+        this.archipelagoFromSwitch = new HashMap<DatapathId, Archipelago>();
+    }
+
+    /*
+     * The link maps are shared by the threads computing paths, so they
+     * are never modified once the instance is built.
+     */
+    private static <K> Map<K, Set<Link>> copyUnmodifiable(Map<K, Set<Link>> m) {
+        Map<K, Set<Link>> copy = new HashMap<K, Set<Link>>();
+        for (Entry<K, Set<Link>> e : m.entrySet()) {
+            copy.put(e.getKey(), Collections.unmodifiableSet(new HashSet<Link>(e.getValue())));
+        }
+        return Collections.unmodifiableMap(copy);
     }
 
     protected void compute() {
+        long t = System.nanoTime();
+
         /*
          * Step 1: Compute clusters ignoring ports with > 2 links and 
          * blocked links.
          */
         identifyClusters();
+        t = recordComputeTime("clusters", t);
 
         /*
          * Step 2: Associate non-blocked links within clusters to the cluster
          * in which they reside. The remaining links are inter-cluster links.
          */
         identifyIntraClusterLinks();
+        t = recordComputeTime("intra-cluster-links", t);
 
         /* 
          * Step 3: Compute the archipelagos. (Def: group of conneccted clusters)
@@ -158,22 +185,30 @@ public class TopologyInstance {
          * archipelago is by definition isolated from all other archipelagos.
          */
         identifyArchipelagos();
+        t = recordComputeTime("archipelagos", t);
 
         /*
-         * Step 4: Use Yens algorithm to permute through each node combination
-         * within each archipelago and compute multiple paths. The shortest
-         * path located (i.e. first run of dijkstra's algorithm) will be used 
-         * as the broadcast tree for the archipelago.
+         * Step 4: Compute the link costs and the broadcast tree of each
+         * archipelago, rooted at its archipelago ID switch. Paths between
+         * switches are not computed here. Yen's algorithm is run for a pair
+         * of switches the first time its paths are asked for, and the result
+         * is kept in the pathcache. Pairs carried over from the previous
+         * instance by carryOverPaths() are never recomputed, and all pairs
+         * can be computed up front with computeOrderedPaths().
          */
-        computeOrderedPaths();
+        computeGraph();
+        t = recordComputeTime("graph", t);
+        computeBroadcastTrees();
+        t = recordComputeTime("broadcast-trees", t);
 
         /*
          * Step 5: Determine the broadcast ports for each archipelago. These are
-         * the ports that reside on the broadcast tree computed and saved when
-         * performing path-finding. These are saved into multiple data structures
+         * the ports that reside on the broadcast tree computed in step 4.
+         * These are saved into multiple data structures
          * to aid in quick lookup per archipelago, per-switch, and topology-global.
          */
         computeBroadcastPortsPerArchipelago();
+        recordComputeTime("broadcast-ports", t);
 
         /*
          * Step 6: Optionally, print topology to log for added verbosity or when debugging.
@@ -181,6 +216,26 @@ public class TopologyInstance {
         printTopology();
     }
 
+    /*
+     * Records the time since startNs as the duration of the phase and
+     * returns the current time, the start of the next phase.
+     */
+    private long recordComputeTime(String phase, long startNs) {
+        long now = System.nanoTime();
+        computeTimes.put(phase, (now - startNs) / 1000);
+        return now;
+    }
+
+    /**
+     * @return the time in microseconds each phase of computing this
+     * instance took, in the order the phases ran
+     */
+    public Map<String, Long> getComputeTimes() {
+        synchronized (computeTimes) {
+            return new LinkedHashMap<String, Long>(computeTimes);
+        }
+    }
+
     /*
      * Checks if OF port is edge port
      */
@@ -441,60 +496,6 @@ public class TopologyInstance {
         return portsBroadcastAll.contains(npt);
     }
 
-    private class NodeDist implements Comparable<NodeDist> {
-        private final DatapathId node;
-        public DatapathId getNode() {
-            return node;
-        }
-
-        private final int dist;
-        public int getDist() {
-            return dist;
-        }
-
-        public NodeDist(DatapathId node, int dist) {
-            this.node = node;
-            this.dist = dist;
-        }
-
-        @Override
-        public int compareTo(NodeDist o) {
-            if (o.dist == this.dist) {
-                return (int)(this.node.getLong() - o.node.getLong());
-            }
-            return this.dist - o.dist;
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj)
-                return true;
-            if (obj == null)
-                return false;
-            if (getClass() != obj.getClass())
-                return false;
-            NodeDist other = (NodeDist) obj;
-            if (!getOuterType().equals(other.getOuterType()))
-                return false;
-            if (node == null) {
-                if (other.node != null)
-                    return false;
-            } else if (!node.equals(other.node))
-                return false;
-            return true;
-        }
-
-        @Override
-        public int hashCode() {
-            assert false : "hashCode not designed";
-        return 42;
-        }
-
-        private TopologyInstance getOuterType() {
-            return TopologyInstance.this;
-        }
-    }
-
     protected void identifyArchipelagos() {
         // Iterate through each external link and create/merge archipelagos based on the
         // islands that each link is connected to
@@ -559,87 +560,14 @@ public class TopologyInstance {
                 dstArchipelago = null;
             }
         }
-    }
-    
-
-    /*
-     * Dijkstra that calculates destination rooted trees over the entire topology.
-     */
-    private BroadcastTree dijkstra(Map<DatapathId, Set<Link>> links, DatapathId root,
-            Map<Link, Integer> linkCost,
-            boolean isDstRooted) {
-        HashMap<DatapathId, Link> nexthoplinks = new HashMap<DatapathId, Link>();
-        HashMap<DatapathId, Integer> cost = new HashMap<DatapathId, Integer>();
-        int w;
-
-        for (DatapathId node : links.keySet()) {
-            nexthoplinks.put(node, null);
-            cost.put(node, MAX_PATH_WEIGHT);
-            //log.debug("Added max cost to {}", node);
-        }
-
-        HashMap<DatapathId, Boolean> seen = new HashMap<DatapathId, Boolean>();
-        PriorityQueue<NodeDist> nodeq = new PriorityQueue<NodeDist>();
-        nodeq.add(new NodeDist(root, 0));
-        cost.put(root, 0);
-
-        //log.debug("{}", links);
-
-        while (nodeq.peek() != null) {
-            NodeDist n = nodeq.poll();
-            DatapathId cnode = n.getNode();
-            int cdist = n.getDist();
-
-            if (cdist >= MAX_PATH_WEIGHT) break;
-            if (seen.containsKey(cnode)) continue;
-            seen.put(cnode, true);
-
-            //log.debug("cnode {} and links {}", cnode, links.get(cnode));
-            if (links.get(cnode) == null) continue;
-            for (Link link : links.get(cnode)) {
-                DatapathId neighbor;
-
-                if (isDstRooted == true) {
-                    neighbor = link.getSrc();
-                } else {
-                    neighbor = link.getDst();
-                }
 
-                // links directed toward cnode will result in this condition
-                if (neighbor.equals(cnode)) continue;
-
-                if (seen.containsKey(neighbor)) continue;
-
-                if (linkCost == null || linkCost.get(link) == null) {
-                    w = 1;
-                } else {
-                    w = linkCost.get(link);
-                }
-
-                int ndist = cdist + w; // the weight of the link, always 1 in current version of floodlight.
-                log.debug("Neighbor: {}", neighbor);
-                log.debug("Cost: {}", cost);
-                log.debug("Neighbor cost: {}", cost.get(neighbor));
-
-                if (ndist < cost.get(neighbor)) {
-                    cost.put(neighbor, ndist);
-                    nexthoplinks.put(neighbor, link);
-
-                    NodeDist ndTemp = new NodeDist(neighbor, ndist);
-                    // Remove an object that's already in there.
-                    // Note that the comparison is based on only the node id,
-                    // and not node id and distance.
-                    nodeq.remove(ndTemp);
-                    // add the current object to the queue.
-                    nodeq.add(ndTemp);
-                }
+        for (Archipelago a : archipelagos) {
+            for (DatapathId sw : a.getSwitches()) {
+                archipelagoFromSwitch.put(sw, a);
             }
         }
-
-        BroadcastTree ret = new BroadcastTree(nexthoplinks, cost);
-
-        return ret;
     }
+    
 
     /*
      * Creates a map of links and the cost associated with each link
@@ -732,10 +660,16 @@ public class TopologyInstance {
         case UTILIZATION:
             TopologyManager.statisticsService.collectStatistics(true);
             log.debug("Using utilization for path metrics");
+            long windowMs = TimeUnit.SECONDS.toMillis(TopologyManager.getUtilizationWindowSecondsInternal());
             for (NodePortTuple npt : links.keySet()) {
                 if (links.get(npt) == null) continue;
+                /* smooth out single samples; fall back to the latest until there are two */
                 SwitchPortBandwidth spb = TopologyManager.statisticsService
-                        .getBandwidthConsumption(npt.getNodeId(), npt.getPortId());
+                        .getAverageBandwidthConsumption(npt.getNodeId(), npt.getPortId(), windowMs);
+                if (spb == null) {
+                    spb = TopologyManager.statisticsService
+                            .getBandwidthConsumption(npt.getNodeId(), npt.getPortId());
+                }
                 long bpsTx = 0;
                 if (spb != null) {
                     bpsTx = spb.getBitsPerSecondTx().getValue();
@@ -769,73 +703,274 @@ public class TopologyInstance {
     }
 
     /*
-     * Calculates and stores n possible paths  using Yen's algorithm,
-     * looping through every switch. These lists of routes are stored 
-     * in the pathcache.
+     * Computes the link costs and the graph that every run of Yen's
+     * algorithm on this instance shares.
+     */
+    private void computeGraph() {
+        pathMetric = TopologyManager.getPathMetricInternal();
+        maxPaths = TopologyManager.getMaxPathsToComputeInternal();
+        linkCost = Collections.unmodifiableMap(initLinkCostMap());
+        graph = new TopologyGraph(switches, links, linkCost);
+    }
+
+    private TopologyGraph.SearchTree computeBroadcastTree(Archipelago a) {
+        int root = graph.indexOf(a.getId());
+        return root < 0 ? null : graph.newSearch().run(root);
+    }
+
+    /*
+     * Computes the broadcast tree of each archipelago, rooted at the
+     * archipelago ID switch, on the path computation pool if there is one.
      */
-    private void computeOrderedPaths() {
-        List<Path> paths;
-        PathId pathId;
-        pathcache.clear();
-
-        for (Archipelago a : archipelagos) { /* for each archipelago */
-            Set<DatapathId> srcSws = a.getSwitches();
-            Set<DatapathId> dstSws = a.getSwitches();
-            log.debug("SRC {}", srcSws);
-            log.debug("DST {}", dstSws);
-
-            for (DatapathId src : srcSws) { /* permute all member switches */
-                for (DatapathId dst : dstSws) {
-                    log.debug("Calling Yens {} {}", src, dst);
-                    paths = yens(src, dst, TopologyManager.getMaxPathsToComputeInternal(),
-                            getArchipelago(src), getArchipelago(dst));
-                    pathId = new PathId(src, dst);
-                    pathcache.put(pathId, paths);
-                    log.debug("Adding paths {}", paths);
+    private void computeBroadcastTrees() {
+        ForkJoinPool pool = TopologyManager.getPathComputationPoolInternal();
+        if (pool == null || archipelagos.size() < 2) {
+            for (Archipelago a : archipelagos) {
+                a.setBroadcastTree(computeBroadcastTree(a));
+            }
+            return;
+        }
+
+        List<ForkJoinTask<TopologyGraph.SearchTree>> trees =
+                new ArrayList<ForkJoinTask<TopologyGraph.SearchTree>>(archipelagos.size());
+        for (Archipelago a : archipelagos) {
+            trees.add(pool.submit(() -> computeBroadcastTree(a)));
+        }
+        for (int i = 0; i < archipelagos.size(); i++) {
+            archipelagos.get(i).setBroadcastTree(trees.get(i).join());
+        }
+    }
+
+    /**
+     * Computes the paths between every pair of switches in each archipelago
+     * that is not in the pathcache yet, instead of waiting for the pairs to
+     * be asked for. The sources are split across the path computation pool
+     * if there is one.
+     *
+     * Every pair is computed from the same unmodifiable link maps and the
+     * results are added to the pathcache in DPID order, so the paths and
+     * the cache contents do not depend on the number of threads.
+     */
+    protected void computeOrderedPaths() {
+        long t = System.nanoTime();
+        List<DatapathId> srcs = new ArrayList<DatapathId>(archipelagoFromSwitch.keySet());
+        Collections.sort(srcs);
+
+        Map<Archipelago, List<DatapathId>> dsts = new HashMap<Archipelago, List<DatapathId>>();
+        for (Archipelago a : archipelagos) {
+            List<DatapathId> sws = new ArrayList<DatapathId>(a.getSwitches());
+            Collections.sort(sws);
+            dsts.put(a, sws);
+        }
+
+        List<List<Entry<PathId, List<Path>>>> results = new ArrayList<List<Entry<PathId, List<Path>>>>(srcs.size());
+        for (int i = 0; i < srcs.size(); i++) {
+            results.add(null);
+        }
+        OrderedPathsTask task = new OrderedPathsTask(srcs, dsts, results, 0, srcs.size());
+        ForkJoinPool pool = TopologyManager.getPathComputationPoolInternal();
+        if (pool == null) {
+            task.computeSources();
+        } else {
+            pool.invoke(task);
+        }
+
+        int pairs = 0;
+        for (List<Entry<PathId, List<Path>>> r : results) {
+            for (Entry<PathId, List<Path>> e : r) {
+                pathcache.put(e.getKey(), e.getValue());
+                pairs++;
+            }
+        }
+        if (pathcache.size() < pairs) {
+            log.warn("Computed paths for {} switch pairs, but only {} fit in the path cache",
+                    pairs, pathcache.size());
+        }
+        recordComputeTime("paths", t);
+    }
+
+    /*
+     * Runs Yen's algorithm from the sources in [lo, hi) to all other
+     * switches in their archipelago, splitting the range in halves until a
+     * single source is left.
+     */
+    private class OrderedPathsTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<DatapathId> srcs;
+        private final Map<Archipelago, List<DatapathId>> dsts;
+        private final List<List<Entry<PathId, List<Path>>>> results;
+        private final int lo;
+        private final int hi;
+
+        OrderedPathsTask(List<DatapathId> srcs, Map<Archipelago, List<DatapathId>> dsts,
+                List<List<Entry<PathId, List<Path>>>> results, int lo, int hi) {
+            this.srcs = srcs;
+            this.dsts = dsts;
+            this.results = results;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= 1) {
+                computeSources();
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new OrderedPathsTask(srcs, dsts, results, lo, mid),
+                    new OrderedPathsTask(srcs, dsts, results, mid, hi));
+        }
+
+        void computeSources() {
+            for (int i = lo; i < hi; i++) {
+                DatapathId src = srcs.get(i);
+                Archipelago a = getArchipelago(src);
+                List<Entry<PathId, List<Path>>> r = new ArrayList<Entry<PathId, List<Path>>>();
+                for (DatapathId dst : dsts.get(a)) {
+                    PathId pathId = new PathId(src, dst);
+                    if (pathcache.containsKey(pathId)) {
+                        continue;
+                    }
+                    r.add(new SimpleImmutableEntry<PathId, List<Path>>(pathId,
+                            yens(src, dst, maxPaths, a, a)));
                 }
+                /* each task writes its own slots only */
+                results.set(i, r);
             }
         }
     }
 
-    private Path buildPath(PathId id, BroadcastTree tree) {
-        NodePortTuple npt;
-        DatapathId srcId = id.getSrc();
-        DatapathId dstId = id.getDst();
-        //set of NodePortTuples on the route
-        LinkedList<NodePortTuple> sPorts = new LinkedList<NodePortTuple>();
-
-        if (tree == null) return new Path(id, ImmutableList.of()); /* empty route */
-
-        Map<DatapathId, Link> nexthoplinks = tree.getLinks();
-
-        if (!switches.contains(srcId) || !switches.contains(dstId)) {
-            // This is a switch that is not connected to any other switch
-            // hence there was no update for links (and hence it is not
-            // in the network)
-            log.debug("buildpath: Standalone switch: {}", srcId);
-
-            // The only possible non-null path for this case is
-            // if srcId equals dstId --- and that too is an 'empty' path []
-
-        } else if ((nexthoplinks != null) && (nexthoplinks.get(srcId) != null)) {
-            while (!srcId.equals(dstId)) {
-                Link l = nexthoplinks.get(srcId);
-                npt = new NodePortTuple(l.getSrc(), l.getSrcPort());
-                sPorts.addLast(npt);
-                npt = new NodePortTuple(l.getDst(), l.getDstPort());
-                sPorts.addLast(npt);
-                srcId = nexthoplinks.get(srcId).getDst();
+    /*
+     * Returns the paths between two switches, running Yen's algorithm and
+     * storing the result in the pathcache if they are not cached yet. Yen's
+     * runs outside of the cache lock; two threads missing on the same pair
+     * may both compute it, in which case the first result stored is kept.
+     * Returns null if the switches are not in the same archipelago.
+     */
+    private List<Path> getCachedPaths(DatapathId src, DatapathId dst) {
+        PathId pathId = new PathId(src, dst);
+        List<Path> paths = pathcache.get(pathId);
+        if (paths != null) {
+            return paths;
+        }
+
+        Archipelago a = getArchipelago(src);
+        if (a == null || a != getArchipelago(dst)) {
+            return null;
+        }
+
+        log.debug("Calling Yens {} {}", src, dst);
+        paths = yens(src, dst, maxPaths, a, a);
+        synchronized (pathcache) {
+            List<Path> cached = pathcache.get(pathId);
+            if (cached != null) {
+                return cached;
             }
+            pathcache.put(pathId, paths);
         }
-        // else, no path exists, and path equals null
+        log.debug("Adding paths {}", paths);
+        return paths;
+    }
 
-        Path result = null;
-        if (sPorts != null && !sPorts.isEmpty()) {
-            result = new Path(id, sPorts);
+    /**
+     * Seeds the pathcache with the paths of the previous topology instance
+     * that the link changes between the two instances cannot have affected,
+     * so that only the switch pairs routed across a changed link are
+     * recomputed after a link update.
+     *
+     * A pair is dropped if one of its paths crosses a link that has been
+     * removed or whose cost went up, or if its archipelago gained a link or
+     * has a link whose cost went down, since that may have made a shorter
+     * path available. Nothing is carried over if the path metric or the
+     * number of paths to compute has changed.
+     *
+     * @param old the instance this one replaces, may be null
+     */
+    protected void carryOverPaths(TopologyInstance old) {
+        if (old == null || old.graph == null
+                || old.pathMetric != pathMetric || old.maxPaths != maxPaths) {
+            return;
+        }
+        long t = System.nanoTime();
+
+        Set<Link> oldLinks = old.getAllLinks();
+        Set<Link> newLinks = getAllLinks();
 
+        /* Links that are gone or more expensive */
+        Set<Link> worsened = new HashSet<Link>();
+        for (Link l : oldLinks) {
+            if (!newLinks.contains(l) || getLinkCost(l) > old.getLinkCost(l)) {
+                worsened.add(l);
+            }
         }
-        log.trace("buildpath: {}", result);
-        return result == null ? new Path(id, ImmutableList.of()) : result;
+
+        /* Archipelagos with new or cheaper links */
+        Set<Archipelago> improved = new HashSet<Archipelago>();
+        for (Link l : newLinks) {
+            if (!oldLinks.contains(l) || getLinkCost(l) < old.getLinkCost(l)) {
+                improved.add(getArchipelago(l.getSrc()));
+                improved.add(getArchipelago(l.getDst()));
+            }
+        }
+
+        List<Entry<PathId, List<Path>>> entries;
+        synchronized (old.pathcache) {
+            entries = new ArrayList<Entry<PathId, List<Path>>>(old.pathcache.entrySet());
+        }
+
+        int carried = 0;
+        for (Entry<PathId, List<Path>> e : entries) {
+            Archipelago a = getArchipelago(e.getKey().getSrc());
+            if (a == null || a != getArchipelago(e.getKey().getDst()) || improved.contains(a)) {
+                continue;
+            }
+            if (crossesAny(e.getValue(), worsened)) {
+                continue;
+            }
+
+            /* Copy the paths so their latencies reflect this instance's links */
+            List<Path> paths = new ArrayList<Path>(e.getValue().size());
+            for (Path p : e.getValue()) {
+                Path copy = new Path(p.getId(), p.getPath());
+                setPathCosts(copy);
+                copy.setPathIndex(p.getPathIndex());
+                paths.add(copy);
+            }
+            pathcache.put(e.getKey(), paths);
+            carried++;
+        }
+        log.debug("Carried over paths for {} of {} switch pairs", carried, entries.size());
+        recordComputeTime("carry-over", t);
+    }
+
+    private static boolean crossesAny(List<Path> paths, Set<Link> links) {
+        if (links.isEmpty()) {
+            return false;
+        }
+        for (Path p : paths) {
+            List<NodePortTuple> npts = p.getPath();
+            for (int i = 0; i <= npts.size() - 2; i = i + 2) {
+                NodePortTuple src = npts.get(i);
+                NodePortTuple dst = npts.get(i + 1);
+                if (links.contains(new Link(src.getNodeId(), src.getPortId(),
+                        dst.getNodeId(), dst.getPortId(), U64.ZERO))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private Set<Link> getAllLinks() {
+        return new HashSet<Link>(graph.getLinks());
+    }
+
+    /* Same default as TopologyGraph for links without a cost */
+    private int getLinkCost(Link l) {
+        Integer cost = linkCost.get(l);
+        return cost == null ? 1 : cost;
     }
 
     /*
@@ -849,45 +984,17 @@ public class TopologyInstance {
             return false;
         }
 
-        BroadcastTree bt = srcA.getBroadcastTree();
+        TopologyGraph.SearchTree bt = srcA.getBroadcastSearchTree();
         if (bt == null) {
             return false;
         }
-
-        Link link = bt.getLinks().get(srcId);
-        if (link == null) {
-            return false;
-        }
-        return true;
-    }
-
-    private Map<DatapathId, Set<Link>> buildLinkDpidMap(Set<DatapathId> switches, Map<DatapathId,
-            Set<OFPort>> portsWithLinks, Map<NodePortTuple, Set<Link>> links) {
-
-        Map<DatapathId, Set<Link>> linkDpidMap = new HashMap<DatapathId, Set<Link>>();
-        for (DatapathId s : switches) {
-            if (portsWithLinks.get(s) == null) continue;
-            for (OFPort p : portsWithLinks.get(s)) {
-                NodePortTuple np = new NodePortTuple(s, p);
-                if (links.get(np) == null) continue;
-                for (Link l : links.get(np)) {
-                    if (switches.contains(l.getSrc()) && switches.contains(l.getDst())) {
-                        if (linkDpidMap.containsKey(s)) {
-                            linkDpidMap.get(s).add(l);
-                        } else {
-                            linkDpidMap.put(s, new HashSet<Link>(Arrays.asList(l)));
-                        }
-                    }
-                }
-            }
-        }
-
-        return linkDpidMap;
+        return bt.getNextHop(graph.indexOf(srcId)) != -1;
     }
 
     /**
      *
-     * This function returns K number of routes between a source and destination IF THEY EXIST IN THE ROUTECACHE.
+     * This function returns K number of routes between a source and destination from the ROUTECACHE. Routes
+     * for a pair of switches are computed and cached the first time they are requested.
      * If the user requests more routes than available, only the routes already stored in memory will be returned.
      * This value can be adjusted in floodlightdefault.properties.
      *
@@ -898,14 +1005,16 @@ public class TopologyInstance {
      * @return ArrayList of Routes or null if bad parameters
      */
     public List<Path> getPathsFast(DatapathId src, DatapathId dst, int k) {
-        PathId routeId = new PathId(src, dst);
-        List<Path> routes = pathcache.get(routeId);
+        if (k < 1) {
+            return ImmutableList.of();
+        }
 
-        if (routes == null || k < 1) {
+        List<Path> routes = getCachedPaths(src, dst);
+        if (routes == null) {
             return ImmutableList.of();
         }
 
-        if (k >= TopologyManager.getMaxPathsToComputeInternal() || k >= routes.size()) {
+        if (k >= maxPaths || k >= routes.size()) {
             return routes;
         } else {
             return routes.subList(0, k);
@@ -925,12 +1034,12 @@ public class TopologyInstance {
      * @return list of paths or empty
      */
     public List<Path> getPathsSlow(DatapathId src, DatapathId dst, int k) {
-        PathId pathId = new PathId(src, dst);
-        List<Path> paths = pathcache.get(pathId);
+        if (k < 1) return ImmutableList.of();
 
-        if (paths == null || k < 1) return ImmutableList.of();
+        List<Path> paths = getCachedPaths(src, dst);
+        if (paths == null) return ImmutableList.of();
 
-        if (k >= TopologyManager.getMaxPathsToComputeInternal() || k >= paths.size()) {
+        if (k >= maxPaths || k >= paths.size()) {
             return yens(src, dst, k, getArchipelago(src), getArchipelago(dst)); /* heavy computation */
         }
         else {
@@ -938,13 +1047,12 @@ public class TopologyInstance {
         }
     }
 
+    protected boolean isPathCached(DatapathId src, DatapathId dst) {
+        return pathcache.containsKey(new PathId(src, dst));
+    }
+
     private Archipelago getArchipelago(DatapathId d) {
-        for (Archipelago a : archipelagos) {
-            if (a.getSwitches().contains(d)) {
-                return a;
-            }
-        }
-        return null;
+        return archipelagoFromSwitch.get(d);
     }
 
     public void setPathCosts(Path p) {
@@ -979,203 +1087,121 @@ public class TopologyInstance {
         log.debug("Asking for paths from {} to {}", src, dst);
         log.debug("Asking for {} paths", K);
 
-        // Find link costs
-        Map<Link, Integer> linkCost = initLinkCostMap();
-
-        Map<DatapathId, Set<Link>> linkDpidMap = buildLinkDpidMap(switches, portsWithLinks, links);
-
-        Map<DatapathId, Set<Link>> copyOfLinkDpidMap = new HashMap<DatapathId, Set<Link>>(linkDpidMap);
-
         // A is the list of shortest paths. The number in the list at the end should be less than or equal to K
         // B is the list of possible shortest paths found in this function.
-        List<Path> A = new ArrayList<Path>();
-        List<Path> B = new ArrayList<Path>();
+        // Paths are kept as the graph's link indexes until they are returned.
+        List<int[]> A = new ArrayList<int[]>();
+        List<int[]> B = new ArrayList<int[]>();
 
         // The number of paths requested should never be less than 1.
         if (K < 1) {
-            return A;
+            return new ArrayList<Path>();
         }
 
         /* The switch is not a member of an archipelago. It must not be connected */
         if (aSrc == null || aDst == null) {
             log.warn("One or more switches not connected. Cannot compute path b/t {} and {}", src, dst);
-            return A;
+            return new ArrayList<Path>();
         }
 
         if (!aSrc.equals(aDst)) {
             log.warn("Switches {} and {} not in same archipelago. Cannot compute path", src, dst);
-            return A;
+            return new ArrayList<Path>();
         }
 
-        /* Use Dijkstra's to find the shortest path, which will also be the first path in A */
-        BroadcastTree bt = dijkstra(copyOfLinkDpidMap, dst, linkCost, true);
-        /* add this initial tree as our archipelago's broadcast tree (aSrc == aDst) */
-        aSrc.setBroadcastTree(bt);
-        /* now add the shortest path */
-        log.debug("src {} dst {} tree {}", new Object[] {src, dst, bt});
-        Path newroute = buildPath(new PathId(src, dst), bt); /* guaranteed to be in same tree */
-
-        if (newroute != null && !newroute.getPath().isEmpty()) { /* should never be null, but might be empty */
-            setPathCosts(newroute);
-            A.add(newroute);
-            log.debug("Found shortest path in Yens {}", newroute);
+        int srcNode = graph.indexOf(src);
+        int dstNode = graph.indexOf(dst);
+        if (srcNode < 0 || dstNode < 0) {
+            return new ArrayList<Path>();
         }
-        else {
+
+        /* Use Dijkstra's to find the shortest path, which will also be the first path in A */
+        TopologyGraph.Search search = graph.newSearch();
+        int[] shortest = search.run(dstNode).pathFrom(srcNode);
+        if (shortest.length == 0) {
             log.debug("No paths found in Yen's!");
-            return A;
+            return new ArrayList<Path>();
         }
+        A.add(shortest);
 
         // Loop through K - 1 times to get other possible shortest paths
         for (int k = 1; k < K; k++) {
-            log.trace("k: {}", k);
-            if (log.isTraceEnabled()){
-                log.trace("Path Length 'A.get(k-1).getPath().size()-2': {}", A.get(k - 1).getPath().size() - 2);
-            }
+            int[] path = A.get(k - 1);
             // Iterate through i, which is the number of links in the most recent path added to A
-            for (int i = 0; i <= A.get(k - 1).getPath().size() - 2; i = i + 2) {
-                log.trace("i: {}", i);
-                List<NodePortTuple> path = A.get(k - 1).getPath();
-                //log.debug("A(k-1): {}", A.get(k - 1).getPath());
+            for (int i = 0; i < path.length; i++) {
                 // The spur node is the point in the topology where Dijkstra's is called again to find another path
-                DatapathId spurNode = path.get(i).getNodeId();
-                // rootPath is the path along the previous shortest path that is before the spur node
-                Path rootPath = new Path(new PathId(path.get(0).getNodeId(), path.get(i).getNodeId()),
-                        path.subList(0, i));
-
+                int spurNode = graph.getSrc(path[i]);
+                search.clearExclusions();
 
-                Map<NodePortTuple, Set<Link>> allLinksCopy = new HashMap<NodePortTuple, Set<Link>>(links);
                 // Remove the links after the spur node that are part of other paths in A so that new paths
-                // found are unique
-                for (Path r : A) {
-                    if (r.getPath().size() > (i + 1) && r.getPath().subList(0, i).equals(rootPath.getPath())) {
-                        allLinksCopy.remove(r.getPath().get(i));
-                        allLinksCopy.remove(r.getPath().get(i+1));
+                // found are unique. Every link entering the ports of those links is removed.
+                for (int[] r : A) {
+                    if (r.length > i && TopologyGraph.samePrefix(r, path, i)) {
+                        Link l = graph.getLink(r[i]);
+                        search.excludeLinksInto(graph.getSrc(r[i]), l.getSrcPort());
+                        search.excludeLinksInto(graph.getDst(r[i]), l.getDstPort());
                     }
                 }
 
-                // Removes the root path so Dijkstra's doesn't try to go through it to find a path
-                Set<DatapathId> switchesCopy = new HashSet<DatapathId>(switches);
-                for (NodePortTuple npt : rootPath.getPath()) {
-                    if (!npt.getNodeId().equals(spurNode)) {
-                        switchesCopy.remove(npt.getNodeId());
-                    }
+                // Removes the root path, the part of the path before the spur node, so Dijkstra's doesn't
+                // try to go through it to find a path
+                for (int j = 0; j < i; j++) {
+                    search.excludeNode(graph.getSrc(path[j]));
                 }
 
-                // Builds the new topology without the parts we want removed
-                copyOfLinkDpidMap = buildLinkDpidMap(switchesCopy, portsWithLinks, allLinksCopy);
-
                 // Uses Dijkstra's to try to find a shortest path from the spur node to the destination
-                Path spurPath = buildPath(new PathId(spurNode, dst), dijkstra(copyOfLinkDpidMap, dst, linkCost, true));
-                if (spurPath == null || spurPath.getPath().isEmpty()) {
-                    log.debug("spurPath is null");
+                int[] spurPath = search.run(dstNode).pathFrom(spurNode);
+                if (spurPath.length == 0) {
+                    log.trace("spurPath is empty");
                     continue;
                 }
 
                 // Adds the root path and spur path together to get a possible shortest path
-                List<NodePortTuple> totalNpt = new LinkedList<NodePortTuple>();
-                totalNpt.addAll(rootPath.getPath());
-                totalNpt.addAll(spurPath.getPath());
-                Path totalPath = new Path(new PathId(src, dst), totalNpt);
-                setPathCosts(totalPath);
-
-                log.trace("Spur Node: {}", spurNode);
-                log.trace("Root Path: {}", rootPath);
-                log.trace("Spur Path: {}", spurPath);
-                log.trace("Total Path: {}", totalPath);
+                int[] totalPath = Arrays.copyOf(path, i + spurPath.length);
+                System.arraycopy(spurPath, 0, totalPath, i, spurPath.length);
+
                 // Adds the new path into B
-                int flag = 0;
-                for (Path r_B : B) {
-                    for (Path r_A : A) {
-                        if (r_B.getPath().equals(totalPath.getPath()) || r_A.getPath().equals(totalPath.getPath())) {
-                            flag = 1;
-                        }
-                    }
-                }
-                if (flag == 0) {
+                if (!TopologyGraph.containsPath(A, totalPath) && !TopologyGraph.containsPath(B, totalPath)) {
                     B.add(totalPath);
                 }
-
-                // Restore edges and nodes to graph
             }
 
             // If we get out of the loop and there isn't a path in B to add to A, all possible paths have been
             // found and return A
             if (B.isEmpty()) {
-                //log.debug("B list is empty in Yen's");
                 break;
             }
 
-            log.debug("Removing shortest path from {}", B);
             // Find the shortest path in B, remove it, and put it in A
-            log.debug("--------------BEFORE------------------------");
-            for (Path r : B) {
-                log.debug(r.toString());
-            }
-            log.debug("--------------------------------------------");
-            Path shortestPath = removeShortestPath(B, linkCost);
-            log.debug("--------------AFTER------------------------");
-            for (Path r : B) {
-                log.debug(r.toString());
-            }
-            log.debug("--------------------------------------------");
-
-            if (shortestPath != null) {
-                log.debug("Adding new shortest path to {} in Yen's", shortestPath);
-                A.add(shortestPath);
-                log.debug("A: {}", A);
-            }
-            else {
-                log.debug("removeShortestPath returned {}", shortestPath);
-            }
+            A.add(removeShortestPath(B));
         }
 
-        // Set the route counts
-        for (Path path : A) {
-            path.setPathIndex(A.indexOf(path));
+        // Build the paths and set the route counts
+        List<Path> paths = new ArrayList<Path>(A.size());
+        for (int[] a : A) {
+            Path p = graph.toPath(new PathId(src, dst), a);
+            p.setPathIndex(paths.size());
+            paths.add(p);
         }
-        //log.debug("END OF YEN'S --------------------");
-        return A;
+        log.debug("Found paths {}", paths);
+        return paths;
     }
 
-    private Path removeShortestPath(List<Path> routes, Map<Link, Integer> linkCost) {
-        log.debug("REMOVE SHORTEST PATH -------------");
-        // If there is nothing in B, return
-        if(routes == null){
-            log.debug("Routes == null");
-            return null;
-        }
-        Path shortestPath = null;
-        // Set the default shortest path to the max value
-        Integer shortestPathCost = Integer.MAX_VALUE;
-
-        // Iterate through B and find the shortest path
-        for (Path r : routes) {
-            Integer pathCost = 0;
-            // Add up the weights of each link in the path
-            // TODO Get the path cost from the route object
-            for (NodePortTuple npt : r.getPath()) {
-                if (links.get(npt) == null || linkCost.get(links.get(npt).iterator().next()) == null) {
-                    pathCost++;
-                }
-                else {
-                    pathCost += linkCost.get(links.get(npt).iterator().next());
-                }
-            }
-            log.debug("Path {} with cost {}", r, pathCost);
-            // If it is smaller than the current smallest, replace variables with the path just found
-            if (pathCost < shortestPathCost) {
-                log.debug("New shortest path {} with cost {}", r, pathCost);
-                shortestPathCost = pathCost;
-                shortestPath = r;
+    /*
+     * Removes and returns the cheapest path, the first one found of those
+     * tied for cheapest.
+     */
+    private int[] removeShortestPath(List<int[]> routes) {
+        int shortest = 0;
+        int shortestCost = Integer.MAX_VALUE;
+        for (int i = 0; i < routes.size(); i++) {
+            int cost = graph.getCost(routes.get(i));
+            if (cost < shortestCost) {
+                shortestCost = cost;
+                shortest = i;
             }
         }
-
-        log.debug("Remove {} from {}", shortestPath, routes);
-        // Remove the route from B and return it
-        routes.remove(shortestPath);
-
-        log.debug("Shortest path: {}", shortestPath);
-        return shortestPath;
+        return routes.remove(shortest);
     }
 
     /**
@@ -1226,12 +1252,11 @@ public class TopologyInstance {
 
         Path result = null;
 
-        try {
-            if (!pathcache.get(id).isEmpty()) {
-                result = pathcache.get(id).get(0);
-            }
-        } catch (Exception e) {
+        List<Path> paths = getCachedPaths(srcId, dstId);
+        if (paths == null) {
             log.warn("Could not find route from {} to {}. If the path exists, wait for the topology to settle, and it will be detected", srcId, dstId);
+        } else if (!paths.isEmpty()) {
+            result = paths.get(0);
         }
 
         if (log.isTraceEnabled()) {
@@ -1369,9 +1394,11 @@ public class TopologyInstance {
         Set<NodePortTuple> s;
         for (Archipelago a : archipelagos) {
             s = new HashSet<NodePortTuple>();
-            for (Entry<DatapathId, Link> e : a.getBroadcastTree().getLinks().entrySet()) {
-                Link l = e.getValue();
-                if (l != null) { /* null indicates root node (leads nowhere "up") */
+            TopologyGraph.SearchTree bt = a.getBroadcastSearchTree();
+            for (int node = 0; bt != null && node < graph.getNodeCount(); node++) {
+                int link = bt.getNextHop(node);
+                if (link != -1) { /* -1 indicates root node (leads nowhere "up") or not in the tree */
+                    Link l = graph.getLink(link);
                     NodePortTuple src = new NodePortTuple(l.getSrc(), l.getSrcPort());
                     NodePortTuple dst = new NodePortTuple(l.getDst(), l.getDstPort());
                     
@@ -53,6 +53,8 @@ import com.google.common.collect.ImmutableSet;
 
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -74,6 +76,30 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
      */
     private static volatile int maxPathsToCompute = 3;
 
+    /**
+     * Maximum number of switch pairs whose paths are cached per topology instance.
+     */
+    private static volatile int pathCacheSize = TopologyInstance.PATH_CACHE_SIZE;
+
+    /**
+     * Window in seconds over which port utilization is averaged for the
+     * utilization path metric.
+     */
+    private static volatile int utilizationWindowSeconds = 60;
+
+    /**
+     * Whether all paths are computed when the topology changes instead of
+     * when they are first asked for.
+     */
+    private static volatile boolean precomputePaths = false;
+
+    /**
+     * Pool computing broadcast trees and precomputed paths, null to
+     * compute them on the topology thread. Replaced when the module is
+     * initialized and shut down with the controller.
+     */
+    private static volatile ForkJoinPool pathComputationPool;
+
     /**
      * Role of the controller.
      */
@@ -271,6 +297,11 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         return lastUpdateTime;
     }
 
+    @Override
+    public Map<String, Long> getComputeTimes() {
+        return getCurrentInstance().getComputeTimes();
+    }
+
     @Override
     public void addListener(ITopologyListener listener) {
         topologyAware.add(listener);
@@ -355,6 +386,18 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         return maxPathsToCompute;
     }
 
+    protected static int getPathCacheSizeInternal() {
+        return pathCacheSize;
+    }
+
+    protected static int getUtilizationWindowSecondsInternal() {
+        return utilizationWindowSeconds;
+    }
+
+    protected static ForkJoinPool getPathComputationPoolInternal() {
+        return pathComputationPool;
+    }
+
     @Override
     public int getMaxPathsToCompute() {
         return maxPathsToCompute;
@@ -589,6 +632,7 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         l.add(IOFSwitchService.class);
         l.add(IDebugCounterService.class);
         l.add(IRestApiService.class);
+        l.add(IShutdownService.class);
         return l;
     }
 
@@ -652,6 +696,57 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
                     }
                 }
                 log.info("Will compute a max of {} paths upon topology updates", maxPathsToCompute);
+
+                String cacheSize = configOptions.get("pathCacheSize") != null
+                        ? configOptions.get("pathCacheSize").trim() : null;
+                if (cacheSize != null) {
+                    try {
+                        int size = Integer.parseInt(cacheSize);
+                        if (size < 1) {
+                            throw new NumberFormatException();
+                        }
+                        pathCacheSize = size;
+                    } catch (NumberFormatException e) {
+                        log.error("Invalid 'pathCacheSize'. Using default {}", pathCacheSize);
+                    }
+                }
+                log.info("Will cache paths for a max of {} switch pairs", pathCacheSize);
+
+                String window = configOptions.get("utilizationWindowSeconds") != null
+                        ? configOptions.get("utilizationWindowSeconds").trim() : null;
+                if (window != null) {
+                    try {
+                        int w = Integer.parseInt(window);
+                        if (w < 1) {
+                            throw new NumberFormatException();
+                        }
+                        utilizationWindowSeconds = w;
+                    } catch (NumberFormatException e) {
+                        log.error("Invalid 'utilizationWindowSeconds'. Using default {}", utilizationWindowSeconds);
+                    }
+                }
+
+                String precompute = configOptions.get("precomputePaths");
+                if (precompute != null) {
+                    precomputePaths = Boolean.parseBoolean(precompute.trim());
+                }
+
+                int threads = 1;
+                String computeThreads = configOptions.get("pathComputationThreads") != null
+                        ? configOptions.get("pathComputationThreads").trim() : null;
+                if (computeThreads != null) {
+                    try {
+                        threads = Integer.parseInt(computeThreads);
+                    } catch (NumberFormatException e) {
+                        log.error("Invalid 'pathComputationThreads'. Using default {}", threads);
+                    }
+                }
+                shutdownPathComputationPool();
+                if (threads > 1) {
+                    pathComputationPool = newPathComputationPool(threads);
+                }
+                log.info("Will {} paths upon topology updates on {} thread(s)",
+                        precomputePaths ? "compute all" : "lazily compute", Math.max(threads, 1));
     }
 
     @Override
@@ -670,9 +765,36 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         linkDiscoveryService.addListener(this);
         floodlightProviderService.addOFMessageListener(OFType.PACKET_IN, this);
         floodlightProviderService.addHAListener(this.haListener);
+        context.getServiceImpl(IShutdownService.class)
+                .registerShutdownListener(new IShutdownListener() {
+                    @Override
+                    public void floodlightIsShuttingDown() {
+                        shutdownPathComputationPool();
+                    }
+                });
         addRestletRoutable();
     }
 
+    private static ForkJoinPool newPathComputationPool(int threads) {
+        return new ForkJoinPool(threads, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+            @Override
+            public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                ForkJoinWorkerThread t =
+                        ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                t.setName("TopologyPathCompute-" + t.getPoolIndex());
+                return t;
+            }
+        }, null, false);
+    }
+
+    private static void shutdownPathComputationPool() {
+        ForkJoinPool pool = pathComputationPool;
+        pathComputationPool = null;
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
     private void registerTopologyDebugCounters() throws FloodlightModuleException {
         if (debugCounterService == null) {
             log.error("debugCounterService should not be null. Has IDebugEventService been loaded previously?");
@@ -1013,6 +1135,10 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
                 interClusterLinks);
 
         nt.compute();
+        nt.carryOverPaths(currentInstance);
+        if (precomputePaths) {
+            nt.computeOrderedPaths();
+        }
 
         currentInstance = nt;
 
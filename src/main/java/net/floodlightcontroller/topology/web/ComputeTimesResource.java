@@ -0,0 +1,35 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.topology.web;
+
+import net.floodlightcontroller.core.types.JsonObjectWrapper;
+import net.floodlightcontroller.topology.ITopologyService;
+
+import org.restlet.resource.Get;
+import org.restlet.resource.ServerResource;
+
+/**
+ * Time in microseconds each phase of the last topology computation took
+ */
+public class ComputeTimesResource extends ServerResource {
+    @Get("json")
+    public JsonObjectWrapper retrieve() {
+        ITopologyService topology = 
+                (ITopologyService)getContext().getAttributes().
+                    get(ITopologyService.class.getCanonicalName());
+        
+        return JsonObjectWrapper.of(topology.getComputeTimes());
+    }
+}
@@ -39,6 +39,7 @@ public class TopologyWebRoutable implements RestletRoutable {
         router.attach("/broadcastports/json", AllBroadcastPortsResource.class);
         router.attach("/enabledports/json", EnabledPortsResource.class);
         router.attach("/blockedports/json", BlockedPortsResource.class);
+        router.attach("/compute-times/json", ComputeTimesResource.class);
 
         return router;
     }
@@ -31,6 +31,8 @@ import org.slf4j.LoggerFactory;
  * Dampens OFMessages sent to an OF switch. A message is only written to 
  * a switch if the same message (as defined by .equals()) has not been written
  * in the last n milliseconds. Timer granularity is based on TimedCache
+ * Messages that are written go through {@link OFMessageWriteBatch}, so they
+ * are coalesced while a write batch is active on the calling thread.
  * @author gregor
  *
  */
@@ -120,7 +122,7 @@ public class OFMessageDamper {
     public boolean write(IOFSwitch sw, OFMessage msg) {
         if (!msgTypesToCache.contains(msg.getType())) {
             log.debug("Not dampening this type of msg {}", msg);
-            sw.write(msg);
+            OFMessageWriteBatch.write(sw, msg);
             return true;
         }
         
@@ -131,7 +133,7 @@ public class OFMessageDamper {
             return false; 
         } else {
             log.debug("Not dampening new msg {}", msg);
-            sw.write(msg);
+            OFMessageWriteBatch.write(sw, msg);
             return true;
         }
     }
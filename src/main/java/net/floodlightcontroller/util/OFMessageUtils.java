@@ -113,6 +113,19 @@ public class OFMessageUtils {
 		return pi.getVersion().compareTo(OFVersion.OF_12) < 0 ? pi.getInPort() : pi.getMatch().get(MatchField.IN_PORT);
 	}
 
+	/**
+	 * Get the ingress port of a packet-out message. The manner in which
+	 * this is done depends on the OpenFlow version. OF1.0 thru 1.4 have
+	 * a specific in_port field, while OF1.5+ store this information in
+	 * the packet-out's match field.
+	 * 
+	 * @param po, the OFPacketOut
+	 * @return the ingress OFPort
+	 */
+	public static OFPort getInPort(OFPacketOut po) {
+		return po.getVersion().compareTo(OFVersion.OF_15) < 0 ? po.getInPort() : po.getMatch().get(MatchField.IN_PORT);
+	}
+
 	/**
 	 * Set the ingress port of a packet-out message. The manner in which
 	 * this is done depends on the OpenFlow version. OF1.0 thru 1.4 have
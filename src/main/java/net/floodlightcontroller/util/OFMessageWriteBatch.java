@@ -0,0 +1,113 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.floodlightcontroller.core.IOFSwitch;
+
+import org.projectfloodlight.openflow.protocol.OFMessage;
+
+/**
+ * Coalesces the OFMessages written to switches on the current thread.
+ *
+ * Between begin() and the matching end(), write() queues messages per
+ * switch instead of writing them; end() then hands each switch all of
+ * its messages in one IOFSwitch.write(Iterable) call. Outside of a
+ * batch, write() writes straight through. Batches nest; only the
+ * outermost end() writes.
+ *
+ * Only messages written through this class are coalesced, so messages a
+ * caller writes to the same switch directly may overtake queued ones.
+ */
+public final class OFMessageWriteBatch {
+    private static final ThreadLocal<OFMessageWriteBatch> batch =
+            new ThreadLocal<OFMessageWriteBatch>() {
+        @Override
+        protected OFMessageWriteBatch initialValue() {
+            return new OFMessageWriteBatch();
+        }
+    };
+
+    private final Map<IOFSwitch, List<OFMessage>> pending =
+            new LinkedHashMap<IOFSwitch, List<OFMessage>>();
+    private int depth;
+
+    private OFMessageWriteBatch() { }
+
+    /**
+     * Start coalescing writes on the current thread
+     */
+    public static void begin() {
+        batch.get().depth++;
+    }
+
+    /**
+     * End a batch started by begin(). Ending the outermost batch writes
+     * all queued messages.
+     */
+    public static void end() {
+        OFMessageWriteBatch b = batch.get();
+        if (b.depth > 0 && --b.depth == 0) {
+            b.flush();
+        }
+    }
+
+    /**
+     * @return true if writes on the current thread are being coalesced
+     */
+    public static boolean isActive() {
+        return batch.get().depth > 0;
+    }
+
+    /**
+     * Write a message to a switch, or queue it if a batch is active
+     * @param sw
+     * @param msg
+     */
+    public static void write(IOFSwitch sw, OFMessage msg) {
+        OFMessageWriteBatch b = batch.get();
+        if (b.depth == 0) {
+            sw.write(msg);
+            return;
+        }
+        List<OFMessage> msgs = b.pending.get(sw);
+        if (msgs == null) {
+            msgs = new ArrayList<OFMessage>();
+            b.pending.put(sw, msgs);
+        }
+        msgs.add(msg);
+    }
+
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        /* copy first; a switch write may re-enter and queue more */
+        List<Map.Entry<IOFSwitch, List<OFMessage>>> entries =
+                new ArrayList<Map.Entry<IOFSwitch, List<OFMessage>>>(pending.entrySet());
+        pending.clear();
+        for (Map.Entry<IOFSwitch, List<OFMessage>> e : entries) {
+            if (e.getValue().size() == 1) {
+                e.getKey().write(e.getValue().get(0));
+            } else {
+                e.getKey().write(e.getValue());
+            }
+        }
+    }
+}
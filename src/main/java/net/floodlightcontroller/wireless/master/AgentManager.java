@@ -5,13 +5,15 @@ import java.net.InetSocketAddress;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.MoreExecutors;
+
 import net.floodlightcontroller.core.IFloodlightProviderService;
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
@@ -26,7 +28,8 @@ public class AgentManager {
     private final ClientManager clientManager;
     private final PoolManager poolManager;
     
-    private final Timer failureDetectionTimer = new Timer();
+    private final DeadlineTimer failureDetectionTimer = new DeadlineTimer("WirelessTimer");
+    private Executor executor = MoreExecutors.sameThreadExecutor();
 	private int agentTimeout = 6000;
 	
 	protected AgentManager (ClientManager clientManager, PoolManager poolManager) {
@@ -38,6 +41,22 @@ public class AgentManager {
     	this.switchService = service;
     }
 	
+	/**
+	 * Set the executor that timed out agents are cleared out on,
+	 * off the timer's thread
+	 */
+	protected void setExecutor(final Executor executor) {
+		this.executor = executor;
+	}
+	
+	/**
+	 * The timer watching agent liveness, to be shared with other
+	 * per-agent and per-client deadlines
+	 */
+	protected DeadlineTimer getTimer() {
+		return failureDetectionTimer;
+	}
+	
 	protected void setAgentTimeout (final int timeout) {
     	assert (timeout > 0);
     	agentTimeout = timeout;
@@ -197,42 +216,74 @@ public class AgentManager {
 
     		log.info("Adding WirelessAgent to map: " + agentAddr.getHostAddress());
 
-    		/* This TimerTask checks the lastHeard value
-    		 * of the agent in order to handle failure detection
+    		/* The agent's deadline follows its lastHeard value,
+    		 * in order to handle failure detection
     		 */
-    		failureDetectionTimer.scheduleAtFixedRate(new AgentFailureDetectorTask(agent), 1, agentTimeout/2);
+    		failureDetectionTimer.watch(new AgentFailureDetector(agent));
 		}
 
 		return true;
 	}
 	
-	private class AgentFailureDetectorTask extends TimerTask {
+	private class AgentFailureDetector implements DeadlineTimer.Watched {
 		private final IApAgent agent;
 		
-		AgentFailureDetectorTask(final IApAgent agent){
+		AgentFailureDetector(final IApAgent agent){
 			this.agent = agent;
 		}
 		
 		@Override
-		public void run() {
-			if ((System.currentTimeMillis() - agent.getLastHeard()) >= agentTimeout) {
-				log.error("Agent: " + agent.getIpAddress().getHostAddress().toString() + " has timed out");
-				
-				/* This is default behaviour, maybe we should
-				 * re-assign the client based on some specific
-				 * behaviour
-				 */
-				
-				// TODO: There should be a way to lock the master
-				// during such operations	
-				for (WirelessClient oc: agent.getLvapsLocal()) {
-					clientManager.getClients().get(oc.getMacAddress()).getLvap().setAgent(null);
+		public long getDeadline() {
+			if (agentMap.get(agent.getIpAddress()) != agent) {
+				return -1;
+			}
+			return agent.getLastHeard() + agentTimeout;
+		}
+		
+		@Override
+		public void expired(long deadline) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					clearOut();
 				}
-				
-				// Agent should now be cleared out
-				removeAgent(agent.getIpAddress());
-				this.cancel();
+			});
+		}
+		
+		private void clearOut() {
+			/* The agent may have been heard from, or cleared out,
+			 * while this waited for the executor
+			 */
+			long current = getDeadline();
+			if (current < 0) {
+				return;
+			}
+			if (current > System.currentTimeMillis()) {
+				failureDetectionTimer.watch(this);
+				return;
 			}
+			log.error("Agent: " + agent.getIpAddress().getHostAddress().toString() + " has timed out, "
+					+ "not heard from for " + (System.currentTimeMillis() - agent.getLastHeard()) + "ms");
+			
+			/* This is default behaviour, maybe we should
+			 * re-assign the client based on some specific
+			 * behaviour
+			 */
+			
+			// TODO: There should be a way to lock the master
+			// during such operations	
+			Set<WirelessClient> lvaps = agent.getLvapsLocal();
+			if (lvaps != null) {
+				for (WirelessClient oc: lvaps) {
+					WirelessClient client = clientManager.getClients().get(oc.getMacAddress());
+					if (client != null) {
+						client.getLvap().setAgent(null);
+					}
+				}
+			}
+			
+			// Agent should now be cleared out
+			removeAgent(agent.getIpAddress());
 		}
 		
 	}
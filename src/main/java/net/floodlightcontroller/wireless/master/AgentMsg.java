@@ -0,0 +1,201 @@
+package net.floodlightcontroller.wireless.master;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.projectfloodlight.openflow.types.MacAddress;
+
+/**
+ * A message from an agent, parsed straight from the bytes of its datagram.
+ *
+ * message format:
+ * -----------------------------------------
+ * | type | client mac | payload		   |
+ * -----------------------------------------
+ *
+ * except for a ping, which is the type alone. The message is trimmed and
+ * lowercased, as agents may pad it, and only the payload is decoded into
+ * a String. An instance is reused for every message a worker handles.
+ */
+class AgentMsg {
+
+	enum Type {
+		PING, PROBE, ASSOC, DISASSOC, PUBLISH
+	}
+
+	private static final byte[] PING = bytes("ping");
+	private static final byte[] PROBE = bytes("probe");
+	private static final byte[] AUTH = bytes("auth");
+	private static final byte[] ASSOC = bytes("assoc");
+	private static final byte[] DISASSOC = bytes("disassoc");
+	private static final byte[] DEAUTH = bytes("deauth");
+	private static final byte[] PUBLISH = bytes("publish");
+
+	private Type type;
+	private MacAddress client;
+	private String payload;
+	private String eventType;
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	Type getType() {
+		return type;
+	}
+
+	MacAddress getClient() {
+		return client;
+	}
+
+	/**
+	 * @return the payload: the SSID of a probe, empty if none; the station
+	 * info of an assoc; the reason of a disassoc, null if none; the
+	 * parameters of a publish
+	 */
+	String getPayload() {
+		return payload;
+	}
+
+	/**
+	 * @return the event type of a publish
+	 */
+	String getEventType() {
+		return eventType;
+	}
+
+	/**
+	 * Parse the message between the buffer's position and limit, leaving
+	 * them untouched.
+	 * @return false if the message is malformed or of a type the master
+	 * doesn't handle, such as auth
+	 */
+	boolean parse(ByteBuffer buf) {
+		type = null;
+		client = null;
+		payload = null;
+		eventType = null;
+
+		int start = buf.position();
+		int end = buf.limit();
+		while (start < end && isSpace(buf.get(start))) start++;
+		while (end > start && isSpace(buf.get(end - 1))) end--;
+
+		int typeEnd = indexOf(buf, (byte) ' ', start, end);
+		if (typeEnd == end) {
+			if (matches(buf, start, end, PING)) {
+				type = Type.PING;
+				return true;
+			}
+			return false;
+		}
+
+		if (matches(buf, start, typeEnd, PROBE)) {
+			type = Type.PROBE;
+		} else if (matches(buf, start, typeEnd, ASSOC)) {
+			type = Type.ASSOC;
+		} else if (matches(buf, start, typeEnd, DISASSOC) || matches(buf, start, typeEnd, DEAUTH)) {
+			type = Type.DISASSOC;
+		} else if (matches(buf, start, typeEnd, PUBLISH)) {
+			type = Type.PUBLISH;
+		} else {
+			/* includes AUTH, which the master doesn't handle */
+			return false;
+		}
+
+		int macStart = typeEnd + 1;
+		int macEnd = indexOf(buf, (byte) ' ', macStart, end);
+		long mac = parseMac(buf, macStart, macEnd);
+		if (mac < 0) {
+			return false;
+		}
+		client = MacAddress.of(mac);
+		String rest = macEnd < end ? decodeLowerCase(buf, macEnd + 1, end) : null;
+
+		switch (type) {
+		case PROBE:
+			payload = rest == null ? "" : rest;
+			return true;
+		case ASSOC:
+			payload = rest;
+			return rest != null;
+		case DISASSOC:
+			payload = rest;
+			return true;
+		case PUBLISH:
+			if (rest == null) {
+				return false;
+			}
+			int sp = rest.indexOf(' ');
+			if (sp < 0) {
+				return false;
+			}
+			eventType = rest.substring(0, sp);
+			payload = rest.substring(sp + 1);
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private static boolean isSpace(byte b) {
+		return (b & 0xff) <= ' ';
+	}
+
+	private static int indexOf(ByteBuffer buf, byte b, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (buf.get(i) == b) {
+				return i;
+			}
+		}
+		return to;
+	}
+
+	/* case-insensitive for ASCII letters */
+	private static boolean matches(ByteBuffer buf, int from, int to, byte[] token) {
+		if (to - from != token.length) {
+			return false;
+		}
+		for (int i = 0; i < token.length; i++) {
+			if ((buf.get(from + i) | 0x20) != token[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the MAC address in xx:xx:xx:xx:xx:xx form as a long, or -1
+	 */
+	private static long parseMac(ByteBuffer buf, int from, int to) {
+		if (to - from != 17) {
+			return -1;
+		}
+		long mac = 0;
+		for (int i = 0; i < 6; i++) {
+			int hi = hex(buf.get(from + 3 * i));
+			int lo = hex(buf.get(from + 3 * i + 1));
+			if (hi < 0 || lo < 0 || (i < 5 && buf.get(from + 3 * i + 2) != ':')) {
+				return -1;
+			}
+			mac = (mac << 8) | (hi << 4) | lo;
+		}
+		return mac;
+	}
+
+	private static int hex(byte b) {
+		if (b >= '0' && b <= '9') return b - '0';
+		if (b >= 'a' && b <= 'f') return b - 'a' + 10;
+		if (b >= 'A' && b <= 'F') return b - 'A' + 10;
+		return -1;
+	}
+
+	private static String decodeLowerCase(ByteBuffer buf, int from, int to) {
+		byte[] b = new byte[to - from];
+		for (int i = 0; i < b.length; i++) {
+			byte c = buf.get(from + i);
+			b[i] = c >= 'A' && c <= 'Z' ? (byte) (c | 0x20) : c;
+		}
+		return new String(b, StandardCharsets.UTF_8);
+	}
+}
@@ -1,158 +1,285 @@
 package net.floodlightcontroller.wireless.master;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.ExecutorService;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.debugcounter.IDebugCounterService.MetaData;
 
-import org.projectfloodlight.openflow.types.MacAddress;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class AgentMsgServer implements Runnable{
+/**
+ * Receives the UDP messages of the agents.
+ *
+ * A single thread receives datagrams from a non-blocking DatagramChannel,
+ * draining up to MAX_BATCH of them each time the channel is readable,
+ * into direct buffers taken from a fixed pool. Datagrams are handed to
+ * worker threads by agent address, so the messages of an agent are
+ * handled in the order they arrived while a burst from one agent only
+ * delays the agents sharing its worker. A worker parses a message from
+ * the bytes in place, see {@link AgentMsg}, and returns the buffer to the
+ * pool. When the pool or a worker's queue runs out, datagrams are dropped
+ * and counted rather than queued without bound.
+ */
+public class AgentMsgServer {
 
 	protected static Logger log = LoggerFactory.getLogger(AgentMsgServer.class);
 
-	// Wireless Message types
-	private final String WIRELESS_MSG_PING = "ping";
-	private final String WIRELESS_MSG_PROBE = "probe";
-	private final String WIRELESS_MSG_AUTH = "auth";
-	private final String WIRELESS_MSG_ASSOC = "assoc";
-	private final String WIRELESS_MSG_DISASSOC = "disassoc";
-	private final String WIRELESS_MSG_DEAUTH = "deauth";
-	private final String WIRELESS_MSG_PUBLISH = "publish";
-	
-	private final int ODIN_SERVER_PORT;
-	private final int MSG_FORMAT_SECTIONS = 3;
+	private static final int MAX_DATAGRAM_SIZE = 2048;
+	private static final int MAX_BATCH = 64;
+	private static final long SELECT_TIMEOUT_MS = 100;
 
-	private DatagramSocket controllerSocket;
-	private final ExecutorService executor;
+	private final int ODIN_SERVER_PORT;
 	private final WirelessMaster wirelessMaster;
+	private final BlockingQueue<ByteBuffer> bufferPool;
+	private final Worker[] workers;
+	private final ByteBuffer discard = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
 
-	public AgentMsgServer(WirelessMaster om, int port, ExecutorService executor) {
-		this.wirelessMaster = om;
-		this.ODIN_SERVER_PORT = port;
-		this.executor = executor;
+	private final IDebugCounter ctrReceived;
+	private final IDebugCounter ctrDroppedNoBuffer;
+	private final IDebugCounter ctrDroppedQueueFull;
+	private final IDebugCounter ctrMalformed;
+	private final IDebugCounter[] ctrByType = new IDebugCounter[AgentMsg.Type.values().length];
+
+	private DatagramChannel channel;
+	private Selector selector;
+	private Thread receiver;
+	private volatile boolean running;
+
+	/**
+	 * A received datagram waiting for a worker
+	 */
+	private static class Datagram {
+		final InetAddress agent;
+		final ByteBuffer buf;
+
+		Datagram(InetAddress agent, ByteBuffer buf) {
+			this.agent = agent;
+			this.buf = buf;
+		}
 	}
 
-	@Override
-	public void run() {
+	private class Worker implements Runnable {
+		final int id;
+		final BlockingQueue<Datagram> queue;
+		final AgentMsg msg = new AgentMsg();
+		Thread thread;
 
-		try {
-			controllerSocket = new DatagramSocket(ODIN_SERVER_PORT);
-		} catch (IOException e) {
-			e.printStackTrace();
+		Worker(int id, int capacity) {
+			this.id = id;
+			this.queue = new ArrayBlockingQueue<Datagram>(capacity);
 		}
 
-		while (true) {
-			try {
-				final byte[] receiveData = new byte[1024]; 
-				final DatagramPacket receivedPacket = new DatagramPacket(receiveData, receiveData.length);
-				controllerSocket.receive(receivedPacket);
-				executor.execute(new AgentMsgHandler(receivedPacket));
-			} catch (IOException e) {
-				log.error("controllerSocket.accept() failed: " + ODIN_SERVER_PORT);
-				e.printStackTrace();
-				System.exit(-1);
+		@Override
+		public void run() {
+			while (running) {
+				Datagram d;
+				try {
+					d = queue.poll(SELECT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					break;
+				}
+				if (d == null) {
+					continue;
+				}
+				try {
+					handle(d.agent, d.buf, msg);
+				} catch (Exception e) {
+					log.error("Exception in agent message worker " + id
+							+ " while handling a message from " + d.agent, e);
+				} finally {
+					bufferPool.offer(d.buf);
+				}
 			}
 		}
 	}
 
-	/** Protocol handlers **/
+	/**
+	 * @param om the master to hand the messages to
+	 * @param port the UDP port to listen on
+	 * @param workerCount number of worker threads
+	 * @param bufferCount number of receive buffers, which bounds the
+	 * datagrams received but not yet handled
+	 * @param debugCounters the counter service to register counters with
+	 * @param module the counter module to register counters under
+	 */
+	public AgentMsgServer(WirelessMaster om, int port, int workerCount, int bufferCount,
+			IDebugCounterService debugCounters, String module) {
+		if (workerCount < 1) {
+			throw new IllegalArgumentException("Need at least one agent message worker");
+		}
+		if (bufferCount < workerCount) {
+			throw new IllegalArgumentException("Need at least one buffer per agent message worker");
+		}
+		this.wirelessMaster = om;
+		this.ODIN_SERVER_PORT = port;
 
-	private void receivePing(final InetAddress agentAddr) {
-		wirelessMaster.receivePing(agentAddr);
-	}
+		bufferPool = new ArrayBlockingQueue<ByteBuffer>(bufferCount);
+		for (int i = 0; i < bufferCount; i++) {
+			bufferPool.add(ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE));
+		}
+		workers = new Worker[workerCount];
+		for (int i = 0; i < workerCount; i++) {
+			workers[i] = new Worker(i, bufferCount);
+		}
 
-	private void receiveProbe(final InetAddress agentAddr, 
-			final MacAddress clientHwAddress, final String ssid) {
-		wirelessMaster.receiveProbe(agentAddr, clientHwAddress, ssid);
-	}
-	
-	private void receiveAssoc(final InetAddress agentAddr, 
-			final MacAddress clientHwAddress, final String staInfo) {
-		wirelessMaster.receiveAssoc(agentAddr, clientHwAddress, staInfo);
-	}
-	
-	private void receiveDisassoc(final InetAddress agentAddr, 
-			final MacAddress clientHwAddress, final String reason) {
-		wirelessMaster.receiveDisassoc(agentAddr, clientHwAddress, reason);
-	}
-	
-	private void receivePublish(final InetAddress agentAddr, 
-			final MacAddress clientHwAddress, final String eventType, final String params) {
-		wirelessMaster.receivePublish(agentAddr, clientHwAddress, eventType, params);
+		ctrReceived = debugCounters.registerCounter(module, "agent-msgs-received",
+				"Datagrams received from agents");
+		ctrDroppedNoBuffer = debugCounters.registerCounter(module, "agent-msgs-dropped-no-buffer",
+				"Datagrams from agents dropped because all receive buffers were in use", MetaData.DROP);
+		ctrDroppedQueueFull = debugCounters.registerCounter(module, "agent-msgs-dropped-queue-full",
+				"Datagrams from agents dropped because their worker's queue was full", MetaData.DROP);
+		ctrMalformed = debugCounters.registerCounter(module, "agent-msgs-malformed",
+				"Datagrams from agents that could not be parsed or are of an unhandled type", MetaData.WARN);
+		for (AgentMsg.Type t : AgentMsg.Type.values()) {
+			ctrByType[t.ordinal()] = debugCounters.registerCounter(module,
+					"agent-msgs-" + t.name().toLowerCase(),
+					"Agent " + t.name().toLowerCase() + " messages handled");
+		}
 	}
 
-	private class AgentMsgHandler implements Runnable {
-		final DatagramPacket receivedPacket;
+	/**
+	 * Bind the port and start the receiver and worker threads
+	 * @throws IOException if the port cannot be bound
+	 */
+	public synchronized void start() throws IOException {
+		if (running) {
+			return;
+		}
+		channel = DatagramChannel.open();
+		channel.configureBlocking(false);
+		channel.socket().setReceiveBufferSize(4 * 1024 * 1024);
+		channel.bind(new InetSocketAddress(ODIN_SERVER_PORT));
+		selector = Selector.open();
+		channel.register(selector, SelectionKey.OP_READ);
 
-		public AgentMsgHandler(final DatagramPacket dp) {
-			receivedPacket = dp;
+		running = true;
+		ThreadGroup tg = new ThreadGroup("Agent Message Threads");
+		for (Worker w : workers) {
+			w.thread = new Thread(tg, w, "AgentMsgWorker-" + w.id);
+			w.thread.setDaemon(true);
+			w.thread.start();
 		}
+		receiver = new Thread(tg, new Runnable() {
+			@Override
+			public void run() {
+				receive();
+			}
+		}, "AgentMsgReceiver");
+		receiver.setDaemon(true);
+		receiver.start();
+		log.info("Listening for agent messages on UDP port {} with {} worker(s)",
+				getLocalPort(), workers.length);
+	}
 
-		// Agent message handler
-		public void run() {
-			final String msg = new String(receivedPacket.getData()).trim().toLowerCase();
-			final InetAddress agentAddr = receivedPacket.getAddress();
-			
-			//88888 test
-			System.out.println("************" + msg);
-			
-			if (msg.equals(WIRELESS_MSG_PING)) {
-				receivePing(agentAddr);
-				return;
+	public synchronized void stop() {
+		running = false;
+		try {
+			if (selector != null) {
+				selector.close();
 			}
-			
-			/**
-			 * message format:
-			 * -----------------------------------------
-			 * | type | client mac | payload		   |
-			 * -----------------------------------------
-			 */
-			final String[] fields = msg.split(" ", MSG_FORMAT_SECTIONS);
-			final String msg_type = fields[0];
-			final String staAddress = fields[1];
-			
-			
-			switch (msg_type) {
-			case WIRELESS_MSG_PROBE:
-				String ssid = "";
-				if (fields.length > 2) {
-					// SSID is specified in the scan
-					ssid = fields[2];
-				}
-				receiveProbe(agentAddr, MacAddress.of(staAddress), ssid);
-				break;
-			case WIRELESS_MSG_ASSOC:
-				if (fields.length > 2) {
-					String staInfo = fields[2];
-					receiveAssoc(agentAddr, MacAddress.of(staAddress), staInfo);
-				}
-				break;
-			case WIRELESS_MSG_DISASSOC:
-			case WIRELESS_MSG_DEAUTH:
-				String reason = null;
-				if (fields.length > 2) {
-					reason = fields[2];
-				}
-				receiveDisassoc(agentAddr, MacAddress.of(staAddress), reason);
-				break;
-			case WIRELESS_MSG_PUBLISH:
-				if (fields.length < 3) {
-					return;
+			if (channel != null) {
+				channel.close();
+			}
+		} catch (IOException e) {
+			log.warn("Error closing agent message channel", e);
+		}
+		for (Worker w : workers) {
+			if (w.thread != null) {
+				w.thread.interrupt();
+				w.thread = null;
+			}
+		}
+	}
+
+	/**
+	 * @return the bound port, or -1 if not started
+	 */
+	public int getLocalPort() {
+		DatagramChannel c = channel;
+		return c == null ? -1 : c.socket().getLocalPort();
+	}
+
+	private void receive() {
+		while (running) {
+			try {
+				if (selector.select(SELECT_TIMEOUT_MS) == 0) {
+					continue;
 				}
-				String payload = fields[2];
-				String[] subFields = payload.split(" ", 2);
-				if (subFields.length == 2) {
-					receivePublish(agentAddr, MacAddress.of(staAddress), 
-							subFields[0], subFields[1]);
+				selector.selectedKeys().clear();
+				for (int n = 0; n < MAX_BATCH; n++) {
+					ByteBuffer buf = bufferPool.poll();
+					if (buf == null) {
+						discard.clear();
+						if (channel.receive(discard) == null) {
+							break;
+						}
+						ctrDroppedNoBuffer.increment();
+						continue;
+					}
+					buf.clear();
+					InetSocketAddress from = (InetSocketAddress) channel.receive(buf);
+					if (from == null) {
+						bufferPool.offer(buf);
+						break;
+					}
+					buf.flip();
+					ctrReceived.increment();
+					if (!workerFor(from.getAddress()).queue.offer(new Datagram(from.getAddress(), buf))) {
+						ctrDroppedQueueFull.increment();
+						bufferPool.offer(buf);
+					}
 				}
+			} catch (ClosedChannelException | ClosedSelectorException e) {
 				break;
+			} catch (IOException e) {
+				log.error("Error receiving agent message on port " + ODIN_SERVER_PORT, e);
 			}
 		}
 	}
+
+	private Worker workerFor(InetAddress agent) {
+		int h = agent.hashCode();
+		h ^= (h >>> 16);
+		return workers[(h & 0x7fffffff) % workers.length];
+	}
+
+	/** Protocol handlers **/
+
+	private void handle(InetAddress agentAddr, ByteBuffer buf, AgentMsg msg) {
+		if (!msg.parse(buf)) {
+			ctrMalformed.increment();
+			return;
+		}
+		ctrByType[msg.getType().ordinal()].increment();
+		switch (msg.getType()) {
+		case PING:
+			wirelessMaster.receivePing(agentAddr);
+			break;
+		case PROBE:
+			wirelessMaster.receiveProbe(agentAddr, msg.getClient(), msg.getPayload());
+			break;
+		case ASSOC:
+			wirelessMaster.receiveAssoc(agentAddr, msg.getClient(), msg.getPayload());
+			break;
+		case DISASSOC:
+			wirelessMaster.receiveDisassoc(agentAddr, msg.getClient(), msg.getPayload());
+			break;
+		case PUBLISH:
+			wirelessMaster.receivePublish(agentAddr, msg.getClient(), msg.getEventType(), msg.getPayload());
+			break;
+		}
+	}
 }
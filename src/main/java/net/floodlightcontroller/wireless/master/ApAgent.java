@@ -1,16 +1,17 @@
 package net.floodlightcontroller.wireless.master;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
 import java.net.InetAddress;
-import java.net.Socket;
-import java.net.UnknownHostException;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.projectfloodlight.openflow.types.MacAddress;
 import org.slf4j.Logger;
@@ -34,14 +35,13 @@ public class ApAgent implements IApAgent{
 	private static final String READ_HANDLER_DEVICE_INFO = "device_info";
 
 	// Connect to control socket on WirelessAgent
-	private Socket odinAgentSocket = null;
-	private PrintWriter outBuf;
-	private BufferedReader inBuf;
+	private ApAgentConnection connection = null;
 	private IOFSwitch ofSwitch;
 	private InetAddress ipAddress;
-	private long lastHeard;
+	private volatile long lastHeard;
 	
-	private final int ODIN_AGENT_PORT = 6777;
+	private static final int ODIN_AGENT_PORT = 6777;
+	private static final long READ_TIMEOUT_MS = 2000;
 	
 	/**
 	 * To be called only once, initialises a connection to the WirelessAgent's
@@ -54,22 +54,24 @@ public class ApAgent implements IApAgent{
 	 * @return 0 on success, -1 otherwise
 	 */
 	public int init(InetAddress host) {
+		return init(host, ODIN_AGENT_PORT);
+	}
+	
+	/**
+	 * As {@link #init(InetAddress)}, for an agent whose control socket
+	 * is on another port
+	 */
+	public int init(InetAddress host, int port) {
 		
 		/**
 		 * FIXME: need to add openflow entry.
 		 */
 		try {
-			odinAgentSocket = new Socket(host.getHostAddress(), ODIN_AGENT_PORT);
-			outBuf = new PrintWriter(odinAgentSocket.getOutputStream(), true);
-			inBuf = new BufferedReader(new InputStreamReader(odinAgentSocket
-					.getInputStream()));
+			connection = ApAgentConnection.connect(new InetSocketAddress(host, port));
 			ipAddress = host;
 			
-		} catch (UnknownHostException e) {
-			e.printStackTrace();
-			return -1;
 		} catch (IOException e) {
-			e.printStackTrace();
+			log.error("Could not connect to agent " + host.getHostAddress(), e);
 			return -1;
 		}
 
@@ -97,9 +99,39 @@ public class ApAgent implements IApAgent{
 		return null;
 	}
 	
+	/**
+	 * Each line of client_stats is the station's MAC address followed
+	 * by property:value pairs
+	 */
 	public Map<MacAddress, Map<String, String>> getRxStats() {
-		// TODO Auto-generated method stub
-		return null;
+		String stats = invokeReadHandler(READ_HANDLER_CLIENT_STATS, "");
+		if (stats == null) {
+			return null;
+		}
+		
+		Map<MacAddress, Map<String, String>> ret = new HashMap<MacAddress, Map<String, String>>();
+		for (String row : stats.split("\n")) {
+			String[] properties = row.trim().split(" ");
+			if (properties.length == 0 || properties[0].isEmpty()) {
+				continue;
+			}
+			MacAddress eth;
+			try {
+				eth = MacAddress.of(properties[0]);
+			} catch (IllegalArgumentException e) {
+				log.warn("Bad client_stats row from agent {}: {}", ipAddress, row);
+				continue;
+			}
+			Map<String, String> values = new HashMap<String, String>();
+			for (int i = 1; i < properties.length; i++) {
+				int colon = properties[i].indexOf(':');
+				if (colon > 0) {
+					values.put(properties[i].substring(0, colon), properties[i].substring(colon + 1));
+				}
+			}
+			ret.put(eth, values);
+		}
+		return ret;
 	}
 	
 	public IOFSwitch getSwitch() {
@@ -121,6 +153,36 @@ public class ApAgent implements IApAgent{
 	}
 	
 	public void addClientLvap(WirelessClient oc) {
+		invokeWriteHandler(WRITE_HANDLER_ADD_VAP, lvapText(oc));
+	}
+	
+	public void addClientLvaps(Collection<WirelessClient> ocs) {
+		if (connection == null || ocs.isEmpty()) {
+			return;
+		}
+		List<String> texts = new ArrayList<String>(ocs.size());
+		for (WirelessClient oc : ocs) {
+			texts.add(lvapText(oc));
+		}
+		connection.writeAll(WRITE_HANDLER_ADD_VAP, texts);
+	}
+
+	public void updateClientLvap(WirelessClient oc) {
+		invokeWriteHandler(WRITE_HANDLER_SET_VAP, lvapText(oc));
+	}
+	
+	public void updateClientLvaps(Collection<WirelessClient> ocs) {
+		if (connection == null || ocs.isEmpty()) {
+			return;
+		}
+		List<String> texts = new ArrayList<String>(ocs.size());
+		for (WirelessClient oc : ocs) {
+			texts.add(lvapText(oc));
+		}
+		connection.writeAll(WRITE_HANDLER_SET_VAP, texts);
+	}
+	
+	private static String lvapText(WirelessClient oc) {
 		assert (oc.getLvap() != null);
 		
 		StringBuilder sb = new StringBuilder();
@@ -131,12 +193,7 @@ public class ApAgent implements IApAgent{
 		for (String ssid: oc.getLvap().getSsids()) {
 			sb.append(" ").append(ssid);
 		}
-		
-		invokeWriteHandler(WRITE_HANDLER_ADD_VAP, sb.toString());
-	}
-
-	public void updateClientLvap(WirelessClient oc) {
-		
+		return sb.toString();
 	}
 	
 	public void sendProbeResponse(MacAddress clientHwAddr, 
@@ -175,59 +232,21 @@ public class ApAgent implements IApAgent{
 	 * Internal method to invoke a read handler on the WiAgent
 	 * 
 	 * @param handlerName OdinAgent handler
-	 * @return read-handler string
+	 * @return read-handler string, or null if the agent didn't reply
+	 * within READ_TIMEOUT_MS
 	 */
-	private synchronized String invokeReadHandler(String handlerName, String handlerText) {
-
-		outBuf.println("read " + handlerName + " " + handlerText);
-
-		/*
-		 * received read data format:
-		 * ----------------------------------------
-		 * wiagent handlerName data_length data
-		 * ----------------------------------------
-		 */
+	private String invokeReadHandler(String handlerName, String handlerText) {
+		if (connection == null) {
+			return null;
+		}
 		try {
-			/**
-			 * parse header
-			 */
-			int blankNum = 0;
-			char[] headbuf = new char[64];
-			int i = 0;
-			while(true) {
-				char c = (char) inBuf.read();
-				if (c == ' ') {
-					blankNum++;
-					if (blankNum == 3) break;
-				}
-				headbuf[i++] = c;
-				if (i ==64) {
-					log.warn("invokeReadHandler received data exceeds the set length");
-					return null;
-				}
-			}
-			String[] head = new String(headbuf).trim().split(" ");
-			if (!head[1].equals(handlerName)) return null;
-			
-			/**
-			 * parse data
-			 */
-			int dataLength = 0;
-			try {
-				dataLength = Integer.parseInt(head[2]);
-			} catch (NumberFormatException e) {
-				e.printStackTrace();
-				return null;
-			}
-			char[] databuf = new char[dataLength];
-			for (i = 0; i < dataLength; i++) {
-				char c = (char) inBuf.read();
-				databuf[i] = c;
-			}
-			String data = new String(databuf);
-			return data;
-		} catch (IOException e) {
-			e.printStackTrace();
+			return connection.read(handlerName, handlerText)
+					.get(READ_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException | TimeoutException e) {
+			log.warn("Read handler " + handlerName + " of agent " + ipAddress + " failed", e);
 			return null;
 		}
 	}
@@ -238,12 +257,10 @@ public class ApAgent implements IApAgent{
 	 * @param handlerName OdinAgent write handler name
 	 * @param handlerText Write string
 	 */
-	private synchronized void invokeWriteHandler(String handlerName,
-			String handlerText) {
-		String str = "write " + handlerName + " " + handlerText;
-		outBuf.println(str.toLowerCase());
-		
-		//88888 test
-		System.out.println("******" + "write " + handlerName + " " + handlerText);
+	private void invokeWriteHandler(String handlerName, String handlerText) {
+		if (connection == null) {
+			return;
+		}
+		connection.write(handlerName, handlerText);
 	}
 }
@@ -0,0 +1,308 @@
+package net.floodlightcontroller.wireless.master;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * The control channel to an agent.
+ *
+ * Handler invocations are written without waiting for one another:
+ * writes are flushed together once the caller's burst is queued, and a
+ * read returns a future completed when the agent's reply arrives. The
+ * agent answers reads in the order it receives them, so replies are
+ * matched to the reads in flight first in, first out. A slow read, such
+ * as client_stats, no longer holds up the add_vap or remove_vap of a
+ * handoff queued behind it.
+ *
+ * All agents share one small event loop group.
+ */
+public class ApAgentConnection {
+
+	protected static Logger log = LoggerFactory.getLogger(ApAgentConnection.class);
+
+	private static final int CONNECT_TIMEOUT_MS = 5000;
+	/* a reply header is "<agent> <handler> <length> " */
+	private static final int MAX_HEADER_LENGTH = 64;
+	private static final int MAX_REPLY_LENGTH = 16 * 1024 * 1024;
+
+	private static EventLoopGroup group;
+
+	private final Channel channel;
+	private final Queue<PendingRead> pendingReads = new ConcurrentLinkedQueue<PendingRead>();
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+	private final Runnable flushTask = new Runnable() {
+		@Override
+		public void run() {
+			flushScheduled.set(false);
+			channel.flush();
+		}
+	};
+
+	private static class PendingRead {
+		final String handlerName;
+		final SettableFuture<String> future = SettableFuture.create();
+
+		PendingRead(String handlerName) {
+			this.handlerName = handlerName;
+		}
+	}
+
+	/**
+	 * A read handler's reply, framed by the length in its header
+	 */
+	static class Reply {
+		final String handlerName;
+		final String data;
+
+		Reply(String handlerName, String data) {
+			this.handlerName = handlerName;
+			this.data = data;
+		}
+	}
+
+	private static synchronized EventLoopGroup getGroup() {
+		if (group == null) {
+			group = new NioEventLoopGroup(Math.min(4, Runtime.getRuntime().availableProcessors()),
+					new DefaultThreadFactory("ApAgentConnection", true));
+		}
+		return group;
+	}
+
+	/**
+	 * Connect to an agent's control socket
+	 *
+	 * @param address the agent's control socket
+	 * @return the connection
+	 * @throws IOException if the agent could not be reached
+	 */
+	public static ApAgentConnection connect(InetSocketAddress address) throws IOException {
+		final ReplyHandler handler = new ReplyHandler();
+		Bootstrap bootstrap = new Bootstrap()
+				.group(getGroup())
+				.channel(NioSocketChannel.class)
+				.option(ChannelOption.TCP_NODELAY, true)
+				.option(ChannelOption.SO_KEEPALIVE, true)
+				.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT_MS)
+				.handler(new ChannelInitializer<SocketChannel>() {
+					@Override
+					protected void initChannel(SocketChannel ch) throws Exception {
+						ch.pipeline().addLast("replyDecoder", new ReplyDecoder());
+						ch.pipeline().addLast("replyHandler", handler);
+					}
+				});
+		ChannelFuture f = bootstrap.connect(address).awaitUninterruptibly();
+		if (!f.isSuccess()) {
+			throw new IOException("Could not connect to agent at " + address, f.cause());
+		}
+		ApAgentConnection conn = new ApAgentConnection(f.channel());
+		handler.conn = conn;
+		return conn;
+	}
+
+	private ApAgentConnection(Channel channel) {
+		this.channel = channel;
+	}
+
+	public boolean isConnected() {
+		return channel.isActive();
+	}
+
+	public void close() {
+		channel.close();
+	}
+
+	/**
+	 * Invoke a write handler of the agent. The agent doesn't reply to
+	 * writes, so this returns as soon as the write is queued.
+	 *
+	 * @param handlerName agent write handler name
+	 * @param handlerText write string
+	 */
+	public void write(String handlerName, String handlerText) {
+		channel.write(encode("write", handlerName, handlerText));
+		scheduleFlush();
+	}
+
+	/**
+	 * Invoke a write handler of the agent once per text, sending the
+	 * invocations together.
+	 *
+	 * @param handlerName agent write handler name
+	 * @param handlerTexts write strings
+	 */
+	public void writeAll(String handlerName, List<String> handlerTexts) {
+		for (String text : handlerTexts) {
+			channel.write(encode("write", handlerName, text));
+		}
+		scheduleFlush();
+	}
+
+	/**
+	 * Invoke a read handler of the agent
+	 *
+	 * @param handlerName agent read handler name
+	 * @param handlerText read arguments
+	 * @return the future handler output, failed if the connection is lost
+	 */
+	public ListenableFuture<String> read(String handlerName, String handlerText) {
+		PendingRead p = new PendingRead(handlerName);
+		/* the reply order must match the order the reads are written in */
+		synchronized (pendingReads) {
+			pendingReads.add(p);
+			channel.write(encode("read", handlerName, handlerText));
+		}
+		scheduleFlush();
+		if (!channel.isActive()) {
+			failPendingReads(new ClosedChannelException());
+		}
+		return p.future;
+	}
+
+	/*
+	 * Flush once for all the writes queued before the event loop gets
+	 * to it, rather than once per write
+	 */
+	private void scheduleFlush() {
+		if (flushScheduled.compareAndSet(false, true)) {
+			channel.eventLoop().execute(flushTask);
+		}
+	}
+
+	private ByteBuf encode(String op, String handlerName, String handlerText) {
+		StringBuilder sb = new StringBuilder(op.length() + handlerName.length()
+				+ (handlerText == null ? 0 : handlerText.length()) + 3);
+		sb.append(op).append(' ').append(handlerName);
+		if (handlerText != null && !handlerText.isEmpty()) {
+			sb.append(' ').append(handlerText);
+		}
+		sb.append('\n');
+		byte[] b = sb.toString().toLowerCase().getBytes(StandardCharsets.UTF_8);
+		return channel.alloc().buffer(b.length).writeBytes(b);
+	}
+
+	private void replyReceived(Reply reply) {
+		PendingRead p = pendingReads.poll();
+		if (p == null) {
+			log.warn("Unsolicited {} reply from agent {}", reply.handlerName, channel.remoteAddress());
+			return;
+		}
+		if (!p.handlerName.equals(reply.handlerName)) {
+			p.future.setException(new IOException("Agent " + channel.remoteAddress() + " replied to "
+					+ reply.handlerName + " when " + p.handlerName + " was expected"));
+			return;
+		}
+		p.future.set(reply.data);
+	}
+
+	private void failPendingReads(Throwable cause) {
+		PendingRead p;
+		while ((p = pendingReads.poll()) != null) {
+			p.future.setException(cause);
+		}
+	}
+
+	private static class ReplyHandler extends SimpleChannelInboundHandler<Reply> {
+		volatile ApAgentConnection conn;
+
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx, Reply reply) throws Exception {
+			conn.replyReceived(reply);
+		}
+
+		@Override
+		public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+			if (conn != null) {
+				log.warn("Lost control connection to agent {}", ctx.channel().remoteAddress());
+				conn.failPendingReads(new ClosedChannelException());
+			}
+			super.channelInactive(ctx);
+		}
+
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+			log.error("Error on control connection to agent " + ctx.channel().remoteAddress(), cause);
+			ctx.close();
+		}
+	}
+
+	/**
+	 * Slices read replies off the stream:
+	 * ----------------------------------------
+	 * agent handlerName data_length data
+	 * ----------------------------------------
+	 * The header is scanned in place and the data, once all of it has
+	 * arrived, is decoded in one go.
+	 */
+	static class ReplyDecoder extends ByteToMessageDecoder {
+		@Override
+		protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+			while (in.isReadable()) {
+				int start = in.readerIndex();
+				int end = in.writerIndex();
+				/* skip the line break an agent may send after the data */
+				while (start < end && in.getByte(start) <= ' ') {
+					start++;
+				}
+				in.readerIndex(start);
+				if (start == end) {
+					return;
+				}
+				int agentEnd = in.indexOf(start, Math.min(end, start + MAX_HEADER_LENGTH), (byte) ' ');
+				int nameEnd = agentEnd < 0 ? -1
+						: in.indexOf(agentEnd + 1, Math.min(end, start + MAX_HEADER_LENGTH), (byte) ' ');
+				int lengthEnd = nameEnd < 0 ? -1
+						: in.indexOf(nameEnd + 1, Math.min(end, start + MAX_HEADER_LENGTH), (byte) ' ');
+				if (lengthEnd < 0) {
+					if (end - start >= MAX_HEADER_LENGTH) {
+						throw new CorruptedFrameException("Agent reply header exceeds "
+								+ MAX_HEADER_LENGTH + " bytes");
+					}
+					return;
+				}
+				int length = 0;
+				for (int i = nameEnd + 1; i < lengthEnd; i++) {
+					byte b = in.getByte(i);
+					if (b < '0' || b > '9' || length > MAX_REPLY_LENGTH / 10) {
+						throw new CorruptedFrameException("Bad agent reply length");
+					}
+					length = length * 10 + (b - '0');
+				}
+				if (lengthEnd + 1 + length > end) {
+					return;
+				}
+				String name = in.toString(agentEnd + 1, nameEnd - agentEnd - 1, StandardCharsets.US_ASCII);
+				String data = in.toString(lengthEnd + 1, length, StandardCharsets.UTF_8);
+				in.readerIndex(lengthEnd + 1 + length);
+				out.add(new Reply(name, data));
+			}
+		}
+	}
+}
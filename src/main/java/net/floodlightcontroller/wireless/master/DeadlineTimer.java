@@ -0,0 +1,166 @@
+package net.floodlightcontroller.wireless.master;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.debugcounter.IDebugCounterService.MetaData;
+
+/**
+ * One hashed timer wheel watching the deadlines of agents and clients,
+ * such as an agent's liveness or a client's association timeout.
+ *
+ * A deadline may move later without touching the timer, as an agent's
+ * does every time it is heard from: when the wheel reaches the deadline
+ * it was armed for, it asks for the current one and re-arms if that is
+ * still ahead. So an agent heard from steadily costs one timeout per
+ * agentTimeout rather than a cancel and reschedule per ping, and tens of
+ * thousands of deadlines share a single thread.
+ *
+ * Deadlines are checked to TICK_MS.
+ */
+public class DeadlineTimer {
+
+	protected static Logger log = LoggerFactory.getLogger(DeadlineTimer.class);
+
+	private static final long TICK_MS = 100;
+	private static final int TICKS_PER_WHEEL = 512;
+
+	public interface Watched {
+		/**
+		 * @return the current deadline, in ms since the epoch, or a
+		 * negative value to stop watching
+		 */
+		public long getDeadline();
+
+		/**
+		 * Called, on the timer's thread, once the deadline has passed.
+		 * Must not block; work that touches agents or clients belongs
+		 * on an executor.
+		 *
+		 * @param deadline the deadline that passed
+		 */
+		public void expired(long deadline);
+	}
+
+	private final HashedWheelTimer wheel;
+	private final AtomicInteger watchedCount = new AtomicInteger();
+
+	private volatile IDebugCounter ctrWatched;
+	private volatile IDebugCounter ctrRearmed;
+	private volatile IDebugCounter ctrExpired;
+	private volatile IDebugCounter ctrLag;
+	private volatile IDebugCounter ctrMaxLag;
+
+	private class Entry implements TimerTask {
+		final Watched watched;
+
+		Entry(Watched watched) {
+			this.watched = watched;
+		}
+
+		void arm(long deadline) {
+			long delay = Math.max(0, deadline - System.currentTimeMillis());
+			wheel.newTimeout(this, delay, TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public void run(Timeout timeout) {
+			long deadline = watched.getDeadline();
+			long now = System.currentTimeMillis();
+			if (deadline < 0) {
+				unwatched();
+				return;
+			}
+			if (deadline > now) {
+				count(ctrRearmed, 1);
+				arm(deadline);
+				return;
+			}
+			unwatched();
+			count(ctrExpired, 1);
+			long lag = now - deadline;
+			count(ctrLag, lag);
+			IDebugCounter max = ctrMaxLag;
+			if (max != null) {
+				max.setIfGreater(lag);
+			}
+			try {
+				watched.expired(deadline);
+			} catch (Exception e) {
+				log.error("Exception handling an expired deadline", e);
+			}
+		}
+	}
+
+	public DeadlineTimer(String name) {
+		wheel = new HashedWheelTimer(new DefaultThreadFactory(name, true),
+				TICK_MS, TimeUnit.MILLISECONDS, TICKS_PER_WHEEL);
+	}
+
+	/**
+	 * Register the timer's counters under a module already registered
+	 * with the counter service
+	 */
+	public void setDebugCounters(IDebugCounterService debugCounters, String module) {
+		ctrWatched = debugCounters.registerCounter(module, "timer-watched",
+				"Agent and client deadlines being watched", MetaData.WARN);
+		ctrRearmed = debugCounters.registerCounter(module, "timer-rearmed",
+				"Deadlines that had moved later when reached, and were re-armed");
+		ctrExpired = debugCounters.registerCounter(module, "timer-expired",
+				"Deadlines that passed");
+		ctrLag = debugCounters.registerCounter(module, "timer-expiry-lag-ms",
+				"Total ms between deadlines passing and being acted on; divide by timer-expired for the mean");
+		ctrMaxLag = debugCounters.registerCounter(module, "max-timer-expiry-lag-ms",
+				"Longest ms between a deadline passing and being acted on");
+		ctrWatched.set(watchedCount.get());
+	}
+
+	/**
+	 * Start watching a deadline
+	 */
+	public void watch(Watched watched) {
+		long deadline = watched.getDeadline();
+		if (deadline < 0) {
+			return;
+		}
+		setWatched(watchedCount.incrementAndGet());
+		new Entry(watched).arm(deadline);
+	}
+
+	/**
+	 * @return the number of deadlines being watched
+	 */
+	public int getWatchedCount() {
+		return watchedCount.get();
+	}
+
+	public void stop() {
+		wheel.stop();
+	}
+
+	private void unwatched() {
+		setWatched(watchedCount.decrementAndGet());
+	}
+
+	private static void count(IDebugCounter c, long n) {
+		if (c != null) {
+			c.add(n);
+		}
+	}
+
+	private void setWatched(int n) {
+		IDebugCounter c = ctrWatched;
+		if (c != null) {
+			c.set(Math.max(0, n));
+		}
+	}
+}
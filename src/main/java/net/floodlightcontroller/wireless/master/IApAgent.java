@@ -2,6 +2,7 @@ package net.floodlightcontroller.wireless.master;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 
@@ -85,6 +86,12 @@ public interface IApAgent {
 	 */
 	public void addClientLvap (WirelessClient oc);
 	
+	/**
+	 * Add several LVAPs to the AP corresponding to this agent
+	 * in one round trip
+	 */
+	public void addClientLvaps (Collection<WirelessClient> ocs);
+	
 	/**
 	 * Let the station switch channel, and transfer LVAP of this station
 	 * @param clientHwAddr
@@ -112,6 +119,13 @@ public interface IApAgent {
 	 */
 	public void updateClientLvap(WirelessClient oc);
 	
+	/**
+	 * Update several virtual access points in one round trip
+	 * 
+	 * @see #updateClientLvap(WirelessClient)
+	 */
+	public void updateClientLvaps(Collection<WirelessClient> ocs);
+	
 	/**
 	 * Send probe response frame through agent
 	 * @param clientHwAddr 
@@ -1,6 +1,7 @@
 package net.floodlightcontroller.wireless.master;
 
 import java.net.InetAddress;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentSkipListSet;
@@ -24,7 +25,7 @@ public class MockApAgent implements IApAgent{
 		
 	private IOFSwitch sw = null;
 	private InetAddress ipAddr = null;
-	private long lastHeard;
+	private volatile long lastHeard;
 	private ConcurrentSkipListSet<WirelessClient> clientList = 
 			new ConcurrentSkipListSet<WirelessClient>();
 	
@@ -76,6 +77,13 @@ public class MockApAgent implements IApAgent{
 		
 	}
 
+	@Override
+	public void addClientLvaps(Collection<WirelessClient> ocs) {
+		for (WirelessClient oc : ocs) {
+			addClientLvap(oc);
+		}
+	}
+
 	@Override
 	public void switchChannel(MacAddress clientHwAddr, String switchMode, String newChannel, String switchCount) {
 		// TODO Auto-generated method stub
@@ -116,4 +124,11 @@ public class MockApAgent implements IApAgent{
 		
 	}
 
+	@Override
+	public void updateClientLvaps(Collection<WirelessClient> ocs) {
+		for (WirelessClient oc : ocs) {
+			updateClientLvap(oc);
+		}
+	}
+
 }
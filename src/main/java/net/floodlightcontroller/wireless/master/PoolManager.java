@@ -3,6 +3,7 @@ package net.floodlightcontroller.wireless.master;
 import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -20,7 +21,7 @@ import org.projectfloodlight.openflow.types.MacAddress;
  */
 public class PoolManager {
 	
-	private int numNetworks = 0;
+	private volatile int numNetworks = 0;
 	static public final String GLOBAL_POOL = "global";
 	private final byte[] oui = {(byte)0x00, (byte)0x1b, (byte)0xb3};
 	
@@ -34,6 +35,47 @@ public class PoolManager {
 			new ConcurrentHashMap<String, Set<WirelessClient>> ();
 	private final Map<WirelessClient, String> clientToPoolMap = 
 			new ConcurrentHashMap<WirelessClient, String>();
+	
+	/*
+	 * Bumped on every change to the agent-to-pool or pool-to-SSID
+	 * mappings, which invalidates the agent SSID snapshots
+	 */
+	private volatile long version = 0;
+	private final Map<InetAddress, AgentSsids> agentSsidsMap = 
+			new ConcurrentHashMap<InetAddress, AgentSsids>();
+	
+	/**
+	 * An immutable snapshot of the SSIDs an agent hosts, as of a
+	 * version of the pool mappings. Probes are answered from it
+	 * without walking the pools or copying their SSID sets.
+	 */
+	public static class AgentSsids {
+		private final long version;
+		private final Set<String> ssids;
+		private final Map<String, String> ssidToPool;
+		
+		AgentSsids(long version, Set<String> ssids, Map<String, String> ssidToPool) {
+			this.version = version;
+			this.ssids = ssids;
+			this.ssidToPool = ssidToPool;
+		}
+		
+		/**
+		 * @return immutable sorted set of the SSIDs hosted by the
+		 * agent's pools, other than the global pool
+		 */
+		public Set<String> getSsids() {
+			return ssids;
+		}
+		
+		/**
+		 * @param ssid
+		 * @return the first of the agent's pools hosting the SSID, or null
+		 */
+		public String getPoolForSsid(String ssid) {
+			return ssidToPool.get(ssid);
+		}
+	}
 
 	PoolManager () {
 		poolToAgentSetMap.put(GLOBAL_POOL, new HashSet<InetAddress>());
@@ -62,7 +104,7 @@ public class PoolManager {
 	 * @param pool the pool to add the agent to
 	 * 
 	 */
-	public void addPoolForAgent(InetAddress agentInetAddr, String pool) {
+	public synchronized void addPoolForAgent(InetAddress agentInetAddr, String pool) {
 		if (agentToPoolListMap.containsKey(agentInetAddr)) {
 			agentToPoolListMap.get(agentInetAddr).add(pool);
 		}				
@@ -80,6 +122,7 @@ public class PoolManager {
 		
 		poolToAgentSetMap.get(GLOBAL_POOL).add(agentInetAddr);
 		poolToAgentSetMap.get(pool).add(agentInetAddr);
+		version++;
 	}
 	
 	/**
@@ -96,6 +139,45 @@ public class PoolManager {
 		return Collections.unmodifiableSet(poolToSsidListMap.get(pool));
 	}
 	
+	/**
+	 * Get the SSIDs hosted by an agent's pools. The snapshot is
+	 * built on first use and rebuilt only after the pools change.
+	 * 
+	 * @param agentInetAddr agent's address
+	 * @return an immutable snapshot of the agent's SSIDs
+	 */
+	public AgentSsids getSsidsForAgent(InetAddress agentInetAddr) {
+		AgentSsids snapshot = agentSsidsMap.get(agentInetAddr);
+		if (snapshot != null && snapshot.version == version) {
+			return snapshot;
+		}
+		synchronized (this) {
+			Set<String> ssids = new TreeSet<String>();
+			Map<String, String> ssidToPool = new HashMap<String, String>();
+			List<String> pools = agentToPoolListMap.get(agentInetAddr);
+			if (pools != null) {
+				for (String pool : pools) {
+					Set<String> poolSsids = poolToSsidListMap.get(pool);
+					if (poolSsids == null) {
+						continue;
+					}
+					for (String ssid : poolSsids) {
+						if (!ssidToPool.containsKey(ssid)) {
+							ssidToPool.put(ssid, pool);
+						}
+					}
+					if (!pool.equals(GLOBAL_POOL)) {
+						ssids.addAll(poolSsids);
+					}
+				}
+			}
+			snapshot = new AgentSsids(version, Collections.unmodifiableSet(ssids),
+					Collections.unmodifiableMap(ssidToPool));
+			agentSsidsMap.put(agentInetAddr, snapshot);
+			return snapshot;
+		}
+	}
+	
 	/**
 	 * Add an SSID to a pool. Will return false if
 	 * the SSID is already being used within some
@@ -105,7 +187,7 @@ public class PoolManager {
 	 * @param ssid
 	 * @return true if the SSID was added, false otherwise.
 	 */
-	public boolean addNetworkForPool(String pool, String ssid) {
+	public synchronized boolean addNetworkForPool(String pool, String ssid) {
 		assert (pool != GLOBAL_POOL);
 		/*
 		 * First add to the global pool. If this addition
@@ -115,6 +197,7 @@ public class PoolManager {
 		if (poolToSsidListMap.get(GLOBAL_POOL).add(ssid)) {
 			poolToSsidListMap.get(pool).add(ssid);
 			numNetworks++;
+			version++;
 			return true;
 		}
 		
@@ -129,7 +212,7 @@ public class PoolManager {
 	 * @param ssid
 	 * @return true if the ssid could be removed. False otherwise.
 	 */
-	public boolean removeNetworkFromPool(String pool, String ssid) {
+	public synchronized boolean removeNetworkFromPool(String pool, String ssid) {
 		assert (pool != GLOBAL_POOL);
 		/*
 		 * First remove from local pool. If that succeeds, remove
@@ -138,6 +221,7 @@ public class PoolManager {
 		if (poolToSsidListMap.get(pool).remove(ssid)) {
 			poolToSsidListMap.get(GLOBAL_POOL).remove(ssid);
 			numNetworks--;
+			version++;
 			return true;
 		}
 		
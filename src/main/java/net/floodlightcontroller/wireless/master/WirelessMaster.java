@@ -9,11 +9,11 @@ import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledExecutorService;
@@ -38,6 +38,7 @@ import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import net.floodlightcontroller.restserver.IRestApiService;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
 import net.floodlightcontroller.wireless.master.WirelessEventSubscription.EventType;
@@ -52,8 +53,12 @@ public class WirelessMaster implements IFloodlightModule,
 	protected IFloodlightProviderService floodlightProvider;
 	protected IOFSwitchService switchService;
 	protected IRestApiService restApi;
+	protected IDebugCounterService debugCounterService;
 	
 	private ScheduledExecutorService executor;
+	private AgentMsgServer agentMsgServer;
+	private int agentMsgWorkers = 4;
+	private int agentMsgBuffers = 4096;
 	
 	private final AgentManager agentManager;
 	private final ClientManager clientManager;
@@ -65,9 +70,21 @@ public class WirelessMaster implements IFloodlightModule,
 
 	private int clientAssocTimeout = 60; // Seconds
 	
+	private static final int CLIENT_LOCK_STRIPES = 256; // power of 2
+	private final Object[] clientLocks = new Object[CLIENT_LOCK_STRIPES];
+	private int probeResponseCoalesceMs = 100;
+	private final ConcurrentMap<ProbeResponseKey, Long> 
+						lastProbeResponse = new ConcurrentHashMap<>();
+	
 	static private final String DEFAULT_POOL_FILE = "Poolfile"; 
 	static private final int DEFAULT_PORT = 2819;
 	
+	{
+		for (int i = 0; i < clientLocks.length; i++) {
+			clientLocks[i] = new Object();
+		}
+	}
+	
 	public WirelessMaster(){
 		clientManager = new ClientManager();
 		lvapManager = new LvapManager();
@@ -101,10 +118,15 @@ public class WirelessMaster implements IFloodlightModule,
 	 * Handle a probe message from an agent, triggered
 	 * by a particular client.
 	 * 
+	 * Probes of different clients are handled concurrently; those of
+	 * a client are serialized on the client's lock stripe, which its
+	 * handoffs also take, so the client's LVAP is created and assigned
+	 * to an agent only once.
+	 * 
 	 * @param agentAddr InetAddress of agent
 	 * @param clientHwAddress MAC address of client that performed probe scan
 	 */
-	protected synchronized void receiveProbe(final InetAddress agentAddr, final MacAddress clientHwAddress, String ssid) {
+	protected void receiveProbe(final InetAddress agentAddr, final MacAddress clientHwAddress, String ssid) {
 		if (agentAddr == null 
 			|| clientHwAddress == null 
 			|| clientHwAddress.isBroadcast()
@@ -115,26 +137,22 @@ public class WirelessMaster implements IFloodlightModule,
 		}
 		
 		updateAgentLastHeard(agentAddr);
+		PoolManager.AgentSsids agentSsids = poolManager.getSsidsForAgent(agentAddr);
 			
 		/*
 		 * If clients perform an active scan, generate
-		 * probe responses without spawning lvaps
+		 * probe responses without spawning lvaps. A scan sends
+		 * several probes on each channel, so the responses of an
+		 * agent to a client are coalesced over a short window.
 		 */
-		if (ssid.equals("")) {
-			// we just send probe responses
+		if (ssid == null || ssid.equals("")) {
+			if (!shouldSendProbeResponse(agentAddr, clientHwAddress)) {
+				return;
+			}
 			IApAgent agent = agentManager.getAgent(agentAddr);
 			MacAddress bssid = poolManager.generateBssidForClient(clientHwAddress);
-			
-			// FIXME: Sub-optimal. We'll end up generating redundant probe requests
-			Set<String> ssidSet = new TreeSet<String> ();
-			for (String pool: poolManager.getPoolsForAgent(agentAddr)) {
-				if (pool.equals(PoolManager.GLOBAL_POOL)) 
-					continue;
-				
-				ssidSet.addAll(poolManager.getSsidListForPool(pool));
-			}
 			executor.execute(new AgentSendProbeResponseRunnable(
-					agent, clientHwAddress, bssid, ssidSet));
+					agent, clientHwAddress, bssid, agentSsids.getSsids()));
 			return;
 		}
 					
@@ -143,54 +161,101 @@ public class WirelessMaster implements IFloodlightModule,
 		 * which pool is hosting the SSID, and assign
 		 * an LVAP into that pool
 		 */
-		for (String pool: poolManager.getPoolsForAgent(agentAddr)) {
-			if (poolManager.getSsidListForPool(pool).contains(ssid)) {
-				WirelessClient wc = clientManager.getClient(clientHwAddress);
-						    	
-			    // Hearing from this client for the first time
-			    if (wc == null) {		    		
-					List<String> ssidList = new ArrayList<String> ();
-					ssidList.addAll(poolManager.getSsidListForPool(pool));
-						
-					Lvap lvap = new Lvap(poolManager.generateBssidForClient(clientHwAddress), ssidList);
-					try {
-						wc = new WirelessClient(clientHwAddress, InetAddress.getByName("0.0.0.0"), lvap);
-					} catch (UnknownHostException e) {
-						e.printStackTrace();
-					}
-			    	clientManager.addClient(wc);
-			    }
-			    	
-			    Lvap lvap = wc.getLvap();
-			    assert (lvap != null);
-			    
-			    /* If the client is connecting for the first time, then it
-				 * doesn't have a agent associated with it already
-				 */
-				if (lvap.getAgent() == null) {
-					IApAgent agent = agentManager.getAgent(agentAddr);
-		
-					// Push flow messages associated with the client
-					/*try {
-						newAgent.getSwitch().write(lvap.getOFMessageList(), null);
-					} catch (IOException e) {
-						log.error("Failed to update switch's flow tables " + newAgent.getSwitch());
-					}*/
-
-					agent.addClientLvap(wc);
-					lvap.setAgent(agent);
-					executor.schedule(new ClientAssocTimeOutTask(wc), 
-							clientAssocTimeout, TimeUnit.SECONDS);
+		String pool = agentSsids.getPoolForSsid(ssid);
+		if (pool == null) {
+			return;
+		}
+		
+		IApAgent agent = agentManager.getAgent(agentAddr);
+		if (agent == null) {
+			return; /* timed out since it was checked */
+		}
+		
+		synchronized (clientLock(clientHwAddress)) {
+			WirelessClient wc = clientManager.getClient(clientHwAddress);
+					    	
+		    // Hearing from this client for the first time
+		    if (wc == null) {		    		
+				List<String> ssidList = new ArrayList<String> ();
+				ssidList.addAll(poolManager.getSsidListForPool(pool));
 					
-					log.info("Client: " + wc.getMacAddress() + " connecting for first time. "
-							+ "Assigning to: " + agent.getIpAddress());
+				Lvap lvap = new Lvap(poolManager.generateBssidForClient(clientHwAddress), ssidList);
+				try {
+					wc = new WirelessClient(clientHwAddress, InetAddress.getByName("0.0.0.0"), lvap);
+				} catch (UnknownHostException e) {
+					e.printStackTrace();
 				}
+				/* Only publish the client once its LVAP has an agent,
+				 * since readers outside the client's lock expect one
+				 */
+				lvap.setAgent(agent);
+		    	clientManager.addClient(wc);
+		    	assignClientToAgent(wc, agent);
+		    }
+		    	
+		    Lvap lvap = wc.getLvap();
+		    assert (lvap != null);
+		    
+		    /* The client's agent may have failed since the client
+			 * was first heard from
+			 */
+			if (lvap.getAgent() == null) {
+				lvap.setAgent(agent);
+				assignClientToAgent(wc, agent);
+			}
 
-				poolManager.mapClientToPool(wc, pool);
-				
-				return;
+			poolManager.mapClientToPool(wc, pool);
+		}
+	}
+	
+	/**
+	 * Spawn a newly assigned client's LVAP on its agent and start
+	 * waiting for the client to associate. Called with the client's
+	 * lock held, after the LVAP's agent has been set.
+	 */
+	private void assignClientToAgent(WirelessClient wc, IApAgent agent) {
+		// Push flow messages associated with the client
+		/*try {
+			newAgent.getSwitch().write(lvap.getOFMessageList(), null);
+		} catch (IOException e) {
+			log.error("Failed to update switch's flow tables " + newAgent.getSwitch());
+		}*/
+
+		agent.addClientLvap(wc);
+		agentManager.getTimer().watch(new ClientAssocTimeOut(wc, 
+				System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(clientAssocTimeout)));
+		
+		log.info("Client: " + wc.getMacAddress() + " connecting. "
+				+ "Assigning to: " + agent.getIpAddress());
+	}
+	
+	private Object clientLock(MacAddress clientHwAddress) {
+		int h = clientHwAddress.hashCode();
+		h ^= (h >>> 16);
+		return clientLocks[h & (clientLocks.length - 1)];
+	}
+	
+	/**
+	 * @return false if the agent has answered the client's active scan
+	 * within the last probeResponseCoalesceMs
+	 */
+	private boolean shouldSendProbeResponse(InetAddress agentAddr, MacAddress clientHwAddress) {
+		if (probeResponseCoalesceMs <= 0) {
+			return true;
+		}
+		ProbeResponseKey key = new ProbeResponseKey(agentAddr, clientHwAddress);
+		long now = System.currentTimeMillis();
+		Long last = lastProbeResponse.putIfAbsent(key, now);
+		while (last != null) {
+			if (now - last < probeResponseCoalesceMs) {
+				return false;
+			}
+			if (lastProbeResponse.replace(key, last, now)) {
+				return true;
 			}
-		}		
+			last = lastProbeResponse.putIfAbsent(key, now);
+		}
+		return true;
 	}
 	
 	/**
@@ -286,7 +351,7 @@ public class WirelessMaster implements IFloodlightModule,
 			return;
 		}
 		
-		synchronized (this) {
+		synchronized (clientLock(clientHwAddr)) {
 			IApAgent newAgent = agentManager.getAgent(newApIpAddr);
 			if (newAgent == null) {
 				log.error("Handoff request ignored: WirelessAgent " + newApIpAddr + " doesn't exist");
@@ -305,7 +370,12 @@ public class WirelessMaster implements IFloodlightModule,
 			/* If the client is already associated with AP-newIpAddr, we ignore
 			 * the request.
 			 */
-			InetAddress currentApIpAddress = lvap.getAgent().getIpAddress();
+			IApAgent currentAgent = lvap.getAgent();
+			if (currentAgent == null) {
+				log.error("Handoff request ignored: WirelessClient " + clientHwAddr + " has no agent");
+				return;
+			}
+			InetAddress currentApIpAddress = currentAgent.getIpAddress();
 			if (currentApIpAddress.getHostAddress().equals(newApIpAddr.getHostAddress())) {
 				log.info ("Client " + clientHwAddr + " is already associated with AP " + newApIpAddr);
 				return;
@@ -348,7 +418,7 @@ public class WirelessMaster implements IFloodlightModule,
 			 */
 			lvap.setAgent(newAgent);
 			executor.execute(new AgentLvapAddRunnable(newAgent, client));
-			executor.execute(new AgentLvapRemoveRunnable(agentManager.getAgent(currentApIpAddress), client));			
+			executor.execute(new AgentLvapRemoveRunnable(currentAgent, client));			
 		}
 	}
  
@@ -467,6 +537,7 @@ public class WirelessMaster implements IFloodlightModule,
 		l.add(IFloodlightProviderService.class);
 		l.add(IOFSwitchService.class);
 		l.add(IRestApiService.class);
+		l.add(IDebugCounterService.class);
 		return l;
 	}
 
@@ -477,6 +548,30 @@ public class WirelessMaster implements IFloodlightModule,
 		restApi = context.getServiceImpl(IRestApiService.class);
 		IThreadPoolService tp = context.getServiceImpl(IThreadPoolService.class);
 		executor = tp.getScheduledExecutor();
+		agentManager.setExecutor(executor);
+		debugCounterService = context.getServiceImpl(IDebugCounterService.class);
+
+		Map<String, String> configOptions = context.getConfigParams(this);
+		try {
+			if (configOptions.get("agentMsgWorkers") != null) {
+				agentMsgWorkers = Integer.parseInt(configOptions.get("agentMsgWorkers").trim());
+			}
+			if (configOptions.get("agentMsgBuffers") != null) {
+				agentMsgBuffers = Integer.parseInt(configOptions.get("agentMsgBuffers").trim());
+			}
+		} catch (NumberFormatException e) {
+			log.error("Invalid 'agentMsgWorkers' or 'agentMsgBuffers'. Using defaults {} and {}",
+					agentMsgWorkers, agentMsgBuffers);
+		}
+		try {
+			if (configOptions.get("probeResponseCoalesceMs") != null) {
+				probeResponseCoalesceMs = Integer.parseInt(configOptions.get("probeResponseCoalesceMs").trim());
+			}
+		} catch (NumberFormatException e) {
+			log.error("Invalid 'probeResponseCoalesceMs'. Using default {}", probeResponseCoalesceMs);
+		}
+		agentMsgWorkers = Math.max(1, agentMsgWorkers);
+		agentMsgBuffers = Math.max(agentMsgWorkers, agentMsgBuffers);
 		
 		try {
 			readPoolFile(context);
@@ -630,9 +725,19 @@ public class WirelessMaster implements IFloodlightModule,
 	@Override
 	public void startUp(FloodlightModuleContext context) throws FloodlightModuleException {
 		floodlightProvider.addOFMessageListener(OFType.PACKET_IN, this);
-        executor.execute(new AgentMsgServer(this, DEFAULT_PORT, executor));
+        debugCounterService.registerModule(getName());
+        agentManager.getTimer().setDebugCounters(debugCounterService, getName());
+        agentMsgServer = new AgentMsgServer(this, DEFAULT_PORT, agentMsgWorkers,
+        		agentMsgBuffers, debugCounterService, getName());
+        try {
+        	agentMsgServer.start();
+        } catch (IOException e) {
+        	log.error("Could not listen for agent messages on port " + DEFAULT_PORT, e);
+        }
         agentManager.setSwitchService(switchService);
         restApi.addRestletRoutable(new WirelessWebRoutable());
+        executor.scheduleAtFixedRate(new ProbeResponsePruneTask(),
+        		1, 1, TimeUnit.SECONDS);
 	}
 
 	//******************** IOFMessageListener methods ********************//
@@ -661,35 +766,55 @@ public class WirelessMaster implements IFloodlightModule,
 	
 	
 	
-	private class ClientAssocTimeOutTask implements Runnable {
+	private class ClientAssocTimeOut implements DeadlineTimer.Watched {
 		private final WirelessClient oc;
+		private final long deadline;
 
-		ClientAssocTimeOutTask(final WirelessClient oc) {
+		ClientAssocTimeOut(final WirelessClient oc, long deadline) {
 			this.oc = oc;
+			this.deadline = deadline;
 		}
 
 		@Override
-		public void run() {
+		public long getDeadline() {
 			WirelessClient client = clientManager.getClients().get(oc.getMacAddress());
+			return (client == null || client.isAssociated()) ? -1 : deadline;
+		}
 
-			if (client == null) {
-				return;
-			}
+		@Override
+		public void expired(long deadline) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					clearOut();
+				}
+			});
+		}
+		
+		private void clearOut() {
+			/* serialized with the client's probes */
+			synchronized (clientLock(oc.getMacAddress())) {
+				WirelessClient client = clientManager.getClients().get(oc.getMacAddress());
 
-			// Client didn't follow through to connect - no assoc message received in the master
+				if (client == null) {
+					return;
+				}
 
-			if(client.isAssociated() == false){
-				IApAgent agent = client.getLvap().getAgent();
+				// Client didn't follow through to connect - no assoc message received in the master
 
-				if (agent != null) {
-					log.info("Clearing Lvap " + client.getMacAddress() +
-							" from agent:" + agent.getIpAddress() + " due to association not completed");
-					poolManager.removeClientPoolMapping(client);
-					agent.removeClientLvap(client);
-					clientManager.removeClient(client.getMacAddress());
-				}
+				if(client.isAssociated() == false){
+					IApAgent agent = client.getLvap().getAgent();
+
+					if (agent != null) {
+						log.info("Clearing Lvap " + client.getMacAddress() +
+								" from agent:" + agent.getIpAddress() + " due to association not completed");
+						poolManager.removeClientPoolMapping(client);
+						agent.removeClientLvap(client);
+						clientManager.removeClient(client.getMacAddress());
+					}
 
-			 }
+				 }
+			}
 		}
 	}
 
@@ -723,6 +848,45 @@ public class WirelessMaster implements IFloodlightModule,
 
 	}
 	
+	private static class ProbeResponseKey {
+		final InetAddress agentAddr;
+		final MacAddress clientHwAddr;
+		
+		ProbeResponseKey(InetAddress agentAddr, MacAddress clientHwAddr) {
+			this.agentAddr = agentAddr;
+			this.clientHwAddr = clientHwAddr;
+		}
+		
+		@Override
+		public int hashCode() {
+			return 31 * agentAddr.hashCode() + clientHwAddr.hashCode();
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof ProbeResponseKey))
+				return false;
+			ProbeResponseKey other = (ProbeResponseKey) obj;
+			return agentAddr.equals(other.agentAddr) 
+					&& clientHwAddr.equals(other.clientHwAddr);
+		}
+	}
+	
+	private class ProbeResponsePruneTask implements Runnable {
+		@Override
+		public void run() {
+			long expired = System.currentTimeMillis() - probeResponseCoalesceMs;
+			Iterator<Long> it = lastProbeResponse.values().iterator();
+			while (it.hasNext()) {
+				if (it.next() < expired) {
+					it.remove();
+				}
+			}
+		}
+	}
+	
 	private class AgentSendProbeResponseRunnable implements Runnable {
 		
 		final IApAgent agent;
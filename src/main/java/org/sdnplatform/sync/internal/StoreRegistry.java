@@ -1,5 +1,6 @@
 package org.sdnplatform.sync.internal;
 
+import java.io.File;
 import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.HashMap;
@@ -17,6 +18,7 @@ import org.sdnplatform.sync.error.SyncException;
 import org.sdnplatform.sync.internal.store.IStorageEngine;
 import org.sdnplatform.sync.internal.store.InMemoryStorageEngine;
 import org.sdnplatform.sync.internal.store.JavaDBStorageEngine;
+import org.sdnplatform.sync.internal.store.LogStorageEngine;
 import org.sdnplatform.sync.internal.store.SynchronizingStorageEngine;
 import org.sdnplatform.sync.internal.util.ByteArray;
 import org.slf4j.Logger;
@@ -46,6 +48,36 @@ public class StoreRegistry {
      */
     private ConnectionPoolDataSource persistentDataSource; 
 
+    /**
+     * The engines that can keep a persistent store
+     */
+    public enum PersistentEngine {
+        /**
+         * A table in the Java DB database under the db path
+         */
+        DERBY,
+        /**
+         * A {@link LogStorageEngine} under the db path
+         */
+        LOG
+    }
+
+    /**
+     * The engine for persistent stores not listed in storeEngines
+     */
+    private PersistentEngine persistentEngine = PersistentEngine.DERBY;
+
+    /**
+     * The engine for particular persistent stores
+     */
+    private HashMap<String, PersistentEngine> storeEngines =
+            new HashMap<String, PersistentEngine>();
+
+    /**
+     * Whether puts to log stores wait for the log to be on disk
+     */
+    private boolean logSyncWrites = true;
+
     /**
      * The storage engines that contain the locally-stored data
      */
@@ -109,9 +141,15 @@ public class StoreRegistry {
                 
         IStorageEngine<ByteArray, byte[]> dstore;
         if (persistent) {
-            if (persistentDataSource == null)
-                persistentDataSource = JavaDBStorageEngine.getDataSource(dbPath, false);
-            dstore = new JavaDBStorageEngine(storeName, persistentDataSource);
+            PersistentEngine engine = storeEngines.get(storeName);
+            if (engine == null)
+                engine = persistentEngine;
+            if (engine == PersistentEngine.LOG) {
+                dstore = getLogStore(storeName);
+            } else {
+                dstore = new JavaDBStorageEngine(storeName,
+                                                 getPersistentDataSource());
+            }
         } else {
             dstore = new InMemoryStorageEngine<ByteArray, byte[]>(storeName);
         }
@@ -189,9 +227,92 @@ public class StoreRegistry {
         }
     }
 
+    /**
+     * Set the engine for persistent stores
+     * @param engine the engine
+     */
+    public void setPersistentEngine(PersistentEngine engine) {
+        this.persistentEngine = engine;
+    }
+
+    /**
+     * Set the engine for a particular persistent store, overriding
+     * {@link #setPersistentEngine(PersistentEngine)}
+     * @param storeName the name of the store
+     * @param engine the engine
+     */
+    public void setStoreEngine(String storeName, PersistentEngine engine) {
+        storeEngines.put(storeName, engine);
+    }
+
+    /**
+     * Set whether puts to log stores wait for the log to be on disk
+     * @param logSyncWrites
+     */
+    public void setLogSyncWrites(boolean logSyncWrites) {
+        this.logSyncWrites = logSyncWrites;
+    }
+
     public void shutdown() {
         hintQueue.clear();
         hints.close();
+        for (SynchronizingStorageEngine store : localStores.values()) {
+            try {
+                store.close();
+            } catch (SyncException e) {
+                logger.error("Failed to close store " + store.getName(), e);
+            }
+        }
+    }
+
+    // *************
+    // Local methods
+    // *************
+
+    private ConnectionPoolDataSource getPersistentDataSource() {
+        if (persistentDataSource == null)
+            persistentDataSource = JavaDBStorageEngine.getDataSource(dbPath, false);
+        return persistentDataSource;
+    }
+
+    /**
+     * Open the log of a store.  The first time a store is kept in a log,
+     * if there is a Java DB database under the db path the store's table
+     * is copied into the log.  The copy is made in a separate directory
+     * that is only renamed into place once it is complete, so an
+     * interrupted copy is started over on the next start.
+     * @param storeName the name of the store
+     * @return the log storage engine
+     * @throws PersistException
+     */
+    private LogStorageEngine getLogStore(String storeName)
+            throws PersistException {
+        File logPath = (dbPath == null) ?
+                new File("SyncLog") : new File(dbPath, "SyncLog");
+        File dir = new File(logPath, storeName);
+        File derbyPath = (dbPath == null) ?
+                new File("SyncDB") : new File(dbPath, "SyncDB");
+        if (!dir.exists() && derbyPath.exists()) {
+            File tmp = new File(logPath, storeName + ".migrating");
+            LogStorageEngine log =
+                    new LogStorageEngine(storeName, tmp,
+                                         LogStorageEngine.DEFAULT_SEGMENT_SIZE,
+                                         false);
+            log.truncate();
+            int count = log.importFrom(
+                    new JavaDBStorageEngine(storeName,
+                                            getPersistentDataSource()));
+            log.close();
+            if (!tmp.renameTo(dir)) {
+                throw new PersistException("Could not move migrated log " +
+                                           tmp + " to " + dir);
+            }
+            logger.info("Migrated {} keys of store {} from Java DB to {}",
+                        new Object[] {count, storeName, dir});
+        }
+        return new LogStorageEngine(storeName, dir,
+                                    LogStorageEngine.DEFAULT_SEGMENT_SIZE,
+                                    logSyncWrites);
     }
 
     /**
@@ -6,6 +6,7 @@ import io.netty.util.Timer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -50,11 +51,13 @@ import org.sdnplatform.sync.internal.rpc.TProtocolUtil;
 import org.sdnplatform.sync.internal.store.IStorageEngine;
 import org.sdnplatform.sync.internal.store.IStore;
 import org.sdnplatform.sync.internal.store.MappingStoreListener;
+import org.sdnplatform.sync.internal.store.MerkleTree;
 import org.sdnplatform.sync.internal.store.SynchronizingStorageEngine;
 import org.sdnplatform.sync.internal.util.ByteArray;
 import org.sdnplatform.sync.internal.version.VectorClock;
 import org.sdnplatform.sync.thrift.KeyedValues;
 import org.sdnplatform.sync.thrift.KeyedVersions;
+import org.sdnplatform.sync.thrift.SyncDigestMessage;
 import org.sdnplatform.sync.thrift.SyncMessage;
 import org.sdnplatform.sync.thrift.SyncOfferMessage;
 import org.sdnplatform.sync.thrift.SyncValueMessage;
@@ -102,6 +105,11 @@ public class SyncManager extends AbstractSyncManager {
 	 */
 	private static final int ANTIENTROPY_INTERVAL = 5 * 60;
 
+	/**
+	 * Number of keys to offer per {@link SyncOfferMessage}
+	 */
+	private static final int SYNC_OFFER_BATCH = 50;
+
 	/**
 	 * Interval between configuration rescans
 	 */
@@ -150,6 +158,12 @@ public class SyncManager extends AbstractSyncManager {
 	 */
 	private boolean persistenceEnabled = true;
 
+	/**
+	 * Whether periodic antientropy compares the hash trees of the stores
+	 * with the remote node, rather than offering it every key
+	 */
+	private boolean digestAntientropy = true;
+
 	private static final String PACKAGE =
 			ISyncService.class.getPackage().getName();
 
@@ -220,13 +234,7 @@ public class SyncManager extends AbstractSyncManager {
 				getLocalNodeId(), node.getNodeId());
 
 		for (SynchronizingStorageEngine store : storeRegistry.values()) {
-			if (Scope.LOCAL.equals(store.getScope())) {
-				if (node.getDomainId() !=
-						getClusterConfig().getNode().getDomainId())
-					continue;
-			} else if (Scope.UNSYNCHRONIZED.equals(store.getScope())) {
-				continue;
-			}
+			if (!shouldSync(store, node)) continue;
 
 			IClosableIterator<Entry<ByteArray,
 			List<Versioned<byte[]>>>> entries =
@@ -247,7 +255,7 @@ public class SyncManager extends AbstractSyncManager {
 									pair.getValue());
 					bsm.getSyncOffer().addToVersions(kv);
 					count += 1;
-					if (count >= 50) {
+					if (count >= SYNC_OFFER_BATCH) {
 						sendSyncOffer(node.getNodeId(), bsm);
 						// realloc sync message - it is still queued up by netty!
 						bsm = TProtocolUtil.getTSyncOfferMessage(store.getName(),
@@ -267,8 +275,41 @@ public class SyncManager extends AbstractSyncManager {
 	}
 
 	/**
-	 * Communicate with a random node and do a full synchronization of the
-	 * all the stores on each node that have the appropriate scope.
+	 * Start a synchronization with the node specified by sending it the
+	 * root digests of the stores' hash trees.  The two nodes then take turns
+	 * in {@link #handleSyncDigest(short, SyncDigestMessage)}, each sending
+	 * the digests of the children of the nodes that differed, until they
+	 * reach the leaves; then each offers the other the keys in the leaves
+	 * that differ.  When the stores agree this is one message per store.
+	 */
+	public void digestAntientropy(Node node) {
+		if (!rpcService.isConnected(node.getNodeId())) return;
+
+		logger.debug("[{}->{}] Comparing local state with remote node",
+				getLocalNodeId(), node.getNodeId());
+
+		try {
+			for (SynchronizingStorageEngine store : storeRegistry.values()) {
+				if (!shouldSync(store, node)) continue;
+
+				SyncMessage bsm =
+						TProtocolUtil.getTSyncDigestMessage(store.getName(),
+								store.getScope(),
+								store.isPersistent(), 0);
+				bsm.getSyncDigest().addToNodes(0);
+				bsm.getSyncDigest().addToDigests(store.getTree().digest(0, 0));
+				sendSyncDigest(node.getNodeId(), bsm);
+			}
+		} catch (InterruptedException e) {
+			// This can't really happen
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Communicate with a random node and synchronize all the stores on each
+	 * node that have the appropriate scope, either by comparing hash trees
+	 * or, if so configured, by a full synchronization.
 	 */
 	public void antientropy() {
 		ArrayList<Node> candidates = new ArrayList<Node>();
@@ -280,7 +321,85 @@ public class SyncManager extends AbstractSyncManager {
 		if (numNodes == 0) return;
 		Node[] nodes = candidates.toArray(new Node[numNodes]);
 		int rn = random.nextInt(numNodes);
-		antientropy(nodes[rn]);
+		if (digestAntientropy)
+			digestAntientropy(nodes[rn]);
+		else
+			antientropy(nodes[rn]);
+	}
+
+	/**
+	 * Compare the digests of a level of a store's hash tree sent by a remote
+	 * node with our own, and continue the exchange started by
+	 * {@link #digestAntientropy(Node)} for the nodes that differ
+	 * @param nodeId the remote node
+	 * @param message the digests.  A level past the leaves asks for an
+	 * offer of the keys in the given leaves.
+	 */
+	public void handleSyncDigest(short nodeId, SyncDigestMessage message) {
+		Node node = clusterConfig.getNode(nodeId);
+		if (node == null || !rpcService.isConnected(nodeId)) return;
+
+		SynchronizingStorageEngine store =
+				storeRegistry.get(message.getStore().getStoreName());
+		if (store != null && !shouldSync(store, node)) return;
+		MerkleTree tree = (store == null) ? null : store.getTree();
+
+		int level = message.getLevel();
+		List<Integer> nodes = message.isSetNodes() ?
+				message.getNodes() : Collections.<Integer>emptyList();
+		try {
+			if (level > MerkleTree.DEPTH) {
+				if (store != null) offerLeaves(nodeId, store, nodes);
+				return;
+			}
+
+			List<Long> digests = message.getDigests();
+			if (digests == null || digests.size() != nodes.size()) {
+				logger.warn("[{}->{}] Malformed digests for store {}",
+						new Object[]{getLocalNodeId(), nodeId,
+						message.getStore().getStoreName()});
+				return;
+			}
+			List<Integer> differ = new ArrayList<Integer>();
+			for (int i = 0; i < nodes.size(); i++) {
+				int n = nodes.get(i);
+				if (!MerkleTree.isNode(level, n)) continue;
+				long digest = (tree == null) ? 0 : tree.digest(level, n);
+				if (digest != digests.get(i).longValue())
+					differ.add(n);
+			}
+			if (differ.isEmpty()) return;
+
+			if (level == MerkleTree.DEPTH) {
+				// offer ours and ask for theirs
+				if (store != null) offerLeaves(nodeId, store, differ);
+				SyncMessage bsm =
+						TProtocolUtil.getTSyncDigestMessage(message.getStore(),
+								level + 1);
+				bsm.getSyncDigest().setNodes(differ);
+				sendSyncDigest(nodeId, bsm);
+			} else {
+				SyncMessage bsm =
+						TProtocolUtil.getTSyncDigestMessage(message.getStore(),
+								level + 1);
+				SyncDigestMessage sdm = bsm.getSyncDigest();
+				for (int n : differ) {
+					for (int c = 0; c < MerkleTree.FANOUT; c++) {
+						int child = n * MerkleTree.FANOUT + c;
+						sdm.addToNodes(child);
+						sdm.addToDigests((tree == null) ?
+								0 : tree.digest(level + 1, child));
+					}
+				}
+				sendSyncDigest(nodeId, bsm);
+			}
+		} catch (SyncException e) {
+			logger.error("[" + getLocalNodeId() + "->" + nodeId +
+					"] Could not compare digests", e);
+		} catch (InterruptedException e) {
+			// This can't really happen
+			throw new RuntimeException(e);
+		}
 	}
 
 	/**
@@ -465,6 +584,30 @@ public class SyncManager extends AbstractSyncManager {
 		debugCounter = context.getServiceImpl(IDebugCounterService.class);
 		Map<String, String> config = context.getConfigParams(this);
 		storeRegistry = new StoreRegistry(this, config.get("dbPath"));
+		try {
+			if (config.containsKey("persistentEngine")) {
+				storeRegistry.setPersistentEngine(StoreRegistry.PersistentEngine.
+						valueOf(config.get("persistentEngine").toUpperCase()));
+			}
+			String storeEngineString = config.get("storeEngines");
+			if (storeEngineString != null) {
+				Map<String, String> storeEngines =
+						(new ObjectMapper()).readValue(storeEngineString,
+								new TypeReference<Map<String, String>>() {});
+				for (Entry<String, String> e : storeEngines.entrySet()) {
+					storeRegistry.setStoreEngine(e.getKey(),
+							StoreRegistry.PersistentEngine.
+							valueOf(e.getValue().toUpperCase()));
+				}
+			}
+			if (config.containsKey("logSyncWrites")) {
+				storeRegistry.setLogSyncWrites(
+						Boolean.parseBoolean(config.get("logSyncWrites")));
+			}
+		} catch (Exception e) {
+			throw new FloodlightModuleException("Failed to parse sync " +
+					"manager storage engines", e);
+		}
 
 		String[] configProviders =
 			{PropertyCCProvider.class.getName(),
@@ -476,6 +619,10 @@ public class SyncManager extends AbstractSyncManager {
 				persistenceEnabled =
 						Boolean.parseBoolean(config.get("persistenceEnabled"));
 			}
+			if (config.containsKey("antientropy")) {
+				digestAntientropy =
+						!"full".equalsIgnoreCase(config.get("antientropy"));
+			}
 			if (config.containsKey("configProviders")) {
 				configProviders = config.get("configProviders").split(",");
 			}
@@ -650,6 +797,63 @@ public class SyncManager extends AbstractSyncManager {
 		return store;
 	}
 
+	private boolean shouldSync(SynchronizingStorageEngine store, Node node) {
+		if (Scope.LOCAL.equals(store.getScope())) {
+			return node.getDomainId() ==
+					getClusterConfig().getNode().getDomainId();
+		}
+		return !Scope.UNSYNCHRONIZED.equals(store.getScope());
+	}
+
+	/**
+	 * Offer the remote node the keys in the given leaves of the store's
+	 * hash tree
+	 */
+	private void offerLeaves(short nodeId, SynchronizingStorageEngine store,
+			List<Integer> leaves)
+					throws SyncException, InterruptedException {
+		SyncMessage bsm =
+				TProtocolUtil.getTSyncOfferMessage(store.getName(),
+						store.getScope(),
+						store.isPersistent());
+		int count = 0;
+		for (int leaf : leaves) {
+			if (!MerkleTree.isNode(MerkleTree.DEPTH, leaf)) continue;
+			for (ByteArray key : store.getTree().keys(leaf)) {
+				if (!rpcService.isConnected(nodeId)) return;
+
+				List<Versioned<byte[]>> values = store.get(key);
+				if (values == null || values.size() == 0) continue;
+				bsm.getSyncOffer().addToVersions(
+						TProtocolUtil.getTKeyedVersions(key, values));
+				count += 1;
+				if (count >= SYNC_OFFER_BATCH) {
+					sendSyncOffer(nodeId, bsm);
+					bsm = TProtocolUtil.getTSyncOfferMessage(store.getName(),
+							store.getScope(),
+							store.isPersistent());
+					count = 0;
+				}
+			}
+		}
+		sendSyncOffer(nodeId, bsm);
+	}
+
+	private void sendSyncDigest(short nodeId, SyncMessage bsm)
+			throws InterruptedException {
+		SyncDigestMessage sdm = bsm.getSyncDigest();
+		if (logger.isTraceEnabled()) {
+			logger.trace("[{}->{}] Sending SyncDigest for {} at level {} " +
+					"with {} nodes",
+					new Object[]{getLocalNodeId(), nodeId,
+					sdm.getStore().getStoreName(), sdm.getLevel(),
+					sdm.getNodesSize()});
+		}
+
+		sdm.getHeader().setTransactionId(rpcService.getTransactionId());
+		rpcService.writeToNode(nodeId, bsm);
+	}
+
 	private void sendSyncOffer(short nodeId, SyncMessage bsm)
 			throws InterruptedException {
 		SyncOfferMessage som = bsm.getSyncOffer();
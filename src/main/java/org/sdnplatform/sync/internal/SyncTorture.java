@@ -40,6 +40,12 @@ public class SyncTorture implements IFloodlightModule {
     int iterations = 0;
     int delay = 0;
 
+    /**
+     * Torture a persistent store, to compare the storage engines the
+     * sync manager is configured to use for them
+     */
+    boolean persistent = false;
+
     @Override
     public Collection<Class<? extends IFloodlightService>>
             getModuleServices() {
@@ -69,12 +75,6 @@ public class SyncTorture implements IFloodlightModule {
         syncService = context.getServiceImpl(ISyncService.class);
         debugCounter = context.getServiceImpl(IDebugCounterService.class);
 
-        try {
-            syncService.registerStore(SYNC_STORE_NAME, Scope.GLOBAL);
-        } catch (SyncException e) {
-            throw new FloodlightModuleException(e);
-        }
-        
         Map<String,String> config = context.getConfigParams(this);
         if (config.containsKey("numWorkers")) {
             numWorkers = Integer.parseInt(config.get("numWorkers"));
@@ -88,6 +88,19 @@ public class SyncTorture implements IFloodlightModule {
         if (config.containsKey("delay")) {
             delay = Integer.parseInt(config.get("delay"));
         }
+        if (config.containsKey("persistent")) {
+            persistent = Boolean.parseBoolean(config.get("persistent"));
+        }
+
+        try {
+            if (persistent)
+                syncService.registerPersistentStore(SYNC_STORE_NAME,
+                                                    Scope.GLOBAL);
+            else
+                syncService.registerStore(SYNC_STORE_NAME, Scope.GLOBAL);
+        } catch (SyncException e) {
+            throw new FloodlightModuleException(e);
+        }
     }
 
     @Override
@@ -353,6 +353,23 @@ public class RPCChannelHandler extends AbstractRPCChannelHandler {
         }
     }
 
+    @Override
+    protected void handleSyncDigest(final SyncDigestMessage message,
+                                    Channel channel) {
+        if (remoteNode == null) return;
+
+        // Comparing digests may end in offering keys, which can block
+        // waiting on the remote node, so keep it off the I/O thread
+        final short nodeId = remoteNode.getNodeId();
+        Runnable digestTask = new Runnable() {
+            @Override
+            public void run() {
+                syncManager.handleSyncDigest(nodeId, message);
+            }
+        };
+        syncManager.getThreadPool().getScheduledExecutor().execute(digestTask);
+    }
+
     @Override
     protected void handleFullSyncRequest(FullSyncRequestMessage request,
                                          Channel channel) {
@@ -14,6 +14,7 @@ import org.sdnplatform.sync.thrift.KeyedValues;
 import org.sdnplatform.sync.thrift.KeyedVersions;
 import org.sdnplatform.sync.thrift.MessageType;
 import org.sdnplatform.sync.thrift.Store;
+import org.sdnplatform.sync.thrift.SyncDigestMessage;
 import org.sdnplatform.sync.thrift.SyncOfferMessage;
 import org.sdnplatform.sync.thrift.SyncValueMessage;
 import org.sdnplatform.sync.thrift.VersionedValue;
@@ -248,6 +249,42 @@ public class TProtocolUtil {
         return bsm;
     }
 
+    /**
+     * Get a partially-initialized {@link SyncDigestMessage} wrapped with a 
+     * {@link SyncMessage}.  The nodes and digests will not be set.
+     * @param storeName the name of the store associated with the message
+     * @param scope the {@link Scope} for the store
+     * @param persist the scope for the store 
+     * @param level the level of the hash tree the digests are from
+     * @return the {@link SyncMessage}
+     */
+    public static SyncMessage getTSyncDigestMessage(String storeName,
+                                                    Scope scope,
+                                                    boolean persist,
+                                                    int level) {
+        return getTSyncDigestMessage(getTStore(storeName, scope, persist),
+                                     level);
+    }
+
+    /**
+     * Get a partially-initialized {@link SyncDigestMessage} wrapped with a 
+     * {@link SyncMessage}.  The nodes and digests will not be set.
+     * @param store the {@link Store} associated with the message
+     * @param level the level of the hash tree the digests are from
+     * @return the {@link SyncMessage}
+     */
+    public static SyncMessage getTSyncDigestMessage(Store store, int level) {
+        SyncMessage bsm = new SyncMessage(MessageType.SYNC_DIGEST);
+        AsyncMessageHeader header = new AsyncMessageHeader();
+        SyncDigestMessage sdm = new SyncDigestMessage();
+        sdm.setHeader(header);
+        sdm.setStore(store);
+        sdm.setLevel(level);
+
+        bsm.setSyncDigest(sdm);
+        return bsm;
+    }
+
     /**
      * Convert a thrift {@link org.sdnplatform.sync.thrift.VectorClock} into
      * a {@link VectorClock}.
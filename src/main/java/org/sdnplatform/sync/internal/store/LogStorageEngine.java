@@ -0,0 +1,784 @@
+package org.sdnplatform.sync.internal.store;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import org.sdnplatform.sync.IClosableIterator;
+import org.sdnplatform.sync.IVersion;
+import org.sdnplatform.sync.Versioned;
+import org.sdnplatform.sync.IVersion.Occurred;
+import org.sdnplatform.sync.error.ObsoleteVersionException;
+import org.sdnplatform.sync.error.PersistException;
+import org.sdnplatform.sync.error.SyncException;
+import org.sdnplatform.sync.error.SyncRuntimeException;
+import org.sdnplatform.sync.internal.util.ByteArray;
+import org.sdnplatform.sync.internal.util.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Persistent storage engine that appends its data to a log of
+ * memory-mapped segment files, and keeps in memory an index of where the
+ * latest record for each key is.
+ *
+ * A record holds the whole list of versions for a key, encoded as
+ * {@link JavaDBStorageEngine} encodes them, so a put appends one record
+ * and a get reads one.  When the tombstones of a key are cleaned up, a
+ * delete record is appended.  On open the segments are replayed in order
+ * to rebuild the index; a record whose checksum does not match ends its
+ * segment, so a write torn by a crash is dropped.
+ *
+ * With synchronous writes, a put returns once its record has been forced
+ * to disk.  Puts that arrive while a force is in progress wait for the
+ * next one and share it, so the number of forces follows the number of
+ * writing threads rather than the number of puts.  Otherwise records are
+ * left to the page cache, which keeps them if the process dies but not
+ * if the host does, and the log is forced when a segment fills up, on
+ * {@link #cleanupTask()} and on {@link #close()}.
+ *
+ * {@link #cleanupTask()} also compacts the log: a full segment of which
+ * less than half is still live has its live records appended again at
+ * the head of the log, and is then deleted.  The delete record of a key
+ * is appended again only while an older segment may still hold a put
+ * for the key, which the index tracks as the oldest segment each key
+ * has had a put in.
+ */
+public class LogStorageEngine implements IStorageEngine<ByteArray, byte[]> {
+    protected static final Logger logger =
+            LoggerFactory.getLogger(LogStorageEngine.class.getName());
+
+    /**
+     * Default size of a segment file
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final String SUFFIX = ".log";
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    /**
+     * Record length and checksum
+     */
+    private static final int HEADER = 8;
+
+    /**
+     * Record type and key length
+     */
+    private static final int PREFIX = 5;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private static final double COMPACT_RATIO = 0.5;
+
+    private static final int LOCKS = 256;
+
+    private static final ObjectMapper mapper =
+            new ObjectMapper(new SmileFactory());
+
+    private final String name;
+    private final File dir;
+    private final int segmentSize;
+    private final boolean syncWrites;
+
+    /**
+     * The latest record of each key present in the store
+     */
+    private final ConcurrentHashMap<ByteArray, Location> index =
+            new ConcurrentHashMap<ByteArray, Location>();
+
+    /**
+     * The latest delete record of each key deleted from the store, while
+     * an older segment may still hold a put for the key
+     */
+    private final ConcurrentHashMap<ByteArray, Location> deletes =
+            new ConcurrentHashMap<ByteArray, Location>();
+
+    /**
+     * Serialize the read-modify-write of a key
+     */
+    private final Object[] locks = new Object[LOCKS];
+
+    /**
+     * The segments in log order, the last being the head to which records
+     * are appended.  Guarded by this object, which also guards appends.
+     */
+    private final ArrayList<Segment> segments = new ArrayList<Segment>();
+    private Segment head;
+    private int nextId;
+
+    /**
+     * Bytes appended to the log since it was opened
+     */
+    private long appended;
+
+    /**
+     * Group commit state, guarded by commitLock
+     */
+    private final Object commitLock = new Object();
+    private long committed;
+    private boolean forcing;
+
+    private final Object compactLock = new Object();
+
+    /**
+     * Interval in milliseconds before tombstones will be cleared.
+     */
+    private int tombstoneDeletion = 24 * 60 * 60 * 1000;
+
+    /**
+     * Open the log in the given directory, creating it if needed
+     * @param name the name of the store
+     * @param dir the directory holding the segment files of the store
+     * @param segmentSize the size of a segment file
+     * @param syncWrites whether puts wait for their record to be on disk
+     * @throws PersistException
+     */
+    public LogStorageEngine(String name, File dir,
+                            int segmentSize, boolean syncWrites)
+            throws PersistException {
+        super();
+        this.name = name;
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.syncWrites = syncWrites;
+        for (int i = 0; i < LOCKS; i++) {
+            locks[i] = new Object();
+        }
+
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new PersistException("Could not create log directory " +
+                                       dir);
+        }
+        replay();
+    }
+
+    /**
+     * Open the log in the given directory with the default segment size
+     * and synchronous writes
+     * @param name the name of the store
+     * @param dir the directory holding the segment files of the store
+     * @throws PersistException
+     */
+    public LogStorageEngine(String name, File dir) throws PersistException {
+        this(name, dir, DEFAULT_SEGMENT_SIZE, true);
+    }
+
+    // *******************************
+    // StorageEngine<ByteArray,byte[]>
+    // *******************************
+
+    @Override
+    public List<Versioned<byte[]>> get(ByteArray key) throws SyncException {
+        StoreUtils.assertValidKey(key);
+        Location loc = index.get(key);
+        if (loc == null) {
+            return new ArrayList<Versioned<byte[]>>(0);
+        }
+        return read(loc);
+    }
+
+    @Override
+    public IClosableIterator<Entry<ByteArray, List<Versioned<byte[]>>>>
+            entries() {
+        final Iterator<Map.Entry<ByteArray, Location>> it =
+                index.entrySet().iterator();
+        return new IClosableIterator<Entry<ByteArray,
+                                           List<Versioned<byte[]>>>>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public Pair<ByteArray, List<Versioned<byte[]>>> next() {
+                Map.Entry<ByteArray, Location> e = it.next();
+                try {
+                    return new Pair<ByteArray, List<Versioned<byte[]>>>(
+                            e.getKey(), read(e.getValue()));
+                } catch (PersistException pe) {
+                    throw new SyncRuntimeException("Error in log iterator",
+                                                   pe);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void close() {
+                // nothing to do
+            }
+        };
+    }
+
+    @Override
+    public IClosableIterator<ByteArray> keys() {
+        final Iterator<ByteArray> it = index.keySet().iterator();
+        return new IClosableIterator<ByteArray>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public ByteArray next() {
+                return it.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void close() {
+                // nothing to do
+            }
+        };
+    }
+
+    @Override
+    public void put(ByteArray key, Versioned<byte[]> value)
+            throws SyncException {
+        StoreUtils.assertValidKey(key);
+        long seq;
+        synchronized (lock(key)) {
+            List<Versioned<byte[]>> values = get(key);
+            List<Versioned<byte[]>> itemsToRemove =
+                    new ArrayList<Versioned<byte[]>>(values.size());
+            for (Versioned<byte[]> versioned : values) {
+                Occurred occurred =
+                        value.getVersion().compare(versioned.getVersion());
+                if (occurred == Occurred.BEFORE) {
+                    throw new ObsoleteVersionException("Obsolete version for key '" +
+                                                       key + "': " +
+                                                       value.getVersion());
+                } else if (occurred == Occurred.AFTER) {
+                    itemsToRemove.add(versioned);
+                }
+            }
+            values.removeAll(itemsToRemove);
+            values.add(value);
+            seq = append(key, PUT, encode(values));
+        }
+        commit(seq);
+    }
+
+    @Override
+    public void truncate() throws SyncException {
+        synchronized (this) {
+            for (Segment s : segments) {
+                if (!s.file.delete()) {
+                    logger.warn("Could not delete log segment {}", s.file);
+                }
+            }
+            segments.clear();
+            index.clear();
+            deletes.clear();
+            head = newSegment(segmentSize);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void close() throws SyncException {
+        Segment s;
+        synchronized (this) {
+            s = head;
+        }
+        s.buffer.force();
+    }
+
+    @Override
+    public boolean writeSyncValue(ByteArray key,
+                                  Iterable<Versioned<byte[]>> values) {
+        boolean success = false;
+        for (Versioned<byte[]> value : values) {
+            try {
+                put(key, value);
+                success = true;
+            } catch (PersistException e) {
+                logger.error("Failed to sync value because of " +
+                             "persistence exception", e);
+            } catch (SyncException e) {
+                // ignore obsolete version exception
+            }
+        }
+        return success;
+    }
+
+    @Override
+    public List<IVersion> getVersions(ByteArray key) throws SyncException {
+        return StoreUtils.getVersions(get(key));
+    }
+
+    @Override
+    public void cleanupTask() throws SyncException {
+        for (ByteArray key : index.keySet()) {
+            synchronized (lock(key)) {
+                Location loc = index.get(key);
+                if (loc != null &&
+                    StoreUtils.canDelete(read(loc), tombstoneDeletion)) {
+                    append(key, DELETE, EMPTY);
+                }
+            }
+        }
+        compact();
+        close();
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return true;
+    }
+
+    @Override
+    public void setTombstoneInterval(int interval) {
+        this.tombstoneDeletion = interval;
+    }
+
+    // ****************
+    // LogStorageEngine
+    // ****************
+
+    /**
+     * Copy all the entries of another storage engine into this one, as
+     * when moving a store off another persistent engine
+     * @param from the engine to copy
+     * @return the number of keys copied
+     */
+    public int importFrom(IStorageEngine<ByteArray, byte[]> from) {
+        int count = 0;
+        IClosableIterator<Entry<ByteArray, List<Versioned<byte[]>>>> it =
+                from.entries();
+        try {
+            while (it.hasNext()) {
+                Entry<ByteArray, List<Versioned<byte[]>>> e = it.next();
+                if (writeSyncValue(e.getKey(), e.getValue()))
+                    count += 1;
+            }
+        } finally {
+            it.close();
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of segment files in the log
+     * @return the number of segments
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Get the number of deleted keys whose delete records are kept, as
+     * an older segment may still hold a put for them
+     * @return the number of delete records kept
+     */
+    public int getDeleteRecordCount() {
+        return deletes.size();
+    }
+
+    // *************
+    // Local methods
+    // *************
+
+    private Object lock(ByteArray key) {
+        return locks[(key.hashCode() & 0x7fffffff) % LOCKS];
+    }
+
+    private static byte[] encode(List<Versioned<byte[]>> values)
+            throws PersistException {
+        try {
+            return mapper.writeValueAsBytes(values);
+        } catch (IOException e) {
+            throw new PersistException("Could not encode values", e);
+        }
+    }
+
+    private static List<Versioned<byte[]>> read(Location loc)
+            throws PersistException {
+        ByteBuffer b = loc.segment.buffer.duplicate();
+        b.position(loc.offset + HEADER + 1);
+        int keyLength = b.getInt();
+        byte[] value = new byte[loc.length - HEADER - PREFIX - keyLength];
+        b.position(b.position() + keyLength);
+        b.get(value);
+        try {
+            return mapper.readValue(value,
+                                    new TypeReference<List<VCVersioned<byte[]>>>() {});
+        } catch (IOException e) {
+            throw new PersistException("Could not decode values in " +
+                                       loc.segment.file, e);
+        }
+    }
+
+    /**
+     * Append a record for a key and point the index at it.  The caller
+     * must hold the lock for the key.
+     * @return the position of the end of the record in the log, to pass
+     * to {@link #commit(long)}
+     */
+    private long append(ByteArray key, byte type, byte[] value)
+            throws PersistException {
+        byte[] k = key.get();
+        int length = HEADER + PREFIX + k.length + value.length;
+        ByteBuffer record = ByteBuffer.allocate(length);
+        record.putInt(length);
+        record.putInt(0);
+        record.put(type);
+        record.putInt(k.length);
+        record.put(k);
+        record.put(value);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER, length - HEADER);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+
+        synchronized (this) {
+            Segment s = head;
+            if (s.buffer.capacity() - s.end < length) {
+                s.buffer.force();
+                s = head = newSegment(Math.max(segmentSize, length));
+            }
+            int offset = s.end;
+            ByteBuffer b = s.buffer.duplicate();
+            b.position(offset);
+            b.put(record);
+            s.end += length;
+            if (s.buffer.capacity() - s.end >= HEADER) {
+                // Stops a replay at the end of the records, in case the
+                // segment was reused after a torn write
+                s.buffer.putInt(s.end, 0);
+            }
+
+            indexRecord(key, type, s, offset, length);
+            appended += length;
+            return appended;
+        }
+    }
+
+    /**
+     * Point the index at a record just appended, with the lock on this
+     * object held, or replayed
+     */
+    private void indexRecord(ByteArray key, byte type, Segment s,
+                             int offset, int length) {
+        Location old;
+        if (type == PUT) {
+            s.live.addAndGet(length);
+            Location deleted = deletes.remove(key);
+            old = index.get(key);
+            int oldestPut = old != null ? old.oldestPut :
+                    deleted != null ? deleted.oldestPut : s.id;
+            index.put(key, new Location(s, offset, length, oldestPut));
+        } else {
+            old = index.remove(key);
+            Location deleted = deletes.get(key);
+            if (old != null || deleted != null) {
+                int oldestPut = old != null ? old.oldestPut :
+                        deleted.oldestPut;
+                deletes.put(key, new Location(s, offset, length,
+                                                 oldestPut));
+            }
+        }
+        if (old != null) {
+            old.segment.live.addAndGet(-old.length);
+        }
+    }
+
+    /**
+     * @return true if a segment older than the given one, and no older
+     * than the given segment id, is still in the log
+     */
+    private synchronized boolean hasSegmentsBefore(Segment s, int oldestId) {
+        for (Segment o : segments) {
+            if (o.id >= oldestId && o.id < s.id)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Wait until the log up to the given position is on disk, forcing it
+     * if no other thread is already doing so
+     * @param seq the position returned by {@link #append}
+     */
+    private void commit(long seq) {
+        if (!syncWrites) return;
+        synchronized (commitLock) {
+            while (committed < seq && forcing) {
+                try {
+                    commitLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (committed >= seq) return;
+            forcing = true;
+        }
+
+        long target;
+        Segment s;
+        synchronized (this) {
+            // Full segments were forced when the head moved on
+            target = appended;
+            s = head;
+        }
+        boolean forced = false;
+        try {
+            s.buffer.force();
+            forced = true;
+        } finally {
+            synchronized (commitLock) {
+                if (forced && target > committed)
+                    committed = target;
+                forcing = false;
+                commitLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Rewrite the live records of mostly-dead full segments at the head
+     * of the log and delete the segments.  A delete record only needs to
+     * be kept while it is the latest of its key and an older segment
+     * might still hold a put for the key.
+     */
+    private void compact() throws SyncException {
+        synchronized (compactLock) {
+            List<Segment> full;
+            synchronized (this) {
+                full = new ArrayList<Segment>(segments);
+                full.remove(head);
+            }
+            for (Segment s : full) {
+                if (s.live.get() >= s.end * COMPACT_RATIO)
+                    continue;
+
+                ByteBuffer b = s.buffer.duplicate();
+                int offset = 0;
+                while (offset < s.end) {
+                    b.position(offset);
+                    int length = b.getInt();
+                    b.getInt();
+                    byte type = b.get();
+                    byte[] k = new byte[b.getInt()];
+                    b.get(k);
+                    ByteArray key = new ByteArray(k);
+                    synchronized (lock(key)) {
+                        if (type == PUT) {
+                            Location loc = index.get(key);
+                            if (loc != null && loc.segment == s &&
+                                loc.offset == offset) {
+                                byte[] value = new byte[length - HEADER -
+                                                        PREFIX - k.length];
+                                b.get(value);
+                                append(key, PUT, value);
+                            }
+                        } else {
+                            Location loc = deletes.get(key);
+                            if (loc != null && loc.segment == s &&
+                                loc.offset == offset) {
+                                if (hasSegmentsBefore(s, loc.oldestPut)) {
+                                    append(key, DELETE, EMPTY);
+                                } else {
+                                    deletes.remove(key);
+                                }
+                            }
+                        }
+                    }
+                    offset += length;
+                }
+
+                close();
+                synchronized (this) {
+                    segments.remove(s);
+                }
+                if (!s.file.delete()) {
+                    logger.warn("Could not delete log segment {}", s.file);
+                }
+                logger.debug("Compacted log segment {} of store {}",
+                             s.file.getName(), name);
+            }
+        }
+    }
+
+    /**
+     * Rebuild the index from the segment files, and pick the segment to
+     * append to
+     */
+    private void replay() throws PersistException {
+        File[] files = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File d, String n) {
+                return n.endsWith(SUFFIX);
+            }
+        });
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Integer.compare(segmentId(a), segmentId(b));
+            }
+        });
+
+        for (File f : files) {
+            if (segmentId(f) < 0) continue;
+            Segment s = openSegment(f, segmentId(f), (int) f.length());
+            segments.add(s);
+            nextId = s.id + 1;
+            ByteBuffer b = s.buffer.duplicate();
+            CRC32 crc = new CRC32();
+            while (b.remaining() >= HEADER + PREFIX) {
+                int start = b.position();
+                int length = b.getInt();
+                int checksum = b.getInt();
+                if (length < HEADER + PREFIX ||
+                    length > b.capacity() - start)
+                    break;
+                byte[] body = new byte[length - HEADER];
+                b.get(body);
+                crc.reset();
+                crc.update(body, 0, body.length);
+                int keyLength = ByteBuffer.wrap(body, 1, 4).getInt();
+                if ((int) crc.getValue() != checksum ||
+                    keyLength < 0 || keyLength > body.length - PREFIX) {
+                    logger.warn("Dropping torn record at {} in log " +
+                                "segment {}", start, f);
+                    break;
+                }
+                ByteArray key = new ByteArray(Arrays.copyOfRange(body,
+                        PREFIX, PREFIX + keyLength));
+                indexRecord(key, body[0], s, start, length);
+                s.end = b.position();
+            }
+        }
+
+        if (segments.isEmpty()) {
+            head = newSegment(segmentSize);
+        } else {
+            head = segments.get(segments.size() - 1);
+            if (head.buffer.capacity() - head.end >= HEADER)
+                head.buffer.putInt(head.end, 0);
+        }
+        logger.debug("Opened log of store {} with {} keys in {} segments",
+                     new Object[] {name, index.size(), segments.size()});
+    }
+
+    private Segment newSegment(int size) throws PersistException {
+        int id = nextId++;
+        Segment s = openSegment(new File(dir, String.format("%08d", id) +
+                                              SUFFIX),
+                                id, size);
+        segments.add(s);
+        return s;
+    }
+
+    private static Segment openSegment(File file, int id, int size)
+            throws PersistException {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            MappedByteBuffer buffer =
+                    raf.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                                         0, size);
+            return new Segment(id, file, buffer);
+        } catch (IOException e) {
+            throw new PersistException("Could not map log segment " + file,
+                                       e);
+        } finally {
+            // the mapping stays valid once the file is closed
+            try {
+                if (raf != null) raf.close();
+            } catch (IOException e) {
+                logger.warn("Could not close log segment " + file, e);
+            }
+        }
+    }
+
+    private static int segmentId(File f) {
+        String n = f.getName();
+        try {
+            return Integer.parseInt(n.substring(0, n.length() -
+                                                   SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * A segment file and its mapping
+     */
+    private static class Segment {
+        final int id;
+        final File file;
+        final MappedByteBuffer buffer;
+
+        /**
+         * End of the records in the segment; only moves while the segment
+         * is the head
+         */
+        int end;
+
+        /**
+         * Bytes of the records that the index points to
+         */
+        final AtomicInteger live = new AtomicInteger();
+
+        Segment(int id, File file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Where a record is in the log
+     */
+    private static class Location {
+        final Segment segment;
+        final int offset;
+        final int length;
+
+        /**
+         * Id of the oldest segment that may hold a put for the key; the
+         * segment itself may have been compacted away since
+         */
+        final int oldestPut;
+
+        Location(Segment segment, int offset, int length, int oldestPut) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.oldestPut = oldestPut;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package org.sdnplatform.sync.internal.store;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.sdnplatform.sync.IVersion;
+import org.sdnplatform.sync.internal.util.ByteArray;
+import org.sdnplatform.sync.internal.version.ClockEntry;
+import org.sdnplatform.sync.internal.version.VectorClock;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * A hash tree over the key space of a store, so that two nodes can find
+ * the keys on which they differ by comparing digests rather than by
+ * offering each other every key.
+ *
+ * Keys are spread by hash over {@link #LEAVES} leaves.  The digest of a
+ * leaf is the sum of the hashes of its entries, where an entry hashes its
+ * key and the vector clocks of the versions stored for it, so the digest
+ * can be updated in place as entries change.  The digest of an inner node
+ * is the sum of the digests of the leaves under it; a node at level
+ * <code>l</code> has {@link #FANOUT}<sup>l</sup> siblings, level 0 being
+ * the root and level {@link #DEPTH} the leaves.
+ *
+ * Updates to a key must be serialized with the write to the store that
+ * caused them; {@link #lock(ByteArray)} gives the lock to hold for both.
+ */
+public class MerkleTree {
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    /**
+     * Children per inner node
+     */
+    public static final int FANOUT = 16;
+    private static final int FANOUT_BITS = 4;
+
+    /**
+     * The level of the leaves
+     */
+    public static final int DEPTH = 3;
+
+    /**
+     * Number of leaves
+     */
+    public static final int LEAVES = 1 << (FANOUT_BITS * DEPTH);
+
+    private static class Leaf {
+        final HashMap<ByteArray, Long> entries =
+                new HashMap<ByteArray, Long>();
+        volatile long digest;
+    }
+
+    private final Leaf[] leaves = new Leaf[LEAVES];
+
+    public MerkleTree() {
+        for (int i = 0; i < LEAVES; i++) {
+            leaves[i] = new Leaf();
+        }
+    }
+
+    /**
+     * Get the leaf a key belongs to
+     * @param key the key
+     * @return the leaf index
+     */
+    public static int leafOf(ByteArray key) {
+        return HASH.hashBytes(key.get()).asInt() >>> (32 - FANOUT_BITS * DEPTH);
+    }
+
+    /**
+     * Get the lock that serializes updates to the given key
+     * @param key the key
+     * @return the lock object
+     */
+    public Object lock(ByteArray key) {
+        return leaves[leafOf(key)];
+    }
+
+    /**
+     * Record the versions now stored for a key
+     * @param key the key
+     * @param versions the versions, or an empty list if the key is gone
+     */
+    public void update(ByteArray key, List<IVersion> versions) {
+        Leaf leaf = leaves[leafOf(key)];
+        long h = hash(key, versions);
+        synchronized (leaf) {
+            Long old = (h == 0) ?
+                    leaf.entries.remove(key) :
+                    leaf.entries.put(key, h);
+            leaf.digest += h - (old == null ? 0 : old.longValue());
+        }
+    }
+
+    /**
+     * Get the digest of a node of the tree
+     * @param level the level of the node, from 0 to {@link #DEPTH}
+     * @param node the index of the node within its level
+     * @return the digest
+     */
+    public long digest(int level, int node) {
+        int span = 1 << (FANOUT_BITS * (DEPTH - level));
+        long d = 0;
+        for (int i = node * span; i < (node + 1) * span; i++) {
+            d += leaves[i].digest;
+        }
+        return d;
+    }
+
+    /**
+     * Get the keys currently in a leaf
+     * @param leaf the leaf index
+     * @return a copy of the keys
+     */
+    public List<ByteArray> keys(int leaf) {
+        Leaf l = leaves[leaf];
+        synchronized (l) {
+            return new ArrayList<ByteArray>(l.entries.keySet());
+        }
+    }
+
+    /**
+     * Check whether a node index is valid at the given level
+     */
+    public static boolean isNode(int level, int node) {
+        return level >= 0 && level <= DEPTH &&
+               node >= 0 && node < (1 << (FANOUT_BITS * level));
+    }
+
+    public void clear() {
+        for (Leaf l : leaves) {
+            synchronized (l) {
+                l.entries.clear();
+                l.digest = 0;
+            }
+        }
+    }
+
+    /**
+     * Hash a key and the versions stored for it.  The versions are summed
+     * so their order does not matter.
+     */
+    private static long hash(ByteArray key, List<IVersion> versions) {
+        if (versions == null) return 0;
+        long h = 0;
+        for (IVersion v : versions) {
+            Hasher hasher = HASH.newHasher().putBytes(key.get());
+            for (ClockEntry e : ((VectorClock) v).getEntries()) {
+                hasher.putShort(e.getNodeId()).putLong(e.getVersion());
+            }
+            h += hasher.hash().asLong();
+        }
+        return h;
+    }
+}
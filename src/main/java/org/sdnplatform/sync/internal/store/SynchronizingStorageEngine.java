@@ -1,8 +1,13 @@
 package org.sdnplatform.sync.internal.store;
 
+import java.util.List;
+import java.util.Map.Entry;
+
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
 
+import org.sdnplatform.sync.IClosableIterator;
 import org.sdnplatform.sync.Versioned;
+import org.sdnplatform.sync.IStoreListener.UpdateType;
 import org.sdnplatform.sync.ISyncService.Scope;
 import org.sdnplatform.sync.error.SyncException;
 import org.sdnplatform.sync.internal.SyncManager;
@@ -14,6 +19,9 @@ import org.slf4j.LoggerFactory;
 /**
  * This storage engine will asynchronously replicate its data to the other
  * nodes in the cluster based on the scope of the s
+ *
+ * It also keeps a {@link MerkleTree} over its keys, updated on every write,
+ * which antientropy uses to find the keys on which two nodes differ.
  */
 public class SynchronizingStorageEngine extends ListenerStorageEngine {
 
@@ -30,6 +38,11 @@ public class SynchronizingStorageEngine extends ListenerStorageEngine {
      */
     protected Scope scope;
 
+    /**
+     * Hash tree over the keys of the local storage
+     */
+    protected MerkleTree tree = new MerkleTree();
+
     /**
      * Allocate a synchronizing storage engine
      * @param localStorage the local storage
@@ -48,6 +61,17 @@ public class SynchronizingStorageEngine extends ListenerStorageEngine {
         this.localStorage = localStorage;
         this.syncManager = syncManager;
         this.scope = scope;
+
+        IClosableIterator<Entry<ByteArray, List<Versioned<byte[]>>>> entries =
+                localStorage.entries();
+        try {
+            while (entries.hasNext()) {
+                Entry<ByteArray, List<Versioned<byte[]>>> e = entries.next();
+                tree.update(e.getKey(), StoreUtils.getVersions(e.getValue()));
+            }
+        } finally {
+            entries.close();
+        }
     }
 
     // *************************
@@ -57,10 +81,46 @@ public class SynchronizingStorageEngine extends ListenerStorageEngine {
     @Override
     public void put(ByteArray key, Versioned<byte[]> value)
             throws SyncException {
-        super.put(key, value);
+        updateCounter(SyncManager.counterPuts);
+        synchronized (tree.lock(key)) {
+            localStorage.put(key, value);
+            tree.update(key, localStorage.getVersions(key));
+        }
+        notifyListeners(key, UpdateType.LOCAL);
         if (!Scope.UNSYNCHRONIZED.equals(scope))
             syncManager.queueSyncTask(this, key, value);
     }
+
+    @Override
+    public boolean writeSyncValue(ByteArray key,
+                                  Iterable<Versioned<byte[]>> values) {
+        boolean r;
+        synchronized (tree.lock(key)) {
+            r = localStorage.writeSyncValue(key, values);
+            if (r) updateTree(key);
+        }
+        if (r) notifyListeners(key, UpdateType.REMOTE);
+        return r;
+    }
+
+    @Override
+    public void truncate() throws SyncException {
+        localStorage.truncate();
+        tree.clear();
+    }
+
+    @Override
+    public void cleanupTask() throws SyncException {
+        localStorage.cleanupTask();
+        // the cleanup removes tombstones behind our back; recheck every key
+        for (int leaf = 0; leaf < MerkleTree.LEAVES; leaf++) {
+            for (ByteArray key : tree.keys(leaf)) {
+                synchronized (tree.lock(key)) {
+                    updateTree(key);
+                }
+            }
+        }
+    }
     
     // **************
     // Public methods
@@ -73,4 +133,20 @@ public class SynchronizingStorageEngine extends ListenerStorageEngine {
     public Scope getScope() {
         return scope;
     }
+
+    /**
+     * Get the hash tree over the keys of this store
+     * @return the {@link MerkleTree}
+     */
+    public MerkleTree getTree() {
+        return tree;
+    }
+
+    private void updateTree(ByteArray key) {
+        try {
+            tree.update(key, localStorage.getVersions(key));
+        } catch (SyncException e) {
+            logger.error("Could not read back key for hash tree", e);
+        }
+    }
 }
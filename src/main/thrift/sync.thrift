@@ -93,6 +93,7 @@ enum MessageType {
   REGISTER_RESPONSE = 19,
   CLUSTER_JOIN_REQUEST = 20,
   CLUSTER_JOIN_RESPONSE = 21,
+  SYNC_DIGEST = 22,
 }
 
 enum AuthScheme {
@@ -186,6 +187,14 @@ struct SyncRequestMessage {
   3: optional list<binary> keys
 }
 
+struct SyncDigestMessage {
+  1: required AsyncMessageHeader header,
+  2: required Store store,
+  3: required i32 level,
+  4: optional list<i32> nodes,
+  5: optional list<i64> digests
+}
+
 struct FullSyncRequestMessage {
   1: required AsyncMessageHeader header,
 }
@@ -250,4 +259,5 @@ struct SyncMessage {
   20: optional RegisterResponseMessage registerResponse,
   21: optional ClusterJoinRequestMessage clusterJoinRequest,
   22: optional ClusterJoinResponseMessage clusterJoinResponse,
+  23: optional SyncDigestMessage syncDigest,
 }
\ No newline at end of file
@@ -0,0 +1,278 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.core;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.core.module.FloodlightModuleException;
+import net.floodlightcontroller.core.module.IFloodlightModule;
+import net.floodlightcontroller.core.module.IFloodlightService;
+import net.floodlightcontroller.core.util.ListenerDispatcher;
+
+import org.easymock.EasyMock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFType;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+
+/**
+ * Compares the string-keyed and slot-indexed {@link FloodlightContext} for
+ * one packet-in dispatched the way the controller does it: the context is
+ * taken from the pool, the payload is stored in it, the ordered
+ * IOFMessageListener chain of a {@link ListenerDispatcher} runs until a
+ * listener stops, and the context is freed back to the pool.
+ *
+ * The listeners stand in for LinkDiscoveryManager, DeviceManagerImpl and
+ * Forwarding and do their context traffic. Like those modules, they
+ * register the slots of their keys in init(), which the benchmark calls
+ * before adding them to the dispatcher.
+ *
+ * Run {@link #main(String[])} from the test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class FloodlightContextBenchmark {
+    /**
+     * How context keys are accessed: mapOnly never registers them, which is
+     * the behavior before slots existed; stringKeys registers them but goes
+     * through the string-keyed store API; slots uses the slot accessors, as
+     * the packet-in hot path does.
+     */
+    @Param({"mapOnly", "stringKeys", "slots"})
+    public String access;
+
+    private static final FloodlightContextStore<Object> store =
+            new FloodlightContextStore<Object>();
+
+    /**
+     * A context key as one access mode uses it. The key names are distinct
+     * per mode, so that the unregistered keys of mapOnly stay unregistered.
+     */
+    private static final class Key {
+        private final String access;
+        private final String name;
+        private int slot = -1;
+
+        Key(String access, String name) {
+            this.access = access;
+            this.name = "bench." + access + "." + name;
+        }
+
+        void register() {
+            if (!"mapOnly".equals(access)) {
+                slot = FloodlightContext.registerSlot(name);
+            }
+        }
+
+        Object get(FloodlightContext cntx) {
+            if (slot < 0) {
+                return cntx.getStorage().get(name);
+            }
+            return "slots".equals(access) ? store.get(cntx, slot) : store.get(cntx, name);
+        }
+
+        void put(FloodlightContext cntx, Object value) {
+            if (slot < 0) {
+                cntx.getStorage().put(name, value);
+            } else if ("slots".equals(access)) {
+                store.put(cntx, slot, value);
+            } else {
+                store.put(cntx, name, value);
+            }
+        }
+    }
+
+    private abstract static class BenchListener
+            implements IOFMessageListener, IFloodlightModule {
+        private final String name;
+        private final String prereq;
+
+        BenchListener(String name, String prereq) {
+            this.name = name;
+            this.prereq = prereq;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean isCallbackOrderingPrereq(OFType type, String name) {
+            return name.equals(prereq);
+        }
+
+        @Override
+        public boolean isCallbackOrderingPostreq(OFType type, String name) {
+            return false;
+        }
+
+        @Override
+        public Collection<Class<? extends IFloodlightService>> getModuleServices() {
+            return null;
+        }
+
+        @Override
+        public Map<Class<? extends IFloodlightService>, IFloodlightService> getServiceImpls() {
+            return null;
+        }
+
+        @Override
+        public Collection<Class<? extends IFloodlightService>> getModuleDependencies() {
+            return null;
+        }
+
+        @Override
+        public void startUp(FloodlightModuleContext context) {
+        }
+    }
+
+    private Key payloadKey;
+    private Key srcDeviceKey;
+    private Key dstDeviceKey;
+    private Key decisionKey;
+
+    private final ListenerDispatcher<OFType, IOFMessageListener> dispatcher =
+            new ListenerDispatcher<OFType, IOFMessageListener>();
+    private final ArrayDeque<FloodlightContext> pool =
+            new ArrayDeque<FloodlightContext>();
+    private final Object payload = new Object();
+    private final Object srcDevice = new Object();
+    private final Object dstDevice = new Object();
+    private IOFSwitch sw;
+    private OFMessage pi;
+    private Blackhole bh;
+
+    @Setup
+    public void setUp() throws FloodlightModuleException {
+        payloadKey = new Key(access, "piPayload");
+        srcDeviceKey = new Key(access, "srcDevice");
+        dstDeviceKey = new Key(access, "dstDevice");
+        decisionKey = new Key(access, "decision");
+        /* the controller's own key, registered with its service constants */
+        payloadKey.register();
+
+        BenchListener linkDiscovery = new BenchListener("linkdiscovery", null) {
+            @Override
+            public void init(FloodlightModuleContext context) {
+            }
+
+            @Override
+            public Command receive(IOFSwitch sw, OFMessage msg, FloodlightContext cntx) {
+                consume(payloadKey.get(cntx));
+                return Command.CONTINUE;
+            }
+        };
+        BenchListener deviceManager = new BenchListener("devicemanager", "linkdiscovery") {
+            @Override
+            public void init(FloodlightModuleContext context) {
+                srcDeviceKey.register();
+                dstDeviceKey.register();
+            }
+
+            @Override
+            public Command receive(IOFSwitch sw, OFMessage msg, FloodlightContext cntx) {
+                consume(payloadKey.get(cntx));
+                srcDeviceKey.put(cntx, srcDevice);
+                dstDeviceKey.put(cntx, dstDevice);
+                return Command.CONTINUE;
+            }
+        };
+        BenchListener forwarding = new BenchListener("forwarding", "devicemanager") {
+            @Override
+            public void init(FloodlightModuleContext context) {
+                decisionKey.register();
+            }
+
+            @Override
+            public Command receive(IOFSwitch sw, OFMessage msg, FloodlightContext cntx) {
+                consume(decisionKey.get(cntx));
+                consume(payloadKey.get(cntx));
+                consume(dstDeviceKey.get(cntx));
+                consume(srcDeviceKey.get(cntx));
+                return Command.STOP;
+            }
+        };
+
+        FloodlightModuleContext fmc = new FloodlightModuleContext();
+        for (BenchListener l : new BenchListener[] { forwarding, deviceManager, linkDiscovery }) {
+            l.init(fmc);
+            dispatcher.addListener(OFType.PACKET_IN, l);
+        }
+
+        sw = EasyMock.createNiceMock(IOFSwitch.class);
+        EasyMock.replay(sw);
+        pi = OFFactories.getFactory(OFVersion.OF_13).buildPacketIn()
+                .setData(new byte[64])
+                .build();
+    }
+
+    private void consume(Object o) {
+        bh.consume(o);
+    }
+
+    @Benchmark
+    public void dispatch(Blackhole bh) {
+        this.bh = bh;
+        /* Controller.flcontext_alloc */
+        FloodlightContext cntx = pool.pollFirst();
+        if (cntx == null) {
+            cntx = new FloodlightContext();
+        }
+        payloadKey.put(cntx, payload);
+
+        /* Controller.dispatchToListeners */
+        List<IOFMessageListener> listeners = dispatcher.getOrderedListeners();
+        for (IOFMessageListener listener : listeners) {
+            if (IListener.Command.STOP.equals(listener.receive(sw, pi, cntx))) {
+                break;
+            }
+        }
+
+        /* Controller.flcontext_free */
+        cntx.reset();
+        pool.push(cntx);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(FloodlightContextBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class FloodlightContextTest {
+    private static final String SLOT_KEY =
+            "net.floodlightcontroller.core.FloodlightContextTest.slot";
+    private static final String MAP_KEY =
+            "net.floodlightcontroller.core.FloodlightContextTest.map";
+    private static final String LATE_KEY =
+            "net.floodlightcontroller.core.FloodlightContextTest.late";
+
+    private final FloodlightContextStore<String> store =
+            new FloodlightContextStore<String>();
+
+    @Test
+    public void testRegisterSlot() {
+        int slot = FloodlightContext.registerSlot(SLOT_KEY);
+        assertEquals(slot, FloodlightContext.registerSlot(SLOT_KEY));
+        assertEquals(slot, FloodlightContext.getSlot(SLOT_KEY));
+        assertTrue(slot < FloodlightContext.getSlotCount());
+        assertEquals(-1, FloodlightContext.getSlot(MAP_KEY));
+    }
+
+    @Test
+    public void testSlotAndStringAccessAgree() {
+        int slot = FloodlightContext.registerSlot(SLOT_KEY);
+        FloodlightContext cntx = new FloodlightContext();
+
+        store.put(cntx, slot, "a");
+        assertEquals("a", store.get(cntx, SLOT_KEY));
+        assertTrue(cntx.getStorage().isEmpty());
+
+        store.put(cntx, SLOT_KEY, "b");
+        assertEquals("b", store.get(cntx, slot));
+
+        store.remove(cntx, SLOT_KEY);
+        assertNull(store.get(cntx, slot));
+    }
+
+    @Test
+    public void testUnregisteredKeyUsesStorage() {
+        FloodlightContext cntx = new FloodlightContext();
+        store.put(cntx, MAP_KEY, "c");
+        assertEquals("c", store.get(cntx, MAP_KEY));
+        assertEquals("c", cntx.getStorage().get(MAP_KEY));
+        store.remove(cntx, MAP_KEY);
+        assertNull(store.get(cntx, MAP_KEY));
+    }
+
+    @Test
+    public void testSlotRegisteredAfterAllocation() {
+        FloodlightContext cntx = new FloodlightContext();
+        int slot = FloodlightContext.registerSlot(LATE_KEY);
+        assertNull(store.get(cntx, slot));
+        store.put(cntx, slot, "d");
+        assertEquals("d", store.get(cntx, LATE_KEY));
+    }
+
+    @Test
+    public void testReset() {
+        int slot = FloodlightContext.registerSlot(SLOT_KEY);
+        FloodlightContext cntx = new FloodlightContext();
+        store.put(cntx, slot, "e");
+        store.put(cntx, MAP_KEY, "f");
+        cntx.reset();
+        assertNull(store.get(cntx, slot));
+        assertNull(store.get(cntx, MAP_KEY));
+        assertTrue(cntx.getStorage().isEmpty());
+    }
+}
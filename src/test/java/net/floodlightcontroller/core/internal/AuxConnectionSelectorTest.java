@@ -0,0 +1,163 @@
+package net.floodlightcontroller.core.internal;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import net.floodlightcontroller.core.IOFConnectionBackend;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFPacketOut;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.types.OFAuxId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import com.google.common.collect.ImmutableList;
+
+public class AuxConnectionSelectorTest {
+    private final OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+
+    private static IOFConnectionBackend connection(boolean connected, boolean writable, long pending) {
+        IOFConnectionBackend c = createMock(IOFConnectionBackend.class);
+        expect(c.isConnected()).andReturn(connected).anyTimes();
+        expect(c.isWritable()).andReturn(writable).anyTimes();
+        expect(c.getPendingWriteBytes()).andReturn(pending).anyTimes();
+        replay(c);
+        return c;
+    }
+
+    private static Map<OFAuxId, IOFConnectionBackend> connections(IOFConnectionBackend... cs) {
+        Map<OFAuxId, IOFConnectionBackend> m = new LinkedHashMap<OFAuxId, IOFConnectionBackend>();
+        for (int i = 0; i < cs.length; i++) {
+            m.put(i == 0 ? OFAuxId.MAIN : OFAuxId.of(i), cs[i]);
+        }
+        return m;
+    }
+
+    private OFPacketOut udpPacketOut(int srcPort) {
+        byte[] d = new byte[14 + 20 + 8];
+        d[12] = 0x08; /* IPv4 */
+        d[14] = 0x45;
+        d[14 + 9] = 17; /* UDP */
+        d[14 + 12] = 10; d[14 + 15] = 1; /* 10.0.0.1 */
+        d[14 + 16] = 10; d[14 + 19] = 2; /* 10.0.0.2 */
+        d[34] = (byte) (srcPort >> 8);
+        d[35] = (byte) srcPort;
+        return factory.buildPacketOut()
+                .setInPort(OFPort.of(1))
+                .setActions(ImmutableList.<OFAction>of(factory.actions().output(OFPort.of(2), 0)))
+                .setData(d)
+                .build();
+    }
+
+    @Test
+    public void testMainOnly() {
+        IOFConnectionBackend main = connection(true, true, 0);
+        Map<OFAuxId, IOFConnectionBackend> cs = connections(main, connection(true, true, 0));
+        AuxConnectionSelector selector = new AuxConnectionSelector(AuxConnectionSelector.Policy.MAIN_ONLY);
+        assertSame(main, selector.select(cs));
+    }
+
+    @Test
+    public void testRoundRobinSkipsUnhealthy() {
+        IOFConnectionBackend main = connection(true, true, 0);
+        IOFConnectionBackend aux1 = connection(true, true, 0);
+        IOFConnectionBackend down = connection(false, false, 0);
+        IOFConnectionBackend full = connection(true, false, 0);
+        IOFConnectionBackend aux4 = connection(true, true, 0);
+        Map<OFAuxId, IOFConnectionBackend> cs = connections(main, aux1, down, full, aux4);
+        AuxConnectionSelector selector = new AuxConnectionSelector(AuxConnectionSelector.Policy.ROUND_ROBIN);
+
+        Set<IOFConnectionBackend> picked = new HashSet<IOFConnectionBackend>();
+        for (int i = 0; i < 4; i++) {
+            picked.add(selector.select(cs));
+        }
+        assertTrue(picked.contains(aux1));
+        assertTrue(picked.contains(aux4));
+        assertFalse(picked.contains(main));
+        assertFalse(picked.contains(down));
+        assertFalse(picked.contains(full));
+    }
+
+    @Test
+    public void testLeastLoaded() {
+        IOFConnectionBackend main = connection(true, true, 0);
+        IOFConnectionBackend busy = connection(true, true, 1 << 20);
+        IOFConnectionBackend idle = connection(true, true, 128);
+        AuxConnectionSelector selector = new AuxConnectionSelector(AuxConnectionSelector.Policy.LEAST_LOADED);
+        assertSame(idle, selector.select(connections(main, busy, idle)));
+    }
+
+    @Test
+    public void testLeastLoadedTiesTakeTurns() {
+        IOFConnectionBackend main = connection(true, true, 0);
+        IOFConnectionBackend aux1 = connection(true, true, 0);
+        IOFConnectionBackend aux2 = connection(true, true, 0);
+        Map<OFAuxId, IOFConnectionBackend> cs = connections(main, aux1, aux2);
+        AuxConnectionSelector selector = new AuxConnectionSelector(AuxConnectionSelector.Policy.LEAST_LOADED);
+
+        Set<IOFConnectionBackend> picked = new HashSet<IOFConnectionBackend>();
+        for (int i = 0; i < 2; i++) {
+            picked.add(selector.select(cs));
+        }
+        assertEquals(2, picked.size());
+        assertFalse(picked.contains(main));
+    }
+
+    @Test
+    public void testPacketOutsFollowTheirFlow() {
+        IOFConnectionBackend main = connection(true, true, 0);
+        Map<OFAuxId, IOFConnectionBackend> cs = connections(main, connection(true, true, 0),
+                connection(true, true, 0), connection(true, true, 0), connection(true, true, 0));
+        for (AuxConnectionSelector.Policy p : new AuxConnectionSelector.Policy[] {
+                AuxConnectionSelector.Policy.ROUND_ROBIN, AuxConnectionSelector.Policy.LEAST_LOADED }) {
+            AuxConnectionSelector selector = new AuxConnectionSelector(p);
+            Set<IOFConnectionBackend> picked = new HashSet<IOFConnectionBackend>();
+            for (int flow = 1000; flow < 1032; flow++) {
+                IOFConnectionBackend c = selector.select(cs, udpPacketOut(flow));
+                for (int i = 0; i < 4; i++) {
+                    assertSame(c, selector.select(cs, udpPacketOut(flow)));
+                }
+                picked.add(c);
+            }
+            assertTrue(picked.size() > 1);
+            assertFalse(picked.contains(main));
+        }
+    }
+
+    @Test
+    public void testFailOverToMain() {
+        IOFConnectionBackend main = connection(true, true, 0);
+        Map<OFAuxId, IOFConnectionBackend> cs = connections(main, connection(false, false, 0));
+        for (AuxConnectionSelector.Policy p : AuxConnectionSelector.Policy.values()) {
+            assertSame(main, new AuxConnectionSelector(p).select(cs));
+            assertSame(main, new AuxConnectionSelector(p).select(cs, udpPacketOut(1000)));
+        }
+    }
+
+    @Test
+    public void testIsSpreadable() {
+        assertTrue(AuxConnectionSelector.isSpreadable(factory.buildFlowStatsRequest().build()));
+        assertTrue(AuxConnectionSelector.isSpreadable(factory.buildPacketOut()
+                .setActions(ImmutableList.<OFAction>of(factory.actions().output(OFPort.of(1), 0)))
+                .build()));
+        /* resubmitted to the tables, so must follow the flow-mods written before it */
+        assertFalse(AuxConnectionSelector.isSpreadable(factory.buildPacketOut()
+                .setActions(ImmutableList.<OFAction>of(factory.actions().output(OFPort.TABLE, 0)))
+                .build()));
+        assertFalse(AuxConnectionSelector.isSpreadable(factory.buildFlowAdd().build()));
+        assertFalse(AuxConnectionSelector.isSpreadable(factory.buildBarrierRequest().build()));
+    }
+}
@@ -37,6 +37,7 @@ import net.floodlightcontroller.storage.memory.MemoryStorageSource;
 import net.floodlightcontroller.test.FloodlightTestCase;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
 import net.floodlightcontroller.threadpool.ThreadPool;
+import org.easymock.Capture;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -376,6 +377,61 @@ public class ControllerTest extends FloodlightTestCase {
         verify(sw);
     }
 
+    /**
+     * Test that packet-ins of one burst are dispatched together: plain
+     * listeners get them one at a time, batch listeners in one call, and
+     * a STOP for a packet-in keeps it from later listeners.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testHandleMessageBatch() throws Exception {
+        controller.removeOFMessageListeners(OFType.PACKET_IN);
+        controller.batchPacketIns = true;
+
+        IOFSwitch sw = createMock(IOFSwitch.class);
+        expect(sw.getId()).andReturn(DatapathId.NONE).anyTimes();
+
+        IOFMessageListener test1 = createMock(IOFMessageListener.class);
+        expect(test1.getName()).andReturn("test1").anyTimes();
+        setupListenerOrdering(test1);
+
+        IOFMessageBatchListener test2 = createMock(IOFMessageBatchListener.class);
+        expect(test2.getName()).andReturn("test2").anyTimes();
+        expect(test2.isCallbackOrderingPrereq(OFType.PACKET_IN, "test1"))
+                .andReturn(true).anyTimes();
+        setupListenerOrdering(test2);
+
+        replay(test1, test2);
+        controller.addOFMessageListener(OFType.PACKET_IN, test2);
+        controller.addOFMessageListener(OFType.PACKET_IN, test1);
+
+        OFPacketIn pi1 = pi.createBuilder().setXid(1).build();
+        OFPacketIn pi2 = pi.createBuilder().setXid(2).build();
+        OFPacketIn pi3 = pi.createBuilder().setXid(3).build();
+
+        reset(test1, test2);
+        expect(test1.receive(eq(sw), eq(pi1), isA(FloodlightContext.class)))
+                .andReturn(Command.CONTINUE);
+        expect(test1.receive(eq(sw), eq(pi2), isA(FloodlightContext.class)))
+                .andReturn(Command.STOP);
+        expect(test1.receive(eq(sw), eq(pi3), isA(FloodlightContext.class)))
+                .andReturn(Command.CONTINUE);
+        Capture<List<OFMessage>> batch = newCapture();
+        test2.receiveBatch(eq(sw), capture(batch),
+                anyObject(List.class), anyObject(Command[].class));
+        expectLastCall().once();
+        replay(test1, test2, sw);
+
+        controller.beginMessageBatch();
+        controller.handleMessage(sw, pi1, null);
+        controller.handleMessage(sw, pi2, null);
+        controller.handleMessage(sw, pi3, null);
+        controller.endMessageBatch();
+        verify(test1, test2, sw);
+
+        assertEquals(ImmutableList.of(pi1, pi3), batch.getValue());
+    }
+
     @Test
     public void testHandleMessagesSlave() throws Exception {
         doSetUp(HARole.STANDBY);
@@ -558,6 +614,62 @@ public class ControllerTest extends FloodlightTestCase {
         verify(sw);
     }
 
+    /**
+     * Test that messages written together are dispatched by runs of one
+     * type, and that types without listeners are skipped
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testHandleOutgoingMessages() throws Exception {
+        IOFSwitch sw = createMock(IOFSwitch.class);
+        expect(sw.getId()).andReturn(DatapathId.NONE).anyTimes();
+
+        IOFMessageBatchListener test1 = createMock(IOFMessageBatchListener.class);
+        expect(test1.getName()).andReturn("test1").anyTimes();
+        setupListenerOrdering(test1);
+
+        IOFMessageListener test2 = createMock(IOFMessageListener.class);
+        expect(test2.getName()).andReturn("test2").anyTimes();
+        expect(test2.isCallbackOrderingPrereq(OFType.FLOW_MOD, "test1"))
+                .andReturn(true).anyTimes();
+        setupListenerOrdering(test2);
+
+        replay(test1, test2);
+        controller.addOFMessageListener(OFType.FLOW_MOD, test2);
+        controller.addOFMessageListener(OFType.FLOW_MOD, test1);
+
+        OFMessage fm1 = factory.buildFlowAdd().setXid(1).build();
+        OFMessage fm2 = factory.buildFlowAdd().setXid(2).build();
+        OFMessage echo = factory.buildEchoRequest().build();
+        OFMessage fm3 = factory.buildFlowAdd().setXid(3).build();
+
+        reset(test1, test2);
+        Capture<List<OFMessage>> batch = newCapture();
+        test1.receiveBatch(eq(sw), capture(batch),
+                anyObject(List.class), anyObject(Command[].class));
+        expectLastCall().once();
+        expect(test2.receive(eq(sw), eq(fm1), isA(FloodlightContext.class)))
+                .andReturn(Command.CONTINUE);
+        expect(test2.receive(eq(sw), eq(fm2), isA(FloodlightContext.class)))
+                .andReturn(Command.CONTINUE);
+        // a run of one message goes through receive()
+        expect(test1.receive(eq(sw), eq(fm3), isA(FloodlightContext.class)))
+                .andReturn(Command.STOP);
+        replay(test1, test2, sw);
+
+        controller.handleOutgoingMessages(sw, ImmutableList.of(fm1, fm2, echo, fm3));
+        verify(test1, test2, sw);
+        assertEquals(ImmutableList.of(fm1, fm2), batch.getValue());
+
+        // nothing is dispatched once the listeners are gone
+        controller.removeOFMessageListener(OFType.FLOW_MOD, test1);
+        controller.removeOFMessageListener(OFType.FLOW_MOD, test2);
+        reset(test1, test2);
+        replay(test1, test2);
+        controller.handleOutgoingMessages(sw, ImmutableList.of(fm1, fm2));
+        verify(test1, test2);
+    }
+
     @Test
     public void testGetRoleInfoDefault() {
         RoleInfo info = controller.getRoleInfo();
@@ -180,6 +180,11 @@ public class MockOFConnection implements IOFConnectionBackend {
         return true;
     }
 
+    @Override
+    public long getPendingWriteBytes() {
+        return 0;
+    }
+
     @Override
     public boolean isConnected() {
         return this.connected;
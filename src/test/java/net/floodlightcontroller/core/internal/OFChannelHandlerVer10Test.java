@@ -148,6 +148,11 @@ public class OFChannelHandlerVer10Test {
 
         resetChannel();
 
+        switchManager.beginMessageBatch();
+        expectLastCall().anyTimes();
+        switchManager.endMessageBatch();
+        expectLastCall().anyTimes();
+
         // replay controller. Reset it if you need more specific behavior
         replay(switchManager);
 
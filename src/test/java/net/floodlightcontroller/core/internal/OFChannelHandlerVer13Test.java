@@ -153,6 +153,11 @@ public class OFChannelHandlerVer13Test {
 
 		resetChannel();
 
+		switchManager.beginMessageBatch();
+		expectLastCall().anyTimes();
+		switchManager.endMessageBatch();
+		expectLastCall().anyTimes();
+
 		// replay controller. Reset it if you need more specific behavior
 		replay(switchManager);
 
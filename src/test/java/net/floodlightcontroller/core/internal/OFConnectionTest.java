@@ -5,9 +5,13 @@ import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.easymock.Capture;
 import org.easymock.EasyMock;
@@ -15,6 +19,8 @@ import org.hamcrest.CoreMatchers;
 import org.hamcrest.Matchers;
 
 import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.util.HashedWheelTimer;
 import io.netty.util.Timer;
 
@@ -36,6 +42,7 @@ import org.projectfloodlight.openflow.protocol.OFEchoRequest;
 import org.projectfloodlight.openflow.protocol.OFErrorMsg;
 import org.projectfloodlight.openflow.protocol.OFFactories;
 import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFlowAdd;
 import org.projectfloodlight.openflow.protocol.OFFlowStatsReply;
 import org.projectfloodlight.openflow.protocol.OFFlowStatsRequest;
 import org.projectfloodlight.openflow.protocol.OFHello;
@@ -71,6 +78,7 @@ public class OFConnectionTest {
     private DatapathId switchId;
     private Timer timer;
     private TestEventLoop eventLoop;
+    private IDebugCounterService debugCounterService;
 
     @Before
     public void setUp() throws Exception {
@@ -78,7 +86,7 @@ public class OFConnectionTest {
         switchId = DatapathId.of(1);
         timer = new HashedWheelTimer();
         channel = EasyMock.createMock(Channel.class);        
-        IDebugCounterService debugCounterService = new DebugCounterServiceImpl();
+        debugCounterService = new DebugCounterServiceImpl();
         debugCounterService.registerModule(OFConnectionCounters.COUNTER_MODULE);
         conn = new OFConnection(switchId, factory, channel, OFAuxId.MAIN,
                                 debugCounterService, timer);
@@ -164,12 +172,46 @@ public class OFConnectionTest {
 
     private Capture<List<OFMessage>> prepareChannelForWriteList() {
         EasyMock.expect(channel.isActive()).andReturn(Boolean.TRUE).anyTimes();
+        EasyMock.expect(channel.isWritable()).andReturn(Boolean.TRUE).anyTimes();
+        expectUnsafe();
         Capture<List<OFMessage>> cMsgList = EasyMock.newCapture();
         expect(channel.writeAndFlush(capture(cMsgList))).andReturn(null).once();
         replay(channel);
         return cMsgList;
     }
 
+    /** the output buffer is only looked at for the bytes-in-flight counter */
+    private void expectUnsafe() {
+        Channel.Unsafe unsafe = EasyMock.createNiceMock(Channel.Unsafe.class);
+        replay(unsafe);
+        EasyMock.expect(channel.unsafe()).andReturn(unsafe).anyTimes();
+    }
+
+    /**
+     * Use a connection with the given backpressure policy on a channel that
+     * is not writable for the first notWritable checks
+     */
+    private Capture<List<OFMessage>> prepareUnwritableChannel(OFConnection.BackpressurePolicy policy,
+            int maxQueueDepth, int notWritable) {
+        conn = new OFConnection(switchId, factory, channel, OFAuxId.MAIN,
+                debugCounterService, timer, policy, maxQueueDepth);
+        EasyMock.expect(channel.isActive()).andReturn(Boolean.TRUE).anyTimes();
+        EasyMock.expect(channel.isWritable()).andReturn(Boolean.FALSE).times(notWritable);
+        EasyMock.expect(channel.isWritable()).andReturn(Boolean.TRUE).anyTimes();
+        expectUnsafe();
+        Capture<List<OFMessage>> cMsgList = EasyMock.newCapture();
+        expect(channel.writeAndFlush(capture(cMsgList))).andReturn(null).once();
+        replay(channel);
+        return cMsgList;
+    }
+
+    private OFPacketOut packetOut() {
+        return factory.buildPacketOut()
+                .setData(new byte[] { 0x01, 0x02, 0x03, 0x04 })
+                .setActions(ImmutableList.<OFAction>of( factory.actions().output(OFPort.of(1), 0)))
+                .build();
+    }
+
     /** write a request which triggers an OFErrorMsg response */
     @Test(timeout = 5000)
     public void testWriteRequestOFErrorMsg() throws InterruptedException, ExecutionException {
@@ -278,4 +320,107 @@ public class OFConnectionTest {
                 Matchers.<OFMessage> contains(hello, packetOut));
     }
 
+    /** writes queued before the event loop runs go out with one flush */
+    @Test(timeout = 5000)
+    public void testWritesCoalesced() throws InterruptedException, ExecutionException {
+        Capture<List<OFMessage>> cMsgList = prepareChannelForWriteList();
+
+        OFHello hello = factory.hello(ImmutableList.<OFHelloElem>of());
+        OFPacketOut packetOut = packetOut();
+        OFFlowAdd flowAdd = factory.buildFlowAdd().build();
+
+        conn.write(hello);
+        conn.write(ImmutableList.<OFMessage>of(packetOut, flowAdd));
+        eventLoop.runTasks();
+        assertThat("Should have captured MsgList", cMsgList.getValue(),
+                Matchers.<OFMessage> contains(hello, packetOut, flowAdd));
+        // a second flush would fail the strict mock
+        eventLoop.runTasks();
+    }
+
+    /** packet-outs are dropped while the channel is not writable, control messages are held back */
+    @Test(timeout = 5000)
+    public void testWriteDropWhenNotWritable() throws InterruptedException, ExecutionException {
+        Capture<List<OFMessage>> cMsgList =
+                prepareUnwritableChannel(OFConnection.BackpressurePolicy.DROP, 16, 2);
+
+        OFEchoRequest echoRequest = factory.echoRequest(new byte[] {});
+        OFFlowAdd flowAdd = factory.buildFlowAdd().build();
+
+        Collection<OFMessage> unsent = conn.write(ImmutableList.<OFMessage>of(packetOut(), flowAdd, echoRequest));
+        assertThat("Dropped messages are not returned", unsent.isEmpty(), equalTo(true));
+        eventLoop.runTasks();
+        assertThat("Nothing written while not writable", cMsgList.hasCaptured(), equalTo(false));
+
+        conn.writabilityChanged();
+        assertThat("Should have captured MsgList", cMsgList.getValue(),
+                Matchers.<OFMessage> contains(flowAdd, echoRequest));
+    }
+
+    /** state changes are returned unsent once the queue is full, control messages never */
+    @Test(timeout = 5000)
+    public void testWriteDropQueueFull() throws InterruptedException, ExecutionException {
+        Capture<List<OFMessage>> cMsgList =
+                prepareUnwritableChannel(OFConnection.BackpressurePolicy.DROP, 1, 2);
+
+        OFEchoRequest echoRequest = factory.echoRequest(new byte[] {});
+        OFFlowAdd flowAdd = factory.buildFlowAdd().build();
+
+        Collection<OFMessage> unsent = conn.write(ImmutableList.<OFMessage>of(flowAdd, echoRequest));
+        assertThat(unsent, Matchers.<OFMessage> contains(flowAdd));
+        eventLoop.runTasks();
+        conn.writabilityChanged();
+        assertThat("Should have captured MsgList", cMsgList.getValue(),
+                Matchers.<OFMessage> contains(echoRequest));
+    }
+
+    /** messages that may be dropped are returned unsent while the channel is not writable */
+    @Test(timeout = 5000)
+    public void testWriteSignalWhenNotWritable() throws InterruptedException, ExecutionException {
+        Capture<List<OFMessage>> cMsgList =
+                prepareUnwritableChannel(OFConnection.BackpressurePolicy.SIGNAL, 16, 1);
+
+        OFEchoRequest echoRequest = factory.echoRequest(new byte[] {});
+        OFPacketOut packetOut = packetOut();
+        OFFlowAdd flowAdd = factory.buildFlowAdd().build();
+
+        Collection<OFMessage> unsent = conn.write(ImmutableList.<OFMessage>of(packetOut, flowAdd, echoRequest));
+        assertThat(unsent, Matchers.<OFMessage> contains(packetOut, flowAdd));
+        eventLoop.runTasks();
+        assertThat("Should have captured MsgList", cMsgList.getValue(),
+                Matchers.<OFMessage> contains(echoRequest));
+    }
+
+    /** a write from another loop of the channel's group must not hold that loop up */
+    @Test(timeout = 5000)
+    public void testWriteBlockFromOtherEventLoop() throws Exception {
+        NioEventLoopGroup workers = new NioEventLoopGroup(2);
+        try {
+            EventLoop channelLoop = workers.next();
+            EventLoop otherLoop = workers.next();
+            channel = EasyMock.createMock(Channel.class);
+            expect(channel.eventLoop()).andReturn(channelLoop).anyTimes();
+            expect(channel.isActive()).andReturn(Boolean.TRUE).anyTimes();
+            expect(channel.isWritable()).andReturn(Boolean.FALSE).anyTimes();
+            expectUnsafe();
+            replay(channel);
+            conn = new OFConnection(switchId, factory, channel, OFAuxId.MAIN,
+                    debugCounterService, timer, OFConnection.BackpressurePolicy.BLOCK, 16);
+
+            final OFFlowAdd flowAdd = factory.buildFlowAdd().build();
+            Callable<Collection<OFMessage>> write = new Callable<Collection<OFMessage>>() {
+                @Override
+                public Collection<OFMessage> call() {
+                    return conn.write(ImmutableList.<OFMessage>of(flowAdd));
+                }
+            };
+            long start = System.nanoTime();
+            Collection<OFMessage> unsent = otherLoop.submit(write).get();
+            long tookMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertThat("Queued, not refused", unsent.isEmpty(), equalTo(true));
+            assertTrue("Waited " + tookMs + "ms for the channel", tookMs < 500);
+        } finally {
+            workers.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS);
+        }
+    }
 }
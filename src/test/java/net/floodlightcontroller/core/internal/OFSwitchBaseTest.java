@@ -28,6 +28,7 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -37,7 +38,9 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.easymock.Capture;
+import org.easymock.CaptureType;
 import org.easymock.EasyMock;
+import org.easymock.IAnswer;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -62,6 +65,7 @@ import org.projectfloodlight.openflow.protocol.OFFactory;
 import org.projectfloodlight.openflow.protocol.OFFlowAdd;
 import org.projectfloodlight.openflow.protocol.OFFlowStatsRequest;
 import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFPacketOut;
 import org.projectfloodlight.openflow.protocol.OFPortConfig;
 import org.projectfloodlight.openflow.protocol.OFPortDesc;
 import org.projectfloodlight.openflow.protocol.OFPortFeatures;
@@ -69,6 +73,7 @@ import org.projectfloodlight.openflow.protocol.OFPortReason;
 import org.projectfloodlight.openflow.protocol.OFPortState;
 import org.projectfloodlight.openflow.protocol.OFPortStatus;
 import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
 import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.OFAuxId;
 import org.projectfloodlight.openflow.types.OFPort;
@@ -1406,7 +1411,7 @@ public class OFSwitchBaseTest {
 
         reset(switchManager);
         expect(switchManager.isCategoryRegistered(category)).andReturn(true);
-        switchManager.handleOutgoingMessage(sw, testMessage);
+        switchManager.handleOutgoingMessages(sw, Collections.singletonList(testMessage));
         expectLastCall().once();
         replay(switchManager);
         
@@ -1427,10 +1432,12 @@ public class OFSwitchBaseTest {
 		
 		reset(switchManager);
         expect(switchManager.isCategoryRegistered(LogicalOFMessageCategory.MAIN)).andReturn(true).times(6);
-        switchManager.handleOutgoingMessage(sw, fa);
-        expectLastCall().times(2);
-        switchManager.handleOutgoingMessage(sw, fsr);
-        expectLastCall().times(4);
+        switchManager.handleOutgoingMessages(sw, Collections.<OFMessage>singletonList(fa));
+        expectLastCall().once();
+        switchManager.handleOutgoingMessages(sw, Collections.<OFMessage>singletonList(fsr));
+        expectLastCall().times(3);
+        switchManager.handleOutgoingMessages(sw, msgList);
+        expectLastCall().once();
         replay(switchManager);
 
 		/* test master -- both messages should be written */
@@ -1445,4 +1452,96 @@ public class OFSwitchBaseTest {
 		assertTrue(sw.write(fsr)); /* stats request makes it (read op) */
 		assertEquals(Collections.<OFMessage>singletonList(fa), sw.write(msgList)); /* return bad flow-add */
 	}
-}
\ No newline at end of file
+
+    private OFSwitchTest switchWithAux(IOFConnectionBackend main, IOFConnectionBackend aux) {
+        IOFSwitchManager manager = EasyMock.createNiceMock(IOFSwitchManager.class);
+        expect(manager.getCounters()).andReturn(new SwitchManagerCounters(new DebugCounterServiceImpl())).anyTimes();
+        expect(manager.isCategoryRegistered(LogicalOFMessageCategory.MAIN)).andReturn(true).anyTimes();
+        replay(manager);
+        OFSwitchTest s = new OFSwitchTest(main, manager);
+        s.registerConnection(aux);
+        s.setControllerRole(OFControllerRole.ROLE_MASTER);
+        return s;
+    }
+
+    private IOFConnectionBackend connection(OFAuxId auxId, Capture<Iterable<OFMessage>> written) {
+        IOFConnectionBackend c = EasyMock.createNiceMock(IOFConnectionBackend.class);
+        expect(c.getOFFactory()).andReturn(factory).anyTimes();
+        expect(c.getAuxId()).andReturn(auxId).anyTimes();
+        expect(c.isConnected()).andReturn(true).anyTimes();
+        expect(c.isWritable()).andReturn(true).anyTimes();
+        expect(c.write(EasyMock.capture(written))).andReturn(Collections.<OFMessage>emptyList()).anyTimes();
+        return c;
+    }
+
+    private OFPacketOut packetOut() {
+        return factory.buildPacketOut()
+                .setInPort(OFPort.of(1))
+                .setActions(Collections.<OFAction>singletonList(factory.actions().output(OFPort.of(2), 0)))
+                .setData(new byte[64])
+                .build();
+    }
+
+    @Test
+    public void testWriteSpread() {
+        Capture<Iterable<OFMessage>> onMain = EasyMock.newCapture(CaptureType.ALL);
+        Capture<Iterable<OFMessage>> onAux = EasyMock.newCapture(CaptureType.ALL);
+        IOFConnectionBackend main = connection(OFAuxId.MAIN, onMain);
+        IOFConnectionBackend aux = connection(OFAuxId.of(1), onAux);
+        replay(main, aux);
+        OFSwitchTest s = switchWithAux(main, aux);
+
+        OFFlowAdd fa = factory.buildFlowAdd().build();
+        OFPacketOut po = packetOut();
+        OFFlowStatsRequest fsr = factory.buildFlowStatsRequest().build();
+        assertEquals(Collections.<OFMessage>emptyList(), s.write(Arrays.<OFMessage>asList(fa, po, fsr)));
+
+        /* the flow-add keeps its place on main, the rest needs no order */
+        assertEquals(1, onMain.getValues().size());
+        assertEquals(Collections.<OFMessage>singletonList(fa), onMain.getValue());
+        assertEquals(1, onAux.getValues().size());
+        assertEquals(Arrays.<OFMessage>asList(po, fsr), onAux.getValue());
+    }
+
+    @Test
+    public void testWriteSpreadAuxDropped() {
+        Capture<Iterable<OFMessage>> onMain = EasyMock.newCapture(CaptureType.ALL);
+        IOFConnectionBackend main = connection(OFAuxId.MAIN, onMain);
+        final boolean[] auxConnected = { true };
+        IOFConnectionBackend aux = EasyMock.createNiceMock(IOFConnectionBackend.class);
+        expect(aux.getOFFactory()).andReturn(factory).anyTimes();
+        expect(aux.getAuxId()).andReturn(OFAuxId.of(1)).anyTimes();
+        expect(aux.isWritable()).andReturn(true).anyTimes();
+        expect(aux.isConnected()).andAnswer(new IAnswer<Boolean>() {
+            @Override
+            public Boolean answer() {
+                return auxConnected[0];
+            }
+        }).anyTimes();
+        /* the aux connection drops while the packet-out is written */
+        expect(aux.write(EasyMock.<Iterable<OFMessage>>anyObject())).andAnswer(new IAnswer<Collection<OFMessage>>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Collection<OFMessage> answer() {
+                auxConnected[0] = false;
+                List<OFMessage> unsent = new ArrayList<OFMessage>();
+                for (OFMessage m : (Iterable<OFMessage>) EasyMock.getCurrentArguments()[0]) {
+                    unsent.add(m);
+                }
+                return unsent;
+            }
+        }).once();
+        replay(main, aux);
+        OFSwitchTest s = switchWithAux(main, aux);
+
+        OFPacketOut po = packetOut();
+        assertTrue(s.write(po));
+        assertEquals(Collections.<OFMessage>singletonList(po), onMain.getValue());
+
+        /* and the next write goes to main straight away */
+        onMain.reset();
+        assertTrue(s.write(po));
+        assertEquals(Collections.<OFMessage>singletonList(po), onMain.getValue());
+        verify(aux);
+    }
+}
@@ -1191,4 +1191,40 @@ public abstract class OFSwitchHandlerTestBase {
 		verify(switchManager);
 		verify(sw);
 	}
+
+	/**
+	 * Tests that an aux connection is registered with the switch once the
+	 * handshake is complete, and that closing it leaves the main connection.
+	 * @throws Exception
+	 */
+	@Test
+	public void testAuxConnectionClosed() throws Exception {
+
+		testInitialMoveToMasterWithRole();
+		connection.setConnected(true);
+		MockOFConnection auxConnection = new MockOFConnection(featuresReply.getDatapathId(), OFAuxId.of(1));
+		auxConnection.setConnected(true);
+
+		reset(sw);
+		sw.registerConnection(auxConnection);
+		expectLastCall().once();
+		sw.removeConnection(auxConnection);
+		expectLastCall().once();
+		replay(sw);
+		/* nothing is disconnected */
+		reset(switchManager);
+		replay(switchManager);
+
+		switchHandler.auxConnectionOpened(auxConnection);
+		assertThat(auxConnection.getListener(), equalTo((IOFConnectionListener) switchHandler));
+		assertTrue(switchHandler.hasConnection(auxConnection));
+
+		switchHandler.connectionClosed(auxConnection);
+
+		assertFalse(switchHandler.hasConnection(auxConnection));
+		assertTrue(connection.isConnected());
+		assertThat(switchHandler.getState(), equalTo("MasterState"));
+		verify(switchManager);
+		verify(sw);
+	}
 }
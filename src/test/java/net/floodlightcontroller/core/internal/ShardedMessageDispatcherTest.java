@@ -0,0 +1,248 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.core.internal;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.core.FloodlightContext;
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.debugcounter.DebugCounterServiceImpl;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFPacketIn;
+import org.projectfloodlight.openflow.protocol.OFPacketInReason;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFBufferId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+public class ShardedMessageDispatcherTest {
+    private static final String MODULE = "test";
+    private final OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+
+    private IDebugCounterService debugCounters;
+    private ShardedMessageDispatcher dispatcher;
+
+    /**
+     * Records what the workers dispatched, optionally holding them on a latch
+     */
+    private static class RecordingController extends Controller {
+        final List<OFMessage> seen = Collections.synchronizedList(new ArrayList<OFMessage>());
+        volatile CountDownLatch gate;
+        volatile CountDownLatch done;
+
+        @Override
+        void dispatchToListeners(IOFSwitch sw, OFMessage m, FloodlightContext bContext) {
+            try {
+                if (gate != null) {
+                    gate.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            seen.add(m);
+            if (done != null) {
+                done.countDown();
+            }
+        }
+    }
+
+    @Before
+    public void setUp() {
+        debugCounters = new DebugCounterServiceImpl();
+        debugCounters.registerModule(MODULE);
+    }
+
+    @After
+    public void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.stop();
+        }
+    }
+
+    private static IOFSwitch mockSwitch(long dpid) {
+        IOFSwitch sw = createMock(IOFSwitch.class);
+        expect(sw.getId()).andReturn(DatapathId.of(dpid)).anyTimes();
+        replay(sw);
+        return sw;
+    }
+
+    private OFMessage packetIn(long xid) {
+        return factory.buildPacketIn()
+                .setXid(xid)
+                .setBufferId(OFBufferId.NO_BUFFER)
+                .setData(new byte[] { 1 })
+                .setReason(OFPacketInReason.NO_MATCH)
+                .build();
+    }
+
+    @Test
+    public void testPerSwitchOrdering() throws Exception {
+        RecordingController controller = new RecordingController();
+        int count = 1000;
+        controller.done = new CountDownLatch(2 * count);
+        dispatcher = new ShardedMessageDispatcher(controller, 4, 4096, 4096,
+                ShardedMessageDispatcher.OverloadPolicy.DROP, 1, 1, debugCounters, MODULE);
+        dispatcher.start();
+
+        IOFSwitch sw1 = mockSwitch(1L);
+        IOFSwitch sw2 = mockSwitch(2L);
+        for (int i = 0; i < count; i++) {
+            assertTrue(dispatcher.dispatch(sw1, packetIn(i)));
+            assertTrue(dispatcher.dispatch(sw2, packetIn(count + i)));
+        }
+        assertTrue(controller.done.await(10, TimeUnit.SECONDS));
+
+        long last1 = -1, last2 = count - 1;
+        for (OFMessage m : controller.seen) {
+            if (m.getXid() < count) {
+                assertEquals(last1 + 1, m.getXid());
+                last1 = m.getXid();
+            } else {
+                assertEquals(last2 + 1, m.getXid());
+                last2 = m.getXid();
+            }
+        }
+        assertEquals(count - 1, last1);
+        assertEquals(2 * count - 1, last2);
+    }
+
+    @Test
+    public void testDropAboveHighWaterMark() throws Exception {
+        RecordingController controller = new RecordingController();
+        controller.gate = new CountDownLatch(1);
+        dispatcher = new ShardedMessageDispatcher(controller, 1, 16, 4,
+                ShardedMessageDispatcher.OverloadPolicy.DROP, 1, 1, debugCounters, MODULE);
+        dispatcher.start();
+        IOFSwitch sw = mockSwitch(1L);
+
+        /* the worker takes the first message and blocks on the gate */
+        assertTrue(dispatcher.dispatch(sw, packetIn(0)));
+        while (dispatcher.getQueueDepth(sw) > 0) {
+            Thread.sleep(1);
+        }
+        for (int i = 1; i <= 4; i++) {
+            assertTrue(dispatcher.dispatch(sw, packetIn(i)));
+        }
+        assertFalse(dispatcher.dispatch(sw, packetIn(5)));
+        /* non packet-ins are never dropped */
+        assertTrue(dispatcher.dispatch(sw, factory.echoRequest(new byte[0])));
+        assertEquals(5, dispatcher.getQueueDepth(sw));
+
+        controller.done = new CountDownLatch(6);
+        controller.gate.countDown();
+        assertTrue(controller.done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSampleAboveHighWaterMark() throws Exception {
+        RecordingController controller = new RecordingController();
+        controller.gate = new CountDownLatch(1);
+        dispatcher = new ShardedMessageDispatcher(controller, 1, 64, 2,
+                ShardedMessageDispatcher.OverloadPolicy.SAMPLE, 5, 1, debugCounters, MODULE);
+        dispatcher.start();
+        IOFSwitch sw = mockSwitch(1L);
+
+        assertTrue(dispatcher.dispatch(sw, packetIn(0)));
+        while (dispatcher.getQueueDepth(sw) > 0) {
+            Thread.sleep(1);
+        }
+        assertTrue(dispatcher.dispatch(sw, packetIn(1)));
+        assertTrue(dispatcher.dispatch(sw, packetIn(2)));
+
+        int admitted = 0;
+        for (int i = 0; i < 20; i++) {
+            if (dispatcher.dispatch(sw, packetIn(3 + i))) {
+                admitted++;
+            }
+        }
+        assertEquals(4, admitted);
+        controller.gate.countDown();
+    }
+
+    /** an IPv4/UDP packet-in for the given flow */
+    private OFPacketIn udpPacketIn(long xid, int srcPort) {
+        byte[] d = new byte[14 + 20 + 8];
+        d[12] = 0x08; /* IPv4 */
+        d[14] = 0x45;
+        d[14 + 9] = 17; /* UDP */
+        d[14 + 12] = 10; d[14 + 15] = 1; /* 10.0.0.1 */
+        d[14 + 16] = 10; d[14 + 19] = 2; /* 10.0.0.2 */
+        d[34] = (byte) (srcPort >> 8);
+        d[35] = (byte) srcPort;
+        return factory.buildPacketIn()
+                .setXid(xid)
+                .setBufferId(OFBufferId.NO_BUFFER)
+                .setMatch(factory.buildMatch().setExact(MatchField.IN_PORT, OFPort.of(1)).build())
+                .setData(d)
+                .setReason(OFPacketInReason.NO_MATCH)
+                .build();
+    }
+
+    @Test
+    public void testFlowHash() {
+        assertEquals(ShardedMessageDispatcher.flowHash(udpPacketIn(1, 1000)),
+                ShardedMessageDispatcher.flowHash(udpPacketIn(2, 1000)));
+        assertFalse(ShardedMessageDispatcher.flowHash(udpPacketIn(1, 1000))
+                == ShardedMessageDispatcher.flowHash(udpPacketIn(1, 1001)));
+    }
+
+    @Test
+    public void testPerFlowOrdering() throws Exception {
+        RecordingController controller = new RecordingController();
+        int flows = 16;
+        int perFlow = 200;
+        controller.done = new CountDownLatch(flows * perFlow);
+        dispatcher = new ShardedMessageDispatcher(controller, 4, 4096, 4096,
+                ShardedMessageDispatcher.OverloadPolicy.DROP, 1, 1, debugCounters, MODULE);
+        dispatcher.start();
+
+        IOFSwitch sw = mockSwitch(1L);
+        for (int i = 0; i < perFlow; i++) {
+            for (int f = 0; f < flows; f++) {
+                assertTrue(dispatcher.dispatchByFlow(sw, udpPacketIn(f * perFlow + i, 1000 + f)));
+            }
+        }
+        assertTrue(controller.done.await(10, TimeUnit.SECONDS));
+
+        long[] last = new long[flows];
+        for (int f = 0; f < flows; f++) {
+            last[f] = f * perFlow - 1;
+        }
+        for (OFMessage m : controller.seen) {
+            int f = (int) (m.getXid() / perFlow);
+            assertEquals(last[f] + 1, m.getXid());
+            last[f] = m.getXid();
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package net.floodlightcontroller.core.internal;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.projectfloodlight.openflow.protocol.OFBadRequestCode;
+import org.projectfloodlight.openflow.protocol.OFCapabilities;
+import org.projectfloodlight.openflow.protocol.OFEchoReply;
+import org.projectfloodlight.openflow.protocol.OFEchoRequest;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFHelloElem;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFPortDesc;
+import org.projectfloodlight.openflow.protocol.OFRoleRequest;
+import org.projectfloodlight.openflow.protocol.OFStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFAuxId;
+
+import com.google.common.primitives.Longs;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import net.floodlightcontroller.perfmon.LatencyHistogram;
+
+/**
+ * Connects fake OpenFlow 1.3 switches over the loopback interface to a
+ * controller that is already running, and reports the handshake rate and
+ * the echo round trip time the controller manages with that many switches.
+ *
+ * A fake switch answers just enough of the handshake to be made MASTER:
+ * features, config, description and port description; table features are
+ * refused, as switches without them do. Its handshake is complete when it
+ * has answered the role request. From then on it sends an echo request
+ * every echo interval and times the reply.
+ *
+ * Usage: SwitchConnectionLoadGenerator [switches] [seconds] [port]
+ * [connects per second] [echo interval ms]
+ */
+public class SwitchConnectionLoadGenerator {
+    private static final OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+
+    private static final AtomicInteger connected = new AtomicInteger();
+    private static final AtomicInteger handshakes = new AtomicInteger();
+    private static final AtomicInteger disconnected = new AtomicInteger();
+    private static final LatencyHistogram handshakeTimes = new LatencyHistogram();
+    private static final LatencyHistogram echoTimes = new LatencyHistogram();
+    private static volatile long lastHandshakeNs;
+
+    private static class FakeSwitch extends SimpleChannelInboundHandler<Iterable<OFMessage>> {
+        private final DatapathId dpid;
+        private final long echoIntervalMs;
+        private long connectNs;
+        private boolean handshakeComplete;
+
+        FakeSwitch(DatapathId dpid, long echoIntervalMs) {
+            this.dpid = dpid;
+            this.echoIntervalMs = echoIntervalMs;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            connectNs = System.nanoTime();
+            connected.incrementAndGet();
+            send(ctx, factory.buildHello()
+                    .setElements(Collections.<OFHelloElem>emptyList())
+                    .build());
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            disconnected.incrementAndGet();
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, Iterable<OFMessage> msgs) {
+            for (OFMessage m : msgs) {
+                switch (m.getType()) {
+                case FEATURES_REQUEST:
+                    send(ctx, factory.buildFeaturesReply()
+                            .setXid(m.getXid())
+                            .setDatapathId(dpid)
+                            .setNBuffers(256)
+                            .setNTables((short) 1)
+                            .setCapabilities(EnumSet.of(OFCapabilities.FLOW_STATS,
+                                    OFCapabilities.TABLE_STATS, OFCapabilities.PORT_STATS))
+                            .setAuxiliaryId(OFAuxId.MAIN)
+                            .build());
+                    break;
+                case GET_CONFIG_REQUEST:
+                    send(ctx, factory.buildGetConfigReply()
+                            .setXid(m.getXid())
+                            .setMissSendLen(0xffff)
+                            .build());
+                    break;
+                case BARRIER_REQUEST:
+                    send(ctx, factory.buildBarrierReply().setXid(m.getXid()).build());
+                    break;
+                case ECHO_REQUEST:
+                    send(ctx, factory.buildEchoReply()
+                            .setXid(m.getXid())
+                            .setData(((OFEchoRequest) m).getData())
+                            .build());
+                    break;
+                case ECHO_REPLY:
+                    byte[] data = ((OFEchoReply) m).getData();
+                    if (data.length == Longs.BYTES) {
+                        record(echoTimes, System.nanoTime() - Longs.fromByteArray(data));
+                    }
+                    break;
+                case STATS_REQUEST:
+                    replyToStats(ctx, (OFStatsRequest<?>) m);
+                    break;
+                case ROLE_REQUEST:
+                    OFRoleRequest roleRequest = (OFRoleRequest) m;
+                    send(ctx, factory.buildRoleReply()
+                            .setXid(m.getXid())
+                            .setRole(roleRequest.getRole())
+                            .setGenerationId(roleRequest.getGenerationId())
+                            .build());
+                    if (!handshakeComplete) {
+                        handshakeComplete = true;
+                        record(handshakeTimes, System.nanoTime() - connectNs);
+                        handshakes.incrementAndGet();
+                        lastHandshakeNs = System.nanoTime();
+                        startEchoes(ctx);
+                    }
+                    break;
+                default:
+                    /* flow mods and the like are accepted silently */
+                    break;
+                }
+            }
+        }
+
+        private void replyToStats(ChannelHandlerContext ctx, OFStatsRequest<?> m) {
+            switch (m.getStatsType()) {
+            case DESC:
+                send(ctx, factory.buildDescStatsReply()
+                        .setXid(m.getXid())
+                        .setMfrDesc("Floodlight")
+                        .setHwDesc("Fake switch")
+                        .setSwDesc("SwitchConnectionLoadGenerator")
+                        .setSerialNum(dpid.toString())
+                        .setDpDesc("Loopback")
+                        .build());
+                break;
+            case PORT_DESC:
+                send(ctx, factory.buildPortDescStatsReply()
+                        .setXid(m.getXid())
+                        .setEntries(Collections.<OFPortDesc>emptyList())
+                        .build());
+                break;
+            default:
+                send(ctx, factory.errorMsgs().buildBadRequestErrorMsg()
+                        .setXid(m.getXid())
+                        .setCode(OFBadRequestCode.BAD_STAT)
+                        .build());
+                break;
+            }
+        }
+
+        private void startEchoes(final ChannelHandlerContext ctx) {
+            ctx.executor().scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    send(ctx, factory.buildEchoRequest()
+                            .setData(Longs.toByteArray(System.nanoTime()))
+                            .build());
+                }
+            }, echoIntervalMs, echoIntervalMs, TimeUnit.MILLISECONDS);
+        }
+
+        private static void send(ChannelHandlerContext ctx, OFMessage m) {
+            ctx.writeAndFlush(Collections.singletonList(m));
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            ctx.close();
+        }
+    }
+
+    private static void record(LatencyHistogram h, long ns) {
+        synchronized (h) {
+            h.record(ns);
+        }
+    }
+
+    private static void report(String name, LatencyHistogram h) {
+        synchronized (h) {
+            System.out.printf("%s: %d, p50 %.2fms, p99 %.2fms, p99.9 %.2fms, max %.2fms%n",
+                    name, h.getCount(), h.getValueAtPercentile(50) / 1e6,
+                    h.getValueAtPercentile(99) / 1e6, h.getValueAtPercentile(99.9) / 1e6,
+                    h.getMax() / 1e6);
+        }
+    }
+
+    private static int arg(String[] args, int i, int dflt) {
+        return args.length > i ? Integer.parseInt(args[i]) : dflt;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int switches = arg(args, 0, 2000);
+        int seconds = arg(args, 1, 30);
+        int port = arg(args, 2, 6653);
+        int rate = arg(args, 3, 500);
+        final int echoIntervalMs = arg(args, 4, 1000);
+
+        boolean epoll = Epoll.isAvailable();
+        EventLoopGroup group = epoll ? new EpollEventLoopGroup() : new NioEventLoopGroup();
+        Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(epoll ? EpollSocketChannel.class : NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+        InetSocketAddress controller = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+
+        final AtomicInteger failed = new AtomicInteger();
+        ChannelFutureListener onConnect = new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                if (!future.isSuccess()) {
+                    failed.incrementAndGet();
+                }
+            }
+        };
+
+        Channel[] channels = new Channel[switches];
+        long startNs = System.nanoTime();
+        long nsPerConnect = TimeUnit.SECONDS.toNanos(1) / rate;
+        for (int i = 0; i < switches; i++) {
+            final DatapathId dpid = DatapathId.of(i + 1);
+            long due = startNs + i * nsPerConnect;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            ChannelFuture f = bootstrap.clone()
+                    .handler(new ChannelInitializer<Channel>() {
+                        @Override
+                        protected void initChannel(Channel ch) {
+                            ch.pipeline().addLast(new OFMessageDecoder(),
+                                    new OFMessageEncoder(),
+                                    new FakeSwitch(dpid, echoIntervalMs));
+                        }
+                    })
+                    .connect(controller);
+            f.addListener(onConnect);
+            channels[i] = f.channel();
+        }
+
+        long endNs = startNs + TimeUnit.SECONDS.toNanos(seconds);
+        long now;
+        while ((now = System.nanoTime()) < endNs) {
+            TimeUnit.NANOSECONDS.sleep(Math.min(endNs - now, TimeUnit.SECONDS.toNanos(1)));
+        }
+        /* switches the controller disconnected while the run lasted */
+        int dropped = disconnected.get();
+        for (Channel c : channels) {
+            c.close();
+        }
+        group.shutdownGracefully().sync();
+
+        double handshakeSeconds = Math.max(1, lastHandshakeNs - startNs) / 1e9;
+        System.out.printf("%s transport, %d switches, %d connected, %d failed to connect, %d disconnected%n",
+                epoll ? "epoll" : "nio", switches, connected.get(), failed.get(), dropped);
+        System.out.printf("%d handshakes in %.1fs (%.0f/s)%n",
+                handshakes.get(), handshakeSeconds, handshakes.get() / handshakeSeconds);
+        report("handshake time", handshakeTimes);
+        report("echo rtt", echoTimes);
+    }
+}
@@ -186,6 +186,13 @@ public class MockFloodlightProvider implements IFloodlightModule, IFloodlightPro
         }
     }
 
+    @Override
+    public void handleOutgoingMessages(IOFSwitch sw, Iterable<OFMessage> msglist) {
+        for (OFMessage m:msglist) {
+            handleOutgoingMessage(sw, m);
+        }
+    }
+
     @Override
     public void run() {
         logListeners();
@@ -386,6 +393,21 @@ public class MockFloodlightProvider implements IFloodlightModule, IFloodlightPro
         // do nothing
     }
 
+    @Override
+    public void handleAuxMessage(IOFSwitch sw, OFMessage m) {
+        // do nothing
+    }
+
+    @Override
+    public void beginMessageBatch() {
+        // do nothing
+    }
+
+    @Override
+    public void endMessageBatch() {
+        // do nothing
+    }
+
     @Override
     public RoleManager getRoleManager() {
         return null;
@@ -89,6 +89,21 @@ public class MockSwitchManager implements IFloodlightModule, IOFSwitchManager, I
         // do nothing
 
     }
+
+    @Override
+    public void handleAuxMessage(IOFSwitchBackend sw, OFMessage m) {
+        // do nothing
+    }
+
+    @Override
+    public void beginMessageBatch() {
+        // do nothing
+    }
+
+    @Override
+    public void endMessageBatch() {
+        // do nothing
+    }
     
     @Override
     public void handleOutgoingMessage(IOFSwitch sw, OFMessage m) {
@@ -96,6 +111,11 @@ public class MockSwitchManager implements IFloodlightModule, IOFSwitchManager, I
     	
     }
 
+    @Override
+    public void handleOutgoingMessages(IOFSwitch sw, Iterable<OFMessage> msglist) {
+        // do nothing
+    }
+
     public void setSwitchHandshakeHandlers(Map<DatapathId, OFSwitchHandshakeHandler> handlers) {
         this.switchHandlers = handlers;
     }
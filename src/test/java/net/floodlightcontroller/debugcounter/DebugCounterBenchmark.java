@@ -0,0 +1,77 @@
+package net.floodlightcontroller.debugcounter;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import net.floodlightcontroller.debugcounter.IDebugCounterService.MetaData;
+
+/**
+ * Multi-threaded increment throughput of one shared counter, as when every
+ * Netty worker bumps the packet-in counter, for {@link DebugCounterImpl}
+ * and for the AtomicLong and Date it used to update on every increment.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DebugCounterBenchmark {
+    private final DebugCounterImpl counter =
+            new DebugCounterImpl("bench", "packet-in", "Shared counter",
+                                 Collections.<MetaData>emptyList());
+
+    private final AtomicLong atomicValue = new AtomicLong();
+    private final Date atomicLastModified = new Date();
+
+    private void atomicIncrement() {
+        atomicValue.incrementAndGet();
+        atomicLastModified.setTime(System.currentTimeMillis());
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void striped1() {
+        counter.increment();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void striped8() {
+        counter.increment();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void atomic1() {
+        atomicIncrement();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void atomic8() {
+        atomicIncrement();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DebugCounterBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -78,4 +78,101 @@ public class DebugCounterImplTest {
         assertEquals(ImmutableSet.of(MetaData.WARN, MetaData.DROP),
                      c2.getMetaData());
     }
+
+    @Test
+    public void testConcurrentIncrement() throws Exception {
+        final DebugCounterImpl c =
+                new DebugCounterImpl("foo", "bar", "The foo bar counter",
+                                     Collections.<MetaData>emptyList());
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100000; j++) {
+                        c.increment();
+                    }
+                    c.add(5);
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(8 * 100005L, c.getCounterValue());
+    }
+
+    @Test
+    public void testLastModified() throws Exception {
+        DebugCounterImpl c =
+                new DebugCounterImpl("foo", "bar", "The foo bar counter",
+                                     Collections.<MetaData>emptyList());
+        long created = c.getLastModified();
+        Thread.sleep(5);
+        // unchanged, so still the creation time
+        assertEquals(created, c.getLastModified());
+
+        c.increment();
+        long modified = c.getLastModified();
+        assertTrue(modified > created);
+        Thread.sleep(5);
+        assertEquals(modified, c.getLastModified());
+
+        Thread.sleep(5);
+        c.reset();
+        assertTrue(c.getLastModified() > modified);
+    }
+
+    @Test
+    public void testSet() {
+        DebugCounterImpl c =
+                new DebugCounterImpl("foo", "bar", "The foo bar counter",
+                                     Collections.<MetaData>emptyList());
+        c.set(42);
+        assertEquals(42L, c.getCounterValue());
+        c.set(7);
+        assertEquals(7L, c.getCounterValue());
+        // a gauge going down is not a reset
+        assertEquals(0, c.getResets());
+
+        c.setIfGreater(3);
+        assertEquals(7L, c.getCounterValue());
+        c.setIfGreater(9);
+        assertEquals(9L, c.getCounterValue());
+
+        try {
+            c.set(-1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(9L, c.getCounterValue());
+    }
+
+    @Test
+    public void testSnapshotDelta() throws Exception {
+        DebugCounterImpl c =
+                new DebugCounterImpl("foo", "bar", "The foo bar counter",
+                                     Collections.<MetaData>emptyList());
+        c.add(10);
+        DebugCounterResource s1 = new DebugCounterResource(c);
+        c.add(32);
+        Thread.sleep(10);
+        DebugCounterResource s2 = new DebugCounterResource(c);
+        assertEquals(42L, s2.getCounterValue().longValue());
+        assertEquals(32L, s2.getCounterDelta(s1));
+        assertTrue(s2.getCounterRate(s1) > 0);
+        assertEquals(0L, s2.getCounterDelta(s2));
+
+        // a reset in between counts from the reset
+        c.reset();
+        c.add(50);
+        DebugCounterResource s3 = new DebugCounterResource(c);
+        assertEquals(50L, s3.getCounterDelta(s2));
+        c.reset();
+        c.add(3);
+        DebugCounterResource s4 = new DebugCounterResource(c);
+        assertEquals(3L, s4.getCounterDelta(s3));
+    }
 }
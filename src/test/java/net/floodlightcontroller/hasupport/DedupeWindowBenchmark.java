@@ -0,0 +1,133 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Ignore;
+
+import net.floodlightcontroller.hasupport.linkdiscovery.LDHAUtils;
+
+/**
+ * Replays a link-flap workload through the filter queue's duplicate
+ * suppression: links going down and up again, the switches at their ends
+ * being updated in between, and a share of new links appearing, as the
+ * LDHAWorker would publish them. Compares the MD5 map the filter queues
+ * used before with the DedupeWindow, in time per update and in the heap
+ * they hold once the replay is done.
+ *
+ * Usage: DedupeWindowBenchmark [updates] [links]
+ */
+
+@Ignore
+public class DedupeWindowBenchmark {
+
+	private interface Filter {
+		boolean add(String update);
+	}
+
+	private static class Md5Map implements Filter {
+		final Map<String, String> map = new HashMap<>();
+		final LDHAUtils utils = new LDHAUtils();
+
+		@Override
+		public boolean add(String update) {
+			String md5 = utils.calculateMD5Hash(update);
+			if (map.containsKey(md5)) {
+				return false;
+			}
+			map.put(md5, update);
+			return true;
+		}
+	}
+
+	private static List<String> workload(int updates, int links) {
+		List<String> w = new ArrayList<>(updates);
+		int newLinks = 0;
+		for (int i = 0; i < updates; i++) {
+			int link = (i * 7919) % links;
+			String op;
+			switch (i % 4) {
+			case 0:
+				op = "Link Removed";
+				break;
+			case 1:
+				op = "Link Updated";
+				break;
+			case 2:
+				op = "Switch Updated";
+				break;
+			default:
+				/* links that were never seen before */
+				link = links + newLinks++;
+				op = "Link Updated";
+			}
+			w.add(String.format("{\"operation\":\"%s\",\"src\":\"00:00:00:00:00:00:%02x:%02x\",\"srcPort\":\"%d\","
+					+ "\"dst\":\"00:00:00:00:00:00:%02x:%02x\",\"dstPort\":\"%d\",\"type\":\"internal\"}", op,
+					(link >> 8) & 0xff, link & 0xff, link % 48 + 1, ((link + 1) >> 8) & 0xff, (link + 1) & 0xff,
+					(link + 7) % 48 + 1));
+		}
+		return w;
+	}
+
+	private static long usedHeap() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	private static Filter run(String name, long before, Filter f, List<String> workload) {
+		long passed = 0;
+		long start = System.nanoTime();
+		for (String update : workload) {
+			if (f.add(update)) {
+				passed++;
+			}
+		}
+		long ns = System.nanoTime() - start;
+		long held = usedHeap() - before;
+		System.out.printf("%-14s %6d ns/update  %5.1f%% duplicates  %7d KB held%n", name, ns / workload.size(),
+				100.0 * (workload.size() - passed) / workload.size(), held / 1024);
+		return f;
+	}
+
+	public static void main(String[] args) {
+		int updates = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int links = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		List<String> workload = workload(updates, links);
+
+		for (int round = 0; round < 2; round++) {
+			Filter md5 = run("md5-map", usedHeap(), new Md5Map(), workload);
+			long before = usedHeap();
+			final DedupeWindow window = new DedupeWindow(1 << 16, 60000);
+			Filter fp = run("dedupe-window", before, new Filter() {
+				@Override
+				public boolean add(String update) {
+					return window.add(update);
+				}
+			}, workload);
+			/* keep both reachable until measured */
+			if (md5.hashCode() == fp.hashCode()) {
+				System.out.println();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,60 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class DedupeWindowTest {
+
+	@Test
+	public void testDuplicates() {
+		DedupeWindow w = new DedupeWindow(16, 60000);
+		assertEquals(w.add("a"), true);
+		assertEquals(w.add("b"), true);
+		assertEquals(w.add("a"), false);
+		assertEquals(w.size(), 2);
+		assertEquals(w.getOffered(), 3);
+		assertEquals(w.getDuplicates(), 1);
+	}
+
+	@Test
+	public void testCountWindow() {
+		DedupeWindow w = new DedupeWindow(100, 60000);
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(w.add("update " + i), true);
+			assertEquals(w.size(), Math.min(i + 1, 100));
+		}
+		/* exactly the last 100 are remembered */
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(w.contains("update " + i), i >= 900);
+		}
+		assertEquals(w.add("update 0"), true);
+		assertEquals(w.add("update 999"), false);
+	}
+
+	@Test
+	public void testTimeWindow() throws Exception {
+		DedupeWindow w = new DedupeWindow(100, 50);
+		assertEquals(w.add("a"), true);
+		assertEquals(w.add("a"), false);
+		Thread.sleep(100);
+		assertEquals(w.contains("a"), false);
+		assertEquals(w.size(), 0);
+		assertEquals(w.add("a"), true);
+	}
+
+}
@@ -0,0 +1,131 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Ignore;
+
+/**
+ * Runs a cluster of election nodes in one process, each with its own
+ * NetworkNode and HAServer on a loopback port, waits for them to agree on a
+ * leader, stops the leader and measures how long the rest take to agree on
+ * a new one.
+ *
+ * Every trial starts a fresh cluster on fresh ports, since the majority
+ * rule leaves a cluster unable to elect after a few failures.
+ *
+ * Usage: ElectionFailoverHarness [nodes] [trials] [basePort]
+ */
+
+@Ignore
+public class ElectionFailoverHarness {
+
+	private static final String none = "none";
+
+	private static class Node {
+		final String id;
+		final AsyncElection election;
+		final Thread thread;
+
+		Node(String id, String serverPort, List<String> servers) {
+			this.id = id;
+			election = new AsyncElection(new NetworkNode(serverPort, id, servers), serverPort, id);
+			thread = new Thread(election, "Election-" + id);
+			thread.setDaemon(true);
+		}
+	}
+
+	/**
+	 * Waits until all the live nodes see the same leader, other than the one
+	 * stopped.
+	 *
+	 * @return the leader, or none if there was no agreement within timeoutMs
+	 */
+
+	private static String awaitLeader(List<Node> nodes, String stopped, long timeoutMs) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMs;
+		while (System.currentTimeMillis() < deadline) {
+			String leader = null;
+			for (Node n : nodes) {
+				if (n.id.equals(stopped)) {
+					continue;
+				}
+				String l = n.election.getLeader();
+				if (leader == null) {
+					leader = l;
+				} else if (!leader.equals(l)) {
+					leader = none;
+				}
+			}
+			if (leader != null && !leader.equals(none) && !leader.equals(stopped)) {
+				return leader;
+			}
+			TimeUnit.MILLISECONDS.sleep(1);
+		}
+		return none;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int numNodes = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		int trials = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int basePort = args.length > 2 ? Integer.parseInt(args[2]) : 14242;
+
+		long[] failoverMs = new long[trials];
+		for (int t = 0; t < trials; t++) {
+			List<String> servers = new ArrayList<>();
+			for (int i = 0; i < numNodes; i++) {
+				servers.add("127.0.0.1:" + (basePort + t * numNodes + i));
+			}
+			List<Node> nodes = new ArrayList<>();
+			for (int i = 0; i < numNodes; i++) {
+				nodes.add(new Node(String.valueOf(i + 1), servers.get(i), servers));
+			}
+
+			long start = System.nanoTime();
+			for (Node n : nodes) {
+				n.thread.start();
+			}
+			String leader = awaitLeader(nodes, none, 30000);
+			if (leader.equals(none)) {
+				System.out.printf("trial %d: no leader elected%n", t);
+				return;
+			}
+			long electedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+			/* let the followers settle into SPIN before failing the leader */
+			TimeUnit.SECONDS.sleep(1);
+			start = System.nanoTime();
+			nodes.get(Integer.parseInt(leader) - 1).thread.interrupt();
+			String next = awaitLeader(nodes, leader, 30000);
+			failoverMs[t] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			System.out.printf("trial %d: %d nodes elected %s in %d ms, failed over to %s in %d ms%n", t, numNodes,
+					leader, electedMs, next, failoverMs[t]);
+
+			for (Node n : nodes) {
+				n.thread.interrupt();
+			}
+			TimeUnit.MILLISECONDS.sleep(500);
+		}
+
+		Arrays.sort(failoverMs);
+		System.out.printf("failover ms: min %d  p50 %d  max %d%n", failoverMs[0], failoverMs[trials / 2],
+				failoverMs[trials - 1]);
+	}
+
+}
@@ -0,0 +1,149 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs the HAMessenger against a stand-in HAServer, which echoes each
+ * message back newline terminated, except:
+ * SPLIT is answered with ACK written in two parts, and
+ * SLOW is answered with LATE after a pause longer than the tests wait.
+ */
+public class HAMessengerTest {
+
+	private static final long SLOW_MS = 500;
+
+	private ServerSocket server;
+	private String address;
+	private HAMessenger messenger;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		address = "127.0.0.1:" + server.getLocalPort();
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						serve(server.accept());
+					}
+				} catch (IOException e) {
+					/* closed by tearDown */
+				}
+			}
+		}, "HAMessengerTest-accept");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		messenger = new HAMessenger();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		messenger.shutdown();
+		server.close();
+	}
+
+	private static void serve(final Socket s) {
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					InputStream in = s.getInputStream();
+					OutputStream out = s.getOutputStream();
+					byte[] buf = new byte[1024];
+					int n;
+					while ((n = in.read(buf)) > 0) {
+						String message = new String(buf, 0, n, StandardCharsets.UTF_8);
+						if (message.startsWith("SPLIT")) {
+							write(out, "AC");
+							Thread.sleep(50);
+							write(out, "K\n");
+						} else if (message.startsWith("SLOW")) {
+							Thread.sleep(SLOW_MS);
+							write(out, "LATE\n");
+						} else {
+							write(out, message + "\n");
+						}
+					}
+				} catch (Exception e) {
+					/* the messenger closed the connection */
+				} finally {
+					try {
+						s.close();
+					} catch (IOException e) {
+					}
+				}
+			}
+		}, "HAMessengerTest-serve");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	private static void write(OutputStream out, String s) throws IOException {
+		out.write(s.getBytes(StandardCharsets.UTF_8));
+		out.flush();
+	}
+
+	@Test
+	public void testReplySplitAcrossReads() throws Exception {
+		assertEquals("ACK", messenger.request(address, "SPLIT", 1000).get());
+		assertEquals("PULSE", messenger.request(address, "PULSE", 1000).get());
+	}
+
+	@Test
+	public void testLateReplyIsNotTakenForTheNext() throws Exception {
+		try {
+			messenger.request(address, "SLOW", 100).get();
+			fail("a reply arrived before the deadline");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		assertEquals("YOU? 1", messenger.request(address, "YOU? 1", SLOW_MS * 2).get());
+	}
+
+	@Test
+	public void testBroadcastSkipsDeadPeer() throws Exception {
+		ServerSocket closed = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		String dead = "127.0.0.1:" + closed.getLocalPort();
+		closed.close();
+
+		long start = System.nanoTime();
+		Map<String, String> replies = messenger.broadcast(Arrays.asList(address, dead), "PULSE", 1000);
+		assertEquals(1, replies.size());
+		assertEquals("PULSE", replies.get(address));
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+	}
+}
@@ -0,0 +1,79 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class UpdateCodecTest {
+
+	private static Map<String, String> update(String... fields) {
+		Map<String, String> m = new LinkedHashMap<>();
+		for (int i = 0; i < fields.length; i += 2) {
+			m.put(fields[i], fields[i + 1]);
+		}
+		return m;
+	}
+
+	private static Map<String, String> link(int i, String operation) {
+		return update("operation", operation, "src", "00:00:00:00:00:00:00:0" + (i % 10), "srcPort", "1", "dst",
+				"00:00:00:00:00:00:00:ff", "dstPort", String.valueOf(i), "latency", "0", "type", "internal",
+				"timestamp", String.valueOf(1500000000000000000L + i));
+	}
+
+	@Test
+	public void testRoundTrip() {
+		List<Map<String, String>> updates = new ArrayList<>();
+		updates.add(link(1, "Link Updated"));
+		/* values which look like numbers or DPIDs but must stay as they are */
+		updates.add(update("src", "00:00:00:00:00:00:00:0A", "srcPort", "007", "dst", "0x1", "dstPort", "-1",
+				"latency", "", "custom", "0x00000000000000ff", "nested", "{\"a\":\"b\"}", "type", "\u00e9t\u00e9"));
+		updates.add(update());
+		updates.add(update("timestamp", "9223372036854775807", "latency", "18446744073709551616"));
+
+		Iterator<Map<String, String>> decoded = UpdateCodec.decode(UpdateCodec.encode(updates));
+		for (Map<String, String> u : updates) {
+			assertTrue(decoded.hasNext());
+			assertEquals(u, decoded.next());
+		}
+		assertEquals(decoded.hasNext(), false);
+	}
+
+	@Test
+	public void testCompact() {
+		Map<String, String> u = link(1, "Link Updated");
+		String json = "{\"operation\":\"Link Updated\",\"src\":\"00:00:00:00:00:00:00:01\",\"srcPort\":\"1\","
+				+ "\"dst\":\"00:00:00:00:00:00:00:ff\",\"dstPort\":\"1\",\"latency\":\"0\","
+				+ "\"type\":\"internal\",\"timestamp\":\"1500000000000000001\"}";
+		int encoded = UpdateCodec.encode(Arrays.asList(u)).length;
+		assertTrue(encoded + " bytes", encoded * 2 < json.length());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTruncated() {
+		byte[] batch = UpdateCodec.encode(Arrays.asList(link(1, "Link Updated")));
+		UpdateCodec.decode(Arrays.copyOf(batch, batch.length - 3)).next();
+	}
+
+}
@@ -0,0 +1,160 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sdnplatform.sync.IStoreClient;
+import org.sdnplatform.sync.ISyncService.Scope;
+import org.sdnplatform.sync.test.MockSyncService;
+
+public class UpdateLogTest {
+
+	private IStoreClient<String, String> store;
+	private UpdateLog writer;
+	private final List<Map<String, String>> read = new ArrayList<>();
+	private final UpdateLog.Listener listener = new UpdateLog.Listener() {
+		@Override
+		public void update(Map<String, String> update) {
+			read.add(update);
+		}
+	};
+
+	private static Map<String, String> link(int i, String operation) {
+		Map<String, String> m = new LinkedHashMap<>();
+		m.put("operation", operation);
+		m.put("src", "00:00:00:00:00:00:00:0" + (i % 10));
+		m.put("srcPort", "1");
+		m.put("dst", "00:00:00:00:00:00:00:ff");
+		m.put("dstPort", String.valueOf(i));
+		m.put("latency", "0");
+		m.put("type", "internal");
+		m.put("timestamp", String.valueOf(1500000000000000000L + i));
+		return m;
+	}
+
+	private UpdateLog newLog() {
+		return new UpdateLog(store, "operation", "latency", "timestamp");
+	}
+
+	private int updatesOf(int link) {
+		int n = 0;
+		for (Map<String, String> u : read) {
+			if (u.get("dstPort").equals(String.valueOf(link))) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		MockSyncService syncService = new MockSyncService();
+		syncService.registerStore("UpdateLogTest", Scope.GLOBAL);
+		store = syncService.getStoreClient("UpdateLogTest", String.class, String.class);
+		writer = newLog();
+	}
+
+	@Test
+	public void testReadSinceLastRead() throws Exception {
+		UpdateLog reader = newLog();
+		writer.append("C1", Arrays.asList(link(1, "Link Updated"), link(2, "Link Updated")));
+		writer.append("C1", Arrays.asList(link(3, "Link Removed")));
+		reader.read("C1", listener);
+		assertEquals(read, Arrays.asList(link(1, "Link Updated"), link(2, "Link Updated"), link(3, "Link Removed")));
+
+		read.clear();
+		reader.read("C1", listener);
+		assertEquals(read.size(), 0);
+		writer.append("C1", Arrays.asList(link(4, "Link Updated")));
+		reader.read("C1", listener);
+		assertEquals(read, Arrays.asList(link(4, "Link Updated")));
+		reader.read("C2", listener);
+		assertEquals(read.size(), 1);
+	}
+
+	@Test
+	public void testHeadBeforeBatch() throws Exception {
+		UpdateLog reader = newLog();
+		writer.append("C1", Arrays.asList(link(1, "Link Updated")));
+		writer.append("C1", Arrays.asList(link(2, "Link Updated")));
+		writer.append("C1", Arrays.asList(link(3, "Link Updated")));
+		String batch = store.getValue("C1:1");
+		store.delete("C1:1");
+		store.put("C1:2", "not base64 !");
+
+		reader.read("C1", listener);
+		assertEquals(read, Arrays.asList(link(1, "Link Updated")));
+
+		/* the missing batch is read once it arrives, the unreadable one skipped */
+		read.clear();
+		store.put("C1:1", batch);
+		reader.read("C1", listener);
+		assertEquals(read, Arrays.asList(link(2, "Link Updated")));
+		read.clear();
+		writer.append("C1", Arrays.asList(link(4, "Link Updated")));
+		reader.read("C1", listener);
+		assertEquals(read, Arrays.asList(link(4, "Link Updated")));
+	}
+
+	@Test
+	public void testCompaction() throws Exception {
+		writer.append("C1", Arrays.asList(link(1, "Link Updated")));
+		for (int i = 0; i < 100; i++) {
+			writer.append("C1", Arrays.asList(link(5, "Link Updated " + i)));
+		}
+		newLog().read("C1", listener);
+		assertTrue(read.contains(link(1, "Link Updated")));
+		assertTrue(read.contains(link(5, "Link Updated 99")));
+		int link5 = updatesOf(5);
+		assertTrue(link5 + " updates of link 5", link5 >= 8 && link5 < 40);
+	}
+
+	@Test
+	public void testCaughtUpReaderSkipsCompactedBatch() throws Exception {
+		UpdateLog reader = newLog();
+		for (int i = 0; i < 100; i++) {
+			read.clear();
+			writer.append("C1", Arrays.asList(link(5, "Link Updated " + i)));
+			reader.read("C1", listener);
+			assertEquals(read, Arrays.asList(link(5, "Link Updated " + i)));
+		}
+	}
+
+	@Test
+	public void testReaderBehindCompactionReadsCompactedBatch() throws Exception {
+		UpdateLog reader = newLog();
+		writer.append("C1", Arrays.asList(link(1, "Link Updated")));
+		reader.read("C1", listener);
+		for (int i = 0; i < 100; i++) {
+			writer.append("C1", Arrays.asList(link(5, "Link Updated " + i)));
+		}
+		read.clear();
+		reader.read("C1", listener);
+		assertTrue(read.contains(link(5, "Link Updated 99")));
+		int link5 = updatesOf(5);
+		assertTrue(link5 + " updates of link 5", link5 >= 8 && link5 < 40);
+	}
+
+}
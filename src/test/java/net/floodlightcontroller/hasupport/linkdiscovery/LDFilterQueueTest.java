@@ -41,7 +41,7 @@ public class LDFilterQueueTest {
 		assertEquals(ldf2.enqueueForward(testJson), true);
 		ldf2.dequeueForward();
 		assertEquals(LDFilterQueue.filterQueue.size(), 0);
-		LDFilterQueue.myMap.clear();
+		LDFilterQueue.dedupe.clear();
 		LDFilterQueue.filterQueue.clear();
 	}
 
@@ -55,8 +55,10 @@ public class LDFilterQueueTest {
 	public void testEnqueueForward() {
 		LDFilterQueue ldf = new LDFilterQueue(storeLD, controllerID);
 		assertEquals(ldf.enqueueForward("cat"), true);
-		assertEquals(LDFilterQueue.myMap.get("d077f244def8a70e5ea758bd8352fcd8"), "cat");
-		LDFilterQueue.myMap.clear();
+		assertEquals(LDFilterQueue.dedupe.contains("cat"), true);
+		assertEquals(ldf.enqueueForward("cat"), true);
+		assertEquals(LDFilterQueue.filterQueue.size(), 1);
+		LDFilterQueue.dedupe.clear();
 		LDFilterQueue.filterQueue.clear();
 	}
 
@@ -65,10 +67,10 @@ public class LDFilterQueueTest {
 		LDFilterQueue ldf2 = new LDFilterQueue(storeLD, controllerID);
 		String testJson = new String("{\"src\":\"00:00:00:00:00:00:00:05\",\"operation\":\"Switch Removed\"}");
 		assertEquals(ldf2.enqueueForward(testJson), true);
-		assertEquals(LDFilterQueue.myMap.get("f6816a638cbd1fcec9dcd88ebc2cfcb0"), testJson);
-		assertEquals(LDFilterQueue.myMap.get("f6816a638cbd1fcec9dcd88bc2cfcb0"), null);
-		assertEquals(LDFilterQueue.myMap.size(), 1);
-		LDFilterQueue.myMap.clear();
+		assertEquals(LDFilterQueue.dedupe.contains(testJson), true);
+		assertEquals(LDFilterQueue.dedupe.contains(testJson.replace("05", "06")), false);
+		assertEquals(LDFilterQueue.dedupe.size(), 1);
+		LDFilterQueue.dedupe.clear();
 		LDFilterQueue.filterQueue.clear();
 	}
 
@@ -41,7 +41,7 @@ public class TopoFilterQueueTest {
 		assertEquals(Topof2.enqueueForward(testJson), true);
 		Topof2.dequeueForward();
 		assertEquals(TopoFilterQueue.filterQueue.size(), 0);
-		TopoFilterQueue.myMap.clear();
+		TopoFilterQueue.dedupe.clear();
 		TopoFilterQueue.filterQueue.clear();
 	}
 
@@ -55,8 +55,10 @@ public class TopoFilterQueueTest {
 	public void testEnqueueForward() {
 		TopoFilterQueue tf = new TopoFilterQueue(storeTopo, controllerID);
 		assertEquals(tf.enqueueForward("cat"), true);
-		assertEquals(TopoFilterQueue.myMap.get("d077f244def8a70e5ea758bd8352fcd8"), "cat");
-		TopoFilterQueue.myMap.clear();
+		assertEquals(TopoFilterQueue.dedupe.contains("cat"), true);
+		assertEquals(tf.enqueueForward("cat"), true);
+		assertEquals(TopoFilterQueue.filterQueue.size(), 1);
+		TopoFilterQueue.dedupe.clear();
 		TopoFilterQueue.filterQueue.clear();
 	}
 
@@ -65,10 +67,10 @@ public class TopoFilterQueueTest {
 		TopoFilterQueue Topof2 = new TopoFilterQueue(storeTopo, controllerID);
 		String testJson = new String("{\"src\":\"00:00:00:00:00:00:00:05\",\"operation\":\"Switch Removed\"}");
 		assertEquals(Topof2.enqueueForward(testJson), true);
-		assertEquals(TopoFilterQueue.myMap.get("f6816a638cbd1fcec9dcd88ebc2cfcb0"), testJson);
-		assertEquals(TopoFilterQueue.myMap.get("f6816a638cbd1fcec9dcd88bc2cfcb0"), null);
-		assertEquals(TopoFilterQueue.myMap.size(), 1);
-		TopoFilterQueue.myMap.clear();
+		assertEquals(TopoFilterQueue.dedupe.contains(testJson), true);
+		assertEquals(TopoFilterQueue.dedupe.contains(testJson.replace("05", "06")), false);
+		assertEquals(TopoFilterQueue.dedupe.size(), 1);
+		TopoFilterQueue.dedupe.clear();
 		TopoFilterQueue.filterQueue.clear();
 	}
 
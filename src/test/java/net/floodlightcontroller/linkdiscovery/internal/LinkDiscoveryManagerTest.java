@@ -38,6 +38,7 @@ import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
 import net.floodlightcontroller.core.IListener.Command;
 import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.IShutdownService;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
 import net.floodlightcontroller.core.internal.MockOFConnection;
 import net.floodlightcontroller.core.internal.MockOFSwitchImpl;
@@ -151,6 +152,9 @@ public class LinkDiscoveryManagerTest extends FloodlightTestCase {
         cntx.addService(IFloodlightProviderService.class, getMockFloodlightProvider());
         cntx.addService(IDebugCounterService.class, debugCounterService);
         cntx.addService(IOFSwitchService.class, getMockSwitchService());
+        IShutdownService shutdownService = createNiceMock(IShutdownService.class);
+        replay(shutdownService);
+        cntx.addService(IShutdownService.class, shutdownService);
         restApi.init(cntx);
         tp.init(cntx);
         routingEngine.init(cntx);
@@ -0,0 +1,81 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.linkdiscovery.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import net.floodlightcontroller.core.types.NodePortTuple;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+public class PortQueueTest {
+
+    private static NodePortTuple npt(long sw, int port) {
+        return new NodePortTuple(DatapathId.of(sw), OFPort.of(port));
+    }
+
+    @Test
+    public void testFifoWithoutDuplicates() {
+        PortQueue q = new PortQueue();
+        assertTrue(q.add(npt(1, 1)));
+        assertTrue(q.add(npt(1, 2)));
+        assertFalse(q.add(npt(1, 1)));
+        assertTrue(q.add(npt(2, 1)));
+        assertEquals(3, q.size());
+        assertTrue(q.contains(npt(1, 2)));
+
+        assertEquals(npt(1, 1), q.poll().getNodePortTuple());
+        assertFalse(q.contains(npt(1, 1)));
+        assertEquals(npt(1, 2), q.poll().getNodePortTuple());
+        assertEquals(npt(2, 1), q.poll().getNodePortTuple());
+        assertNull(q.poll());
+        assertTrue(q.isEmpty());
+    }
+
+    @Test
+    public void testRemoveAndRequeue() {
+        PortQueue q = new PortQueue();
+        q.add(npt(1, 1));
+        q.add(npt(1, 2));
+        assertTrue(q.remove(npt(1, 1)));
+        assertFalse(q.remove(npt(1, 1)));
+        assertFalse(q.contains(npt(1, 1)));
+
+        /* requeued behind the ports already queued */
+        assertTrue(q.add(npt(1, 1)));
+        assertEquals(npt(1, 2), q.poll().getNodePortTuple());
+        assertEquals(npt(1, 1), q.poll().getNodePortTuple());
+        assertNull(q.poll());
+    }
+
+    @Test
+    public void testFlagDiscovered() {
+        PortQueue q = new PortQueue();
+        assertEquals(-1, q.flagDiscovered(npt(1, 1)));
+        q.add(npt(1, 1));
+        q.add(npt(1, 2));
+        assertTrue(q.flagDiscovered(npt(1, 1)) >= 0);
+        assertEquals(-1, q.flagDiscovered(npt(1, 1)));
+
+        PortQueue.Entry e = q.poll();
+        assertTrue(e.isDiscovered());
+        assertFalse(q.poll().isDiscovered());
+    }
+}
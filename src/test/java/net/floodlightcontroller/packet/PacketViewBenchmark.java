@@ -0,0 +1,142 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.packet;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IpProtocol;
+
+/**
+ * Compares eager {@link Ethernet} decoding of a packet-in against the
+ * lazy {@link PacketView} for what Forwarding, DeviceManagerImpl and
+ * LinkDiscoveryManager read from a TCP packet-in: the MAC addresses, the
+ * ethertype, the VLAN and the 5-tuple. {@link #main(String[])} runs with
+ * the GC profiler so the allocation rate (gc.alloc.rate.norm, bytes per
+ * packet) is reported next to the throughput.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PacketViewBenchmark {
+    private byte[] data;
+    private PacketView reused;
+
+    @Setup
+    public void setUp() {
+        data = new Ethernet()
+        .setDestinationMACAddress("00:11:22:33:44:55")
+        .setSourceMACAddress("00:44:33:22:11:00")
+        .setEtherType(EthType.IPv4)
+        .setVlanID((short) 10)
+        .setPayload(
+                    new IPv4()
+                    .setTtl((byte) 64)
+                    .setProtocol(IpProtocol.TCP)
+                    .setSourceAddress("10.0.0.1")
+                    .setDestinationAddress("10.0.0.2")
+                    .setPayload(new TCP()
+                    .setSourcePort(40000)
+                    .setDestinationPort(80)
+                    .setPayload(new Data(new byte[64]))))
+        .serialize();
+        reused = new PacketView(data);
+    }
+
+    @Benchmark
+    public void eager(Blackhole bh) {
+        Ethernet eth = new Ethernet();
+        eth.deserialize(data, 0, data.length);
+        bh.consume(eth.getSourceMACAddress());
+        bh.consume(eth.getDestinationMACAddress());
+        bh.consume(eth.getEtherType());
+        bh.consume(eth.getVlanID());
+        if (eth.getPayload() instanceof IPv4) {
+            IPv4 ip = (IPv4) eth.getPayload();
+            bh.consume(ip.getSourceAddress());
+            bh.consume(ip.getDestinationAddress());
+            bh.consume(ip.getProtocol());
+            if (ip.getPayload() instanceof TCP) {
+                TCP tcp = (TCP) ip.getPayload();
+                bh.consume(tcp.getSourcePort());
+                bh.consume(tcp.getDestinationPort());
+            }
+        }
+    }
+
+    @Benchmark
+    public void lazy(Blackhole bh) {
+        read(new PacketView(data), bh);
+    }
+
+    @Benchmark
+    public void lazyReused(Blackhole bh) {
+        read(reused.wrap(data, 0, data.length), bh);
+    }
+
+    /**
+     * Only the raw fields, which do not allocate at all
+     */
+    @Benchmark
+    public void lazyRaw(Blackhole bh) {
+        PacketView pv = reused.wrap(data, 0, data.length);
+        bh.consume(pv.getSourceMACLong());
+        bh.consume(pv.getDestinationMACLong());
+        bh.consume(pv.getEtherTypeValue());
+        bh.consume(pv.getVlanID());
+        bh.consume(pv.hasTransportPorts());
+    }
+
+    private static void read(PacketView pv, Blackhole bh) {
+        bh.consume(pv.getSourceMACAddress());
+        bh.consume(pv.getDestinationMACAddress());
+        bh.consume(pv.getEtherType());
+        bh.consume(pv.getVlanID());
+        if (pv.isIPv4()) {
+            bh.consume(pv.getIPv4SourceAddress());
+            bh.consume(pv.getIPv4DestinationAddress());
+            bh.consume(pv.getIpProtocol());
+            if (pv.hasTransportPorts()) {
+                bh.consume(pv.getTransportSourcePort());
+                bh.consume(pv.getTransportDestinationPort());
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PacketViewBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.packet;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IPv6Address;
+import org.projectfloodlight.openflow.types.IpProtocol;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.TransportPort;
+
+public class PacketViewTest {
+
+    private static Ethernet tcpPacket(short vlan) {
+        return (Ethernet) new Ethernet()
+        .setDestinationMACAddress("00:11:22:33:44:55")
+        .setSourceMACAddress("00:44:33:22:11:00")
+        .setEtherType(EthType.IPv4)
+        .setVlanID(vlan)
+        .setPriorityCode((byte) 3)
+        .setPayload(
+                    new IPv4()
+                    .setTtl((byte) 64)
+                    .setProtocol(IpProtocol.TCP)
+                    .setSourceAddress("10.0.0.1")
+                    .setDestinationAddress("10.0.0.2")
+                    .setPayload(new TCP()
+                    .setSourcePort(40000)
+                    .setDestinationPort(80)
+                    .setFlags((short) 0x12)
+                    .setPayload(new Data(new byte[] {0x01, 0x02}))));
+    }
+
+    @Test
+    public void testTaggedTcp() {
+        Ethernet eth = tcpPacket((short) 42);
+        PacketView pv = new PacketView(eth.serialize());
+
+        assertTrue(pv.isValid());
+        assertFalse(pv.isEthernetDecoded());
+        assertEquals(MacAddress.of("00:11:22:33:44:55"), pv.getDestinationMACAddress());
+        assertEquals(MacAddress.of("00:44:33:22:11:00"), pv.getSourceMACAddress());
+        assertEquals(MacAddress.of("00:44:33:22:11:00").getLong(), pv.getSourceMACLong());
+        assertFalse(pv.isBroadcast());
+        assertFalse(pv.isMulticast());
+        assertEquals(42, pv.getVlanID());
+        assertEquals(3, pv.getPriorityCode());
+        assertEquals(EthType.IPv4, pv.getEtherType());
+        assertTrue(pv.isIPv4());
+        assertFalse(pv.isIPv6());
+        assertFalse(pv.isArp());
+        assertEquals(IPv4Address.of("10.0.0.1"), pv.getIPv4SourceAddress());
+        assertEquals(IPv4Address.of("10.0.0.2"), pv.getIPv4DestinationAddress());
+        assertEquals(IpProtocol.TCP, pv.getIpProtocol());
+        assertTrue(pv.hasTransportPorts());
+        assertEquals(TransportPort.of(40000), pv.getTransportSourcePort());
+        assertEquals(TransportPort.of(80), pv.getTransportDestinationPort());
+        assertEquals(0x12, pv.getTcpFlags());
+        /* Nothing above needed the full decode */
+        assertFalse(pv.isEthernetDecoded());
+
+        Ethernet decoded = pv.getEthernet();
+        assertTrue(pv.isEthernetDecoded());
+        assertEquals(eth.getSourceMACAddress(), decoded.getSourceMACAddress());
+        assertEquals(eth.getVlanID(), decoded.getVlanID());
+        assertTrue(decoded.getPayload() instanceof IPv4);
+        assertTrue(decoded.getPayload().getPayload() instanceof TCP);
+        assertSame(pv.getEthernet(), pv.getEthernet());
+    }
+
+    @Test
+    public void testUntaggedBroadcastArp() {
+        Ethernet eth = (Ethernet) new Ethernet()
+        .setSourceMACAddress("00:44:33:22:11:01")
+        .setDestinationMACAddress("ff:ff:ff:ff:ff:ff")
+        .setEtherType(EthType.ARP)
+        .setPayload(
+                    new ARP()
+                    .setHardwareType(ARP.HW_TYPE_ETHERNET)
+                    .setProtocolType(ARP.PROTO_TYPE_IP)
+                    .setHardwareAddressLength((byte) 6)
+                    .setProtocolAddressLength((byte) 4)
+                    .setOpCode(ARP.OP_REQUEST)
+                    .setSenderHardwareAddress(MacAddress.of("00:44:33:22:11:02"))
+                    .setSenderProtocolAddress(IPv4Address.of("192.168.1.1"))
+                    .setTargetHardwareAddress(MacAddress.of("00:00:00:00:00:00"))
+                    .setTargetProtocolAddress(IPv4Address.of("192.168.1.2")));
+        PacketView pv = new PacketView(eth.serialize());
+
+        assertTrue(pv.isBroadcast());
+        assertFalse(pv.isMulticast());
+        assertEquals(Ethernet.VLAN_UNTAGGED, pv.getVlanID());
+        assertTrue(pv.isArp());
+        assertFalse(pv.isIPv4());
+        assertNull(pv.getIpProtocol());
+        assertFalse(pv.hasTransportPorts());
+        assertEquals(ARP.PROTO_TYPE_IP, pv.getArpProtocolType());
+        assertEquals(MacAddress.of("00:44:33:22:11:02"), pv.getArpSenderHardwareAddress());
+        assertEquals(IPv4Address.of("192.168.1.1"), pv.getArpSenderProtocolAddress());
+    }
+
+    @Test
+    public void testIpv6Udp() {
+        Ethernet eth = (Ethernet) new Ethernet()
+        .setDestinationMACAddress("33:33:00:00:00:01")
+        .setSourceMACAddress("00:44:33:22:11:00")
+        .setEtherType(EthType.IPv6)
+        .setPayload(
+                    new IPv6()
+                    .setHopLimit((byte) 64)
+                    .setNextHeader(IpProtocol.UDP)
+                    .setSourceAddress(IPv6Address.of("fe80::1"))
+                    .setDestinationAddress(IPv6Address.of("ff02::1"))
+                    .setPayload(new UDP()
+                    .setSourcePort((short) 546)
+                    .setDestinationPort((short) 547)
+                    .setPayload(new Data(new byte[] {0x01}))));
+        PacketView pv = new PacketView(eth.serialize());
+
+        assertTrue(pv.isMulticast());
+        assertTrue(pv.isIPv6());
+        assertEquals(IPv6Address.of("fe80::1"), pv.getIPv6SourceAddress());
+        assertEquals(IPv6Address.of("ff02::1"), pv.getIPv6DestinationAddress());
+        assertEquals(IpProtocol.UDP, pv.getIpProtocol());
+        assertTrue(pv.hasTransportPorts());
+        assertEquals(TransportPort.of(546), pv.getTransportSourcePort());
+        assertEquals(TransportPort.of(547), pv.getTransportDestinationPort());
+    }
+
+    @Test
+    public void testIpv4FragmentHasNoPorts() {
+        Ethernet eth = tcpPacket(Ethernet.VLAN_UNTAGGED);
+        ((IPv4) eth.getPayload()).setFlags(IPv4.IPV4_FLAGS_MOREFRAG);
+        PacketView pv = new PacketView(eth.serialize());
+
+        assertTrue(pv.isIPv4());
+        assertEquals(IpProtocol.TCP, pv.getIpProtocol());
+        assertFalse(pv.hasTransportPorts());
+    }
+
+    @Test
+    public void testWrapAndOf() {
+        Ethernet eth = tcpPacket(Ethernet.VLAN_UNTAGGED);
+        byte[] frame = eth.serialize();
+        byte[] buf = new byte[frame.length + 10];
+        System.arraycopy(frame, 0, buf, 10, frame.length);
+
+        PacketView pv = new PacketView(new byte[] {0});
+        assertFalse(pv.isValid());
+        pv.wrap(buf, 10, frame.length);
+        assertTrue(pv.isValid());
+        assertEquals(IPv4Address.of("10.0.0.2"), pv.getIPv4DestinationAddress());
+        assertEquals(TransportPort.of(80), pv.getTransportDestinationPort());
+
+        PacketView of = PacketView.of(eth);
+        assertTrue(of.isEthernetDecoded());
+        assertSame(eth, of.getEthernet());
+        assertEquals(EthType.IPv4, of.getEtherType());
+    }
+
+    @Test
+    public void testRuntFrame() {
+        byte[] runt = new byte[] {0x01, 0x02, 0x03, 0x04, 0x05, 0x06,
+                0x07, 0x08, 0x09, 0x0a, 0x0b, 0x0c, (byte) 0x81};
+        PacketView pv = new PacketView(runt);
+        assertFalse(pv.isValid());
+        assertEquals(0, pv.getEtherTypeValue());
+        assertEquals(Ethernet.VLAN_UNTAGGED, pv.getVlanID());
+        assertFalse(pv.isIPv4());
+        assertFalse(pv.isIPv6());
+        assertFalse(pv.isArp());
+        assertNull(pv.getIpProtocol());
+    }
+}
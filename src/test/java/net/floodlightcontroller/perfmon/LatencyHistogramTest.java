@@ -0,0 +1,137 @@
+package net.floodlightcontroller.perfmon;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        // every value falls in a bucket that holds it, buckets are
+        // contiguous, and none is wider than 1/SUB_BUCKETS of its values
+        long previousHighest = -1;
+        for (int b = 0; b < LatencyHistogram.BUCKETS; b++) {
+            long highest = LatencyHistogram.highestValueIn(b);
+            long lowest = previousHighest + 1;
+            assertEquals(b, LatencyHistogram.bucketOf(lowest));
+            assertEquals(b, LatencyHistogram.bucketOf(highest));
+            assertTrue(highest - lowest <=
+                       lowest / LatencyHistogram.SUB_BUCKETS);
+            previousHighest = highest;
+        }
+        assertEquals(LatencyHistogram.MAX_VALUE, previousHighest);
+        assertEquals(LatencyHistogram.BUCKETS - 1,
+                     LatencyHistogram.bucketOf(Long.MAX_VALUE));
+        assertEquals(0, LatencyHistogram.bucketOf(-5));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getValueAtPercentile(50));
+        assertEquals(0, h.getMax());
+
+        for (long v = 1; v <= 100000; v++) {
+            h.record(v * 1000);
+        }
+        assertEquals(100000, h.getCount());
+        assertNear(50000000, h.getValueAtPercentile(50));
+        assertNear(99000000, h.getValueAtPercentile(99));
+        assertNear(99900000, h.getValueAtPercentile(99.9));
+        assertNear(100000000, h.getMax());
+        assertEquals(h.getMax(), h.getValueAtPercentile(100));
+
+        // a tail the mean would hide
+        h.reset();
+        for (int i = 0; i < 990; i++) {
+            h.record(10000);
+        }
+        for (int i = 0; i < 10; i++) {
+            h.record(5000000);
+        }
+        assertNear(10000, h.getValueAtPercentile(99));
+        assertNear(5000000, h.getValueAtPercentile(99.9));
+    }
+
+    @Test
+    public void testSince() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 0; i < 10; i++) {
+            h.record(100);
+        }
+        LatencyHistogram earlier = h.since(null);
+        for (int i = 0; i < 5; i++) {
+            h.record(1000000);
+        }
+        LatencyHistogram d = h.since(earlier);
+        assertEquals(5, d.getCount());
+        assertNear(1000000, d.getValueAtPercentile(50));
+        assertEquals(15, h.getCount());
+
+        earlier.add(d);
+        assertEquals(15, earlier.getCount());
+        assertEquals(0, h.since(earlier).getCount());
+    }
+
+    @Test
+    public void testConcurrentRecorders() throws Exception {
+        final int threads = 4;
+        final int records = 100000;
+        final LatencyHistogram.Recorder[] recorders =
+                new LatencyHistogram.Recorder[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final LatencyHistogram.Recorder r = new LatencyHistogram.Recorder();
+            recorders[t] = r;
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    Random rand = new Random();
+                    for (int i = 0; i < records; i++) {
+                        r.record(rand.nextInt(1000000));
+                    }
+                }
+            };
+            workers[t].start();
+        }
+
+        // merging while the recorders run sees a count no larger than
+        // what has been recorded
+        LatencyHistogram partial = new LatencyHistogram();
+        for (LatencyHistogram.Recorder r : recorders) {
+            r.addTo(partial);
+        }
+        assertTrue(partial.getCount() <= threads * records);
+
+        for (Thread w : workers) {
+            w.join();
+        }
+        LatencyHistogram merged = new LatencyHistogram();
+        for (LatencyHistogram.Recorder r : recorders) {
+            r.addTo(merged);
+        }
+        assertEquals(threads * records, merged.getCount());
+        assertEquals(500000, merged.getValueAtPercentile(50), 20000);
+    }
+
+    @Test
+    public void testRecordTimes() {
+        LatencyHistogram.Recorder r = new LatencyHistogram.Recorder();
+        r.record(1000, 32);
+        r.record(5000);
+        LatencyHistogram h = new LatencyHistogram();
+        r.addTo(h);
+        assertEquals(33, h.getCount());
+        assertNear(1000, h.getValueAtPercentile(90));
+        assertNear(5000, h.getMax());
+    }
+
+    private static void assertNear(long expected, long actual) {
+        assertTrue(actual + " not within a bucket of " + expected,
+                   actual >= expected &&
+                   actual <= expected + expected / LatencyHistogram.SUB_BUCKETS);
+    }
+}
@@ -0,0 +1,121 @@
+package net.floodlightcontroller.perfmon;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFPacketInReason;
+import org.projectfloodlight.openflow.protocol.OFType;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.OFBufferId;
+
+import net.floodlightcontroller.core.FloodlightContext;
+import net.floodlightcontroller.core.IOFMessageListener;
+import net.floodlightcontroller.core.IOFSwitch;
+
+/**
+ * Per-message cost of the performance monitor: a packet-in is dispatched
+ * through a chain of listeners that do nothing, with the timing calls the
+ * controller makes around them, and with monitoring on and off.  The
+ * difference between the two is what monitoring adds to each packet-in.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PerfMonBenchmark {
+    private static final int LISTENERS = 6;
+
+    @Param({"false", "true"})
+    public boolean enabled;
+
+    private final PktInProcessingTime pktinProcTime = new PktInProcessingTime();
+    private final IOFMessageListener[] listeners = new IOFMessageListener[LISTENERS];
+    private final OFMessage pi = OFFactories.getFactory(OFVersion.OF_13)
+            .buildPacketIn()
+            .setBufferId(OFBufferId.NO_BUFFER)
+            .setData(new byte[64])
+            .setReason(OFPacketInReason.NO_MATCH)
+            .build();
+    private final FloodlightContext cntx = new FloodlightContext();
+
+    private static class NoopListener implements IOFMessageListener {
+        @Override
+        public String getName() {
+            return "noop";
+        }
+
+        @Override
+        public boolean isCallbackOrderingPrereq(OFType type, String name) {
+            return false;
+        }
+
+        @Override
+        public boolean isCallbackOrderingPostreq(OFType type, String name) {
+            return false;
+        }
+
+        @Override
+        public Command receive(IOFSwitch sw, OFMessage msg,
+                               FloodlightContext cntx) {
+            return Command.CONTINUE;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < LISTENERS; i++) {
+            listeners[i] = new NoopListener();
+        }
+        pktinProcTime.setEnabled(enabled);
+    }
+
+    private void dispatch() {
+        pktinProcTime.bootstrap();
+        for (IOFMessageListener l : listeners) {
+            pktinProcTime.addListener(l);
+        }
+        pktinProcTime.recordStartTimePktIn();
+        for (IOFMessageListener l : listeners) {
+            pktinProcTime.recordStartTimeComp(l);
+            l.receive(null, pi, cntx);
+            pktinProcTime.recordEndTimeComp(l);
+        }
+        pktinProcTime.recordEndTimePktIn(null, pi, cntx);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void dispatch1() {
+        dispatch();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void dispatch8() {
+        dispatch();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PerfMonBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
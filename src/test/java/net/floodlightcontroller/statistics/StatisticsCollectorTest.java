@@ -0,0 +1,189 @@
+package net.floodlightcontroller.statistics;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.internal.IOFSwitchService;
+import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.debugcounter.DebugCounterServiceImpl;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.restserver.IRestApiService;
+import net.floodlightcontroller.test.FloodlightTestCase;
+import net.floodlightcontroller.threadpool.IThreadPoolService;
+import net.floodlightcontroller.threadpool.ThreadPool;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFPortStatsEntry;
+import org.projectfloodlight.openflow.protocol.OFStatsReply;
+import org.projectfloodlight.openflow.protocol.OFStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFStatsType;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Tests the asynchronous collection rounds of {@link StatisticsCollector}
+ * against a switch whose stats replies the test completes by hand. Port
+ * stats are collected every second, so a request times out after 500ms.
+ */
+public class StatisticsCollectorTest extends FloodlightTestCase {
+    private static final DatapathId DPID = DatapathId.of(1);
+    private static final long WAIT_MS = 5000;
+
+    private final OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+    private final BlockingQueue<SettableFuture<List<OFStatsReply>>> requests =
+            new LinkedBlockingQueue<SettableFuture<List<OFStatsReply>>>();
+    private ThreadPool threadPool;
+    private DebugCounterServiceImpl debugCounterService;
+    private StatisticsCollector statsCollector;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        FloodlightModuleContext fmc = new FloodlightModuleContext();
+        threadPool = new ThreadPool();
+        debugCounterService = new DebugCounterServiceImpl();
+        statsCollector = new StatisticsCollector();
+        IRestApiService restApi = createNiceMock(IRestApiService.class);
+        replay(restApi);
+
+        fmc.addService(IThreadPoolService.class, threadPool);
+        fmc.addService(IOFSwitchService.class, getMockSwitchService());
+        fmc.addService(IRestApiService.class, restApi);
+        fmc.addService(IDebugCounterService.class, debugCounterService);
+        fmc.addConfigParam(statsCollector, "enable", "false");
+        fmc.addConfigParam(statsCollector, "collectionIntervalPortStatsSeconds", "1");
+        fmc.addConfigParam(statsCollector, "collectionIntervalFlowStatsSeconds", "0");
+        fmc.addConfigParam(statsCollector, "collectionIntervalTableStatsSeconds", "0");
+        fmc.addConfigParam(statsCollector, "collectionIntervalGroupStatsSeconds", "0");
+        fmc.addConfigParam(statsCollector, "collectionIntervalMeterStatsSeconds", "0");
+
+        threadPool.init(fmc);
+        debugCounterService.init(fmc);
+        statsCollector.init(fmc);
+        threadPool.startUp(fmc);
+        statsCollector.startUp(fmc);
+
+        IOFSwitch sw = createMock(IOFSwitch.class);
+        expect(sw.getId()).andReturn(DPID).anyTimes();
+        expect(sw.getOFFactory()).andReturn(factory).anyTimes();
+        expect(sw.getPort(anyObject(OFPort.class))).andReturn(null).anyTimes();
+        expect(sw.writeStatsRequest(EasyMock.<OFStatsRequest<OFStatsReply>>anyObject()))
+        .andAnswer(new IAnswer<ListenableFuture<List<OFStatsReply>>>() {
+            @Override
+            public ListenableFuture<List<OFStatsReply>> answer() {
+                SettableFuture<List<OFStatsReply>> f = SettableFuture.create();
+                requests.add(f);
+                return f;
+            }
+        }).anyTimes();
+        replay(sw);
+        getMockSwitchService().setSwitches(Collections.singletonMap(DPID, sw));
+    }
+
+    @After
+    public void tearDown() {
+        statsCollector.collectStatistics(false);
+        threadPool.getScheduledExecutor().shutdownNow();
+    }
+
+    private List<OFStatsReply> portStatsReply(OFPort port, long rxBytes, long txBytes) {
+        OFPortStatsEntry entry = factory.buildPortStatsEntry()
+                .setPortNo(port)
+                .setRxBytes(U64.of(rxBytes))
+                .setTxBytes(U64.of(txBytes))
+                .build();
+        return Collections.<OFStatsReply>singletonList(factory.buildPortStatsReply()
+                .setEntries(Collections.singletonList(entry))
+                .build());
+    }
+
+    private long counter(String name) {
+        return debugCounterService.getCounterHierarchy("statistics", name).get(0).getCounterValue();
+    }
+
+    @Test
+    public void testReplyIsRecorded() throws Exception {
+        statsCollector.collectStatistics(true);
+        SettableFuture<List<OFStatsReply>> f = requests.poll(WAIT_MS, TimeUnit.MILLISECONDS);
+        assertNotNull("no port stats request was sent", f);
+
+        List<OFStatsReply> reply = portStatsReply(OFPort.of(1), 100, 200);
+        f.set(reply);
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (statsCollector.getStatistics(OFStatsType.PORT).get(DPID) == null
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(reply, statsCollector.getStatistics(OFStatsType.PORT).get(DPID));
+        assertEquals(1, counter("requests"));
+        assertEquals(0, counter("timeouts"));
+        assertNotNull(statsCollector.getPortHistory(DPID, OFPort.of(1)));
+    }
+
+    @Test
+    public void testSwitchRemovedDropsCounters() throws Exception {
+        statsCollector.collectStatistics(true);
+        assertNotNull("no port stats request was sent", requests.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+        statsCollector.collectStatistics(false);
+        String sw = "switch-" + DPID.toString();
+        assertFalse(debugCounterService.getCounterHierarchy("statistics", sw).isEmpty());
+
+        statsCollector.switchRemoved(DPID);
+        assertTrue(debugCounterService.getCounterHierarchy("statistics", sw).isEmpty());
+    }
+
+    @Test
+    public void testUnansweredRequestTimesOut() throws Exception {
+        statsCollector.collectStatistics(true);
+        SettableFuture<List<OFStatsReply>> first = requests.poll(WAIT_MS, TimeUnit.MILLISECONDS);
+        assertNotNull("no port stats request was sent", first);
+
+        /* the next round asks again only once the first request timed out */
+        SettableFuture<List<OFStatsReply>> second = requests.poll(WAIT_MS, TimeUnit.MILLISECONDS);
+        assertNotNull("the switch was not asked again", second);
+        assertTrue(first.isCancelled());
+        assertEquals(1, counter("timeouts"));
+        assertEquals(0, counter("skipped"));
+    }
+
+    @Test
+    public void testPortBandwidthAfterRepliesInTheSameMillisecond() throws Exception {
+        OFPort port = OFPort.of(2);
+        StatisticsCollector.PortStatsCollector c = statsCollector.new PortStatsCollector();
+        c.process(DPID, portStatsReply(port, 1000, 2000));
+        assertNull(statsCollector.getBandwidthConsumption(DPID, port));
+
+        /* likely too close to the first reply to compute a rate */
+        c.process(DPID, portStatsReply(port, 1500, 2500));
+        Thread.sleep(5);
+        c.process(DPID, portStatsReply(port, 11000, 12000));
+        assertNotNull(statsCollector.getBandwidthConsumption(DPID, port));
+    }
+}
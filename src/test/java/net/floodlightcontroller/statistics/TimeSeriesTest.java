@@ -0,0 +1,81 @@
+package net.floodlightcontroller.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class TimeSeriesTest {
+
+    @Test
+    public void testTierParse() {
+        List<TimeSeries.Tier> tiers = TimeSeries.Tier.parse("1:60, 60:30,3600:24");
+        assertEquals(3, tiers.size());
+        assertEquals(1000, tiers.get(0).getResolutionMs());
+        assertEquals(60, tiers.get(0).getCapacity());
+        assertEquals(3600 * 1000, tiers.get(2).getResolutionMs());
+        assertEquals(24, tiers.get(2).getCapacity());
+    }
+
+    @Test
+    public void testRingWrapsAndDownsamples() {
+        /* 1s x 5 and 10s x 4 */
+        TimeSeries ts = new TimeSeries(2, TimeSeries.Tier.parse("1:5,10:4"));
+        for (int i = 0; i < 40; i++) {
+            ts.record(i * 1000, i * 100, i * 200);
+        }
+
+        /* the fine tier only reaches back 5 samples */
+        List<TimeSeries.Sample> fine = ts.getSamples(35000, 39000);
+        assertEquals(5, fine.size());
+        assertEquals(35000, fine.get(0).getTime());
+        assertEquals(3900, fine.get(4).getValue(0));
+        assertEquals(7800, fine.get(4).getValue(1));
+
+        /* further back comes from the coarse tier, holding the last sample of each 10s */
+        List<TimeSeries.Sample> coarse = ts.getSamples(0, 39000);
+        assertEquals(4, coarse.size());
+        assertEquals(9000, coarse.get(0).getTime());
+        assertEquals(19000, coarse.get(1).getTime());
+        assertEquals(39000, coarse.get(3).getTime());
+        assertEquals(39000, ts.getLastUpdate());
+    }
+
+    @Test
+    public void testRate() {
+        TimeSeries ts = new TimeSeries(1, TimeSeries.Tier.parse("1:100"));
+        assertEquals(-1, ts.getRate(0, 0, 100000), 0);
+        ts.record(0, 1000);
+        assertEquals(-1, ts.getRate(0, 0, 100000), 0);
+        ts.record(10000, 11000);
+        ts.record(20000, 21000);
+        assertEquals(1000, ts.getRate(0, 0, 20000), 0.001);
+        assertEquals(1000, ts.getRate(0, 10000, 20000), 0.001);
+
+        /* a counter reset counts from zero, and doesn't make the rate negative */
+        ts.record(30000, 5000);
+        ts.record(40000, 15000);
+        assertEquals((20000 + 5000 + 10000) / 40.0, ts.getRate(0, 0, 40000), 0.001);
+    }
+
+    @Test
+    public void testStoreBounded() {
+        TimeSeriesStore<String> store = new TimeSeriesStore<String>(1, TimeSeries.Tier.parse("1:10"), 2);
+        assertTrue(store.record("a", 1000, 1));
+        assertTrue(store.record("b", 2000, 1));
+        assertFalse(store.record("c", 3000, 1));
+        assertTrue(store.record("a", 4000, 2));
+        assertNull(store.get("c"));
+        assertEquals(2, store.size());
+
+        store.prune(3000);
+        assertNull(store.get("b"));
+        assertEquals(1, store.size());
+        assertTrue(store.record("c", 5000, 1));
+        assertEquals(10000, store.getRetentionMs());
+    }
+}
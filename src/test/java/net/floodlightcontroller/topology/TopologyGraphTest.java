@@ -0,0 +1,136 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.topology;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import net.floodlightcontroller.core.types.NodePortTuple;
+import net.floodlightcontroller.linkdiscovery.Link;
+import net.floodlightcontroller.routing.BroadcastTree;
+import net.floodlightcontroller.routing.Path;
+import net.floodlightcontroller.routing.PathId;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+
+public class TopologyGraphTest {
+    private Set<DatapathId> switches;
+    private Map<NodePortTuple, Set<Link>> links;
+    private Map<Link, Integer> cost;
+
+    private Link addLink(long src, int srcPort, long dst, int dstPort, int c) {
+        Link l = new Link(DatapathId.of(src), OFPort.of(srcPort), DatapathId.of(dst),
+                OFPort.of(dstPort), U64.of(c));
+        for (NodePortTuple npt : new NodePortTuple[] {
+                new NodePortTuple(l.getSrc(), l.getSrcPort()),
+                new NodePortTuple(l.getDst(), l.getDstPort()) }) {
+            if (!links.containsKey(npt)) {
+                links.put(npt, new HashSet<Link>());
+            }
+            links.get(npt).add(l);
+        }
+        switches.add(l.getSrc());
+        switches.add(l.getDst());
+        cost.put(l, c);
+        return l;
+    }
+
+    @Before
+    public void setUp() {
+        switches = new HashSet<DatapathId>();
+        links = new HashMap<NodePortTuple, Set<Link>>();
+        cost = new HashMap<Link, Integer>();
+
+        /* 1 -> 2 -> 4 costs 2, 1 -> 3 -> 4 costs 5, 4 -> 1 closes the loop */
+        addLink(1, 1, 2, 1, 1);
+        addLink(2, 2, 4, 1, 1);
+        addLink(1, 2, 3, 1, 1);
+        addLink(3, 2, 4, 2, 4);
+        addLink(4, 3, 1, 3, 1);
+    }
+
+    @Test
+    public void testLayout() {
+        TopologyGraph g = new TopologyGraph(switches, links, cost);
+        assertEquals(4, g.getNodeCount());
+        assertEquals(5, g.getLinkCount());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(DatapathId.of(i + 1), g.getNode(i));
+            assertEquals(i, g.indexOf(DatapathId.of(i + 1)));
+        }
+        assertEquals(-1, g.indexOf(DatapathId.of(5)));
+        for (int e = 0; e < g.getLinkCount(); e++) {
+            Link l = g.getLink(e);
+            assertEquals(l.getSrc(), g.getNode(g.getSrc(e)));
+            assertEquals(l.getDst(), g.getNode(g.getDst(e)));
+            assertEquals(cost.get(l).intValue(), g.getCost(e));
+        }
+    }
+
+    @Test
+    public void testSearch() {
+        TopologyGraph g = new TopologyGraph(switches, links, cost);
+        int one = g.indexOf(DatapathId.of(1));
+        int two = g.indexOf(DatapathId.of(2));
+        int three = g.indexOf(DatapathId.of(3));
+        int four = g.indexOf(DatapathId.of(4));
+        TopologyGraph.Search search = g.newSearch();
+
+        int[] shortest = search.run(four).pathFrom(one);
+        assertEquals(2, shortest.length);
+        assertEquals(two, g.getDst(shortest[0]));
+        assertEquals(2, g.getCost(shortest));
+        assertEquals(0, search.run(four).pathFrom(four).length);
+
+        /* excluding 2 leaves the expensive path */
+        search.excludeNode(two);
+        int[] detour = search.run(four).pathFrom(one);
+        assertEquals(three, g.getDst(detour[0]));
+        assertEquals(5, g.getCost(detour));
+
+        /* and excluding the link into 3 leaves none */
+        search.excludeLinksInto(three, OFPort.of(1));
+        assertEquals(0, search.run(four).pathFrom(one).length);
+
+        search.clearExclusions();
+        assertArrayEquals(shortest, search.run(four).pathFrom(one));
+
+        Path p = g.toPath(new PathId(DatapathId.of(1), DatapathId.of(4)), shortest);
+        assertEquals(4, p.getPath().size());
+        assertEquals(2, p.getHopCount());
+        assertEquals(U64.of(2), p.getLatency());
+    }
+
+    @Test
+    public void testBroadcastTree() {
+        TopologyGraph g = new TopologyGraph(switches, links, cost);
+        BroadcastTree bt = g.newSearch().run(g.indexOf(DatapathId.of(1))).toBroadcastTree();
+        assertNull(bt.getTreeLink(DatapathId.of(1)));
+        assertEquals(DatapathId.of(1), bt.getTreeLink(DatapathId.of(4)).getDst());
+        assertEquals(DatapathId.of(4), bt.getTreeLink(DatapathId.of(2)).getDst());
+        assertEquals(2, bt.getCost(DatapathId.of(2)));
+        assertEquals(5, bt.getCost(DatapathId.of(3)));
+    }
+}
@@ -0,0 +1,266 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.topology;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.core.types.NodePortTuple;
+import net.floodlightcontroller.linkdiscovery.Link;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+
+/**
+ * Measures what a link flap costs {@link TopologyInstance} on synthetic
+ * fat-tree and leaf-spine fabrics. The scale is the fat-tree arity k
+ * (5k^2/4 switches) or the number of spines of a leaf-spine fabric with
+ * four leaves per spine.
+ *
+ * <ul>
+ * <li>recompute: a new instance is computed, with no paths yet</li>
+ * <li>recomputeAndRouteAll: a new instance is computed and the paths
+ * between all edge switch pairs are looked up, all of them misses</li>
+ * <li>flapAndRouteAll: as above with one edge uplink down, carrying the
+ * paths over from a fully routed instance so only the pairs routed across
+ * that uplink miss</li>
+ * </ul>
+ *
+ * {@link #main(String[])} runs with the GC profiler so the bytes allocated
+ * per recompute (gc.alloc.rate.norm) are reported next to the time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TopologyInstanceBenchmark {
+
+    public enum Shape {
+        FAT_TREE, LEAF_SPINE
+    }
+
+    @Param({ "FAT_TREE", "LEAF_SPINE" })
+    public Shape shape;
+
+    @Param({ "4", "8", "16" })
+    public int scale;
+
+    /**
+     * Links and ports of a fabric, in the form TopologyManager hands them
+     * to a new TopologyInstance
+     */
+    private static class Fabric {
+        final Map<DatapathId, Set<OFPort>> ports = new HashMap<DatapathId, Set<OFPort>>();
+        final Map<NodePortTuple, Set<Link>> links = new HashMap<NodePortTuple, Set<Link>>();
+        final Map<DatapathId, Integer> nextPort = new HashMap<DatapathId, Integer>();
+        final List<DatapathId> edges = new ArrayList<DatapathId>();
+
+        Link connect(long a, long b) {
+            DatapathId da = DatapathId.of(a);
+            DatapathId db = DatapathId.of(b);
+            OFPort pa = allocPort(da);
+            OFPort pb = allocPort(db);
+            add(new Link(da, pa, db, pb, U64.ZERO));
+            return add(new Link(db, pb, da, pa, U64.ZERO));
+        }
+
+        private OFPort allocPort(DatapathId sw) {
+            Integer p = nextPort.get(sw);
+            p = p == null ? 1 : p + 1;
+            nextPort.put(sw, p);
+            OFPort port = OFPort.of(p);
+            if (!ports.containsKey(sw)) {
+                ports.put(sw, new HashSet<OFPort>());
+            }
+            ports.get(sw).add(port);
+            return port;
+        }
+
+        private Link add(Link l) {
+            for (NodePortTuple npt : new NodePortTuple[] {
+                    new NodePortTuple(l.getSrc(), l.getSrcPort()),
+                    new NodePortTuple(l.getDst(), l.getDstPort()) }) {
+                if (!links.containsKey(npt)) {
+                    links.put(npt, new HashSet<Link>());
+                }
+                links.get(npt).add(l);
+            }
+            return l;
+        }
+
+        /**
+         * A copy of the fabric without the link and its reverse
+         */
+        Fabric without(Link l) {
+            Fabric f = new Fabric();
+            f.edges.addAll(edges);
+            for (DatapathId sw : ports.keySet()) {
+                f.ports.put(sw, new HashSet<OFPort>(ports.get(sw)));
+            }
+            for (Set<Link> s : links.values()) {
+                for (Link link : s) {
+                    if ((link.getSrc().equals(l.getSrc()) && link.getSrcPort().equals(l.getSrcPort()))
+                            || (link.getDst().equals(l.getSrc()) && link.getDstPort().equals(l.getSrcPort()))) {
+                        continue;
+                    }
+                    f.add(link);
+                }
+            }
+            f.ports.get(l.getSrc()).remove(l.getSrcPort());
+            f.ports.get(l.getDst()).remove(l.getDstPort());
+            return f;
+        }
+
+        TopologyInstance newInstance() {
+            Map<NodePortTuple, Set<Link>> none = Collections.emptyMap();
+            TopologyInstance ti = new TopologyInstance(ports,
+                    Collections.<NodePortTuple>emptySet(),
+                    links,
+                    Collections.<NodePortTuple>emptySet(),
+                    Collections.<NodePortTuple>emptySet(),
+                    links,
+                    ports,
+                    none);
+            ti.compute();
+            return ti;
+        }
+    }
+
+    private Fabric fabric;
+    private Fabric flapped;
+    private TopologyInstance routed;
+
+    /**
+     * k pods of k/2 edge and k/2 aggregation switches, and (k/2)^2 core
+     * switches. Aggregation switch j of every pod connects to the core
+     * switches of group j.
+     */
+    private static Fabric fatTree(int k) {
+        Fabric f = new Fabric();
+        int half = k / 2;
+        long core = 1;
+        long agg = core + half * half;
+        long edge = agg + k * half;
+        for (int pod = 0; pod < k; pod++) {
+            for (int e = 0; e < half; e++) {
+                long sw = edge + pod * half + e;
+                f.edges.add(DatapathId.of(sw));
+                for (int a = 0; a < half; a++) {
+                    f.connect(sw, agg + pod * half + a);
+                }
+            }
+            for (int a = 0; a < half; a++) {
+                for (int c = 0; c < half; c++) {
+                    f.connect(agg + pod * half + a, core + a * half + c);
+                }
+            }
+        }
+        return f;
+    }
+
+    /**
+     * Every leaf connects to every spine
+     */
+    private static Fabric leafSpine(int spines, int leaves) {
+        Fabric f = new Fabric();
+        for (int l = 0; l < leaves; l++) {
+            long leaf = spines + 1 + l;
+            f.edges.add(DatapathId.of(leaf));
+            for (int s = 0; s < spines; s++) {
+                f.connect(leaf, 1 + s);
+            }
+        }
+        return f;
+    }
+
+    @Setup
+    public void setUp() {
+        fabric = shape == Shape.FAT_TREE ? fatTree(scale) : leafSpine(scale, 4 * scale);
+
+        /* the first uplink of the first edge switch goes down */
+        DatapathId sw = fabric.edges.get(0);
+        Link uplink = null;
+        for (Link l : fabric.links.get(new NodePortTuple(sw, OFPort.of(1)))) {
+            if (l.getSrc().equals(sw)) {
+                uplink = l;
+            }
+        }
+        flapped = fabric.without(uplink);
+
+        routed = fabric.newInstance();
+        routeAll(routed, null);
+    }
+
+    private void routeAll(TopologyInstance ti, Blackhole bh) {
+        int k = TopologyManager.getMaxPathsToComputeInternal();
+        for (DatapathId src : fabric.edges) {
+            for (DatapathId dst : fabric.edges) {
+                List<?> paths = ti.getPathsFast(src, dst, k);
+                if (bh != null) {
+                    bh.consume(paths);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public TopologyInstance recompute() {
+        return fabric.newInstance();
+    }
+
+    @Benchmark
+    public void recomputeAndRouteAll(Blackhole bh) {
+        routeAll(fabric.newInstance(), bh);
+    }
+
+    @Benchmark
+    public void flapAndRouteAll(Blackhole bh) {
+        TopologyInstance ti = flapped.newInstance();
+        ti.carryOverPaths(routed);
+        routeAll(ti, bh);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TopologyInstanceBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -48,6 +48,7 @@ import java.util.Set;
 import static net.floodlightcontroller.routing.IRoutingService.PATH_METRIC.HOPCOUNT;
 import static net.floodlightcontroller.routing.IRoutingService.PATH_METRIC.LATENCY;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class TopologyInstanceTest {
@@ -654,6 +655,118 @@ public class TopologyInstanceTest {
         assertTrue(count == size);
     }
 
+    @Test
+    public void testPathCacheCarryOver() throws Exception {
+        DatapathId one = DatapathId.of(1);
+        DatapathId three = DatapathId.of(3);
+        DatapathId four = DatapathId.of(4);
+        DatapathId five = DatapathId.of(5);
+        DatapathId six = DatapathId.of(6);
+
+        /*
+         * Two archipelagos, a tree 1-2-3 with 6 hanging off 2, and 4-5.
+         */
+        int [][] linkArray = {
+                {1, 1, 2, 1, DIRECT_LINK},
+                {2, 1, 1, 1, DIRECT_LINK},
+                {2, 2, 3, 1, DIRECT_LINK},
+                {3, 1, 2, 2, DIRECT_LINK},
+                {2, 3, 6, 1, DIRECT_LINK},
+                {6, 1, 2, 3, DIRECT_LINK},
+                {4, 1, 5, 1, DIRECT_LINK},
+                {5, 1, 4, 1, DIRECT_LINK},
+        };
+        topologyManager.setPathMetric(HOPCOUNT);
+        createTopologyFromLinks(linkArray);
+
+        /* Paths are only computed when asked for */
+        TopologyInstance ti = topologyManager.getCurrentInstance();
+        assertFalse(ti.isPathCached(one, three));
+        List<Path> p13 = ti.getPathsFast(one, three, 3);
+        List<Path> p16 = ti.getPathsFast(one, six, 3);
+        List<Path> p45 = ti.getPathsFast(four, five, 3);
+        assertEquals(1, p13.size());
+        assertEquals(1, p16.size());
+        assertEquals(1, p45.size());
+        assertTrue(ti.isPathCached(one, three));
+        assertTrue(ti.isPathCached(one, six));
+        assertFalse(ti.isPathCached(one, four));
+        assertTrue(ti.getPathsFast(one, four, 3).isEmpty());
+        assertFalse(ti.isPathCached(one, four));
+
+        /* Removing 2-6 only drops the pair routed across it */
+        topologyManager.removeLink(DatapathId.of(2), OFPort.of(3), six, OFPort.of(1));
+        topologyManager.removeLink(six, OFPort.of(1), DatapathId.of(2), OFPort.of(3));
+        topologyManager.createNewInstance();
+        ti = topologyManager.getCurrentInstance();
+        assertTrue(ti.isPathCached(one, three));
+        assertTrue(ti.isPathCached(four, five));
+        assertFalse(ti.isPathCached(one, six));
+        assertEquals(p13, ti.getPathsFast(one, three, 3));
+        assertEquals(p45, ti.getPathsFast(four, five, 3));
+        assertTrue(ti.getPathsFast(one, six, 3).isEmpty());
+
+        /* Adding a link drops every pair of its archipelago */
+        topologyManager.addOrUpdateLink(one, OFPort.of(2), three, OFPort.of(2), U64.ZERO,
+                ILinkDiscovery.LinkType.DIRECT_LINK);
+        topologyManager.addOrUpdateLink(three, OFPort.of(2), one, OFPort.of(2), U64.ZERO,
+                ILinkDiscovery.LinkType.DIRECT_LINK);
+        topologyManager.createNewInstance();
+        ti = topologyManager.getCurrentInstance();
+        assertFalse(ti.isPathCached(one, three));
+        assertTrue(ti.isPathCached(four, five));
+        List<Path> p13New = ti.getPathsFast(one, three, 3);
+        assertEquals(2, p13New.size());
+        assertEquals(2, p13New.get(0).getPath().size());
+    }
+
+    private List<List<Path>> precomputeAllPaths(int [][] linkArray, int threads) throws Exception {
+        fmc.addConfigParam(topologyManager, "precomputePaths", "true");
+        fmc.addConfigParam(topologyManager, "pathComputationThreads", Integer.toString(threads));
+        topologyManager.init(fmc);
+        topologyManager.setPathMetric(HOPCOUNT);
+        createTopologyFromLinks(linkArray);
+
+        TopologyInstance ti = topologyManager.getCurrentInstance();
+        assertTrue(ti.getComputeTimes().containsKey("paths"));
+        List<List<Path>> all = new ArrayList<List<Path>>();
+        for (int src = 1; src <= 6; src++) {
+            for (int dst = 1; dst <= 6; dst++) {
+                assertTrue(ti.isPathCached(DatapathId.of(src), DatapathId.of(dst)));
+                all.add(ti.getPathsFast(DatapathId.of(src), DatapathId.of(dst), 3));
+            }
+        }
+        return all;
+    }
+
+    @Test
+    public void testPrecomputePathsDeterministic() throws Exception {
+        /* A ring of six switches with two chords */
+        int [][] linkArray = {
+                {1, 1, 2, 1, DIRECT_LINK}, {2, 1, 1, 1, DIRECT_LINK},
+                {2, 2, 3, 1, DIRECT_LINK}, {3, 1, 2, 2, DIRECT_LINK},
+                {3, 2, 4, 1, DIRECT_LINK}, {4, 1, 3, 2, DIRECT_LINK},
+                {4, 2, 5, 1, DIRECT_LINK}, {5, 1, 4, 2, DIRECT_LINK},
+                {5, 2, 6, 1, DIRECT_LINK}, {6, 1, 5, 2, DIRECT_LINK},
+                {6, 2, 1, 2, DIRECT_LINK}, {1, 2, 6, 2, DIRECT_LINK},
+                {1, 3, 4, 3, DIRECT_LINK}, {4, 3, 1, 3, DIRECT_LINK},
+                {2, 3, 5, 3, DIRECT_LINK}, {5, 3, 2, 3, DIRECT_LINK},
+        };
+
+        try {
+            List<List<Path>> sequential = precomputeAllPaths(linkArray, 1);
+            assertTrue(TopologyManager.getPathComputationPoolInternal() == null);
+            List<List<Path>> parallel = precomputeAllPaths(linkArray, 4);
+            assertTrue(TopologyManager.getPathComputationPoolInternal() != null);
+            assertEquals(sequential, parallel);
+            assertEquals(3, sequential.get(1).size());
+        } finally {
+            fmc.addConfigParam(topologyManager, "precomputePaths", "false");
+            fmc.addConfigParam(topologyManager, "pathComputationThreads", "1");
+            topologyManager.init(fmc);
+        }
+    }
+
     @Test
     public void testgetPathsFast() throws Exception{
         Integer k = 2;
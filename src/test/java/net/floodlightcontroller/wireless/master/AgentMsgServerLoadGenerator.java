@@ -0,0 +1,135 @@
+package net.floodlightcontroller.wireless.master;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.floodlightcontroller.debugcounter.DebugCounterResource;
+import net.floodlightcontroller.debugcounter.DebugCounterServiceImpl;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+
+import org.projectfloodlight.openflow.types.MacAddress;
+
+/**
+ * Replays a probe storm, such as a lecture hall full of clients scanning
+ * at once, against an {@link AgentMsgServer} on the loopback interface
+ * and reports how many probes were handled and dropped.
+ *
+ * Each stand-in agent sends from its own loopback address where the OS
+ * allows binding 127.0.0.x (Linux does), so the probes are spread over
+ * the server's workers as real agents' would be. The master is a stand-in
+ * that only counts what it is handed.
+ *
+ * Usage: AgentMsgServerLoadGenerator [agents] [clients per agent]
+ * [probes per second] [seconds] [workers]
+ */
+public class AgentMsgServerLoadGenerator {
+	private static final String MODULE = "loadgen";
+
+	private static class CountingMaster extends WirelessMaster {
+		final AtomicLong probes = new AtomicLong();
+		final AtomicLong others = new AtomicLong();
+
+		@Override
+		protected void receivePing(InetAddress agentAddr) {
+			others.incrementAndGet();
+		}
+
+		@Override
+		protected void receiveProbe(InetAddress agentAddr, MacAddress clientHwAddress, String ssid) {
+			probes.incrementAndGet();
+		}
+
+		@Override
+		protected void receiveAssoc(InetAddress agentAddr, MacAddress clientHwAddress, String staInfo) {
+			others.incrementAndGet();
+		}
+
+		@Override
+		protected void receiveDisassoc(InetAddress agentAddr, MacAddress clientHwAddress, String reason) {
+			others.incrementAndGet();
+		}
+
+		@Override
+		protected void receivePublish(InetAddress agentAddr, MacAddress clientHwAddress,
+				String eventType, String params) {
+			others.incrementAndGet();
+		}
+	}
+
+	private static int arg(String[] args, int i, int dflt) {
+		return args.length > i ? Integer.parseInt(args[i]) : dflt;
+	}
+
+	private static DatagramChannel openAgent(int i) throws IOException {
+		DatagramChannel c = DatagramChannel.open();
+		try {
+			c.bind(new InetSocketAddress(InetAddress.getByAddress(
+					new byte[] { 127, 0, (byte) ((i + 1) >> 8), (byte) ((i + 1) & 0xff) }), 0));
+		} catch (IOException e) {
+			c.close();
+			c = DatagramChannel.open();
+			c.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		}
+		return c;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int agents = arg(args, 0, 100);
+		int clients = arg(args, 1, 200);
+		int rate = arg(args, 2, 100000);
+		int seconds = arg(args, 3, 10);
+		int workers = arg(args, 4, 4);
+
+		IDebugCounterService debugCounters = new DebugCounterServiceImpl();
+		debugCounters.registerModule(MODULE);
+		CountingMaster master = new CountingMaster();
+		AgentMsgServer server = new AgentMsgServer(master, 0, workers, 4096, debugCounters, MODULE);
+		server.start();
+		InetSocketAddress target = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort());
+
+		DatagramChannel[] channels = new DatagramChannel[agents];
+		for (int i = 0; i < agents; i++) {
+			channels[i] = openAgent(i);
+		}
+		ByteBuffer[] probes = new ByteBuffer[clients];
+		for (int c = 0; c < clients; c++) {
+			String mac = MacAddress.of(0x0a0000000000L + c).toString();
+			probes[c] = ByteBuffer.wrap(("probe " + mac + " lecture-hall-wifi\n").getBytes(StandardCharsets.US_ASCII));
+		}
+
+		long sent = 0;
+		long startNs = System.nanoTime();
+		long endNs = startNs + TimeUnit.SECONDS.toNanos(seconds);
+		long nsPerProbe = TimeUnit.SECONDS.toNanos(1) / rate;
+		long now;
+		while ((now = System.nanoTime()) < endNs) {
+			long due = (now - startNs) / nsPerProbe;
+			for (; sent < due; sent++) {
+				ByteBuffer b = probes[(int) (sent % clients)];
+				b.rewind();
+				channels[(int) (sent % agents)].send(b, target);
+			}
+			Thread.yield();
+		}
+		double elapsed = (System.nanoTime() - startNs) / 1e9;
+		Thread.sleep(1000); /* let the workers drain */
+		server.stop();
+		for (DatagramChannel c : channels) {
+			c.close();
+		}
+
+		System.out.printf("sent %d probes in %.1fs (%.0f/s) from %d agents%n",
+				sent, elapsed, sent / elapsed, agents);
+		System.out.printf("handled %d probes (%.1f%%)%n",
+				master.probes.get(), 100.0 * master.probes.get() / Math.max(1, sent));
+		for (DebugCounterResource r : debugCounters.getModuleCounterValues(MODULE)) {
+			System.out.printf("  %-40s %d%n", r.getCounterHierarchy(), r.getCounterValue());
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package net.floodlightcontroller.wireless.master;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.MacAddress;
+
+public class AgentMsgTest {
+	private final AgentMsg msg = new AgentMsg();
+
+	/* the way the server hands them over: a direct buffer, padded */
+	private boolean parse(String s) {
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buf = ByteBuffer.allocateDirect(64 + b.length);
+		buf.put(b).put(new byte[] { 0, 0, '\n' }).flip();
+		int limit = buf.limit();
+		boolean ok = msg.parse(buf);
+		assertEquals(0, buf.position());
+		assertEquals(limit, buf.limit());
+		return ok;
+	}
+
+	@Test
+	public void testPing() {
+		assertTrue(parse("PING"));
+		assertEquals(AgentMsg.Type.PING, msg.getType());
+		assertFalse(parse("pong"));
+	}
+
+	@Test
+	public void testProbe() {
+		assertTrue(parse("probe 00:1A:2b:3c:4d:5e MyNet"));
+		assertEquals(AgentMsg.Type.PROBE, msg.getType());
+		assertEquals(MacAddress.of("00:1a:2b:3c:4d:5e"), msg.getClient());
+		assertEquals("mynet", msg.getPayload());
+
+		/* a broadcast scan has no SSID */
+		assertTrue(parse("probe 00:1a:2b:3c:4d:5e"));
+		assertEquals("", msg.getPayload());
+	}
+
+	@Test
+	public void testAssocAndDisassoc() {
+		assertTrue(parse("assoc 00:00:00:00:00:01 ht vht wmm"));
+		assertEquals(AgentMsg.Type.ASSOC, msg.getType());
+		assertEquals("ht vht wmm", msg.getPayload());
+		assertFalse(parse("assoc 00:00:00:00:00:01"));
+
+		assertTrue(parse("deauth 00:00:00:00:00:01"));
+		assertEquals(AgentMsg.Type.DISASSOC, msg.getType());
+		assertNull(msg.getPayload());
+		assertTrue(parse("disassoc 00:00:00:00:00:01 8"));
+		assertEquals("8", msg.getPayload());
+	}
+
+	@Test
+	public void testPublish() {
+		assertTrue(parse("publish 00:00:00:00:00:01 rssi -42 1500000000"));
+		assertEquals(AgentMsg.Type.PUBLISH, msg.getType());
+		assertEquals("rssi", msg.getEventType());
+		assertEquals("-42 1500000000", msg.getPayload());
+		assertFalse(parse("publish 00:00:00:00:00:01 rssi"));
+	}
+
+	@Test
+	public void testMalformed() {
+		assertFalse(parse(""));
+		assertFalse(parse("auth 00:00:00:00:00:01"));
+		assertFalse(parse("probe"));
+		assertFalse(parse("probe 00:00:00:00:00"));
+		assertFalse(parse("probe 00-00-00-00-00-01 net"));
+		assertFalse(parse("probe 00:00:00:00:00:0g net"));
+	}
+}
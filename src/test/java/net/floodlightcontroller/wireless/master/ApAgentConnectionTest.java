@@ -0,0 +1,41 @@
+package net.floodlightcontroller.wireless.master;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import org.junit.Test;
+
+public class ApAgentConnectionTest {
+
+	private static void send(EmbeddedChannel ch, String s) {
+		ch.writeInbound(Unpooled.copiedBuffer(s, StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testReplyFraming() {
+		EmbeddedChannel ch = new EmbeddedChannel(new ApAgentConnection.ReplyDecoder());
+
+		/* split anywhere, data containing spaces and line breaks */
+		send(ch, "wiagent client_st");
+		assertNull(ch.readInbound());
+		send(ch, "ats 11 a b:1\n");
+		assertNull(ch.readInbound());
+		send(ch, "c d\n\nwiagent lvap_table 0 \nwiagent device_info 3 xyz");
+
+		ApAgentConnection.Reply r = (ApAgentConnection.Reply) ch.readInbound();
+		assertEquals("client_stats", r.handlerName);
+		assertEquals("a b:1\nc d\n\n", r.data);
+		r = (ApAgentConnection.Reply) ch.readInbound();
+		assertEquals("lvap_table", r.handlerName);
+		assertEquals("", r.data);
+		r = (ApAgentConnection.Reply) ch.readInbound();
+		assertEquals("device_info", r.handlerName);
+		assertEquals("xyz", r.data);
+		assertNull(ch.readInbound());
+	}
+}
@@ -0,0 +1,216 @@
+package net.floodlightcontroller.wireless.master;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures how long the add_vap and remove_vap of a handoff take to
+ * reach the agents while the agents' client_stats are being polled,
+ * over the pipelined {@link ApAgentConnection} and over the lock-step
+ * socket ApAgent used before, in which a write waits behind any read
+ * in progress.
+ *
+ * The agents are a local server in the manner of MockApAgent: it takes
+ * statsDelayMs to answer a read, as a busy Click agent would, and
+ * records when each write arrives.
+ *
+ * Usage: ApAgentHandoffBenchmark [handoffs] [statsDelayMs]
+ */
+public class ApAgentHandoffBenchmark {
+
+	/** The agent side of the control channel */
+	private static class AgentServer implements Runnable {
+		final ServerSocket server;
+		final long statsDelayMs;
+		final ConcurrentHashMap<String, CountDownLatch> awaited = new ConcurrentHashMap<String, CountDownLatch>();
+
+		AgentServer(long statsDelayMs) throws IOException {
+			this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+			this.statsDelayMs = statsDelayMs;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					final Socket s = server.accept();
+					s.setTcpNoDelay(true);
+					Thread t = new Thread(new Runnable() {
+						@Override
+						public void run() {
+							serve(s);
+						}
+					});
+					t.setDaemon(true);
+					t.start();
+				}
+			} catch (IOException e) {
+				/* closed */
+			}
+		}
+
+		void serve(Socket s) {
+			try {
+				BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(),
+						StandardCharsets.UTF_8));
+				OutputStream out = s.getOutputStream();
+				String line;
+				while ((line = in.readLine()) != null) {
+					String[] f = line.split(" ", 3);
+					if (f[0].equals("read")) {
+						Thread.sleep(statsDelayMs);
+						String data = "00:00:00:00:00:01 rate:54 signal:-42\n";
+						out.write(("agent " + f[1] + " " + data.length() + " " + data)
+								.getBytes(StandardCharsets.UTF_8));
+						out.flush();
+					} else if (f.length == 3) {
+						/* write <handler> <mac> ... */
+						CountDownLatch l = awaited.get(f[1] + " " + f[2].split(" ")[0]);
+						if (l != null) {
+							l.countDown();
+						}
+					}
+				}
+			} catch (IOException | InterruptedException e) {
+				/* connection closed */
+			}
+		}
+	}
+
+	private interface Control {
+		void write(String handlerName, String handlerText);
+		String read(String handlerName, String handlerText) throws Exception;
+	}
+
+	private static class Pipelined implements Control {
+		final ApAgentConnection conn;
+
+		Pipelined(InetSocketAddress a) throws IOException {
+			conn = ApAgentConnection.connect(a);
+		}
+
+		@Override
+		public void write(String handlerName, String handlerText) {
+			conn.write(handlerName, handlerText);
+		}
+
+		@Override
+		public String read(String handlerName, String handlerText) throws Exception {
+			return conn.read(handlerName, handlerText).get();
+		}
+	}
+
+	/** The blocking, synchronized socket the agents were driven over */
+	private static class Lockstep implements Control {
+		final PrintWriter outBuf;
+		final BufferedReader inBuf;
+
+		Lockstep(InetSocketAddress a) throws IOException {
+			Socket s = new Socket(a.getAddress(), a.getPort());
+			s.setTcpNoDelay(true);
+			outBuf = new PrintWriter(s.getOutputStream(), true);
+			inBuf = new BufferedReader(new InputStreamReader(s.getInputStream()));
+		}
+
+		@Override
+		public synchronized void write(String handlerName, String handlerText) {
+			outBuf.println(("write " + handlerName + " " + handlerText).toLowerCase());
+		}
+
+		@Override
+		public synchronized String read(String handlerName, String handlerText) throws Exception {
+			outBuf.println("read " + handlerName + " " + handlerText);
+			StringBuilder head = new StringBuilder();
+			int blanks = 0;
+			while (true) {
+				char c = (char) inBuf.read();
+				if (c == ' ' && ++blanks == 3) {
+					break;
+				}
+				head.append(c);
+			}
+			int len = Integer.parseInt(head.toString().trim().split(" ")[2]);
+			char[] data = new char[len];
+			for (int i = 0; i < len; i++) {
+				data[i] = (char) inBuf.read();
+			}
+			return new String(data);
+		}
+	}
+
+	private static long[] run(String name, final Control oldAgent, final Control newAgent,
+			AgentServer server, int handoffs) throws Exception {
+		final AtomicBoolean stop = new AtomicBoolean();
+		Thread[] pollers = new Thread[2];
+		final Control[] agents = { oldAgent, newAgent };
+		for (int i = 0; i < 2; i++) {
+			final Control agent = agents[i];
+			pollers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						while (!stop.get()) {
+							agent.read("client_stats", "");
+						}
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+				}
+			});
+			pollers[i].setDaemon(true);
+			pollers[i].start();
+		}
+
+		long[] latencyUs = new long[handoffs];
+		for (int h = 0; h < handoffs; h++) {
+			String mac = String.format("02:00:00:00:%02x:%02x", (h >> 8) & 0xff, h & 0xff);
+			CountDownLatch done = new CountDownLatch(2);
+			server.awaited.put("add_vap " + mac, done);
+			server.awaited.put("remove_vap " + mac, done);
+			long start = System.nanoTime();
+			/* as handoffClientToApInternal: add on the new agent, remove from the old */
+			newAgent.write("add_vap", mac + " 0.0.0.0 00:1b:b3:00:00:01 odin");
+			oldAgent.write("remove_vap", mac);
+			done.await();
+			latencyUs[h] = (System.nanoTime() - start) / 1000;
+			server.awaited.remove("add_vap " + mac);
+			server.awaited.remove("remove_vap " + mac);
+			Thread.sleep(1);
+		}
+		stop.set(true);
+
+		Arrays.sort(latencyUs);
+		System.out.printf("%-10s handoff latency us: p50 %d  p99 %d  max %d%n", name,
+				latencyUs[handoffs / 2], latencyUs[handoffs * 99 / 100], latencyUs[handoffs - 1]);
+		return latencyUs;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int handoffs = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		long statsDelayMs = args.length > 1 ? Long.parseLong(args[1]) : 5;
+
+		AgentServer server = new AgentServer(statsDelayMs);
+		Thread t = new Thread(server, "AgentServer");
+		t.setDaemon(true);
+		t.start();
+		InetSocketAddress a = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.server.getLocalPort());
+
+		run("lock-step", new Lockstep(a), new Lockstep(a), server, handoffs);
+		run("pipelined", new Pipelined(a), new Pipelined(a), server, handoffs);
+		server.server.close();
+		TimeUnit.MILLISECONDS.sleep(100);
+	}
+}
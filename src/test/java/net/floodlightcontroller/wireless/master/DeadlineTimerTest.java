@@ -0,0 +1,70 @@
+package net.floodlightcontroller.wireless.master;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class DeadlineTimerTest {
+
+	private final DeadlineTimer timer = new DeadlineTimer("DeadlineTimerTest");
+
+	private static class Deadline implements DeadlineTimer.Watched {
+		volatile long deadline;
+		final AtomicInteger checks = new AtomicInteger();
+		final CountDownLatch expired = new CountDownLatch(1);
+		volatile long expiredAt;
+
+		Deadline(long deadline) {
+			this.deadline = deadline;
+		}
+
+		@Override
+		public long getDeadline() {
+			checks.incrementAndGet();
+			return deadline;
+		}
+
+		@Override
+		public void expired(long deadline) {
+			expiredAt = System.currentTimeMillis();
+			expired.countDown();
+		}
+	}
+
+	@After
+	public void tearDown() {
+		timer.stop();
+	}
+
+	@Test
+	public void testRefreshedDeadline() throws Exception {
+		long start = System.currentTimeMillis();
+		Deadline d = new Deadline(start + 200);
+		timer.watch(d);
+		assertEquals(1, timer.getWatchedCount());
+
+		/* heard from again: the deadline moves without touching the timer */
+		Thread.sleep(100);
+		d.deadline = System.currentTimeMillis() + 300;
+		assertTrue(d.expired.await(2, TimeUnit.SECONDS));
+		assertTrue(d.expiredAt >= d.deadline);
+		assertTrue(d.checks.get() >= 3);
+		assertEquals(0, timer.getWatchedCount());
+	}
+
+	@Test
+	public void testStopWatching() throws Exception {
+		Deadline d = new Deadline(System.currentTimeMillis() + 200);
+		timer.watch(d);
+		d.deadline = -1;
+		assertFalse(d.expired.await(500, TimeUnit.MILLISECONDS));
+		assertEquals(0, timer.getWatchedCount());
+	}
+}
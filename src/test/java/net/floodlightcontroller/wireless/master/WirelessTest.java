@@ -7,6 +7,7 @@ import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.reset;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.net.InetAddress;
@@ -216,6 +217,39 @@ public class WirelessTest extends FloodlightTestCase{
         assertEquals(agentManager.getAgents().size(),1);
     }
     
+    /**
+     * Make sure an agent's SSID snapshot is reused until
+     * the pools change, and then rebuilt.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testAgentSsidSnapshot() throws Exception {
+    	InetAddress agentAddr = InetAddress.getByName("172.17.2.161");
+    	poolManager.addPoolForAgent(agentAddr, "pool-1");
+    	poolManager.addPoolForAgent(agentAddr, "pool-2");
+    	poolManager.addNetworkForPool("pool-1", "odin-1");
+
+    	PoolManager.AgentSsids ssids = poolManager.getSsidsForAgent(agentAddr);
+    	assertEquals(Collections.singleton("odin-1"), ssids.getSsids());
+    	assertEquals("pool-1", ssids.getPoolForSsid("odin-1"));
+    	assertNull(ssids.getPoolForSsid("odin-2"));
+    	assertTrue(ssids == poolManager.getSsidsForAgent(agentAddr));
+
+    	poolManager.addNetworkForPool("pool-2", "odin-2");
+    	ssids = poolManager.getSsidsForAgent(agentAddr);
+    	assertEquals(2, ssids.getSsids().size());
+    	assertEquals("pool-2", ssids.getPoolForSsid("odin-2"));
+
+    	poolManager.removeNetworkFromPool("pool-1", "odin-1");
+    	ssids = poolManager.getSsidsForAgent(agentAddr);
+    	assertEquals(Collections.singleton("odin-2"), ssids.getSsids());
+    	assertNull(ssids.getPoolForSsid("odin-1"));
+
+    	assertTrue(poolManager.getSsidsForAgent(InetAddress.getByName("172.17.2.162"))
+    			.getSsids().isEmpty());
+    }
+
     /**
      * Test to see if OdinAgentTracker.receiveProbe()
      * works correctly with a single SSID
@@ -42,7 +42,9 @@ import org.sdnplatform.sync.internal.SyncTorture;
 import org.sdnplatform.sync.internal.config.Node;
 import org.sdnplatform.sync.internal.config.PropertyCCProvider;
 import org.sdnplatform.sync.internal.store.Key;
+import org.sdnplatform.sync.internal.store.SynchronizingStorageEngine;
 import org.sdnplatform.sync.internal.store.TBean;
+import org.sdnplatform.sync.internal.util.ByteArray;
 import org.sdnplatform.sync.internal.util.CryptoUtil;
 import org.sdnplatform.sync.internal.version.VectorClock;
 import org.slf4j.Logger;
@@ -311,6 +313,48 @@ public class SyncManagerTest {
         }
     }
     
+    @Test
+    public void testDigestAntientropy() throws Exception {
+        waitForFullMesh(2000);
+
+        // write straight into the storage of nodes 1 and 2, so that nothing
+        // but antientropy will send the values anywhere
+        SynchronizingStorageEngine store0 =
+                syncManagers[0].getStoreInternal("global");
+        SynchronizingStorageEngine store1 =
+                syncManagers[1].getStoreInternal("global");
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) {
+            store0.writeSyncValue(new ByteArray(mapper.writeValueAsBytes("a" + i)),
+                    Collections.singletonList(new Versioned<byte[]>(
+                            mapper.writeValueAsBytes("" + i),
+                            new VectorClock().incremented(1, now))));
+            store1.writeSyncValue(new ByteArray(mapper.writeValueAsBytes("b" + i)),
+                    Collections.singletonList(new Versioned<byte[]>(
+                            mapper.writeValueAsBytes("" + i),
+                            new VectorClock().incremented(2, now))));
+        }
+        assertFalse(store0.getTree().digest(0, 0) ==
+                store1.getTree().digest(0, 0));
+
+        syncManagers[0].digestAntientropy(nodes.get(1));
+
+        IStoreClient<String, String> client0 =
+                syncManagers[0].getStoreClient("global", String.class, String.class);
+        IStoreClient<String, String> client1 =
+                syncManagers[1].getStoreClient("global", String.class, String.class);
+        for (int i = 0; i < 100; i++) {
+            waitForValue(client1, "a" + i, "" + i, 2000, "client1");
+            waitForValue(client0, "b" + i, "" + i, 2000, "client0");
+        }
+        assertEquals(store0.getTree().digest(0, 0),
+                     store1.getTree().digest(0, 0));
+
+        IStoreClient<String, String> client2 =
+                syncManagers[2].getStoreClient("global", String.class, String.class);
+        assertNull(client2.get("a0").getValue());
+    }
+
     @Test
     public void testConcurrentWrite() throws Exception {
         waitForFullMesh(2000);
@@ -0,0 +1,261 @@
+package org.sdnplatform.sync.internal.store;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sdnplatform.sync.Versioned;
+import org.sdnplatform.sync.internal.TUtils;
+import org.sdnplatform.sync.internal.util.ByteArray;
+import org.sdnplatform.sync.internal.version.VectorClock;
+
+import static org.junit.Assert.*;
+
+
+public class LogStorageEngineTest extends AbstractStorageEngineT {
+
+    private File dir;
+    private LogStorageEngine store;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = TUtils.createTempDir();
+        store = new LogStorageEngine("test", dir, 4096, true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.truncate();
+        store.close();
+        store = null;
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Override
+    public IStorageEngine<ByteArray, byte[]> getStorageEngine() {
+        return store;
+    }
+
+    @Override
+    public List<ByteArray> getKeys(int numKeys) {
+        List<ByteArray> keys = new ArrayList<ByteArray>(numKeys);
+        for(int i = 0; i < numKeys; i++)
+            keys.add(new ByteArray(TUtils.randomBytes(10)));
+        return keys;
+    }
+
+    private static ByteArray key(int i) {
+        return new ByteArray(("key" + i).getBytes());
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        VectorClock clock = new VectorClock();
+        for (int i = 0; i < 200; i++) {
+            clock = clock.incremented(1, System.currentTimeMillis());
+            store.put(key(i % 50), new Versioned<byte[]>(new byte[] {(byte)i},
+                                                         clock));
+        }
+        assertTrue(store.getSegmentCount() > 1);
+        store.close();
+
+        LogStorageEngine reopened = new LogStorageEngine("test", dir, 4096, true);
+        for (int i = 150; i < 200; i++) {
+            List<Versioned<byte[]>> r = reopened.get(key(i % 50));
+            assertEquals(1, r.size());
+            assertArrayEquals(new byte[] {(byte)i}, r.get(0).getValue());
+        }
+
+        // appends continue where the log left off
+        clock = clock.incremented(1, System.currentTimeMillis());
+        reopened.put(key(0), new Versioned<byte[]>(new byte[] {42}, clock));
+        reopened = new LogStorageEngine("test", dir, 4096, true);
+        assertArrayEquals(new byte[] {42},
+                          reopened.get(key(0)).get(0).getValue());
+        assertArrayEquals(new byte[] {(byte)199},
+                          reopened.get(key(49)).get(0).getValue());
+    }
+
+    @Test
+    public void testTornWrite() throws Exception {
+        store.put(key(1), new Versioned<byte[]>(new byte[] {1},
+                                                TUtils.getClock(1)));
+        store.put(key(2), new Versioned<byte[]>(new byte[] {2},
+                                                TUtils.getClock(1)));
+        store.close();
+
+        // corrupt the last byte of the second record
+        File segment = dir.listFiles()[0];
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        try {
+            int offset = 0;
+            raf.seek(offset);
+            offset += raf.readInt();
+            raf.seek(offset);
+            offset += raf.readInt();
+            raf.seek(offset - 1);
+            int b = raf.read();
+            raf.seek(offset - 1);
+            raf.write(b ^ 0xff);
+        } finally {
+            raf.close();
+        }
+
+        LogStorageEngine reopened = new LogStorageEngine("test", dir, 4096, true);
+        assertEquals(1, reopened.get(key(1)).size());
+        assertEquals(0, reopened.get(key(2)).size());
+
+        // the torn record is overwritten
+        reopened.put(key(3), new Versioned<byte[]>(new byte[] {3},
+                                                   TUtils.getClock(1)));
+        reopened = new LogStorageEngine("test", dir, 4096, true);
+        assertEquals(1, reopened.get(key(1)).size());
+        assertEquals(0, reopened.get(key(2)).size());
+        assertEquals(1, reopened.get(key(3)).size());
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        store.setTombstoneInterval(0);
+        VectorClock clock = new VectorClock();
+        for (int i = 0; i < 2000; i++) {
+            clock = clock.incremented(1, System.currentTimeMillis());
+            store.put(key(i % 20), new Versioned<byte[]>(new byte[64], clock));
+        }
+        // one key deleted, and its tombstone cleaned up
+        clock = clock.incremented(1, System.currentTimeMillis());
+        store.put(key(0), new Versioned<byte[]>(null, clock));
+        int before = store.getSegmentCount();
+        Thread.sleep(1);
+        store.cleanupTask();
+        int after = store.getSegmentCount();
+        assertTrue(after + " segments after compacting " + before,
+                   after < before / 4);
+
+        assertEquals(0, store.get(key(0)).size());
+        for (int i = 1; i < 20; i++) {
+            assertEquals(1, store.get(key(i)).size());
+        }
+
+        LogStorageEngine reopened = new LogStorageEngine("test", dir, 4096, true);
+        assertEquals(0, reopened.get(key(0)).size());
+        for (int i = 1; i < 20; i++) {
+            assertEquals(1, reopened.get(key(i)).size());
+        }
+    }
+
+    @Test
+    public void testCompactionDropsDeleteRecords() throws Exception {
+        store.setTombstoneInterval(0);
+        VectorClock clock = new VectorClock();
+        // a segment that stays mostly live, holding the put of key 100
+        int live = 100;
+        while (store.getSegmentCount() == 1) {
+            clock = clock.incremented(1, System.currentTimeMillis());
+            store.put(key(live++), new Versioned<byte[]>(new byte[64], clock));
+        }
+        clock = clock.incremented(1, System.currentTimeMillis());
+        store.put(key(100), new Versioned<byte[]>(null, clock));
+        // keys whose puts are all in segments that get compacted
+        for (int i = 0; i < 60; i++) {
+            clock = clock.incremented(1, System.currentTimeMillis());
+            store.put(key(i), new Versioned<byte[]>(new byte[64], clock));
+        }
+        for (int i = 0; i < 60; i++) {
+            clock = clock.incremented(1, System.currentTimeMillis());
+            store.put(key(i), new Versioned<byte[]>(null, clock));
+        }
+        Thread.sleep(1);
+        store.cleanupTask();
+
+        // move the head past the delete records, and compact them
+        int segments = store.getSegmentCount();
+        while (store.getSegmentCount() < segments + 3) {
+            clock = clock.incremented(1, System.currentTimeMillis());
+            store.put(key(1000), new Versioned<byte[]>(new byte[64], clock));
+        }
+        store.cleanupTask();
+        assertEquals(1, store.getDeleteRecordCount());
+
+        LogStorageEngine reopened = new LogStorageEngine("test", dir, 4096, true);
+        assertEquals(1, reopened.getDeleteRecordCount());
+        for (int i = 0; i < 60; i++) {
+            assertEquals(0, reopened.get(key(i)).size());
+        }
+        assertEquals(0, reopened.get(key(100)).size());
+        for (int i = 101; i < live; i++) {
+            assertEquals(1, reopened.get(key(i)).size());
+        }
+    }
+
+    @Test
+    public void testImport() throws Exception {
+        InMemoryStorageEngine<ByteArray, byte[]> from =
+                new InMemoryStorageEngine<ByteArray, byte[]>("test");
+        for (int i = 0; i < 100; i++) {
+            from.put(key(i), new Versioned<byte[]>(new byte[] {(byte)i},
+                                                   TUtils.getClock(1)));
+        }
+        from.put(key(0), new Versioned<byte[]>(new byte[] {1},
+                                               TUtils.getClock(2)));
+
+        assertEquals(100, store.importFrom(from));
+        assertEquals(2, store.get(key(0)).size());
+        for (int i = 1; i < 100; i++) {
+            assertArrayEquals(new byte[] {(byte)i},
+                              store.get(key(i)).get(0).getValue());
+        }
+    }
+
+    @Test
+    public void testConcurrentPuts() throws Exception {
+        final int threads = 8;
+        final int puts = 200;
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int nodeId = t;
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        VectorClock clock = new VectorClock();
+                        for (int i = 0; i < puts; i++) {
+                            clock = clock.incremented(nodeId,
+                                                      System.currentTimeMillis());
+                            store.put(key(nodeId * puts + i % 10),
+                                      new Versioned<byte[]>(new byte[] {(byte)i},
+                                                            clock));
+                        }
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        for (Thread w : workers) {
+            w.join();
+        }
+        assertEquals(new ArrayList<Throwable>(), errors);
+
+        LogStorageEngine reopened = new LogStorageEngine("test", dir, 4096, true);
+        for (int t = 0; t < threads; t++) {
+            for (int i = puts - 10; i < puts; i++) {
+                List<Versioned<byte[]>> r =
+                        reopened.get(key(t * puts + i % 10));
+                assertEquals(1, r.size());
+                assertArrayEquals(new byte[] {(byte)i}, r.get(0).getValue());
+            }
+        }
+    }
+}
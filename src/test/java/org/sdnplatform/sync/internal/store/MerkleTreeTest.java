@@ -0,0 +1,82 @@
+package org.sdnplatform.sync.internal.store;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.sdnplatform.sync.IVersion;
+import org.sdnplatform.sync.internal.util.ByteArray;
+import org.sdnplatform.sync.internal.version.VectorClock;
+
+public class MerkleTreeTest {
+
+    private static ByteArray key(int i) {
+        return new ByteArray(("key" + i).getBytes());
+    }
+
+    private static List<IVersion> versions(int... nodes) {
+        List<IVersion> l = new ArrayList<IVersion>();
+        for (int n : nodes) {
+            l.add(new VectorClock().incremented(n, 0));
+        }
+        return l;
+    }
+
+    @Test
+    public void testSameEntriesSameDigests() {
+        MerkleTree a = new MerkleTree();
+        MerkleTree b = new MerkleTree();
+        for (int i = 0; i < 1000; i++) {
+            a.update(key(i), versions(1, 2));
+        }
+        for (int i = 999; i >= 0; i--) {
+            // order of keys and of concurrent versions does not matter
+            b.update(key(i), versions(2, 1));
+        }
+        assertEquals(a.digest(0, 0), b.digest(0, 0));
+        assertTrue(a.digest(0, 0) != 0);
+
+        // a changed entry shows only on its own path to the root
+        b.update(key(7), versions(3));
+        int leaf = MerkleTree.leafOf(key(7));
+        assertTrue(a.digest(0, 0) != b.digest(0, 0));
+        for (int level = 0; level <= MerkleTree.DEPTH; level++) {
+            int span = MerkleTree.LEAVES >> (4 * level);
+            for (int n = 0; n < MerkleTree.LEAVES / span; n++) {
+                boolean onPath = (leaf / span == n);
+                assertEquals(onPath, a.digest(level, n) != b.digest(level, n));
+            }
+        }
+        assertTrue(b.keys(leaf).contains(key(7)));
+
+        b.update(key(7), versions(1, 2));
+        assertEquals(a.digest(0, 0), b.digest(0, 0));
+    }
+
+    @Test
+    public void testRemove() {
+        MerkleTree t = new MerkleTree();
+        t.update(key(1), versions(1));
+        t.update(key(2), versions(1));
+        t.update(key(2), Collections.<IVersion>emptyList());
+        MerkleTree u = new MerkleTree();
+        u.update(key(1), versions(1));
+        assertEquals(u.digest(0, 0), t.digest(0, 0));
+        assertFalse(t.keys(MerkleTree.leafOf(key(2))).contains(key(2)));
+
+        t.clear();
+        assertEquals(0, t.digest(0, 0));
+    }
+
+    @Test
+    public void testIsNode() {
+        assertTrue(MerkleTree.isNode(0, 0));
+        assertFalse(MerkleTree.isNode(0, 1));
+        assertTrue(MerkleTree.isNode(MerkleTree.DEPTH, MerkleTree.LEAVES - 1));
+        assertFalse(MerkleTree.isNode(MerkleTree.DEPTH, MerkleTree.LEAVES));
+        assertFalse(MerkleTree.isNode(MerkleTree.DEPTH + 1, 0));
+    }
+}
@@ -0,0 +1,121 @@
+package org.sdnplatform.sync.internal.store;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.sdnplatform.sync.Versioned;
+import org.sdnplatform.sync.internal.TUtils;
+import org.sdnplatform.sync.internal.util.ByteArray;
+import org.sdnplatform.sync.internal.version.VectorClock;
+
+/**
+ * Compares the persistent storage engines on the puts and gets a sync
+ * store sees: {@link JavaDBStorageEngine} on an on-disk database, and
+ * {@link LogStorageEngine} with and without synchronous writes.  The
+ * puts run on one thread and on eight, which is where the group commit
+ * of the log shows.  The values are the size of a device store entry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageEngineBenchmark {
+    private static final int KEYS = 4096;
+    private static final VectorClock SEED = new VectorClock().incremented(0, 0);
+
+    @Param({"derby", "log", "log-async"})
+    public String engine;
+
+    private File dir;
+    private IStorageEngine<ByteArray, byte[]> store;
+    private ByteArray[] keys;
+    private final AtomicInteger nodeIds = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class Writer {
+        VectorClock clock = SEED;
+        int nodeId;
+        int next;
+        final byte[] value = new byte[256];
+
+        @Setup
+        public void setUp(StorageEngineBenchmark b) {
+            nodeId = b.nodeIds.incrementAndGet();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = TUtils.createTempDir();
+        if ("derby".equals(engine)) {
+            store = new JavaDBStorageEngine("bench",
+                    JavaDBStorageEngine.getDataSource(dir.getPath(), false));
+        } else {
+            store = new LogStorageEngine("bench", new File(dir, "bench"),
+                                         LogStorageEngine.DEFAULT_SEGMENT_SIZE,
+                                         "log".equals(engine));
+        }
+        keys = new ByteArray[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = new ByteArray(("device-" + i).getBytes());
+            store.put(keys[i], new Versioned<byte[]>(new byte[256], SEED));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        store.truncate();
+        store.close();
+    }
+
+    /**
+     * Each writer has its own node id, so its puts are concurrent to, and
+     * never obsolete against, those of the other writers
+     */
+    private void put(Writer w) throws Exception {
+        w.clock = w.clock.incremented(w.nodeId, System.currentTimeMillis());
+        store.put(keys[w.next++ % KEYS], new Versioned<byte[]>(w.value, w.clock));
+    }
+
+    @Benchmark
+    public void put1(Writer w) throws Exception {
+        put(w);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void put8(Writer w) throws Exception {
+        put(w);
+    }
+
+    @Benchmark
+    public Object get(Writer w) throws Exception {
+        return store.get(keys[w.next++ % KEYS]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(StorageEngineBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}